@@ -61,13 +61,19 @@ java {
     }
 }
 
+// Vector API (инкубатор) для SIMD-поиска в FastSearch. Без модуля в рантайме
+// поиск работает на скалярной реализации, поэтому флаг нужен и при запуске.
+val vectorModuleArgs = listOf("--add-modules", "jdk.incubator.vector")
+
 application {
     // Define the main class for the application.
     mainClass = "ru.nts.tools.mcp.McpServer"
+    applicationDefaultJvmArgs = vectorModuleArgs
 }
 
 tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
+    options.compilerArgs.addAll(vectorModuleArgs)
 }
 
 // Configure shadowJar task
@@ -80,4 +86,114 @@ tasks.named<com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar>("shadowJ
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
+    jvmArgs(vectorModuleArgs)
+}
+
+// ==================== JMH бенчмарки ====================
+// Исходники: src/jmh/java. Запуск:
+//   ./gradlew :app:jmh                                   - все бенчмарки
+//   ./gradlew :app:jmh -Pjmh.includes=FastSearch         - по regex имени
+//   ./gradlew :app:jmh -Pjmh.args="-f 1 -wi 2 -i 3"      - дополнительные аргументы JMH
+//   ./gradlew :app:jmhCompare [-Pjmh.threshold=0.15]     - сравнение с jmh-baseline.json
+//   ./gradlew :app:jmhUpdateBaseline                     - зафиксировать результаты как baseline
+// Абсолютные значения зависят от машины, поэтому baseline локальный (в .gitignore):
+// записывается перед изменением и сравнивается после. jmhCompare не сравнивает
+// замеры с другой мажорной версией JDK или другими аргументами JVM.
+
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "jmhImplementation"(libs.jmh.core)
+    "jmhAnnotationProcessor"(libs.jmh.generator.annprocess)
+}
+
+val jmhResults = layout.buildDirectory.file("reports/jmh/results.json")
+val jmhBaseline = layout.projectDirectory.file("jmh-baseline.json")
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs JMH benchmarks and writes JSON results to build/reports/jmh/results.json"
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    // Форки JMH наследуют аргументы JVM запускающего процесса
+    jvmArgs(vectorModuleArgs)
+
+    val includes = providers.gradleProperty("jmh.includes").getOrElse(".*")
+    val extraArgs = providers.gradleProperty("jmh.args").getOrElse("")
+    args(listOf(includes, "-rf", "json", "-rff", jmhResults.get().asFile.absolutePath))
+    args(extraArgs.split(" ").filter { it.isNotBlank() })
+
+    outputs.upToDateWhen { false }
+    doFirst { jmhResults.get().asFile.parentFile.mkdirs() }
+}
+
+// Результат бенчмарка; env - мажорная версия JDK и аргументы JVM форка
+data class JmhRun(val mode: String, val score: Double, val env: String)
+
+tasks.register("jmhCompare") {
+    group = "benchmark"
+    description = "Compares the last JMH results with the local baseline and fails on regressions"
+
+    val threshold = providers.gradleProperty("jmh.threshold").map { it.toDouble() }.getOrElse(0.15)
+    val resultsFile = jmhResults.get().asFile
+    val baselineFile = jmhBaseline.asFile
+
+    doLast {
+        check(resultsFile.exists()) { "No JMH results at $resultsFile, run :app:jmh first" }
+        check(baselineFile.exists()) { "No baseline at $baselineFile, run :app:jmhUpdateBaseline first" }
+
+        // Ключ: имя бенчмарка + параметры
+        fun load(file: File): Map<String, JmhRun> {
+            @Suppress("UNCHECKED_CAST")
+            val runs = groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>
+            return runs.associate { run ->
+                val params = (run["params"] as Map<*, *>?)?.entries
+                    ?.sortedBy { it.key.toString() }
+                    ?.joinToString(",", "(", ")") { "${it.key}=${it.value}" } ?: ""
+                val metric = run["primaryMetric"] as Map<*, *>
+                val env = "JDK ${run["jdkVersion"].toString().substringBefore('.')} " +
+                        "${(run["jvmArgs"] as List<*>?).orEmpty()}"
+                "${run["benchmark"]}$params" to JmhRun(run["mode"].toString(), (metric["score"] as Number).toDouble(), env)
+            }
+        }
+
+        val baseline = load(baselineFile)
+        val regressions = mutableListOf<String>()
+        val envMismatches = mutableListOf<String>()
+        load(resultsFile).toSortedMap().forEach { (name, current) ->
+            val base = baseline[name] ?: return@forEach println("NEW       $name: ${"%.3f".format(current.score)}")
+            // Замеры на другой JDK или с другими флагами (--enable-preview, модули) не сравнимы
+            if (base.env != current.env) {
+                println("ENV       $name: baseline ${base.env}, current ${current.env}")
+                envMismatches += name
+                return@forEach
+            }
+            // thrpt - больше лучше, остальные режимы (avgt, sample, ss) - меньше лучше
+            val change = if (current.mode == "thrpt") base.score / current.score - 1 else current.score / base.score - 1
+            val status = if (change > threshold) "REGRESSED" else "OK"
+            println("%-9s %s: %.3f -> %.3f (%+.1f%%)".format(status, name, base.score, current.score, change * 100))
+            if (change > threshold) regressions += name
+        }
+        if (envMismatches.isNotEmpty()) {
+            throw GradleException("${envMismatches.size} benchmark(s) in the baseline were recorded with another " +
+                    "JDK or JVM arguments (ENV lines above); re-record them with :app:jmh and :app:jmhUpdateBaseline")
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("${regressions.size} benchmark(s) regressed by more than ${threshold * 100}%: $regressions")
+        }
+    }
+}
+
+tasks.register<Copy>("jmhUpdateBaseline") {
+    group = "benchmark"
+    description = "Stores the last JMH results as the local baseline (jmh-baseline.json)"
+    from(jmhResults)
+    into(layout.projectDirectory)
+    rename { "jmh-baseline.json" }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Генераторы синтетических корпусов для бенчмарков.
+ * <p>
+ * Все генераторы детерминированы по seed: одинаковые параметры дают
+ * байт-в-байт одинаковые данные на любой машине, поэтому результаты
+ * сопоставимы с зафиксированным baseline.
+ */
+public final class BenchmarkCorpus {
+
+    public static final long SEED = 0x4E5453L;
+
+    private static final String[] WORDS = {
+            "request", "response", "handler", "session", "buffer", "index", "value", "result",
+            "token", "cache", "stream", "parser", "node", "symbol", "file", "path", "range"
+    };
+
+    private static final String[] CYRILLIC_WORDS = {
+            "запрос", "ответ", "обработчик", "сессия", "буфер", "индекс", "значение", "результат"
+    };
+
+    private BenchmarkCorpus() {}
+
+    /**
+     * Java-класс с указанным количеством методов (по 5 строк на метод, около 5k строк на 1000 методов).
+     * Методы вызывают друг друга, поэтому в файле есть и определения, и ссылки.
+     */
+    public static String javaSource(int methods, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(methods * 120);
+        sb.append("package bench.generated;\n\nimport java.util.List;\n\npublic class Generated {\n");
+        sb.append("    private int counter;\n\n");
+        for (int i = 0; i < methods; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            sb.append("    /** Обработка ").append(word).append(" ").append(i).append(" */\n");
+            sb.append("    public int ").append(word).append(i).append("(int ").append(word).append(") {\n");
+            int callee = i == 0 ? 0 : random.nextInt(i);
+            sb.append("        counter += ").append(word).append(" * ").append(random.nextInt(1000)).append(";\n");
+            sb.append("        return ").append(i == 0 ? "counter" : WORDS[0] + "Call(" + callee + ")").append(";\n");
+            sb.append("    }\n");
+        }
+        sb.append("    private int ").append(WORDS[0]).append("Call(int id) { return id + counter; }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * TypeScript-класс с указанным количеством методов (по 5 строк на метод), той же формы,
+     * что и {@link #javaSource(int, long)}.
+     */
+    public static String typeScriptSource(int methods, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(methods * 120);
+        sb.append("import { List } from './list';\n\nexport class Generated {\n");
+        sb.append("    private counter: number = 0;\n\n");
+        for (int i = 0; i < methods; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            sb.append("    /** Обработка ").append(word).append(" ").append(i).append(" */\n");
+            sb.append("    public ").append(word).append(i).append("(").append(word).append(": number): number {\n");
+            int callee = i == 0 ? 0 : random.nextInt(i);
+            sb.append("        this.counter += ").append(word).append(" * ").append(random.nextInt(1000)).append(";\n");
+            sb.append("        return ").append(i == 0 ? "this.counter" : "this." + WORDS[0] + "Call(" + callee + ")").append(";\n");
+            sb.append("    }\n");
+        }
+        sb.append("    private ").append(WORDS[0]).append("Call(id: number): number { return id + this.counter; }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Текстовый лог примерно заданного размера. Строка с needle встречается
+     * в среднем один раз на {@code hitEvery} строк.
+     */
+    public static String logText(int approxBytes, String needle, int hitEvery, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(approxBytes + 256);
+        int line = 0;
+        while (sb.length() < approxBytes) {
+            sb.append("2025-01-").append(10 + line % 20).append(" INFO  [worker-").append(random.nextInt(32))
+                    .append("] ").append(WORDS[random.nextInt(WORDS.length)]).append(" id=").append(random.nextInt(1_000_000));
+            if (random.nextInt(hitEvery) == 0) {
+                sb.append(' ').append(needle);
+            }
+            sb.append(" ERROR ").append(random.nextInt(600)).append('\n');
+            line++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Русский текст в указанной кодировке (для определения кодировки).
+     */
+    public static byte[] cyrillicText(int approxChars, Charset charset, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(approxChars + 32);
+        while (sb.length() < approxChars) {
+            sb.append(CYRILLIC_WORDS[random.nextInt(CYRILLIC_WORDS.length)]);
+            sb.append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return sb.toString().getBytes(charset);
+    }
+
+    /**
+     * Копия текста с {@code edits} точечными правками строк (замена, вставка, удаление).
+     */
+    public static String editLines(String text, int edits, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String> lines = new ArrayList<>(List.of(text.split("\n", -1)));
+        for (int e = 0; e < edits && !lines.isEmpty(); e++) {
+            int at = random.nextInt(lines.size());
+            switch (random.nextInt(3)) {
+                case 0 -> lines.set(at, lines.get(at) + " // edited " + e);
+                case 1 -> lines.add(at, "        // inserted " + e);
+                default -> lines.remove(at);
+            }
+        }
+        return String.join("\n", lines);
+    }
+
+    /**
+     * Создаёт временную директорию корпуса.
+     */
+    public static Path createTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory("nts-bench-" + prefix);
+    }
+
+    /**
+     * Рекурсивно удаляет директорию корпуса.
+     */
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.DiffUtils;
+import ru.nts.tools.mcp.core.diff.DiffAlgorithm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unified diff для файла в 1k и 10k строк с несколькими десятками точечных правок.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+    /**
+     * Количество методов в сгенерированном классе (5 строк на метод).
+     */
+    @Param({"200", "2000"})
+    public int methods;
+
+    @Param({"myers", "histogram"})
+    public String algorithm;
+
+    private String original;
+    private String modified;
+    private DiffAlgorithm diffAlgorithm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        original = BenchmarkCorpus.javaSource(methods, BenchmarkCorpus.SEED);
+        modified = BenchmarkCorpus.editLines(original, 40, BenchmarkCorpus.SEED + 1);
+        diffAlgorithm = "histogram".equals(algorithm) ? DiffAlgorithm.HISTOGRAM : DiffAlgorithm.MYERS;
+    }
+
+    @Benchmark
+    public String unifiedDiff() {
+        return DiffUtils.getUnifiedDiff("Generated.java", original, modified, diffAlgorithm);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.EncodingUtils;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Определение кодировки: чистый ASCII, UTF-8 с кириллицей и windows-1251.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"ascii", "utf8", "cp1251"})
+    public String encoding;
+
+    @Param({"65536"})
+    public int chars;
+
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bytes = switch (encoding) {
+            case "ascii" -> BenchmarkCorpus.javaSource(chars / 110, BenchmarkCorpus.SEED)
+                    .replaceAll("[^\\x00-\\x7F]", "?").getBytes(StandardCharsets.US_ASCII);
+            case "utf8" -> BenchmarkCorpus.cyrillicText(chars, StandardCharsets.UTF_8, BenchmarkCorpus.SEED);
+            default -> BenchmarkCorpus.cyrillicText(chars, Charset.forName("windows-1251"), BenchmarkCorpus.SEED);
+        };
+    }
+
+    @Benchmark
+    public Charset detectEncoding() {
+        return EncodingUtils.detectEncoding(bytes);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.FastSearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск по файлу: короткий литерал, литерал для BMH и regex
+ * на небольшом файле и на файле выше порога memory-mapped чтения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastSearchBenchmark {
+
+    /**
+     * SMALL - 256 KB (буферное чтение), MMAP - 12 MB (выше порога в 10 MB).
+     */
+    @Param({"SMALL", "MMAP"})
+    public String size;
+
+    @Param({"literal", "bmh", "regex"})
+    public String kind;
+
+    private Path dir;
+    private Path file;
+    private String pattern;
+    private boolean regex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int bytes = "MMAP".equals(size) ? 12 * 1024 * 1024 : 256 * 1024;
+        dir = BenchmarkCorpus.createTempDir("search");
+        file = dir.resolve("app.log");
+        Files.writeString(file, BenchmarkCorpus.logText(bytes, "connection refused", 500, BenchmarkCorpus.SEED),
+                StandardCharsets.UTF_8);
+
+        switch (kind) {
+            case "literal" -> pattern = "id=7";
+            case "bmh" -> pattern = "connection refused";
+            default -> pattern = "ERROR 5\\d\\d";
+        }
+        regex = "regex".equals(kind);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkCorpus.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public FastSearch.SearchResult search() throws IOException {
+        return FastSearch.search(file, pattern, regex, 0, 0, 0);
+    }
+}
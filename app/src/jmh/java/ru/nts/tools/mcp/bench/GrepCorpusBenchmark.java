@@ -0,0 +1,114 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.ByteSearch;
+import ru.nts.tools.mcp.core.FastSearch;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Литеральный grep по корпусу из 300 Java-файлов (около 8 MB):
+ * сквозной поиск через FastSearch и сравнение векторного и скалярного поиска байтов.
+ * Без {@code --add-modules jdk.incubator.vector} вариант {@code vector} выполняется скалярно.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrepCorpusBenchmark {
+
+    private static final int FILES = 300;
+
+    /**
+     * Редкий литерал, отсутствующий литерал и кириллица (UTF-8, многобайтовый паттерн).
+     */
+    @Param({"requestCall(7)", "missingSymbol", "Обработка"})
+    public String pattern;
+
+    private Path dir;
+    private final List<Path> files = new ArrayList<>();
+    private final List<MemorySegment> segments = new ArrayList<>();
+    private byte[] patternBytes;
+
+    /**
+     * Реализация побайтового поиска.
+     */
+    @State(Scope.Benchmark)
+    public static class Impl {
+        @Param({"vector", "scalar"})
+        public String impl;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkCorpus.createTempDir("grep");
+        for (int i = 0; i < FILES; i++) {
+            Path file = dir.resolve("Generated" + i + ".java");
+            byte[] bytes = BenchmarkCorpus.javaSource(200, BenchmarkCorpus.SEED + i).getBytes(StandardCharsets.UTF_8);
+            Files.write(file, bytes);
+            files.add(file);
+            segments.add(MemorySegment.ofArray(bytes));
+        }
+        patternBytes = pattern.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkCorpus.deleteRecursively(dir);
+    }
+
+    /**
+     * Сквозной поиск как в grep: чтение, кодировка, совпадения, CRC и номера строк.
+     */
+    @Benchmark
+    public int grep() throws IOException {
+        int matched = 0;
+        for (Path file : files) {
+            FastSearch.SearchResult result = FastSearch.search(file, pattern, false, 0, 0, 0);
+            if (result != null) {
+                matched += result.matches().size();
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Только поиск совпадений по байтам уже прочитанных файлов.
+     */
+    @Benchmark
+    public long findAll(Impl impl) {
+        boolean vector = "vector".equals(impl.impl);
+        long hits = 0;
+        for (MemorySegment segment : segments) {
+            long[] result = vector
+                    ? ByteSearch.findAll(segment, 0, patternBytes, 0)
+                    : ByteSearch.findAllScalar(segment, 0, patternBytes, 0);
+            hits += result[0];
+        }
+        return hits;
+    }
+}
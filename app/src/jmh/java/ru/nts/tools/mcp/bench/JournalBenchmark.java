@@ -0,0 +1,135 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.JournalDatabase;
+import ru.nts.tools.mcp.core.JournalRepository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Запись в журнал задачи: запись журнала и снимок файла в одной операции.
+ * Сравнивает работу через открытое соединение и открытие соединения на каждую
+ * операцию (как сейчас делает большинство вызовов журнала), а также задержку
+ * фиксации пакета из 10 правок в том виде, как их пишет TaskTransactionManager.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    /**
+     * Размер снимка файла в байтах.
+     */
+    @Param({"4096", "65536"})
+    public int snapshotSize;
+
+    private final JournalRepository repo = new JournalRepository();
+
+    private Path dir;
+    private JournalDatabase db;
+    private Connection sharedConnection;
+    private byte[] snapshot;
+    private long crc;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        dir = BenchmarkCorpus.createTempDir("journal");
+        db = new JournalDatabase(dir);
+        db.initialize();
+        String source = BenchmarkCorpus.javaSource(snapshotSize / 100 + 1, BenchmarkCorpus.SEED);
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        snapshot = Arrays.copyOf(bytes, Math.min(bytes.length, snapshotSize));
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(snapshot);
+        crc = crc32c.getValue();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        if (sharedConnection != null) {
+            sharedConnection.close();
+        }
+        db.close();
+        BenchmarkCorpus.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public long recordSharedConnection() throws SQLException {
+        // Открывается только здесь: удерживаемое соединение не даёт H2 закрывать базу
+        // и исказило бы замеры остальных вариантов
+        if (sharedConnection == null) {
+            sharedConnection = db.getInitializedConnection();
+        }
+        return record(sharedConnection);
+    }
+
+    @Benchmark
+    public long recordConnectionPerOperation() throws SQLException {
+        try (Connection conn = db.getInitializedConnection()) {
+            return record(conn);
+        }
+    }
+
+    /**
+     * Пакет из 10 правок: каждая фиксируется отдельной транзакцией со своим соединением
+     * (очистка REDO, запись, снимок, diff, обрезка стека, счётчик).
+     */
+    @Benchmark
+    public long commitTenEdits() throws SQLException {
+        long last = 0;
+        for (int i = 0; i < 10; i++) {
+            try (Connection conn = db.getInitializedConnection()) {
+                conn.setAutoCommit(false);
+                repo.clearStack(conn, "REDO");
+                int pos = repo.getMaxPosition(conn, "UNDO") + 1;
+                last = repo.insertEntry(conn, "UNDO", "TRANSACTION", pos, LocalDateTime.now(),
+                        "edit_file", "COMMITTED", null, null, null, null, null);
+                // Каждая правка меняет файл, чтобы снимки не совпадали
+                snapshot[(position++ * 31) % snapshot.length] ^= 1;
+                repo.insertSnapshot(conn, last, "src/Generated.java", snapshot, snapshot.length, crc);
+                repo.insertDiffStats(conn, last, "src/Generated.java", 1, 1, null, null);
+                if (repo.getStackSize(conn, "UNDO") > 50) {
+                    repo.deleteOldestEntry(conn, "UNDO");
+                }
+                repo.setCounter(conn, "totalEdits", pos + 1);
+                conn.commit();
+            }
+        }
+        return last;
+    }
+
+    private long record(Connection conn) throws SQLException {
+        int pos = position++;
+        long entryId = repo.insertEntry(conn, "UNDO", "TRANSACTION", pos, LocalDateTime.now(),
+                "edit_file", "COMMITTED", null, "src/Generated.java", crc, crc, null);
+        repo.insertSnapshot(conn, entryId, "src/Generated.java", snapshot, snapshot.length, crc);
+        return entryId;
+    }
+}
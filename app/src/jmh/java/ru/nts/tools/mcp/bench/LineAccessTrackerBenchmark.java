@@ -0,0 +1,94 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.LineAccessToken;
+import ru.nts.tools.mcp.core.TaskLineAccessTracker;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Регистрация и валидация токенов доступа к строкам при большом числе
+ * файлов и токенов в одной задаче.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineAccessTrackerBenchmark {
+
+    /**
+     * Количество файлов, для которых заранее зарегистрированы токены.
+     */
+    @Param({"100", "1000"})
+    public int files;
+
+    private static final int RANGES_PER_FILE = 8;
+    private static final int LINES_PER_RANGE = 20;
+    private static final int LINE_COUNT = RANGES_PER_FILE * LINES_PER_RANGE * 2;
+
+    private TaskLineAccessTracker tracker;
+    private Path[] paths;
+    private LineAccessToken[] tokens;
+    private String rangeContent;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tracker = new TaskLineAccessTracker();
+        paths = new Path[files];
+        tokens = new LineAccessToken[files];
+        rangeContent = "        int value = compute(index);\n".repeat(LINES_PER_RANGE);
+        for (int f = 0; f < files; f++) {
+            paths[f] = Path.of("/bench/src/File" + f + ".java");
+            for (int r = 0; r < RANGES_PER_FILE; r++) {
+                // Непересекающиеся диапазоны с зазором, чтобы токены не сливались
+                int start = r * LINES_PER_RANGE * 2 + 1;
+                tokens[f] = tracker.registerAccess(paths[f], start, start + LINES_PER_RANGE - 1,
+                        rangeContent, LINE_COUNT, 0L);
+            }
+        }
+    }
+
+    @Benchmark
+    public LineAccessToken registerAccess() {
+        int f = nextIndex();
+        return tracker.registerAccess(paths[f], 1, LINES_PER_RANGE, rangeContent, LINE_COUNT, 0L);
+    }
+
+    @Benchmark
+    public LineAccessToken.ValidationResult validateToken() {
+        return tracker.validateToken(tokens[nextIndex()], rangeContent, LINE_COUNT);
+    }
+
+    @Benchmark
+    public boolean isRangeCovered() {
+        int f = nextIndex();
+        return tracker.isRangeCovered(paths[f], 1, LINES_PER_RANGE, rangeContent);
+    }
+
+    private int nextIndex() {
+        int i = cursor++;
+        if (cursor == files) {
+            cursor = 0;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.treesitter.SymbolExtractor;
+import ru.nts.tools.mcp.core.treesitter.SymbolInfo;
+import ru.nts.tools.mcp.core.treesitter.TreeSitterManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск ссылок и извлечение определений на больших файлах Java и TypeScript
+ * (200 методов - около 1k строк, 4000 методов - около 20k строк).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceSearchBenchmark {
+
+    @Param({"java", "typescript"})
+    public String lang;
+
+    @Param({"200", "4000"})
+    public int methods;
+
+    private final TreeSitterManager manager = TreeSitterManager.getInstance();
+    private final SymbolExtractor extractor = SymbolExtractor.getInstance();
+
+    private Path dir;
+    private Path file;
+    private String content;
+    private TreeSitterManager.ParseResult parsed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkCorpus.createTempDir("references");
+        boolean java = "java".equals(lang);
+        file = dir.resolve(java ? "Generated.java" : "generated.ts");
+        content = java
+                ? BenchmarkCorpus.javaSource(methods, BenchmarkCorpus.SEED)
+                : BenchmarkCorpus.typeScriptSource(methods, BenchmarkCorpus.SEED);
+        Files.writeString(file, content);
+        parsed = manager.parseWithContent(file, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkCorpus.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<SymbolInfo.Location> findReferences() {
+        return extractor.findReferences(parsed.tree(), file, content, parsed.langId(), "requestCall");
+    }
+
+    @Benchmark
+    public List<SymbolInfo> extractDefinitions() {
+        return extractor.extractDefinitions(parsed.tree(), file, content, parsed.langId());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.PathSanitizer;
+import ru.nts.tools.mcp.core.treesitter.SymbolIndex;
+import ru.nts.tools.mcp.core.treesitter.TreeSitterManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность полной индексации символов: 100 Java-файлов по 100 методов (около 500 строк),
+ * холодный старт (без сохранённого индекса и кэша деревьев) на каждом вызове.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymbolIndexBenchmark {
+
+    private static final int FILES = 100;
+
+    private final SymbolIndex index = SymbolIndex.getInstance();
+
+    private Path dir;
+    private Path project;
+    private Path taskRoot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkCorpus.createTempDir("symbols");
+        project = Files.createDirectories(dir.resolve("project"));
+        taskRoot = Files.createDirectories(dir.resolve("tasks"));
+        for (int i = 0; i < FILES; i++) {
+            Files.writeString(project.resolve("Generated" + i + ".java"),
+                    BenchmarkCorpus.javaSource(100, BenchmarkCorpus.SEED + i));
+        }
+        PathSanitizer.setTaskRoot(taskRoot);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws IOException {
+        index.clear();
+        TreeSitterManager.getInstance().clearCache();
+        BenchmarkCorpus.deleteRecursively(taskRoot.resolve("index"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.clear();
+        BenchmarkCorpus.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int indexProject() {
+        return index.indexProjectAsync(project).join().filesIndexed();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.treesitter.TSTree;
+import ru.nts.tools.mcp.core.treesitter.SymbolExtractor;
+import ru.nts.tools.mcp.core.treesitter.SymbolExtractorUtils;
+import ru.nts.tools.mcp.core.treesitter.SymbolInfo;
+import ru.nts.tools.mcp.core.treesitter.TreeSitterManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Парсинг и извлечение символов на Java-файле около 1k и 5k строк.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeSitterBenchmark {
+
+    /**
+     * Количество методов (5 строк на метод): 200 - около 1k строк, 1000 - около 5k строк.
+     */
+    @Param({"200", "1000"})
+    public int methods;
+
+    private final TreeSitterManager manager = TreeSitterManager.getInstance();
+    private final SymbolExtractor extractor = SymbolExtractor.getInstance();
+
+    private Path dir;
+    private Path file;
+    private String content;
+    private TreeSitterManager.ParseResult parsed;
+    private String referenceName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkCorpus.createTempDir("treesitter");
+        file = dir.resolve("Generated.java");
+        content = BenchmarkCorpus.javaSource(methods, BenchmarkCorpus.SEED);
+        Files.writeString(file, content);
+        parsed = manager.parseWithContent(file, content);
+        referenceName = "requestCall";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.invalidateCache(file);
+        BenchmarkCorpus.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public TSTree parse() {
+        return manager.parse(content, "java");
+    }
+
+    /**
+     * Попадание в кэш деревьев: версия файла (stat) совпадает, файл не перечитывается.
+     */
+    @Benchmark
+    public TreeSitterManager.ParseResult getCachedOrParseWithContent() throws IOException {
+        return manager.getCachedOrParseWithContent(file);
+    }
+
+    @Benchmark
+    public List<SymbolInfo> extractDefinitions() {
+        return extractor.extractDefinitions(parsed.tree(), file, content, parsed.langId());
+    }
+
+    @Benchmark
+    public List<SymbolInfo.Location> findReferences() {
+        return extractor.findReferences(parsed.tree(), file, content, parsed.langId(), referenceName);
+    }
+
+    /**
+     * Извлечение текста всех узлов верхнего уровня класса (горячий путь экстракторов).
+     */
+    @Benchmark
+    public int nodeText() {
+        var body = parsed.tree().getRootNode().getNamedChild(parsed.tree().getRootNode().getNamedChildCount() - 1);
+        int total = 0;
+        int count = Math.min(body.getNamedChildCount(), 64);
+        for (int i = 0; i < count; i++) {
+            total += SymbolExtractorUtils.getNodeText(body.getNamedChild(i), content).length();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nts.tools.mcp.core.treesitter.SymbolNameTrie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск символов по рабочей области: 500 000 имён вида {@code verbNounQualifier},
+ * префикс, горбы и опечатка по одному индексу. Построение индекса измеряется отдельно.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkspaceSymbolsBenchmark {
+
+    private static final int NAMES = 500_000;
+    private static final String[] VERBS = {"get", "set", "find", "load", "save", "handle", "build", "parse", "create", "update"};
+    private static final String[] NOUNS = {"User", "Order", "Account", "Session", "Request", "Response", "Config", "Index", "Token", "Cache"};
+    private static final String[] QUALIFIERS = {"ById", "ByName", "Async", "Internal", "Impl", "Batch", "List", "Map", "Stats", "Entry"};
+
+    private List<String> names;
+    private SymbolNameTrie trie;
+
+    /**
+     * Запрос: префикс, горбы и опечатка.
+     */
+    @State(Scope.Benchmark)
+    public static class Query {
+        @Param({"getUser", "gUBI", "getUserByNmae"})
+        public String query;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(BenchmarkCorpus.SEED);
+        names = new ArrayList<>(NAMES);
+        for (int i = 0; i < NAMES; i++) {
+            names.add(VERBS[random.nextInt(VERBS.length)] + NOUNS[random.nextInt(NOUNS.length)]
+                    + QUALIFIERS[random.nextInt(QUALIFIERS.length)] + Integer.toString(i, 36));
+        }
+        names.add("getUserByName");
+        names.add("getUserById");
+        trie = SymbolNameTrie.build(names);
+    }
+
+    @Benchmark
+    public int search(Query query) {
+        return trie.search(query.query, 50).size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int build() {
+        return SymbolNameTrie.build(names).size();
+    }
+}
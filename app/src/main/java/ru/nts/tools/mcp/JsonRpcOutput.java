@@ -0,0 +1,120 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import ru.nts.tools.mcp.core.McpJson;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Выходной канал JSON-RPC сообщений (stdout).
+ * <p>
+ * Потоки-обработчики только кладут готовый узел в lock-free очередь и будят писателя;
+ * сериализацию выполняет единственный поток-писатель прямо в буферизованный UTF-8 поток,
+ * без промежуточной строки. Каждое сообщение завершается переводом строки, поток
+ * сбрасывается, когда очередь опустела - пачка ответов уходит одной записью.
+ */
+final class JsonRpcOutput implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Queue<JsonNode> queue = new ConcurrentLinkedQueue<>();
+    private final OutputStream out;
+    private final Consumer<String> errorLog;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    JsonRpcOutput(OutputStream sink, Consumer<String> errorLog) {
+        this.out = new BufferedOutputStream(sink, BUFFER_SIZE);
+        this.errorLog = errorLog;
+        this.writer = Thread.ofVirtual().name("mcp-stdout").start(this::run);
+    }
+
+    /**
+     * Ставит сообщение в очередь на отправку. Не блокирует вызывающий поток.
+     *
+     * @return false, если канал уже закрыт и сообщение отброшено
+     */
+    boolean send(JsonNode message) {
+        if (closed) {
+            return false;
+        }
+        queue.offer(message);
+        LockSupport.unpark(writer);
+        return true;
+    }
+
+    private void run() {
+        try (JsonGenerator gen = McpJson.MAPPER.getFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Сообщения разделяются переводом строки, а не пробелом по умолчанию
+            gen.setRootValueSeparator(null);
+            while (true) {
+                JsonNode message = queue.poll();
+                if (message != null) {
+                    write(gen, message);
+                    continue;
+                }
+                flush(gen);
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                LockSupport.park(this);
+            }
+        } catch (IOException e) {
+            errorLog.accept("Failed to open output stream: " + e.getMessage());
+        }
+    }
+
+    private void write(JsonGenerator gen, JsonNode message) {
+        try {
+            McpJson.WRITER.writeValue(gen, message);
+            gen.writeRaw('\n');
+        } catch (IOException e) {
+            errorLog.accept("Failed to send response: " + e.getMessage());
+        }
+    }
+
+    private void flush(JsonGenerator gen) {
+        try {
+            gen.flush();
+        } catch (IOException e) {
+            errorLog.accept("Failed to flush output: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Отправляет всё, что уже в очереди, и останавливает писателя.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
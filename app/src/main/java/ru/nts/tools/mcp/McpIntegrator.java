@@ -498,6 +498,9 @@ public class McpIntegrator {
         server.put("command", "java");
         server.putArray("args")
             .add("-Dfile.encoding=UTF-8")
+            // Vector API для SIMD-поиска (без модуля поиск работает скалярно)
+            .add("--add-modules")
+            .add("jdk.incubator.vector")
             .add("-jar")
             .add(jarPath.toString());
 
@@ -18,6 +18,8 @@ package ru.nts.tools.mcp;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import ru.nts.tools.mcp.core.CancellationToken;
+import ru.nts.tools.mcp.core.McpJson;
 import ru.nts.tools.mcp.core.McpRouter;
 import ru.nts.tools.mcp.core.TaskContext;
 import ru.nts.tools.mcp.tools.fs.*;
@@ -60,9 +62,9 @@ import java.nio.charset.StandardCharsets;
 public class McpServer {
 
     /**
-     * Объект для работы с JSON данными.
+     * Объект для работы с JSON данными (общий для всего сервера).
      */
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectMapper mapper = McpJson.MAPPER;
 
     /**
      * Центральный роутер для регистрации и вызова инструментов.
@@ -94,6 +96,11 @@ public class McpServer {
         }
     }
 
+    /**
+     * Канал отправки сообщений клиенту. Создаётся в {@link #main} поверх stdout.
+     */
+    private static volatile JsonRpcOutput output;
+
     /**
      * Записывает сообщение в лог-файл (если настроен).
      */
@@ -123,6 +130,18 @@ public class McpServer {
      */
     private static final Map<Long, CompletableFuture<JsonNode>> pendingClientResponses = new ConcurrentHashMap<>();
 
+    /**
+     * Токены отмены выполняющихся вызовов tools/call по JSON-RPC id запроса
+     * (id хранится в JSON-представлении, чтобы число 5 и строка "5" не совпадали).
+     * Используется для обработки notifications/cancelled.
+     */
+    private static final Map<String, CancellationToken> inFlightCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Причина отмены по уведомлению клиента. Ответ на такой вызов не отправляется.
+     */
+    private static final String CANCELLED_BY_CLIENT = "cancelled by client";
+
     /**
      * Флаг, указывающий поддерживает ли клиент roots capability.
      */
@@ -308,6 +327,8 @@ public class McpServer {
         // Принудительно устанавливаем UTF-8 для стандартных потоков вывода, 
         // так как на Windows они по умолчанию используют системную кодировку (cp1251/866).
         // Это критически важно для передачи кириллицы в JSON-RPC сообщениях.
+        // JSON-RPC ответы сериализуются в байты UTF-8 напрямую, минуя PrintStream.
+        java.io.OutputStream stdout = System.out;
         System.setOut(new java.io.PrintStream(System.out, true, StandardCharsets.UTF_8));
         System.setErr(new java.io.PrintStream(System.err, true, StandardCharsets.UTF_8));
 
@@ -383,7 +404,11 @@ public class McpServer {
 
         // Используем ExecutorService with virtual threads for processing each request.
         // Это позволяет серверу оставаться отзывчивым даже во время выполнения длительных задач.
-        try (var executor = Executors.newVirtualThreadPerTaskExecutor(); var reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+        // Канал вывода закрывается последним: сначала дожидаемся обработчиков, затем отправляем их ответы.
+        try (var out = new JsonRpcOutput(stdout, McpServer::log);
+             var executor = Executors.newVirtualThreadPerTaskExecutor();
+             var reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            output = out;
 
             String line;
             while ((line = reader.readLine()) != null) {
@@ -412,20 +437,25 @@ public class McpServer {
         // Поддерживаем два способа передачи:
         // 1. arguments.taskId - для агентов (приоритет)
         // 2. _meta.sessionId - для MCP-клиентов (fallback, протокольный путь)
-        String taskId = null;
+        // Сообщение разбирается один раз, дерево передаётся дальше
+        JsonNode request;
         try {
-            JsonNode request = mapper.readTree(message);
-            taskId = extractTaskId(request);
-        } catch (Exception ignored) {
-            // Если не удалось извлечь taskId - будет использована default задача
+            request = McpJson.READER.readTree(message);
+        } catch (Exception e) {
+            log("Failed to process message: " + e.getMessage());
+            return;
         }
+        if (request == null) {
+            return;
+        }
+        String taskId = extractTaskId(request);
 
         // Устанавливаем контекст задачи для текущего потока
         TaskContext ctx = TaskContext.getOrCreate(taskId);
         TaskContext.setCurrent(ctx);
 
         try {
-            processMessageInternal(message);
+            processMessageInternal(request);
         } finally {
             // Очищаем контекст потока (но задача остается в реестре)
             TaskContext.clearCurrent();
@@ -460,9 +490,8 @@ public class McpServer {
     /**
      * Внутренняя обработка сообщения после установки контекста задачи.
      */
-    private static void processMessageInternal(String message) {
+    private static void processMessageInternal(JsonNode request) {
         try {
-            JsonNode request = mapper.readTree(message);
             String method = request.path("method").asText();
             JsonNode id = request.get("id");
 
@@ -570,6 +599,19 @@ public class McpServer {
                         requestRootsFromClient();
                         return;
                     }
+                    case "notifications/cancelled" -> {
+                        // Клиент отменяет ранее отправленный запрос.
+                        // Ответ на уведомление не отправляется, как и ответ на отменённый запрос.
+                        JsonNode cancelParams = request.path("params");
+                        JsonNode requestId = cancelParams.path("requestId");
+                        CancellationToken token = requestId.isMissingNode() ? null : inFlightCalls.get(requestId.toString());
+                        if (token != null) {
+                            String reason = cancelParams.path("reason").asText("");
+                            log("Client cancelled request " + requestId + (reason.isEmpty() ? "" : ": " + reason));
+                            token.cancel(reason.isEmpty() ? CANCELLED_BY_CLIENT : CANCELLED_BY_CLIENT + ": " + reason);
+                        }
+                        return;
+                    }
                     case "ping" -> {
                         // Обязательный метод для проверки активности сервера
                         response.set("result", mapper.createObjectNode());
@@ -634,8 +676,20 @@ public class McpServer {
                         if (ctx != null) {
                             ctx.setCurrentToolName(toolName);
                         }
+                        // Токен отмены вызова: таймаут инструмента или notifications/cancelled
+                        CancellationToken token = new CancellationToken();
+                        String callKey = id != null ? id.toString() : null;
+                        if (callKey != null) {
+                            inFlightCalls.put(callKey, token);
+                        }
+                        TaskContext.setCancellation(token);
                         try {
                             JsonNode toolResult = router.callTool(toolName, params);
+                            String reason = token.reason();
+                            if (reason != null && reason.startsWith(CANCELLED_BY_CLIENT)) {
+                                log("Dropping response for cancelled request " + callKey);
+                                return;
+                            }
                             response.set("result", toolResult);
 
                             // Обновляем активность задачи после успешного вызова
@@ -643,6 +697,10 @@ public class McpServer {
                                 ctx.touchActivity();
                             }
                         } finally {
+                            TaskContext.setCancellation(null);
+                            if (callKey != null) {
+                                inFlightCalls.remove(callKey, token);
+                            }
                             if (ctx != null) {
                                 ctx.setCurrentToolName(null);
                             }
@@ -698,20 +756,19 @@ public class McpServer {
     }
 
     /**
-     * Синхронизированная отправка ответа в стандартный поток вывода.
-     * Синхронизация необходима, так как несколько виртуальных потоков могут пытаться писать одновременно,
-     * что приведет к перемешиванию байтов в JSON сообщениях.
+     * Отправка ответа клиенту. Потокобезопасна без блокировок: сообщение ставится в очередь
+     * {@link JsonRpcOutput}, единственный писатель сериализует его прямо в stdout,
+     * поэтому байты разных ответов не перемешиваются.
      *
      * @param response Объект JSON ответа.
      */
-    private static synchronized void sendResponse(ObjectNode response) {
-        try {
-            String json = mapper.writeValueAsString(response);
-            log(">>> SEND: " + json);
-            System.out.print(json + "\n");
-            System.out.flush();
-        } catch (Exception e) {
-            log("Failed to send response: " + e.getMessage());
+    private static void sendResponse(ObjectNode response) {
+        if (logWriter != null || DEBUG) {
+            log(">>> SEND: " + response);
+        }
+        JsonRpcOutput out = output;
+        if (out == null || !out.send(response)) {
+            log("Failed to send response: output channel is closed");
         }
     }
 }
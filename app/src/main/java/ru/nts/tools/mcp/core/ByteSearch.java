@@ -0,0 +1,211 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/**
+ * Побайтовый поиск литералов и подсчёт строк в {@link MemorySegment}
+ * (отображённый файл или {@code MemorySegment.ofArray(bytes)}).
+ * <p>
+ * Если JVM запущена с {@code --add-modules jdk.incubator.vector}, используется
+ * SIMD-реализация ({@link VectorByteSearch}): фильтр по первому и последнему байту
+ * паттерна сразу для целого вектора позиций, затем проверка кандидатов.
+ * Без модуля — скалярный Boyer-Moore-Horspool. Результаты обеих реализаций совпадают.
+ */
+public final class ByteSearch {
+
+    /**
+     * Доступен ли Vector API в текущей JVM.
+     */
+    public static final boolean VECTOR_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * Минимальная длина паттерна для BMH: на коротких паттернах таблица сдвигов не окупается.
+     */
+    private static final int BMH_MIN_PATTERN_LEN = 4;
+
+    private ByteSearch() {}
+
+    /**
+     * Находит все вхождения (включая перекрывающиеся) паттерна начиная с {@code from}.
+     *
+     * @param maxResults максимум совпадений (0 = без ограничения)
+     * @return массив, где [0] — количество совпадений, далее их смещения по возрастанию
+     */
+    public static long[] findAll(MemorySegment segment, long from, byte[] pattern, int maxResults) {
+        if (VECTOR_AVAILABLE && pattern.length > 0) {
+            return VectorByteSearch.findAll(segment, from, pattern, maxResults);
+        }
+        return findAllScalar(segment, from, pattern, maxResults);
+    }
+
+    /**
+     * Считает переводы строк ({@code \n}, {@code \r\n}, одиночный {@code \r}) в диапазоне.
+     * Диапазон не должен разрезать пару {@code \r\n}.
+     */
+    public static int countLineBreaks(MemorySegment segment, long from, long to) {
+        if (VECTOR_AVAILABLE) {
+            return VectorByteSearch.countLineBreaks(segment, from, to);
+        }
+        return countLineBreaksScalar(segment, from, to);
+    }
+
+    /**
+     * Пропускает "простые" ASCII-байты (0x01-0x7F, кроме ESC 0x1B) начиная с {@code from}.
+     * NUL и ESC не считаются простыми: они признак UTF-16/32 без BOM и 7-битных ISO-2022.
+     *
+     * @return индекс первого непростого байта или {@code bytes.length}
+     */
+    public static int skipPlainAscii(byte[] bytes, int from) {
+        if (VECTOR_AVAILABLE) {
+            return VectorByteSearch.skipPlainAscii(bytes, from);
+        }
+        return skipPlainAsciiScalar(bytes, from);
+    }
+
+    /**
+     * Скалярная реализация {@link #skipPlainAscii}.
+     */
+    public static int skipPlainAsciiScalar(byte[] bytes, int from) {
+        int i = from;
+        while (i < bytes.length) {
+            byte b = bytes[i];
+            if (b <= 0 || b == 0x1B) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Скалярная реализация {@link #findAll}: BMH для длинных паттернов, прямой перебор для коротких.
+     */
+    public static long[] findAllScalar(MemorySegment segment, long from, byte[] pattern, int maxResults) {
+        long[] hits = new long[16];
+        int count = 0;
+        int m = pattern.length;
+        long n = segment.byteSize();
+        if (m == 0) {
+            hits[0] = 0;
+            return hits;
+        }
+
+        int[] badChar = new int[256];
+        if (m >= BMH_MIN_PATTERN_LEN) {
+            Arrays.fill(badChar, m);
+            for (int i = 0; i < m - 1; i++) {
+                badChar[pattern[i] & 0xFF] = m - 1 - i;
+            }
+        } else {
+            Arrays.fill(badChar, 1);
+        }
+
+        long i = from;
+        while (i <= n - m) {
+            int j = m - 1;
+            while (j >= 0 && segment.get(ValueLayout.JAVA_BYTE, i + j) == pattern[j]) {
+                j--;
+            }
+            if (j < 0) {
+                hits = add(hits, ++count, i);
+                if (maxResults > 0 && count >= maxResults) {
+                    break;
+                }
+                i += 1;
+            } else {
+                i += badChar[segment.get(ValueLayout.JAVA_BYTE, i + m - 1) & 0xFF];
+            }
+        }
+        hits[0] = count;
+        return hits;
+    }
+
+    /**
+     * Скалярная реализация {@link #countLineBreaks}.
+     */
+    public static int countLineBreaksScalar(MemorySegment segment, long from, long to) {
+        int count = 0;
+        for (long i = from; i < to; i++) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, i);
+            if (b == '\n') {
+                count++;
+            } else if (b == '\r' && (i + 1 >= to || segment.get(ValueLayout.JAVA_BYTE, i + 1) != '\n')) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Начало строки, содержащей смещение {@code pos} (не раньше {@code floor}).
+     */
+    public static long lineStart(MemorySegment segment, long floor, long pos) {
+        for (long i = pos - 1; i >= floor; i--) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, i);
+            if (b == '\n' || b == '\r') {
+                return i + 1;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Начало предыдущей строки для начала строки {@code lineStart} (не раньше {@code floor}).
+     */
+    public static long previousLineStart(MemorySegment segment, long floor, long lineStart) {
+        if (lineStart <= floor) {
+            return floor;
+        }
+        long end = lineStart - 1;
+        if (end > floor && segment.get(ValueLayout.JAVA_BYTE, end) == '\n'
+                && segment.get(ValueLayout.JAVA_BYTE, end - 1) == '\r') {
+            end--;
+        }
+        return lineStart(segment, floor, end);
+    }
+
+    /**
+     * Конец строки (позиция перевода строки или конец сегмента), начиная с {@code from}.
+     */
+    public static long lineEnd(MemorySegment segment, long from) {
+        long n = segment.byteSize();
+        long i = from;
+        while (i < n) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, i);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Добавляет смещение в массив результатов формата {@link #findAll}, расширяя его при необходимости.
+     */
+    static long[] add(long[] hits, int index, long value) {
+        if (index >= hits.length) {
+            hits = Arrays.copyOf(hits, hits.length * 2);
+        }
+        hits[index] = value;
+        return hits;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Токен кооперативной отмены вызова инструмента.
+ * <p>
+ * Создаётся на каждый запрос tools/call и передаётся через {@link TaskContext#cancellation()}.
+ * Отменяется по таймауту инструмента или уведомлению клиента {@code notifications/cancelled}.
+ * Длительные циклы (обход проекта, поиск, индексация, рефакторинг) периодически вызывают
+ * {@link #throwIfCancelled()}, чтобы прерванная работа не продолжала расходовать CPU и I/O.
+ * Фоновые потоки не видят ThreadLocal вызывающего, поэтому токен захватывается до запуска задач.
+ */
+public final class CancellationToken {
+
+    /**
+     * Токен, который никогда не отменяется. Используется вне обработки запроса.
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private final AtomicReference<String> reason = new AtomicReference<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Отменяет операцию. Повторная отмена игнорируется, причина сохраняется первая.
+     *
+     * @param why причина отмены (для сообщения об ошибке)
+     */
+    public void cancel(String why) {
+        if (this == NONE || !reason.compareAndSet(null, why)) {
+            return;
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason.get() != null;
+    }
+
+    /**
+     * Причина отмены или null, если операция не отменена.
+     */
+    public String reason() {
+        return reason.get();
+    }
+
+    /**
+     * Прерывает текущую операцию, если токен отменён.
+     *
+     * @throws CancellationException если операция отменена
+     */
+    public void throwIfCancelled() {
+        String why = reason.get();
+        if (why != null) {
+            throw new CancellationException("Operation cancelled: " + why);
+        }
+    }
+
+    /**
+     * Регистрирует действие при отмене (например, прерывание потока-исполнителя).
+     * Если токен уже отменён, действие выполняется сразу. Действие должно быть идемпотентным.
+     */
+    public void onCancel(Runnable listener) {
+        if (this == NONE) {
+            return;
+        }
+        listeners.add(listener);
+        if (isCancelled()) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Проверка токена текущего запроса. Короткая форма для циклов:
+     * {@code CancellationToken.checkCurrent()}.
+     */
+    public static void checkCurrent() {
+        TaskContext.cancellation().throwIfCancelled();
+    }
+}
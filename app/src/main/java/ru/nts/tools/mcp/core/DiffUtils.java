@@ -15,19 +15,27 @@
  */
 package ru.nts.tools.mcp.core;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import ru.nts.tools.mcp.core.diff.DiffAlgorithm;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Утилита для генерации текстовых различий (diff) между версиями контента.
  * Реализует формат Unified Diff с поддержкой чанков (hunks) для экономии места.
+ *
+ * Сравнение выполняется подключаемым {@link DiffAlgorithm} над интернированными
+ * идентификаторами строк. Общие префикс и суффикс отсекаются до запуска алгоритма,
+ * чанки собираются одним линейным проходом без рекурсии.
  */
 public class DiffUtils {
 
     private static final int CONTEXT_SIZE = 3;
 
+    private static final byte EQUAL = 0;
+    private static final byte DELETE = 1;
+    private static final byte INSERT = 2;
+
     /**
      * Генерирует Unified Diff между старым и новым контентом.
      *
@@ -38,126 +46,142 @@ public class DiffUtils {
      * @return Строка в формате Unified Diff.
      */
     public static String getUnifiedDiff(String fileName, String oldContent, String newContent) {
+        return getUnifiedDiff(fileName, oldContent, newContent, DiffAlgorithm.MYERS);
+    }
+
+    /**
+     * Генерирует Unified Diff между старым и новым контентом заданным алгоритмом.
+     *
+     * @param fileName   Имя файла для заголовка diff.
+     * @param oldContent Исходный текст.
+     * @param newContent Измененный текст.
+     * @param algorithm  Алгоритм сравнения строк.
+     *
+     * @return Строка в формате Unified Diff.
+     */
+    public static String getUnifiedDiff(String fileName, String oldContent, String newContent, DiffAlgorithm algorithm) {
         if (oldContent.equals(newContent)) {
             return "";
         }
 
-        List<String> oldLines = oldContent.isEmpty() ? List.of() : Arrays.asList(oldContent.split("\n", -1));
-        List<String> newLines = newContent.isEmpty() ? List.of() : Arrays.asList(newContent.split("\n", -1));
+        String[] oldLines = oldContent.isEmpty() ? new String[0] : oldContent.split("\n", -1);
+        String[] newLines = newContent.isEmpty() ? new String[0] : newContent.split("\n", -1);
+
+        // Интернируем строки: дальше алгоритм сравнивает только int
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = internLines(oldLines, ids);
+        int[] b = internLines(newLines, ids);
+        boolean[] aChanged = new boolean[a.length];
+        boolean[] bChanged = new boolean[b.length];
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+        if (prefix < a.length - suffix || prefix < b.length - suffix) {
+            algorithm.diff(a, prefix, a.length - suffix, b, prefix, b.length - suffix, aChanged, bChanged);
+        }
 
         StringBuilder diff = new StringBuilder();
         diff.append("--- ").append(fileName).append(" (original)\n");
         diff.append("+++ ").append(fileName).append(" (modified)\n");
-
-        int[][] matrix = computeLCSMatrix(oldLines, newLines);
-        List<DiffLine> diffLines = new ArrayList<>();
-        buildDiff(matrix, oldLines, newLines, oldLines.size(), newLines.size(), diffLines);
-        Collections.reverse(diffLines);
-
-        // Логика разбиения на чанки (hunks)
-        List<Hunk> hunks = clusterIntoHunks(diffLines);
-        for (Hunk hunk : hunks) {
-            diff.append(String.format("@@ -%d,%d +%d,%d @@\n", hunk.oldStart, hunk.oldLen, hunk.newStart, hunk.newLen));
-            for (DiffLine line : hunk.lines) {
-                switch (line.type) {
-                    case INSERT -> diff.append("+").append(line.text).append("\n");
-                    case DELETE -> diff.append("-").append(line.text).append("\n");
-                    case EQUAL -> diff.append(" ").append(line.text).append("\n");
-                }
-            }
-        }
+        appendHunks(diff, oldLines, newLines, aChanged, bChanged);
 
         return diff.toString().trim();
     }
 
-    private static int[][] computeLCSMatrix(List<String> a, List<String> b) {
-        int[][] matrix = new int[a.size() + 1][b.size() + 1];
-        for (int i = 1; i <= a.size(); i++) {
-            for (int j = 1; j <= b.size(); j++) {
-                if (a.get(i - 1).equals(b.get(j - 1))) {
-                    matrix[i][j] = matrix[i - 1][j - 1] + 1;
-                } else {
-                    matrix[i][j] = Math.max(matrix[i - 1][j], matrix[i][j - 1]);
-                }
-            }
-        }
-        return matrix;
-    }
-
-    private static void buildDiff(int[][] matrix, List<String> a, List<String> b, int i, int j, List<DiffLine> result) {
-        if (i > 0 && j > 0 && a.get(i - 1).equals(b.get(j - 1))) {
-            result.add(new DiffLine(DiffType.EQUAL, a.get(i - 1), i, j));
-            buildDiff(matrix, a, b, i - 1, j - 1, result);
-        } else if (j > 0 && (i == 0 || matrix[i][j - 1] >= matrix[i - 1][j])) {
-            result.add(new DiffLine(DiffType.INSERT, b.get(j - 1), i, j));
-            buildDiff(matrix, a, b, i, j - 1, result);
-        } else if (i > 0 && (j == 0 || matrix[i][j - 1] < matrix[i - 1][j])) {
-            result.add(new DiffLine(DiffType.DELETE, a.get(i - 1), i, j));
-            buildDiff(matrix, a, b, i - 1, j, result);
+    private static int[] internLines(String[] lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer id = ids.putIfAbsent(lines[i], ids.size());
+            result[i] = id != null ? id : ids.size() - 1;
         }
+        return result;
     }
 
-    private static List<Hunk> clusterIntoHunks(List<DiffLine> lines) {
-        List<Hunk> hunks = new ArrayList<>();
-        Hunk current = null;
-
-        for (int i = 0; i < lines.size(); i++) {
-            DiffLine line = lines.get(i);
-            boolean isChanged = line.type != DiffType.EQUAL;
-
-            // Если линия изменена или находится в радиусе контекста изменений
-            if (isChanged || isNearChange(lines, i)) {
-                if (current == null) {
-                    current = new Hunk();
-                    // Начало чанка (1-based)
-                    current.oldStart = findOldStart(line, lines, i);
-                    current.newStart = findNewStart(line, lines, i);
-                }
-                current.lines.add(line);
-                if (line.type != DiffType.INSERT) current.oldLen++;
-                if (line.type != DiffType.DELETE) current.newLen++;
+    /**
+     * Строит чанки по флагам изменений. Удаления внутри блока изменений
+     * выводятся перед добавлениями, контекст - до CONTEXT_SIZE строк с каждой стороны.
+     */
+    private static void appendHunks(StringBuilder diff, String[] oldLines, String[] newLines,
+                                    boolean[] aChanged, boolean[] bChanged) {
+        // Линейная последовательность операций: тип + индекс строки в своем массиве
+        int total = 0;
+        byte[] types = new byte[oldLines.length + newLines.length];
+        int[] indexes = new int[types.length];
+        int i = 0, j = 0;
+        while (i < oldLines.length || j < newLines.length) {
+            if (i < oldLines.length && aChanged[i]) {
+                types[total] = DELETE;
+                indexes[total++] = i++;
+            } else if (j < newLines.length && bChanged[j]) {
+                types[total] = INSERT;
+                indexes[total++] = j++;
             } else {
-                if (current != null) {
-                    hunks.add(current);
-                    current = null;
-                }
+                types[total] = EQUAL;
+                indexes[total++] = i++;
+                j++;
             }
         }
-        if (current != null) hunks.add(current);
-        return hunks;
-    }
 
-    private static boolean isNearChange(List<DiffLine> lines, int index) {
-        for (int i = Math.max(0, index - CONTEXT_SIZE); i <= Math.min(lines.size() - 1, index + CONTEXT_SIZE); i++) {
-            if (lines.get(i).type != DiffType.EQUAL) return true;
+        // Индекс ближайшего изменения справа (или -1)
+        int[] nextChange = new int[total];
+        int next = -1;
+        for (int k = total - 1; k >= 0; k--) {
+            if (types[k] != EQUAL) next = k;
+            nextChange[k] = next;
         }
-        return false;
-    }
 
-    private static int findOldStart(DiffLine line, List<DiffLine> allLines, int index) {
-        // Для первого элемента чанка определяем его реальный номер строки в старом файле
-        int pos = 1;
-        for (int i = 0; i < index; i++) {
-            if (allLines.get(i).type != DiffType.INSERT) pos++;
-        }
-        return pos;
-    }
+        int oldPos = 1, newPos = 1;
+        int lastChange = -1;
+        boolean inHunk = false;
+        StringBuilder hunk = new StringBuilder();
+        int oldStart = 0, newStart = 0, oldLen = 0, newLen = 0;
+        for (int k = 0; k < total; k++) {
+            byte type = types[k];
+            if (type != EQUAL) lastChange = k;
+            boolean near = type != EQUAL
+                    || (lastChange >= 0 && k - lastChange <= CONTEXT_SIZE)
+                    || (nextChange[k] >= 0 && nextChange[k] - k <= CONTEXT_SIZE);
+
+            if (near) {
+                if (!inHunk) {
+                    inHunk = true;
+                    oldStart = oldPos;
+                    newStart = newPos;
+                    oldLen = 0;
+                    newLen = 0;
+                }
+                switch (type) {
+                    case INSERT -> hunk.append("+").append(newLines[indexes[k]]).append("\n");
+                    case DELETE -> hunk.append("-").append(oldLines[indexes[k]]).append("\n");
+                    default -> hunk.append(" ").append(oldLines[indexes[k]]).append("\n");
+                }
+                if (type != INSERT) oldLen++;
+                if (type != DELETE) newLen++;
+            } else if (inHunk) {
+                // Заголовок дописывается после подсчета длин чанка
+                appendHunk(diff, hunk, oldStart, oldLen, newStart, newLen);
+                inHunk = false;
+            }
 
-    private static int findNewStart(DiffLine line, List<DiffLine> allLines, int index) {
-        int pos = 1;
-        for (int i = 0; i < index; i++) {
-            if (allLines.get(i).type != DiffType.DELETE) pos++;
+            if (type != INSERT) oldPos++;
+            if (type != DELETE) newPos++;
+        }
+        if (inHunk) {
+            appendHunk(diff, hunk, oldStart, oldLen, newStart, newLen);
         }
-        return pos;
-    }
-
-    private enum DiffType {EQUAL, INSERT, DELETE}
-
-    private record DiffLine(DiffType type, String text, int oldIdx, int newIdx) {
     }
 
-    private static class Hunk {
-        int oldStart, oldLen, newStart, newLen;
-        List<DiffLine> lines = new ArrayList<>();
+    private static void appendHunk(StringBuilder diff, StringBuilder hunk, int oldStart, int oldLen, int newStart, int newLen) {
+        diff.append("@@ -").append(oldStart).append(',').append(oldLen)
+                .append(" +").append(newStart).append(',').append(newLen).append(" @@\n");
+        diff.append(hunk);
+        hunk.setLength(0);
     }
-}
\ No newline at end of file
+}
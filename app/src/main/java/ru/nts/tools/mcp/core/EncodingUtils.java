@@ -22,13 +22,28 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
 
 /**
  * Утилиты для определения кодировки и безопасного чтения текстовых файлов.
- * Использует ICU4J CharsetDetector для автоматического определения Charset.
+ * ASCII и корректный UTF-8 распознаются быстрым проходом, ICU4J CharsetDetector
+ * запускается только для неоднозначного содержимого.
  */
 public class EncodingUtils {
 
+    /**
+     * Предел записей кэша статистической детекции (при переполнении кэш сбрасывается).
+     */
+    private static final int DETECTION_CACHE_LIMIT = 10_000;
+
+    /**
+     * Результат статистической детекции для содержимого длины {@code length} с CRC {@code crc32c}.
+     */
+    private record CachedDetection(int length, long crc32c, Charset charset) {}
+
+    private static final ConcurrentHashMap<Path, CachedDetection> detectionCache = new ConcurrentHashMap<>();
+
     /**
      * Результат чтения текстового файла с определенной кодировкой.
      *
@@ -47,26 +62,34 @@ public class EncodingUtils {
      * @throws IOException Если файл недоступен.
      */
     public static TextFileContent readTextFile(Path path, Charset charset) throws IOException {
-        byte[] allBytes = FileUtils.safeReadAllBytes(path);
-        allBytes = stripBom(allBytes, charset);
-        return new TextFileContent(new String(allBytes, charset), charset);
+        return FileContentCache.read(path).decode(charset);
     }
 
     /**
      * Считывает полный текст файла за один проход с автоопределением кодировки.
+     * Повторное чтение неизменённого файла обслуживается {@link FileContentCache}.
      *
      * @param path Путь к целевому файлу.
      * @return Объект {@link TextFileContent} с текстом файла.
      * @throws IOException Если файл недоступен или является бинарным.
      */
     public static TextFileContent readTextFile(Path path) throws IOException {
-        byte[] allBytes = FileUtils.safeReadAllBytes(path);
-        Charset charset = detectEncoding(allBytes);
+        return FileContentCache.read(path).text();
+    }
 
+    /**
+     * Декодирует байты файла в указанной кодировке, удаляя BOM.
+     *
+     * @param allBytes    Байты файла.
+     * @param charset     Кодировка.
+     * @param checkBinary Отклонять бинарные файлы (NULL-байты в однобайтовых кодировках и UTF-8).
+     * @throws IOException Если файл бинарный.
+     */
+    static TextFileContent decode(byte[] allBytes, Charset charset, boolean checkBinary) throws IOException {
         allBytes = stripBom(allBytes, charset);
 
         // Проверка на бинарный файл (наличие NULL-байтов), кроме многобайтовых кодировок UTF
-        if (!charset.name().startsWith("UTF-16") && !charset.name().startsWith("UTF-32")) {
+        if (checkBinary && !charset.name().startsWith("UTF-16") && !charset.name().startsWith("UTF-32")) {
             int checkLimit = Math.min(allBytes.length, 8192);
             for (int i = 0; i < checkLimit; i++) {
                 if (allBytes[i] == 0) {
@@ -86,21 +109,65 @@ public class EncodingUtils {
      */
     public static Charset detectEncoding(Path path) {
         try {
-            byte[] bytes = FileUtils.safeReadAllBytes(path);
-            return detectEncoding(bytes);
+            return FileContentCache.read(path).charset();
         } catch (Exception e) {
             return StandardCharsets.UTF_8;
         }
     }
 
+    /**
+     * Определяет кодировку содержимого файла, запоминая результат статистического
+     * определения для пути. Повторный вызов для тех же байтов (совпали длина и CRC32C)
+     * не запускает ICU4J. Быстрые пути ({@link #detectEncoding(byte[])}) не кэшируются.
+     *
+     * @param path  Путь к файлу (ключ кэша).
+     * @param bytes Байты файла или его начала.
+     * @return Определённый Charset.
+     */
+    public static Charset detectEncoding(Path path, byte[] bytes) {
+        Charset fast = detectFast(bytes);
+        if (fast != null) {
+            return fast;
+        }
+
+        // Результат — функция байтов, поэтому CRC входа делает кэш точным без mtime
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        long crc32c = crc.getValue();
+        Path key = path.toAbsolutePath().normalize();
+        CachedDetection cached = detectionCache.get(key);
+        if (cached != null && cached.length() == bytes.length && cached.crc32c() == crc32c) {
+            return cached.charset();
+        }
+
+        Charset charset = detectStatistically(bytes);
+        if (detectionCache.size() >= DETECTION_CACHE_LIMIT) {
+            detectionCache.clear();
+        }
+        detectionCache.put(key, new CachedDetection(bytes.length, crc32c, charset));
+        return charset;
+    }
+
     /**
      * Центральный метод определения кодировки по байтовому массиву.
-     * Стратегия: BOM → ICU4J (высокая уверенность) → UTF-8 валидация → ICU4J (низкая уверенность) → fallback.
+     * Стратегия: BOM → ASCII/строгий UTF-8 (без NUL и ESC) → ICU4J (высокая уверенность)
+     * → UTF-8 валидация → ICU4J (низкая уверенность) → fallback.
+     * ICU4J запускается только для неоднозначного содержимого.
      *
      * @param bytes Байты файла.
      * @return Определённый Charset.
      */
     public static Charset detectEncoding(byte[] bytes) {
+        Charset fast = detectFast(bytes);
+        return fast != null ? fast : detectStatistically(bytes);
+    }
+
+    /**
+     * Быстрые детерминированные случаи: пустой файл, BOM, ASCII и корректный UTF-8.
+     *
+     * @return Charset или null, если нужна статистическая детекция.
+     */
+    private static Charset detectFast(byte[] bytes) {
         if (bytes == null || bytes.length == 0) {
             return StandardCharsets.UTF_8;
         }
@@ -109,7 +176,17 @@ public class EncodingUtils {
         Charset bomCharset = detectByBom(bytes);
         if (bomCharset != null) return bomCharset;
 
-        // 2. ICU4J CharsetDetector с высокой уверенностью
+        // 2. ASCII и корректный UTF-8. NUL и ESC оставляем ICU4J (UTF-16/32 без BOM, ISO-2022)
+        if (isUtf8Text(bytes)) return StandardCharsets.UTF_8;
+
+        return null;
+    }
+
+    /**
+     * Статистическая детекция ICU4J для содержимого, не распознанного быстрыми путями.
+     */
+    private static Charset detectStatistically(byte[] bytes) {
+        // 3. ICU4J CharsetDetector с высокой уверенностью
         CharsetDetector detector = new CharsetDetector();
         detector.setText(bytes);
         CharsetMatch match = detector.detect();
@@ -120,17 +197,17 @@ public class EncodingUtils {
             } catch (Exception ignored) {}
         }
 
-        // 3. Строгая UTF-8 валидация (покрывает чистый ASCII и корректный UTF-8)
+        // 4. Строгая UTF-8 валидация (текст с NUL или ESC)
         if (isValidUtf8(bytes)) return StandardCharsets.UTF_8;
 
-        // 4. ICU4J с низкой уверенностью (лучше чем слепой fallback)
+        // 5. ICU4J с низкой уверенностью (лучше чем слепой fallback)
         if (match != null && match.getConfidence() >= 10) {
             try {
                 return Charset.forName(match.getName());
             } catch (Exception ignored) {}
         }
 
-        // 5. Fallback
+        // 6. Fallback
         return Charset.forName("windows-1251");
     }
 
@@ -213,26 +290,73 @@ public class EncodingUtils {
 
     /**
      * Проверяет, является ли массив байтов валидной последовательностью UTF-8.
+     * Проверка строгая: overlong-формы, суррогаты и значения больше U+10FFFF отклоняются.
      */
     static boolean isValidUtf8(byte[] bytes) {
         int i = 0;
         while (i < bytes.length) {
-            int b = bytes[i++] & 0xFF;
-            if (b <= 0x7F) continue; // ASCII
-
-            int count;
-            if (b >= 0xC2 && b <= 0xDF) count = 1;
-            else if (b >= 0xE0 && b <= 0xEF) count = 2;
-            else if (b >= 0xF0 && b <= 0xF4) count = 3;
-            else return false;
-
-            if (i + count > bytes.length) return false;
+            if (bytes[i] >= 0) {
+                i++;
+                continue;
+            }
+            int length = utf8SequenceLength(bytes, i);
+            if (length == 0) return false;
+            i += length;
+        }
+        return true;
+    }
 
-            for (int j = 0; j < count; j++) {
-                int next = bytes[i++] & 0xFF;
-                if (next < 0x80 || next > 0xBF) return false;
+    /**
+     * Текст в ASCII или корректном UTF-8 без NUL и ESC. ASCII-участки пропускаются
+     * векторно ({@link ByteSearch#skipPlainAscii}).
+     */
+    static boolean isUtf8Text(byte[] bytes) {
+        int i = ByteSearch.skipPlainAscii(bytes, 0);
+        while (i < bytes.length) {
+            if (bytes[i] >= 0) {
+                return false; // NUL или ESC
+            }
+            int length = utf8SequenceLength(bytes, i);
+            if (length == 0) return false;
+            i += length;
+            // Подряд идущие многобайтовые символы (кириллица) проверяем без векторного прохода
+            if (i < bytes.length && bytes[i] >= 0) {
+                i = ByteSearch.skipPlainAscii(bytes, i);
             }
         }
         return true;
     }
+
+    /**
+     * Длина корректной многобайтовой последовательности UTF-8 в позиции {@code i} или 0.
+     */
+    private static int utf8SequenceLength(byte[] bytes, int i) {
+        int b = bytes[i] & 0xFF;
+        int count;
+        int min = 0x80, max = 0xBF; // допустимый диапазон второго байта
+        if (b >= 0xC2 && b <= 0xDF) {
+            count = 1;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            count = 2;
+            if (b == 0xE0) min = 0xA0;       // overlong
+            else if (b == 0xED) max = 0x9F;  // суррогаты
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            count = 3;
+            if (b == 0xF0) min = 0x90;       // overlong
+            else if (b == 0xF4) max = 0x8F;  // > U+10FFFF
+        } else {
+            return 0;
+        }
+
+        if (i + count >= bytes.length) {
+            return 0;
+        }
+        int second = bytes[i + 1] & 0xFF;
+        if (second < min || second > max) return 0;
+        for (int j = 2; j <= count; j++) {
+            int next = bytes[i + j] & 0xFF;
+            if (next < 0x80 || next > 0xBF) return 0;
+        }
+        return count + 1;
+    }
 }
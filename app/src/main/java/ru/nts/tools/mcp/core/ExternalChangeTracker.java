@@ -25,6 +25,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * Per-task трекер внешних изменений файлов.
  *
  * Хранит снапшоты содержимого файлов между вызовами инструментов.
+ * Содержимое снапшотов сжато и при нехватке бюджета памяти выгружается
+ * на диск (см. {@link SnapshotContentStore}).
  * При обнаружении CRC mismatch (внешнее изменение) позволяет:
  * 1. Сравнить текущее содержимое с последним известным
  * 2. Создать транзакцию "External Change" для undo/redo
@@ -36,21 +38,69 @@ public class ExternalChangeTracker {
 
     /**
      * Снапшот состояния файла на момент последнего чтения/редактирования.
+     * <p>
+     * Хранит только CRC, кодировку и число строк; содержимое сжато в
+     * {@link SnapshotContentStore} и восстанавливается лишь по запросу
+     * {@link #content()} - на практике только при записи внешнего изменения в журнал.
      */
-    public record FileSnapshot(
-        Path path,
-        String content,
-        long crc32c,
-        Charset charset,
-        int lineCount,
-        LocalDateTime timestamp
-    ) {
+    public static final class FileSnapshot {
+        private final Path path;
+        private final SnapshotContentStore.Content stored;
+        private final long crc32c;
+        private final Charset charset;
+        private final int lineCount;
+        private final LocalDateTime timestamp;
+
+        FileSnapshot(Path path, SnapshotContentStore.Content stored, long crc32c,
+                     Charset charset, int lineCount, LocalDateTime timestamp) {
+            this.path = path;
+            this.stored = stored;
+            this.crc32c = crc32c;
+            this.charset = charset;
+            this.lineCount = lineCount;
+            this.timestamp = timestamp;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * Восстанавливает содержимое файла из сжатого (или выгруженного на диск) представления.
+         */
+        public String content() {
+            return stored.materialize();
+        }
+
+        public long crc32c() {
+            return crc32c;
+        }
+
+        public Charset charset() {
+            return charset;
+        }
+
+        public int lineCount() {
+            return lineCount;
+        }
+
+        public LocalDateTime timestamp() {
+            return timestamp;
+        }
+
         /**
          * Проверяет, изменился ли файл по сравнению с этим снапшотом.
          */
         public boolean isChanged(long currentCrc) {
             return this.crc32c != currentCrc;
         }
+
+        /**
+         * То же состояние файла: содержимое можно переиспользовать без повторного сжатия.
+         */
+        boolean sameState(long crc, Charset cs, int lines) {
+            return crc32c == crc && lineCount == lines && charset.equals(cs);
+        }
     }
 
     /**
@@ -108,15 +158,28 @@ public class ExternalChangeTracker {
      */
     public void registerSnapshot(Path path, String content, long crc32c, Charset charset, int lineCount) {
         Path absPath = path.toAbsolutePath().normalize();
-        FileSnapshot snapshot = new FileSnapshot(
-            absPath,
-            content,
-            crc32c,
-            charset,
-            lineCount,
-            LocalDateTime.now()
-        );
-        snapshots.put(absPath, snapshot);
+        synchronized (lock) {
+            FileSnapshot previous = snapshots.get(absPath);
+            if (previous != null && previous.sameState(crc32c, charset, lineCount)) {
+                // Повторное чтение без изменений - сжатое содержимое переиспользуется
+                SnapshotContentStore.touch(previous.stored);
+                snapshots.put(absPath, new FileSnapshot(
+                    absPath, previous.stored, crc32c, charset, lineCount, LocalDateTime.now()));
+                return;
+            }
+            FileSnapshot snapshot = new FileSnapshot(
+                absPath,
+                SnapshotContentStore.store(content),
+                crc32c,
+                charset,
+                lineCount,
+                LocalDateTime.now()
+            );
+            snapshots.put(absPath, snapshot);
+            if (previous != null) {
+                SnapshotContentStore.release(previous.stored);
+            }
+        }
     }
 
     /**
@@ -190,7 +253,12 @@ public class ExternalChangeTracker {
      */
     public void removeSnapshot(Path path) {
         Path absPath = path.toAbsolutePath().normalize();
-        snapshots.remove(absPath);
+        synchronized (lock) {
+            FileSnapshot removed = snapshots.remove(absPath);
+            if (removed != null) {
+                SnapshotContentStore.release(removed.stored);
+            }
+        }
     }
 
     /**
@@ -222,13 +290,16 @@ public class ExternalChangeTracker {
             if (old != null) {
                 FileSnapshot moved = new FileSnapshot(
                     absNew,
-                    old.content(),
+                    old.stored,
                     old.crc32c(),
                     old.charset(),
                     old.lineCount(),
                     old.timestamp()
                 );
-                snapshots.put(absNew, moved);
+                FileSnapshot replaced = snapshots.put(absNew, moved);
+                if (replaced != null) {
+                    SnapshotContentStore.release(replaced.stored);
+                }
             }
         }
     }
@@ -244,6 +315,11 @@ public class ExternalChangeTracker {
      * Сбрасывает все снапшоты.
      */
     public void reset() {
-        snapshots.clear();
+        synchronized (lock) {
+            for (FileSnapshot snapshot : snapshots.values()) {
+                SnapshotContentStore.release(snapshot.stored);
+            }
+            snapshots.clear();
+        }
     }
 }
@@ -16,7 +16,9 @@
 package ru.nts.tools.mcp.core;
 
 import java.io.*;
-import java.nio.MappedByteBuffer;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -32,21 +34,26 @@ import java.util.zip.CRC32C;
  * Высокопроизводительный поиск по файлам.
  *
  * Оптимизации:
- * - Memory-mapped файлы для больших файлов (>10MB)
- * - Boyer-Moore-Horspool для литеральных паттернов (int[256] для ASCII, HashMap для Unicode)
+ * - Литеральный поиск в ASCII-совместимых кодировках идёт прямо по байтам файла
+ *   (MemorySegment; для файлов >10MB — memory-mapped), декодируются только найденные строки
+ *   и контекст. Поиск и подсчёт строк векторизованы ({@link ByteSearch}, Vector API)
+ * - Boyer-Moore-Horspool для литералов в остальных кодировках (int[256] для ASCII,
+ *   примитивная таблица сдвигов по char для Unicode)
  * - Единый проход: CRC + поиск + подсчёт строк
  * - Предвычисленные смещения строк для O(log n) поиска номера
  * - Ранняя остановка с maxResults
  * - Потоковая обработка без загрузки всего файла в память
  * - Нормализация line endings (\r\n, \r → \n) перед поиском
  * - BOM stripping перед конвертацией в строку
- * - Encoding-aware containsText() (ASCII fast path, full detection для non-ASCII)
+ * - Encoding-aware containsText() (ASCII fast path, детекция по первому блоку для non-ASCII)
  */
 public class FastSearch {
 
     private static final int MMAP_THRESHOLD = 10 * 1024 * 1024; // 10MB
     private static final int BUFFER_SIZE = 64 * 1024; // 64KB chunks
     private static final int BMH_MIN_PATTERN_LEN = 4; // Минимальная длина для BMH
+    private static final int ENCODING_SAMPLE_SIZE = 64 * 1024; // Образец для определения кодировки mmap-файла
+    private static final long CRC_CHUNK_SIZE = 1L << 30; // Блок CRC для файлов больше 2GB
 
     /**
      * Результат поиска по файлу.
@@ -77,6 +84,7 @@ public class FastSearch {
      */
     public static SearchResult search(Path path, String pattern, boolean isRegex,
                                        int maxResults, int contextBefore, int contextAfter) throws IOException {
+        CancellationToken.checkCurrent();
         long fileSize = Files.size(path);
 
         if (fileSize > MMAP_THRESHOLD) {
@@ -88,20 +96,201 @@ public class FastSearch {
 
     /**
      * Поиск с memory-mapped файлом для больших файлов.
+     * <p>
+     * Литеральный поиск в ASCII-совместимых кодировках (UTF-8, однобайтовые) выполняется
+     * прямо по отображённым байтам без копирования файла в кучу: паттерн кодируется в
+     * кодировку файла, номера строк считаются одним проходом, в {@link String}
+     * декодируются только найденные строки и их контекст. Кодировка определяется по
+     * началу файла. Regex, многобайтовые кодировки (UTF-16/32, CJK) и паттерны с
+     * переводом строки идут через полное декодирование.
+     * <p>
+     * Отображение освобождается сразу при выходе (confined {@link Arena}),
+     * а не при сборке мусора, как у {@link java.nio.MappedByteBuffer}.
      */
     private static SearchResult searchMapped(Path path, String pattern, boolean isRegex,
                                               int maxResults, int ctxBefore, int ctxAfter) throws IOException {
-        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
-            long size = channel.size();
-            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
 
-            byte[] bytes = new byte[(int) size];
-            buffer.get(bytes);
+            if (isBinary(segment)) {
+                return null;
+            }
+
+            Charset charset = detectEncoding(path, segment);
+            if (isByteSearchable(charset, pattern, isRegex)) {
+                return searchInSegment(path, segment, charset, pattern, maxResults, ctxBefore, ctxAfter);
+            }
 
+            byte[] bytes = segment.toArray(ValueLayout.JAVA_BYTE);
             return searchInBytes(path, bytes, pattern, isRegex, maxResults, ctxBefore, ctxAfter);
         }
     }
 
+    /**
+     * Литеральный поиск по байтам файла без декодирования всего содержимого.
+     * Семантика совпадает с {@link #searchDecoded}: \r\n и одиночный \r считаются
+     * переводом строки, BOM не входит в первую строку, CRC считается по исходным байтам.
+     */
+    private static SearchResult searchInSegment(Path path, MemorySegment segment, Charset charset, String pattern,
+                                                int maxResults, int ctxBefore, int ctxAfter) {
+        long size = segment.byteSize();
+        long bodyStart = hasUtf8Bom(segment) && charset.equals(StandardCharsets.UTF_8) ? 3 : 0;
+
+        long[] hits = ByteSearch.findAll(segment, bodyStart, pattern.getBytes(charset), maxResults);
+        int hitCount = (int) hits[0];
+        if (hitCount == 0) {
+            return null;
+        }
+
+        // Кольцевой буфер ещё не выведенных строк перед текущей (для контекста "до")
+        int ringSize = Math.max(ctxBefore, 0);
+        long[] ringStart = new long[ringSize];
+        long[] ringEnd = new long[ringSize];
+        int ringCount = 0;
+        int ringHead = 0;
+
+        List<MatchedLine> matches = new ArrayList<>();
+        int hitIdx = 1;
+        int afterLeft = 0;
+        int lineNo = 1;
+        long lineStart = bodyStart;
+
+        while (true) {
+            if (afterLeft == 0) {
+                // Строки до контекста следующего совпадения не нужны: перескакиваем их,
+                // считая переводы строк векторно, а не построчно
+                long target = ByteSearch.lineStart(segment, lineStart, hits[hitIdx]);
+                long windowStart = target;
+                for (int k = 0; k < ctxBefore && windowStart > lineStart; k++) {
+                    windowStart = ByteSearch.previousLineStart(segment, lineStart, windowStart);
+                }
+                if (windowStart > lineStart) {
+                    lineNo += ByteSearch.countLineBreaks(segment, lineStart, windowStart);
+                    lineStart = windowStart;
+                    ringCount = 0;
+                }
+            }
+
+            long end = ByteSearch.lineEnd(segment, lineStart);
+            boolean lastLine = end >= size;
+            long next;
+            if (lastLine) {
+                next = size;
+            } else if (segment.get(ValueLayout.JAVA_BYTE, end) == '\r' && end + 1 < size
+                    && segment.get(ValueLayout.JAVA_BYTE, end + 1) == '\n') {
+                next = end + 2;
+            } else {
+                next = end + 1;
+            }
+
+            boolean isMatch = false;
+            while (hitIdx <= hitCount && hits[hitIdx] < next) {
+                isMatch = true;
+                hitIdx++;
+            }
+
+            if (isMatch) {
+                for (int k = 0; k < ringCount; k++) {
+                    int slot = (ringHead + k) % ringSize;
+                    matches.add(new MatchedLine(lineNo - ringCount + k,
+                            decode(segment, ringStart[slot], ringEnd[slot], charset), false));
+                }
+                ringCount = 0;
+                matches.add(new MatchedLine(lineNo, decode(segment, lineStart, end, charset), true));
+                afterLeft = ctxAfter;
+            } else if (afterLeft > 0) {
+                matches.add(new MatchedLine(lineNo, decode(segment, lineStart, end, charset), false));
+                afterLeft--;
+            } else if (ringSize > 0) {
+                int slot = (ringHead + ringCount) % ringSize;
+                if (ringCount == ringSize) {
+                    ringHead = (ringHead + 1) % ringSize;
+                } else {
+                    ringCount++;
+                }
+                ringStart[slot] = lineStart;
+                ringEnd[slot] = end;
+            }
+
+            if (lastLine) {
+                break;
+            }
+            lineNo++;
+            lineStart = next;
+
+            if (hitIdx > hitCount && afterLeft == 0) {
+                // Совпадения обработаны — остаток файла нужен только для подсчёта строк
+                lineNo += ByteSearch.countLineBreaks(segment, lineStart, size);
+                break;
+            }
+        }
+
+        return new SearchResult(path, crc32c(segment), lineNo, charset, matches);
+    }
+
+    private static String decode(MemorySegment segment, long start, long end, Charset charset) {
+        return new String(segment.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE), charset);
+    }
+
+    private static long crc32c(MemorySegment segment) {
+        CRC32C crc = new CRC32C();
+        long size = segment.byteSize();
+        for (long offset = 0; offset < size; offset += CRC_CHUNK_SIZE) {
+            crc.update(segment.asSlice(offset, Math.min(CRC_CHUNK_SIZE, size - offset)).asByteBuffer());
+        }
+        return crc.getValue();
+    }
+
+    private static boolean hasUtf8Bom(MemorySegment segment) {
+        return segment.byteSize() >= 3
+                && (segment.get(ValueLayout.JAVA_BYTE, 0) & 0xFF) == 0xEF
+                && (segment.get(ValueLayout.JAVA_BYTE, 1) & 0xFF) == 0xBB
+                && (segment.get(ValueLayout.JAVA_BYTE, 2) & 0xFF) == 0xBF;
+    }
+
+    /**
+     * Определяет кодировку по началу файла. Образец обрезается по границе символа UTF-8,
+     * чтобы разрезанная последовательность не сбила валидацию.
+     */
+    private static Charset detectEncoding(Path path, MemorySegment segment) {
+        return detectEncoding(path, segment, segment.byteSize());
+    }
+
+    /**
+     * Определяет кодировку по началу файла размера {@code size}, из которого прочитан {@code segment}.
+     */
+    private static Charset detectEncoding(Path path, MemorySegment segment, long size) {
+        byte[] sample = segment.asSlice(0, Math.min(segment.byteSize(), ENCODING_SAMPLE_SIZE)).toArray(ValueLayout.JAVA_BYTE);
+        int end = sample.length;
+        if (end < size) {
+            int k = end;
+            while (k > 0 && k > end - 4 && (sample[k - 1] & 0xC0) == 0x80) {
+                k--;
+            }
+            if (k > 0 && (sample[k - 1] & 0xC0) == 0xC0) {
+                end = k - 1;
+            }
+        }
+        return EncodingUtils.detectEncoding(path, end == sample.length ? sample : Arrays.copyOf(sample, end));
+    }
+
+    /**
+     * Можно ли искать паттерн побайтно: литерал без переводов строк в ASCII-совместимой
+     * кодировке без состояний, где \r и \n однозначно обозначают переводы строк.
+     * Паттерн должен кодироваться без замен: иначе {@link String#getBytes(Charset)}
+     * подставит '?' и найдутся литеральные '?' файла.
+     */
+    private static boolean isByteSearchable(Charset charset, String pattern, boolean isRegex) {
+        if (isRegex || pattern.isEmpty() || pattern.indexOf('\n') >= 0 || pattern.indexOf('\r') >= 0) {
+            return false;
+        }
+        String name = charset.name().toUpperCase(Locale.ROOT);
+        boolean asciiCompatible = name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-")
+                || name.startsWith("WINDOWS-125") || name.startsWith("KOI8-");
+        return asciiCompatible && charset.newEncoder().canEncode(pattern);
+    }
+
     /**
      * Буферизованный поиск для небольших файлов.
      */
@@ -113,24 +302,38 @@ public class FastSearch {
 
     /**
      * Основной поиск по байтовому массиву.
-     * Единый проход: CRC + индексация строк + поиск.
-     * Line endings нормализуются (\r\n, \r → \n) для консистентного поиска.
-     * BOM удаляется перед конвертацией в строку.
+     * Литералы в ASCII-совместимых кодировках ищутся побайтно ({@link #searchInSegment}),
+     * остальное — через декодирование ({@link #searchDecoded}).
      */
-    private static SearchResult searchInBytes(Path path, byte[] bytes, String pattern, boolean isRegex,
+    static SearchResult searchInBytes(Path path, byte[] bytes, String pattern, boolean isRegex,
                                                int maxResults, int ctxBefore, int ctxAfter) throws IOException {
         // Проверка на бинарный файл
         if (isBinary(bytes)) {
             return null;
         }
 
+        Charset charset = EncodingUtils.detectEncoding(path, bytes);
+        if (isByteSearchable(charset, pattern, isRegex)) {
+            return searchInSegment(path, MemorySegment.ofArray(bytes), charset, pattern,
+                    maxResults, ctxBefore, ctxAfter);
+        }
+        return searchDecoded(path, bytes, charset, pattern, isRegex, maxResults, ctxBefore, ctxAfter);
+    }
+
+    /**
+     * Поиск по декодированному содержимому.
+     * Единый проход: CRC + индексация строк + поиск.
+     * Line endings нормализуются (\r\n, \r → \n) для консистентного поиска.
+     * BOM удаляется перед конвертацией в строку.
+     */
+    static SearchResult searchDecoded(Path path, byte[] bytes, Charset charset, String pattern, boolean isRegex,
+                                      int maxResults, int ctxBefore, int ctxAfter) {
         // CRC32C от ОРИГИНАЛЬНЫХ байт (до BOM strip и нормализации)
         CRC32C crc = new CRC32C();
         crc.update(bytes);
         long crcValue = crc.getValue();
 
-        // Определяем кодировку и удаляем BOM
-        Charset charset = EncodingUtils.detectEncoding(bytes);
+        // Удаляем BOM
         byte[] cleanBytes = EncodingUtils.stripBom(bytes, charset);
         String content = new String(cleanBytes, charset);
 
@@ -209,7 +412,7 @@ public class FastSearch {
 
     /**
      * Поиск литерала с использованием Boyer-Moore-Horspool.
-     * ASCII-паттерны используют int[256] таблицу, Unicode — HashMap.
+     * ASCII-паттерны используют int[256] таблицу, Unicode — {@link CharSkipTable}.
      */
     private static List<Integer> findLiteralMatches(String content, String pattern, int maxResults) {
         if (pattern.length() >= BMH_MIN_PATTERN_LEN) {
@@ -267,16 +470,13 @@ public class FastSearch {
     }
 
     /**
-     * BMH с HashMap для Unicode-паттернов (кириллица, CJK и т.д.).
+     * BMH с таблицей сдвигов по char для Unicode-паттернов (кириллица, CJK и т.д.).
      * Избегает коллизий из-за усечения charAt() & 0xFF.
      */
     private static List<Integer> findLiteralMatchesBMHUnicode(String content, String pattern, int maxResults) {
         List<Integer> positions = new ArrayList<>();
-        Map<Character, Integer> badChar = new HashMap<>();
+        CharSkipTable badChar = new CharSkipTable(pattern);
         int m = pattern.length();
-        for (int i = 0; i < m - 1; i++) {
-            badChar.put(pattern.charAt(i), m - 1 - i);
-        }
 
         int n = content.length();
         int i = 0;
@@ -293,7 +493,7 @@ public class FastSearch {
                 i += 1;
             } else {
                 char c = content.charAt(i + m - 1);
-                i += badChar.getOrDefault(c, m);
+                i += badChar.shift(c);
             }
         }
         return positions;
@@ -306,8 +506,11 @@ public class FastSearch {
         List<Integer> positions = new ArrayList<>();
         Pattern p = Pattern.compile(pattern, Pattern.MULTILINE);
         Matcher m = p.matcher(content);
+        // Тяжёлый regex по большому файлу - основной потребитель CPU после таймаута
+        CancellationToken token = TaskContext.cancellation();
 
         while (m.find()) {
+            token.throwIfCancelled();
             positions.add(m.start());
             if (maxResults > 0 && positions.size() >= maxResults) {
                 break;
@@ -370,6 +573,19 @@ public class FastSearch {
         return content.substring(start, Math.max(start, end));
     }
 
+    /**
+     * Проверяет, является ли файл бинарным.
+     */
+    private static boolean isBinary(MemorySegment segment) {
+        long checkLimit = Math.min(segment.byteSize(), 8192);
+        for (long i = 0; i < checkLimit; i++) {
+            if (segment.get(ValueLayout.JAVA_BYTE, i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Проверяет, является ли файл бинарным.
      */
@@ -385,7 +601,7 @@ public class FastSearch {
 
     /**
      * Быстрая проверка, содержит ли файл текст, без полного чтения в память.
-     * Использует Boyer-Moore-Horspool для больших паттернов.
+     * Файл читается блоками, поиск в блоке — {@link ByteSearch}.
      * Encoding-aware: ASCII-паттерны → быстрый путь, non-ASCII → детекция кодировки.
      *
      * @param path путь к файлу
@@ -398,22 +614,19 @@ public class FastSearch {
             return true;
         }
 
-        // ASCII-паттерны совпадают по байтам во всех однобайтовых кодировках и UTF-8
-        Charset charset;
-        if (isAscii(text)) {
-            charset = StandardCharsets.UTF_8;
-        } else {
-            charset = EncodingUtils.detectEncoding(path);
-        }
-
-        byte[] pattern = text.getBytes(charset);
-        int patternLen = pattern.length;
-
-        if (patternLen < BMH_MIN_PATTERN_LEN) {
-            return containsTextSimple(path, pattern);
+        try (InputStream is = Files.newInputStream(path)) {
+            byte[] first = is.readNBytes(BUFFER_SIZE);
+            // ASCII-паттерны совпадают по байтам во всех однобайтовых кодировках и UTF-8.
+            // Для остальных кодировка определяется по первому блоку, без чтения всего файла
+            Charset charset = isAscii(text)
+                    ? StandardCharsets.UTF_8
+                    : detectEncoding(path, MemorySegment.ofArray(first), first.length < BUFFER_SIZE ? first.length : Long.MAX_VALUE);
+            if (!charset.newEncoder().canEncode(text)) {
+                // Символов текста нет в кодировке файла (CJK в windows-1251): совпадения невозможны
+                return false;
+            }
+            return containsBytes(is, first, text.getBytes(charset));
         }
-
-        return containsTextBMH(path, pattern);
     }
 
     /**
@@ -427,80 +640,68 @@ public class FastSearch {
     }
 
     /**
-     * Простой потоковый поиск для коротких паттернов.
+     * Потоковый поиск байтов паттерна: уже прочитанный первый блок и остаток потока
+     * проверяются блоками через {@link ByteSearch}.
      */
-    private static boolean containsTextSimple(Path path, byte[] pattern) throws IOException {
-        int patternLen = pattern.length;
-
-        try (InputStream is = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
-            byte[] window = new byte[patternLen];
-            int windowFill = 0;
-
-            int b;
-            while (windowFill < patternLen && (b = is.read()) != -1) {
-                window[windowFill++] = (byte) b;
+    private static boolean containsBytes(InputStream is, byte[] first, byte[] pattern) throws IOException {
+        int m = pattern.length;
+        byte[] buffer = new byte[Math.max(BUFFER_SIZE, first.length) + m - 1];
+        MemorySegment segment = MemorySegment.ofArray(buffer);
+        System.arraycopy(first, 0, buffer, 0, first.length);
+        int overlap = 0;
+        int bytesRead = first.length;
+
+        while (bytesRead > 0) {
+            int totalLen = overlap + bytesRead;
+            if (totalLen >= m && ByteSearch.findAll(segment.asSlice(0, totalLen), 0, pattern, 1)[0] > 0) {
+                return true;
             }
 
-            if (windowFill < patternLen) return false;
-            if (Arrays.equals(window, pattern)) return true;
-
-            while ((b = is.read()) != -1) {
-                System.arraycopy(window, 1, window, 0, patternLen - 1);
-                window[patternLen - 1] = (byte) b;
-
-                if (Arrays.equals(window, pattern)) return true;
-            }
-            return false;
+            // Хвост блока переносим в начало: совпадение может пересекать границу блоков
+            overlap = Math.min(m - 1, totalLen);
+            System.arraycopy(buffer, totalLen - overlap, buffer, 0, overlap);
+            bytesRead = is.readNBytes(buffer, overlap, BUFFER_SIZE);
         }
+        return false;
     }
 
     /**
-     * Boyer-Moore-Horspool поиск для длинных паттернов.
-     * Читает файл блоками для эффективности.
+     * Таблица сдвигов BMH по char без упаковки в {@link Character}: открытая адресация
+     * по массивам {@code char[]}/{@code int[]}, размер — степень двойки не меньше 2m.
      */
-    private static boolean containsTextBMH(Path path, byte[] pattern) throws IOException {
-        int m = pattern.length;
-
-        int[] badChar = new int[256];
-        Arrays.fill(badChar, m);
-        for (int i = 0; i < m - 1; i++) {
-            badChar[pattern[i] & 0xFF] = m - 1 - i;
-        }
-
-        try (InputStream is = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
-            byte[] buffer = new byte[BUFFER_SIZE + m - 1];
-            int overlap = 0;
-
-            while (true) {
-                if (overlap > 0) {
-                    System.arraycopy(buffer, BUFFER_SIZE, buffer, 0, overlap);
-                }
-
-                int bytesRead = is.readNBytes(buffer, overlap, BUFFER_SIZE);
-                if (bytesRead == 0) break;
-
-                int totalLen = overlap + bytesRead;
-                int searchEnd = totalLen - m;
-
-                int i = 0;
-                while (i <= searchEnd) {
-                    int j = m - 1;
-                    while (j >= 0 && buffer[i + j] == pattern[j]) {
-                        j--;
-                    }
-                    if (j < 0) {
-                        return true;
-                    }
-                    i += badChar[buffer[i + m - 1] & 0xFF];
+    private static final class CharSkipTable {
+        private final char[] keys;
+        private final int[] shifts;
+        private final int mask;
+        private final int defaultShift;
+
+        CharSkipTable(String pattern) {
+            int m = pattern.length();
+            int capacity = Integer.highestOneBit(Math.max(2 * m, 8) - 1) << 1;
+            keys = new char[capacity];
+            shifts = new int[capacity]; // 0 — пустой слот (реальный сдвиг всегда >= 1)
+            mask = capacity - 1;
+            defaultShift = m;
+            for (int i = 0; i < m - 1; i++) {
+                char c = pattern.charAt(i);
+                int slot = c & mask;
+                while (shifts[slot] != 0 && keys[slot] != c) {
+                    slot = (slot + 1) & mask;
                 }
+                keys[slot] = c;
+                shifts[slot] = m - 1 - i;
+            }
+        }
 
-                overlap = Math.min(m - 1, totalLen);
-                if (overlap > 0 && totalLen > overlap) {
-                    System.arraycopy(buffer, totalLen - overlap, buffer, BUFFER_SIZE, overlap);
+        int shift(char c) {
+            int slot = c & mask;
+            while (shifts[slot] != 0) {
+                if (keys[slot] == c) {
+                    return shifts[slot];
                 }
+                slot = (slot + 1) & mask;
             }
+            return defaultShift;
         }
-
-        return false;
     }
 }
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Общий кэш содержимого файлов для всех инструментов.
+ * <p>
+ * Одно логическое обращение к файлу (чтение текста, CRC, кодировка, номера строк)
+ * стоит одного stat и не более одного чтения с диска: байты, CRC32C, кодировка,
+ * декодированный текст и индекс строк ({@link LineIndex}) берутся из одной записи.
+ * <p>
+ * Запись действительна, пока у файла совпадают размер, mtime и fileKey (inode).
+ * Записи файлов, изменённых через {@link FileUtils}, сбрасываются сразу.
+ * На файловых системах с секундной точностью mtime недавно изменённые файлы
+ * не кэшируются: их перезапись в ту же секунду с тем же размером была бы незаметна.
+ * <p>
+ * Объём ограничен бюджетом в байтах, вытесняются давно не использованные записи.
+ */
+public final class FileContentCache {
+
+    /**
+     * Бюджет кэша (оценка занимаемой памяти).
+     */
+    private static final long MAX_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Файлы больше этого размера читаются, но не кэшируются.
+     */
+    private static final long MAX_ENTRY_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * Окно, в котором mtime с секундной точностью не позволяет отличить версии файла.
+     */
+    private static final long RACY_MTIME_WINDOW_MS = 2000;
+
+    /**
+     * LRU-порядок (accessOrder). Доступ только под блокировкой на самой карте.
+     */
+    private static final LinkedHashMap<Path, FileContent> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private static long totalWeight = 0;
+
+    private FileContentCache() {}
+
+    /**
+     * Возвращает содержимое файла: из кэша, если файл не изменился, иначе читает его.
+     *
+     * @param path путь к файлу
+     * @return содержимое файла
+     * @throws IOException если файл недоступен
+     */
+    public static FileContent read(Path path) throws IOException {
+        Path normalized = path.toAbsolutePath().normalize();
+        // Атрибуты снимаются до чтения: изменение во время чтения даст расхождение при следующей проверке
+        Stamp stamp = Stamp.of(normalized);
+
+        synchronized (entries) {
+            FileContent cached = entries.get(normalized);
+            if (cached != null && cached.stamp.equals(stamp)) {
+                return cached;
+            }
+        }
+
+        FileContent content = new FileContent(normalized, FileUtils.safeReadAllBytes(normalized), stamp);
+        if (content.bytes.length == stamp.size() && content.bytes.length <= MAX_ENTRY_BYTES && stamp.isStable()) {
+            put(normalized, content);
+        } else {
+            invalidate(normalized, false);
+        }
+        return content;
+    }
+
+    /**
+     * Сбрасывает запись файла, а если путь указывает на директорию, то и всех файлов внутри неё.
+     */
+    public static void invalidate(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        invalidate(normalized, Files.isDirectory(normalized));
+    }
+
+    /**
+     * Сбрасывает запись файла или, для директории, всех файлов внутри неё.
+     * Для уже удалённых или перемещённых путей вызывающий передаёт тип, снятый до операции.
+     *
+     * @param path      путь к файлу или директории
+     * @param directory путь является (или являлся) директорией
+     */
+    public static void invalidate(Path path, boolean directory) {
+        Path normalized = path.toAbsolutePath().normalize();
+        synchronized (entries) {
+            FileContent removed = entries.remove(normalized);
+            if (removed != null) {
+                totalWeight -= removed.accountedWeight;
+            }
+            if (!directory) {
+                return;
+            }
+            // Полный проход по записям только для директорий: для файлов он не нужен
+            Iterator<Map.Entry<Path, FileContent>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, FileContent> e = it.next();
+                if (e.getKey().startsWith(normalized)) {
+                    totalWeight -= e.getValue().accountedWeight;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Очищает кэш.
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            totalWeight = 0;
+        }
+    }
+
+    /**
+     * Есть ли в кэше запись файла (для тестов).
+     */
+    static boolean contains(Path path) {
+        synchronized (entries) {
+            return entries.containsKey(path.toAbsolutePath().normalize());
+        }
+    }
+
+    private static void put(Path path, FileContent content) {
+        synchronized (entries) {
+            FileContent old = entries.put(path, content);
+            if (old != null) {
+                totalWeight -= old.accountedWeight;
+            }
+            content.accountedWeight = content.weight();
+            totalWeight += content.accountedWeight;
+            evictOver(content);
+        }
+    }
+
+    /**
+     * Пересчитывает вес записи после построения ленивого представления.
+     * Записи, уже вытесненные или заменённые, не учитываются.
+     */
+    private static void reweigh(FileContent content) {
+        synchronized (entries) {
+            if (entries.get(content.path) != content) {
+                return;
+            }
+            long weight = content.weight();
+            totalWeight += weight - content.accountedWeight;
+            content.accountedWeight = weight;
+            evictOver(content);
+        }
+    }
+
+    /**
+     * Вытесняет давно не использованные записи, пока кэш превышает бюджет. Вызывается под блокировкой.
+     */
+    private static void evictOver(FileContent keep) {
+        Iterator<FileContent> it = entries.values().iterator();
+        while (totalWeight > MAX_BUDGET_BYTES && it.hasNext()) {
+            FileContent eldest = it.next();
+            if (eldest == keep) {
+                continue;
+            }
+            totalWeight -= eldest.accountedWeight;
+            it.remove();
+        }
+    }
+
+    /**
+     * Суммарный учтённый вес записей (для тестов).
+     */
+    static long totalWeight() {
+        synchronized (entries) {
+            return totalWeight;
+        }
+    }
+
+    /**
+     * mtime без долей секунды, недавний относительно текущего времени.
+     */
+    static boolean isRacy(FileTime mtime) {
+        return mtime.toInstant().getNano() == 0
+                && System.currentTimeMillis() - mtime.toMillis() < RACY_MTIME_WINDOW_MS;
+    }
+
+    /**
+     * Версия файла: размер, mtime и идентификатор файла (inode, если доступен).
+     */
+    public record Stamp(long size, FileTime mtime, Object fileKey) {
+
+        /**
+         * Снимает версию файла одним вызовом stat.
+         */
+        public static Stamp of(Path path) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Stamp(attrs.size(), attrs.lastModifiedTime(), attrs.fileKey());
+        }
+
+        /**
+         * Версия надёжно отличает содержимое: mtime не попадает в окно неразличимости.
+         */
+        public boolean isStable() {
+            return !isRacy(mtime);
+        }
+    }
+
+    /**
+     * Содержимое одной версии файла. Производные представления вычисляются лениво
+     * и один раз.
+     */
+    public static final class FileContent {
+        private final Path path;
+        private final byte[] bytes;
+        private final Stamp stamp;
+        private final long crc32c;
+
+        private volatile Charset charset;
+        private volatile EncodingUtils.TextFileContent text;
+        private volatile IOException textError;
+        private volatile String utf8;
+        private volatile LineIndex lineIndex;
+
+        /**
+         * Вес, учтённый в {@link #totalWeight}. Доступ только под блокировкой на карте записей.
+         */
+        private long accountedWeight;
+
+        private FileContent(Path path, byte[] bytes, Stamp stamp) {
+            this.path = path;
+            this.bytes = bytes;
+            this.stamp = stamp;
+            CRC32C crc = new CRC32C();
+            crc.update(bytes);
+            this.crc32c = crc.getValue();
+        }
+
+        /**
+         * Байты файла. Массив общий для всех пользователей кэша и не должен изменяться.
+         */
+        public byte[] bytes() {
+            return bytes;
+        }
+
+        /**
+         * Версия файла, снятая до чтения байтов.
+         */
+        public Stamp stamp() {
+            return stamp;
+        }
+
+        /**
+         * CRC32C байтов файла.
+         */
+        public long crc32c() {
+            return crc32c;
+        }
+
+        /**
+         * Автоматически определённая кодировка.
+         */
+        public Charset charset() {
+            Charset c = charset;
+            if (c == null) {
+                c = EncodingUtils.detectEncoding(bytes);
+                charset = c;
+            }
+            return c;
+        }
+
+        /**
+         * Текст в автоматически определённой кодировке (без BOM), как {@link EncodingUtils#readTextFile(Path)}.
+         *
+         * @throws IOException если файл бинарный
+         */
+        public EncodingUtils.TextFileContent text() throws IOException {
+            EncodingUtils.TextFileContent t = text;
+            if (t == null) {
+                if (textError != null) {
+                    throw textError;
+                }
+                try {
+                    t = EncodingUtils.decode(bytes, charset(), true);
+                } catch (IOException e) {
+                    textError = e;
+                    throw e;
+                }
+                text = t;
+                reweigh(this);
+            }
+            return t;
+        }
+
+        /**
+         * Текст в указанной кодировке (без BOM). Результат не кэшируется,
+         * кроме случая совпадения с определённой кодировкой.
+         */
+        public EncodingUtils.TextFileContent decode(Charset forced) throws IOException {
+            EncodingUtils.TextFileContent t = text;
+            if (t != null && t.charset().equals(forced)) {
+                return t;
+            }
+            return EncodingUtils.decode(bytes, forced, false);
+        }
+
+        /**
+         * Строгое декодирование UTF-8, как {@link Files#readString(Path)}.
+         * Для файла в UTF-8 без BOM возвращается та же строка, что и {@link #text()}.
+         *
+         * @throws CharacterCodingException если байты не являются корректным UTF-8
+         */
+        public String utf8() throws CharacterCodingException {
+            String s = utf8;
+            if (s == null) {
+                s = sharedUtf8();
+                if (s == null) {
+                    s = StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPORT)
+                            .onUnmappableCharacter(CodingErrorAction.REPORT)
+                            .decode(ByteBuffer.wrap(bytes))
+                            .toString();
+                }
+                utf8 = s;
+                reweigh(this);
+            }
+            return s;
+        }
+
+        /**
+         * Текст {@link #text()}, если он совпадает со строгим декодированием UTF-8:
+         * кодировка UTF-8, BOM нет, замен некорректных последовательностей нет.
+         */
+        private String sharedUtf8() {
+            if (!StandardCharsets.UTF_8.equals(charset()) || hasUtf8Bom()) {
+                return null;
+            }
+            try {
+                String content = text().content();
+                // U+FFFD появляется при замене некорректных байтов; редкий настоящий U+FFFD декодируется строго
+                return content.indexOf('\uFFFD') < 0 ? content : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private boolean hasUtf8Bom() {
+            return bytes.length >= 3
+                    && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF;
+        }
+
+        /**
+         * Индекс строк {@link #text()}. Строится один раз для версии файла.
+         */
+        public LineIndex lineIndex() throws IOException {
+            LineIndex index = lineIndex;
+            if (index == null) {
+                index = LineIndex.of(text().content());
+                lineIndex = index;
+                reweigh(this);
+            }
+            return index;
+        }
+
+        /**
+         * Индекс строк для текста, полученного из этой записи ({@link #text()} или {@link #decode}).
+         * Для текста в определённой кодировке возвращается общий индекс.
+         */
+        public LineIndex lineIndex(EncodingUtils.TextFileContent decoded) throws IOException {
+            return decoded == text ? lineIndex() : LineIndex.of(decoded.content());
+        }
+
+        /**
+         * Количество строк текста.
+         */
+        public int lineCount() throws IOException {
+            return lineIndex().lineCount();
+        }
+
+        /**
+         * Оценка занимаемой памяти: байты и уже построенные представления.
+         * Строка {@link #utf8()}, общая с {@link #text()}, учитывается один раз.
+         */
+        private long weight() {
+            long weight = bytes.length + 256L;
+            EncodingUtils.TextFileContent t = text;
+            if (t != null) {
+                weight += stringWeight(t.content(), t.charset(), hasUtf8Bom() ? 3 : 0);
+            }
+            String s = utf8;
+            if (s != null && (t == null || s != t.content())) {
+                weight += stringWeight(s, StandardCharsets.UTF_8, 0);
+            }
+            LineIndex index = lineIndex;
+            if (index != null) {
+                weight += index.footprint();
+            }
+            return weight;
+        }
+
+        /**
+         * Размер строки: байт на символ для компактных (Latin-1) строк, иначе два.
+         * Компактность определяется без прохода по строке, при сомнении строка считается двухбайтовой.
+         */
+        private long stringWeight(String s, Charset cs, int strippedBom) {
+            boolean latin1 = StandardCharsets.ISO_8859_1.equals(cs) || StandardCharsets.US_ASCII.equals(cs)
+                    // В UTF-8 символов столько же, сколько байтов, только для чистого ASCII
+                    || (StandardCharsets.UTF_8.equals(cs) && s.length() == bytes.length - strippedBom);
+            return (latin1 ? s.length() : s.length() * 2L) + 64;
+        }
+    }
+}
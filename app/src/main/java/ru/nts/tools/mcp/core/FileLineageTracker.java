@@ -218,13 +218,9 @@ public class FileLineageTracker {
      * @return путь к найденному файлу или null
      */
     public Path deepSearchByCrc(long expectedCrc, Path searchRoot, int maxFiles) throws IOException {
-        final int[] scanned = {0};
-
-        try (var walk = Files.walk(searchRoot)) {
+        try (var walk = ProjectWalker.create(searchRoot).skipProtected(true).stream()) {
             return walk
-                    .filter(Files::isRegularFile)
-                    .filter(p -> !PathSanitizer.isProtected(p))
-                    .takeWhile(p -> scanned[0]++ < maxFiles)
+                    .limit(maxFiles)
                     .filter(p -> {
                         try {
                             return calculateCrc(p) == expectedCrc;
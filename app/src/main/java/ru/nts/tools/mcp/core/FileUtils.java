@@ -128,6 +128,8 @@ public class FileUtils {
             Files.deleteIfExists(backupFile);
             return null;
         });
+        FileContentCache.invalidate(path, false);
+        TrigramIndex.getInstance().markFileChanged(path);
     }
 
     /**
@@ -154,6 +156,8 @@ public class FileUtils {
             Files.deleteIfExists(backupFile);
             return null;
         });
+        FileContentCache.invalidate(target, false);
+        TrigramIndex.getInstance().markFileChanged(target);
     }
 
     /**
@@ -168,20 +172,29 @@ public class FileUtils {
      */
     public static void safeMove(Path source, Path target, CopyOption... options) throws IOException {
         ensureParentExists(target);
+        // Тип снимается до перемещения: после него исходного пути уже нет
+        boolean directory = Files.isDirectory(source);
         executeWithRetry(() -> {
             Files.move(source, target, options);
             return null;
         });
+        FileContentCache.invalidate(source, directory);
+        TrigramIndex.getInstance().markFileChanged(source);
+        FileContentCache.invalidate(target, directory);
+        TrigramIndex.getInstance().markFileChanged(target);
     }
 
     /**
      * Безопасное удаление файла.
      */
     public static void safeDelete(Path path) throws IOException {
+        boolean directory = Files.isDirectory(path);
         executeWithRetry(() -> {
             Files.deleteIfExists(path);
             return null;
         });
+        FileContentCache.invalidate(path, directory);
+        TrigramIndex.getInstance().markFileChanged(path);
     }
 
     /**
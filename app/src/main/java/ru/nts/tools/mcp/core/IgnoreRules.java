@@ -0,0 +1,376 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Правила игнорирования в формате .gitignore для одной директории
+ * со ссылкой на правила родительских директорий.
+ * <p>
+ * Поддерживается синтаксис gitignore: комментарии, отрицание ({@code !}),
+ * правила только для директорий (завершающий {@code /}), привязка к директории
+ * файла правил (слэш в начале или середине), {@code *}, {@code ?}, {@code [...]}
+ * и {@code **}. Правила из более глубокой директории имеют приоритет,
+ * внутри одного файла побеждает последнее совпавшее правило.
+ * <p>
+ * Экземпляры неизменяемы и безопасны для использования из нескольких потоков.
+ */
+public final class IgnoreRules {
+
+    /**
+     * Имена файлов правил, читаемых в каждой директории (в порядке возрастания приоритета).
+     */
+    public static final List<String> IGNORE_FILE_NAMES = List.of(".gitignore", ".ignore");
+
+    /**
+     * Результат проверки пути.
+     */
+    public enum Match {
+        /** Ни одно правило не совпало. */
+        NONE,
+        /** Путь игнорируется. */
+        IGNORED,
+        /** Путь явно возвращён правилом с {@code !}. */
+        WHITELISTED
+    }
+
+    private static final IgnoreRules EMPTY = new IgnoreRules(null, null, List.of());
+
+    private final IgnoreRules parent;
+    private final String basePrefix;
+    private final List<Rule> rules;
+
+    private IgnoreRules(IgnoreRules parent, String basePrefix, List<Rule> rules) {
+        this.parent = parent;
+        this.basePrefix = basePrefix;
+        this.rules = rules;
+    }
+
+    /**
+     * Пустой набор правил.
+     */
+    public static IgnoreRules empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Строит правила для корня обхода: правила всех родительских директорий
+     * внутри Git-репозитория, {@code .git/info/exclude} и файлы правил самого корня.
+     *
+     * @param root директория, с которой начинается обход
+     */
+    public static IgnoreRules forRoot(Path root) {
+        Path dir = root.toAbsolutePath().normalize();
+
+        // Поднимаемся до корня репозитория: правила выше него к проекту не относятся
+        List<Path> chain = new ArrayList<>();
+        Path repoRoot = null;
+        for (Path p = dir; p != null; p = p.getParent()) {
+            chain.add(p);
+            if (Files.exists(p.resolve(".git"))) {
+                repoRoot = p;
+                break;
+            }
+        }
+        if (repoRoot == null) {
+            chain = List.of(dir);
+        }
+
+        IgnoreRules rules = EMPTY;
+        if (repoRoot != null) {
+            Path exclude = repoRoot.resolve(".git").resolve("info").resolve("exclude");
+            rules = rules.withLines(repoRoot, readLines(exclude));
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            rules = rules.forDirectory(chain.get(i));
+        }
+        return rules;
+    }
+
+    /**
+     * Возвращает правила для поддиректории, дополненные её файлами правил.
+     * Если файлов правил нет, возвращается этот же экземпляр.
+     */
+    public IgnoreRules forDirectory(Path dir) {
+        IgnoreRules result = this;
+        for (String name : IGNORE_FILE_NAMES) {
+            result = result.withLines(dir, readLines(dir.resolve(name)));
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает правила, дополненные строками файла правил из указанной директории.
+     * Используется, когда содержимое директории уже прочитано и известно,
+     * какие файлы правил в ней есть.
+     */
+    public IgnoreRules withFile(Path ignoreFile) {
+        return withLines(ignoreFile.getParent(), readLines(ignoreFile));
+    }
+
+    /**
+     * Возвращает правила, дополненные строками в формате .gitignore.
+     *
+     * @param baseDir директория, относительно которой задаются правила
+     * @param lines   строки файла правил
+     */
+    public IgnoreRules withLines(Path baseDir, List<String> lines) {
+        List<Rule> parsed = new ArrayList<>();
+        for (String line : lines) {
+            Rule rule = Rule.parse(line);
+            if (rule != null) {
+                parsed.add(rule);
+            }
+        }
+        if (parsed.isEmpty()) {
+            return this;
+        }
+        String prefix = baseDir.toAbsolutePath().normalize().toString();
+        if (!prefix.endsWith(File.separator)) {
+            prefix += File.separator;
+        }
+        return new IgnoreRules(this, prefix, List.copyOf(parsed));
+    }
+
+    /**
+     * Проверяет, игнорируется ли путь.
+     *
+     * @param path        абсолютный путь
+     * @param isDirectory является ли путь директорией
+     */
+    public boolean isIgnored(Path path, boolean isDirectory) {
+        return match(path, isDirectory) == Match.IGNORED;
+    }
+
+    /**
+     * Проверяет путь по всей цепочке правил, начиная с самой глубокой директории.
+     *
+     * @param path        абсолютный путь
+     * @param isDirectory является ли путь директорией
+     */
+    public Match match(Path path, boolean isDirectory) {
+        if (rules.isEmpty()) {
+            return Match.NONE;
+        }
+        String absolute = path.toString();
+        Path fileName = path.getFileName();
+        String name = fileName != null ? fileName.toString() : absolute;
+
+        for (IgnoreRules node = this; node != null && node.basePrefix != null; node = node.parent) {
+            if (!absolute.startsWith(node.basePrefix)) {
+                continue;
+            }
+            String relative = null;
+            for (int i = node.rules.size() - 1; i >= 0; i--) {
+                Rule rule = node.rules.get(i);
+                if (rule.dirOnly && !isDirectory) {
+                    continue;
+                }
+                boolean matched;
+                if (rule.anchored) {
+                    if (relative == null) {
+                        relative = absolute.substring(node.basePrefix.length());
+                        if (File.separatorChar != '/') {
+                            relative = relative.replace(File.separatorChar, '/');
+                        }
+                    }
+                    matched = rule.matches(relative);
+                } else {
+                    matched = rule.matches(name);
+                }
+                if (matched) {
+                    return rule.negated ? Match.WHITELISTED : Match.IGNORED;
+                }
+            }
+        }
+        return Match.NONE;
+    }
+
+    private static List<String> readLines(Path file) {
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException | RuntimeException e) {
+            // Файла нет или он нечитаем — правил нет
+            return List.of();
+        }
+    }
+
+    /**
+     * Одно правило файла игнорирования.
+     * Простые правила (точное имя, {@code *.ext}) проверяются без regex.
+     */
+    private static final class Rule {
+        final boolean negated;
+        final boolean dirOnly;
+        final boolean anchored;
+        final String literal;
+        final String suffix;
+        final Pattern pattern;
+
+        private Rule(boolean negated, boolean dirOnly, boolean anchored,
+                     String literal, String suffix, Pattern pattern) {
+            this.negated = negated;
+            this.dirOnly = dirOnly;
+            this.anchored = anchored;
+            this.literal = literal;
+            this.suffix = suffix;
+            this.pattern = pattern;
+        }
+
+        boolean matches(String s) {
+            if (literal != null) {
+                return literal.equals(s);
+            }
+            if (suffix != null) {
+                return s.endsWith(suffix) && s.indexOf('/') < 0;
+            }
+            return pattern.matcher(s).matches();
+        }
+
+        static Rule parse(String line) {
+            String text = stripTrailingSpaces(line);
+            if (text.isEmpty() || text.startsWith("#")) {
+                return null;
+            }
+            boolean negated = false;
+            if (text.startsWith("!")) {
+                negated = true;
+                text = text.substring(1);
+            } else if (text.startsWith("\\!") || text.startsWith("\\#")) {
+                text = text.substring(1);
+            }
+            boolean dirOnly = false;
+            if (text.endsWith("/")) {
+                dirOnly = true;
+                text = text.substring(0, text.length() - 1);
+            }
+            // Слэш в начале или середине привязывает правило к директории файла правил
+            boolean anchored = text.indexOf('/') >= 0;
+            if (text.startsWith("/")) {
+                text = text.substring(1);
+            }
+            if (text.isEmpty()) {
+                return null;
+            }
+
+            if (!anchored && !hasWildcards(text)) {
+                return new Rule(negated, dirOnly, false, text, null, null);
+            }
+            if (!anchored && text.startsWith("*") && !hasWildcards(text.substring(1))) {
+                return new Rule(negated, dirOnly, false, null, text.substring(1), null);
+            }
+            return new Rule(negated, dirOnly, anchored, null, null, Pattern.compile(toRegex(text)));
+        }
+
+        private static boolean hasWildcards(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String stripTrailingSpaces(String line) {
+            int end = line.length();
+            while (end > 0 && (line.charAt(end - 1) == ' ' || line.charAt(end - 1) == '\t'
+                    || line.charAt(end - 1) == '\r')) {
+                // Экранированный пробел остаётся частью шаблона
+                if (end > 1 && line.charAt(end - 2) == '\\' && line.charAt(end - 1) == ' ') {
+                    break;
+                }
+                end--;
+            }
+            return line.substring(0, end);
+        }
+
+        /**
+         * Переводит glob в синтаксисе gitignore в регулярное выражение.
+         */
+        static String toRegex(String glob) {
+            StringBuilder sb = new StringBuilder(glob.length() + 16);
+            int n = glob.length();
+            int i = 0;
+            while (i < n) {
+                char c = glob.charAt(i);
+                switch (c) {
+                    case '*' -> {
+                        boolean doubleStar = i + 1 < n && glob.charAt(i + 1) == '*';
+                        boolean atSegmentStart = i == 0 || glob.charAt(i - 1) == '/';
+                        if (doubleStar && atSegmentStart && i + 2 < n && glob.charAt(i + 2) == '/') {
+                            // "**/" — ноль или более директорий
+                            sb.append("(?:.*/)?");
+                            i += 3;
+                        } else if (doubleStar && atSegmentStart && i + 2 == n) {
+                            // "/**" в конце — всё содержимое директории
+                            sb.append(".*");
+                            i += 2;
+                        } else {
+                            sb.append("[^/]*");
+                            i += doubleStar ? 2 : 1;
+                        }
+                    }
+                    case '?' -> {
+                        sb.append("[^/]");
+                        i++;
+                    }
+                    case '[' -> {
+                        int close = glob.indexOf(']', i + 2);
+                        if (close < 0) {
+                            sb.append("\\[");
+                            i++;
+                        } else {
+                            String body = glob.substring(i + 1, close);
+                            sb.append('[');
+                            if (body.startsWith("!") || body.startsWith("^")) {
+                                sb.append('^');
+                                body = body.substring(1);
+                            }
+                            sb.append(body.replace("\\", "\\\\").replace("[", "\\["));
+                            sb.append(']');
+                            i = close + 1;
+                        }
+                    }
+                    case '\\' -> {
+                        if (i + 1 < n) {
+                            sb.append(Pattern.quote(String.valueOf(glob.charAt(i + 1))));
+                            i += 2;
+                        } else {
+                            i++;
+                        }
+                    }
+                    default -> {
+                        if ("().+|^${}".indexOf(c) >= 0) {
+                            sb.append('\\');
+                        }
+                        sb.append(c);
+                        i++;
+                    }
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.zip.DataFormatException;
+
+/**
+ * Контентно-адресуемое хранилище содержимого снапшотов журнала (таблица snapshot_blobs).
+ * <p>
+ * Блоб адресуется SHA-256 от исходных байтов, поэтому одинаковые версии файла
+ * (например, undo/redo туда и обратно) хранятся один раз. Строки file_snapshots
+ * ссылаются на блоб по хешу, блоб удаляется, когда счётчик ссылок падает до нуля.
+ * <p>
+ * Новая версия файла сохраняется как дельта к последнему блобу того же пути:
+ * общий префикс и суффикс берутся из базы, хранится только изменённая середина.
+ * Глубина цепочки дельт ограничена {@link #MAX_DELTA_DEPTH}, после чего пишется
+ * полная копия. Данные сжимаются Deflate, если это уменьшает размер
+ * (NTS_JOURNAL_COMPRESSION=none отключает сжатие).
+ * <p>
+ * Как и {@link JournalRepository}, все методы работают в транзакции вызывающего кода.
+ */
+final class JournalBlobStore {
+
+    /**
+     * Максимальная длина цепочки дельт: чтение снапшота стоит не больше
+     * MAX_DELTA_DEPTH + 1 обращений к таблице.
+     */
+    static final int MAX_DELTA_DEPTH = 8;
+
+    // Дельта выгодна, только если изменённая часть заметно меньше файла
+    private static final int MIN_DELTA_SIZE = 256;
+
+    private static final boolean COMPRESSION =
+            !"none".equalsIgnoreCase(System.getenv("NTS_JOURNAL_COMPRESSION"));
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * Сохраняет содержимое (или увеличивает счётчик ссылок существующего блоба).
+     *
+     * @param conn соединение в транзакции вызывающего кода
+     * @param content исходные байты файла
+     * @param filePath путь файла для поиска базы дельты
+     * @return хеш блоба для file_snapshots.blob_hash
+     */
+    String put(Connection conn, byte[] content, String filePath) throws SQLException {
+        String hash = hash(content);
+        if (addRef(conn, hash)) {
+            return hash;
+        }
+
+        Blob base = content.length >= MIN_DELTA_SIZE ? findDeltaBase(conn, filePath) : null;
+        byte[] payload = null;
+        if (base != null) {
+            byte[] baseContent = get(conn, base.hash());
+            payload = encodeDelta(baseContent, content);
+            if (payload.length > content.length / 2) {
+                payload = null;
+            }
+        }
+
+        boolean delta = payload != null;
+        if (!delta) {
+            payload = content;
+        }
+        boolean compressed = false;
+        if (COMPRESSION && payload.length >= 64) {
+            byte[] deflated = CompressionUtils.deflate(payload);
+            if (deflated.length < payload.length) {
+                payload = deflated;
+                compressed = true;
+            }
+        }
+
+        String sql = """
+                INSERT INTO snapshot_blobs (hash, base_hash, depth, compressed, raw_size, stored_size, ref_count, data)
+                VALUES (?, ?, ?, ?, ?, ?, 1, ?)
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, hash);
+            if (delta) ps.setString(2, base.hash()); else ps.setNull(2, Types.VARCHAR);
+            ps.setInt(3, delta ? base.depth() + 1 : 0);
+            ps.setBoolean(4, compressed);
+            ps.setLong(5, content.length);
+            ps.setLong(6, payload.length);
+            ps.setBytes(7, payload);
+            ps.executeUpdate();
+        }
+        if (delta) {
+            // Дельта держит ссылку на свою базу
+            addRef(conn, base.hash());
+        }
+        return hash;
+    }
+
+    /**
+     * Восстанавливает исходные байты блоба, разворачивая цепочку дельт.
+     */
+    byte[] get(Connection conn, String hash) throws SQLException {
+        StoredBlob blob = read(conn, hash);
+        if (blob == null) {
+            throw new SQLException("Snapshot blob not found: " + hash);
+        }
+        byte[] payload;
+        try {
+            payload = blob.compressed() ? CompressionUtils.inflate(blob.data()) : blob.data();
+        } catch (DataFormatException e) {
+            throw new SQLException("Corrupted snapshot blob", e);
+        }
+        if (blob.baseHash() == null) {
+            return payload;
+        }
+        return applyDelta(get(conn, blob.baseHash()), payload, blob.rawSize());
+    }
+
+    /**
+     * Уменьшает счётчик ссылок; блоб без ссылок удаляется вместе со ссылкой на базу.
+     */
+    void release(Connection conn, String hash) throws SQLException {
+        while (hash != null) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE snapshot_blobs SET ref_count = ref_count - 1 WHERE hash = ?")) {
+                ps.setString(1, hash);
+                if (ps.executeUpdate() == 0) {
+                    return;
+                }
+            }
+            String baseHash = null;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT ref_count, base_hash FROM snapshot_blobs WHERE hash = ?")) {
+                ps.setString(1, hash);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) > 0) {
+                        return;
+                    }
+                    baseHash = rs.getString(2);
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM snapshot_blobs WHERE hash = ?")) {
+                ps.setString(1, hash);
+                ps.executeUpdate();
+            }
+            hash = baseHash;
+        }
+    }
+
+    // ==================== Internals ====================
+
+    private record Blob(String hash, int depth) {}
+
+    private record StoredBlob(String baseHash, boolean compressed, long rawSize, byte[] data) {}
+
+    private boolean addRef(Connection conn, String hash) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE snapshot_blobs SET ref_count = ref_count + 1 WHERE hash = ?")) {
+            ps.setString(1, hash);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Последний сохранённый блоб того же файла, если цепочка дельт ещё не слишком длинная.
+     */
+    private Blob findDeltaBase(Connection conn, String filePath) throws SQLException {
+        String sql = """
+                SELECT b.hash, b.depth FROM file_snapshots fs
+                JOIN snapshot_blobs b ON b.hash = fs.blob_hash
+                WHERE fs.file_path = ? ORDER BY fs.id DESC LIMIT 1
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, filePath);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getInt(2) < MAX_DELTA_DEPTH) {
+                    return new Blob(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return null;
+    }
+
+    private StoredBlob read(Connection conn, String hash) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT base_hash, compressed, raw_size, data FROM snapshot_blobs WHERE hash = ?")) {
+            ps.setString(1, hash);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new StoredBlob(rs.getString(1), rs.getBoolean(2), rs.getLong(3), rs.getBytes(4));
+                }
+            }
+        }
+        return null;
+    }
+
+    static String hash(byte[] content) {
+        try {
+            return HEX.formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // ==================== Delta Encoding ====================
+
+    /**
+     * Дельта: varint длины общего префикса, varint длины общего суффикса, затем
+     * изменённая середина новой версии.
+     */
+    static byte[] encodeDelta(byte[] base, byte[] target) {
+        int max = Math.min(base.length, target.length);
+        int prefix = Arrays.mismatch(base, target);
+        if (prefix < 0) {
+            prefix = max;
+        }
+        int suffix = 0;
+        int suffixLimit = max - prefix;
+        while (suffix < suffixLimit
+                && base[base.length - 1 - suffix] == target[target.length - 1 - suffix]) {
+            suffix++;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length - prefix - suffix + 10);
+        writeVarint(out, prefix);
+        writeVarint(out, suffix);
+        out.write(target, prefix, target.length - prefix - suffix);
+        return out.toByteArray();
+    }
+
+    static byte[] applyDelta(byte[] base, byte[] delta, long rawSize) throws SQLException {
+        int[] pos = {0};
+        int prefix = readVarint(delta, pos);
+        int suffix = readVarint(delta, pos);
+        int middle = delta.length - pos[0];
+        if (prefix + suffix > base.length || prefix + middle + suffix != rawSize) {
+            throw new SQLException("Corrupted snapshot delta");
+        }
+        byte[] result = new byte[(int) rawSize];
+        System.arraycopy(base, 0, result, 0, prefix);
+        System.arraycopy(delta, pos[0], result, prefix, middle);
+        System.arraycopy(base, base.length - suffix, result, prefix + middle, suffix);
+        return result;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
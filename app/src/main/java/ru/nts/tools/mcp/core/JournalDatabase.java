@@ -15,11 +15,12 @@
  */
 package ru.nts.tools.mcp.core;
 
+import org.h2.jdbcx.JdbcConnectionPool;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.UUID;
@@ -33,15 +34,26 @@ import java.util.UUID;
  * Поддерживает:
  * - Ленивую инициализацию (база создается при первом обращении)
  * - Миграцию схемы через version check
+ * - Контентно-адресуемое хранение снапшотов (snapshot_blobs, см. {@link JournalBlobStore})
  * - Thread-safe доступ через H2 embedded URL mode
+ * - Пул соединений: база открывается один раз и остаётся открытой до close(),
+ *   разобранные запросы кешируются в сессиях пула (QUERY_CACHE_SIZE)
+ * - Настраиваемую задержку записи на диск (NTS_JOURNAL_WRITE_DELAY, мс)
  * - Корректное закрытие при завершении задачи
  */
 public class JournalDatabase implements AutoCloseable {
 
-    private static final int SCHEMA_VERSION = 1;
+    private static final int SCHEMA_VERSION = 3;
+
+    // Операции задачи в основном последовательны; запас - для вложенных обращений
+    private static final int MAX_POOL_CONNECTIONS = 8;
+
+    // Число различных запросов журнала с запасом: каждый разбирается один раз на сессию
+    private static final int QUERY_CACHE_SIZE = 64;
 
     private final Path dbPath;  // null for in-memory mode
     private final String jdbcUrl;
+    private volatile JdbcConnectionPool pool;
     private volatile boolean initialized;
     private volatile boolean closed;
 
@@ -55,12 +67,26 @@ public class JournalDatabase implements AutoCloseable {
         // H2 embedded URL: FILE_LOCK=FS для одного процесса, AUTO_SERVER=FALSE
         // DB_CLOSE_DELAY=0 — закрывать сразу при последнем disconnect
         this.jdbcUrl = "jdbc:h2:" + dbPath.toAbsolutePath().toString().replace('\\', '/')
-                + ";DB_CLOSE_DELAY=0";
+                + ";DB_CLOSE_DELAY=0" + sessionSettings();
     }
 
     private JournalDatabase(String jdbcUrl) {
         this.dbPath = null;
-        this.jdbcUrl = jdbcUrl;
+        this.jdbcUrl = jdbcUrl + sessionSettings();
+    }
+
+    /**
+     * Общие параметры URL: кеш разобранных запросов и, если задана, задержка записи.
+     * NTS_JOURNAL_WRITE_DELAY=0 пишет каждую транзакцию на диск сразу,
+     * большие значения уменьшают число сбросов ценой окна потери при сбое.
+     */
+    private static String sessionSettings() {
+        String settings = ";QUERY_CACHE_SIZE=" + QUERY_CACHE_SIZE;
+        String writeDelay = System.getenv("NTS_JOURNAL_WRITE_DELAY");
+        if (writeDelay != null && writeDelay.trim().matches("\\d+")) {
+            settings += ";WRITE_DELAY=" + writeDelay.trim();
+        }
+        return settings;
     }
 
     /**
@@ -96,6 +122,8 @@ public class JournalDatabase implements AutoCloseable {
 
             if (currentVersion < SCHEMA_VERSION) {
                 createSchema(stmt);
+                migrateToV2(stmt);
+                migrateToV3(stmt);
                 setVersion(stmt, SCHEMA_VERSION);
             }
         }
@@ -104,14 +132,28 @@ public class JournalDatabase implements AutoCloseable {
     }
 
     /**
-     * Возвращает JDBC-соединение к базе задачи.
-     * При первом вызове автоматически инициализирует схему.
+     * Возвращает JDBC-соединение к базе задачи из пула.
+     * close() соединения возвращает его в пул (незафиксированные изменения откатываются).
      */
     public Connection getConnection() throws SQLException {
         if (closed) {
             throw new SQLException("JournalDatabase is closed");
         }
-        return DriverManager.getConnection(jdbcUrl);
+        JdbcConnectionPool p = pool;
+        if (p == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("JournalDatabase is closed");
+                }
+                p = pool;
+                if (p == null) {
+                    p = JdbcConnectionPool.create(jdbcUrl, "", "");
+                    p.setMaxConnections(MAX_POOL_CONNECTIONS);
+                    pool = p;
+                }
+            }
+        }
+        return p.getConnection();
     }
 
     /**
@@ -142,11 +184,19 @@ public class JournalDatabase implements AutoCloseable {
         return initialized;
     }
 
+    /**
+     * Закрывает пул: с последним физическим соединением H2 закрывает файл базы
+     * (DB_CLOSE_DELAY=0), после чего его можно удалить.
+     */
     @Override
     public synchronized void close() {
         if (closed) return;
         closed = true;
         initialized = false;
+        if (pool != null) {
+            pool.dispose();
+            pool = null;
+        }
     }
 
     /**
@@ -183,6 +233,24 @@ public class JournalDatabase implements AutoCloseable {
                         + version + "', CURRENT_TIMESTAMP)");
     }
 
+    /**
+     * v2: снапшоты ссылаются на snapshot_blobs по хешу вместо хранения content.
+     * Старые строки с заполненным content остаются читаемыми.
+     */
+    private void migrateToV2(Statement stmt) throws SQLException {
+        stmt.executeUpdate("ALTER TABLE file_snapshots ADD COLUMN IF NOT EXISTS blob_hash VARCHAR(64)");
+        stmt.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_fs_blob ON file_snapshots(blob_hash)");
+    }
+
+    /**
+     * v3: номера транзакций отложенной записи, уже записанных в журнал
+     * (воспроизведение journal-pending после падения их пропускает, см. {@link JournalWriter}).
+     */
+    private void migrateToV3(Statement stmt) throws SQLException {
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS journal_applied (seq BIGINT PRIMARY KEY)");
+    }
+
     private void createSchema(Statement stmt) throws SQLException {
         // Метаданные задачи (key-value store)
         stmt.executeUpdate("""
@@ -239,6 +307,20 @@ public class JournalDatabase implements AutoCloseable {
         stmt.executeUpdate(
                 "CREATE INDEX IF NOT EXISTS idx_fs_path ON file_snapshots(file_path)");
 
+        // Контентно-адресуемые блобы снапшотов (v2)
+        stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS snapshot_blobs (
+                    hash VARCHAR(64) PRIMARY KEY,
+                    base_hash VARCHAR(64),
+                    depth INT DEFAULT 0,
+                    compressed BOOLEAN DEFAULT FALSE,
+                    raw_size BIGINT DEFAULT 0,
+                    stored_size BIGINT DEFAULT 0,
+                    ref_count INT DEFAULT 0,
+                    data BLOB
+                )
+                """);
+
         // Статистика различий (пре-вычисленные диффы)
         stmt.executeUpdate("""
                 CREATE TABLE IF NOT EXISTS diff_stats (
@@ -15,7 +15,6 @@
  */
 package ru.nts.tools.mcp.core;
 
-import java.io.ByteArrayInputStream;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -40,6 +39,8 @@ import java.util.Map;
  */
 public class JournalRepository {
 
+    private final JournalBlobStore blobs = new JournalBlobStore();
+
     // ==================== Journal Entries ====================
 
     /**
@@ -158,6 +159,8 @@ public class JournalRepository {
      * Удаляет запись по ID (CASCADE удалит snapshots и diff_stats).
      */
     public void deleteEntry(Connection conn, long entryId) throws SQLException {
+        releaseBlobs(conn, "SELECT blob_hash FROM file_snapshots WHERE entry_id = ? AND blob_hash IS NOT NULL",
+                ps -> ps.setLong(1, entryId));
         try (PreparedStatement ps = conn.prepareStatement("DELETE FROM journal_entries WHERE id = ?")) {
             ps.setLong(1, entryId);
             ps.executeUpdate();
@@ -168,6 +171,11 @@ public class JournalRepository {
      * Удаляет все записи из указанного стека.
      */
     public void clearStack(Connection conn, String stack) throws SQLException {
+        releaseBlobs(conn, """
+                SELECT fs.blob_hash FROM file_snapshots fs
+                JOIN journal_entries je ON je.id = fs.entry_id
+                WHERE je.stack = ? AND fs.blob_hash IS NOT NULL
+                """, ps -> ps.setString(1, stack));
         try (PreparedStatement ps = conn.prepareStatement("DELETE FROM journal_entries WHERE stack = ?")) {
             ps.setString(1, stack);
             ps.executeUpdate();
@@ -281,23 +289,21 @@ public class JournalRepository {
     // ==================== File Snapshots ====================
 
     /**
-     * Вставляет снапшот файла (content как BLOB).
+     * Вставляет снапшот файла. Содержимое сохраняется в контентно-адресуемом
+     * хранилище блобов (с дедупликацией, дельтами и сжатием), строка ссылается на него по хешу.
      * content может быть null — означает, что файл был создан (не существовал раньше).
      */
     public long insertSnapshot(Connection conn, long entryId, String filePath,
                                byte[] content, long fileSize, long crc32c) throws SQLException {
+        String blobHash = content != null ? blobs.put(conn, content, filePath) : null;
         String sql = """
-                INSERT INTO file_snapshots (entry_id, file_path, content, file_size, crc32c)
+                INSERT INTO file_snapshots (entry_id, file_path, blob_hash, file_size, crc32c)
                 VALUES (?, ?, ?, ?, ?)
                 """;
         try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setLong(1, entryId);
             ps.setString(2, filePath);
-            if (content != null) {
-                ps.setBinaryStream(3, new ByteArrayInputStream(content), content.length);
-            } else {
-                ps.setNull(3, Types.BLOB);
-            }
+            if (blobHash != null) ps.setString(3, blobHash); else ps.setNull(3, Types.VARCHAR);
             ps.setLong(4, fileSize);
             ps.setLong(5, crc32c);
             ps.executeUpdate();
@@ -315,7 +321,7 @@ public class JournalRepository {
      */
     public Map<String, FileSnapshot> getSnapshots(Connection conn, long entryId) throws SQLException {
         String sql = """
-                SELECT id, file_path, content, file_size, crc32c
+                SELECT id, file_path, content, blob_hash, file_size, crc32c
                 FROM file_snapshots WHERE entry_id = ? ORDER BY id
                 """;
         Map<String, FileSnapshot> result = new LinkedHashMap<>();
@@ -324,7 +330,7 @@ public class JournalRepository {
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     String path = rs.getString("file_path");
-                    byte[] content = rs.getBytes("content");
+                    byte[] content = readContent(conn, rs);
                     long size = rs.getLong("file_size");
                     long crc = rs.getLong("crc32c");
                     result.put(path, new FileSnapshot(rs.getLong("id"), path, content, size, crc));
@@ -339,7 +345,7 @@ public class JournalRepository {
      */
     public FileSnapshot getSnapshot(Connection conn, long entryId, String filePath) throws SQLException {
         String sql = """
-                SELECT id, file_path, content, file_size, crc32c
+                SELECT id, file_path, content, blob_hash, file_size, crc32c
                 FROM file_snapshots WHERE entry_id = ? AND file_path = ?
                 """;
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -349,13 +355,56 @@ public class JournalRepository {
                 if (rs.next()) {
                     return new FileSnapshot(
                             rs.getLong("id"), rs.getString("file_path"),
-                            rs.getBytes("content"), rs.getLong("file_size"), rs.getLong("crc32c"));
+                            readContent(conn, rs), rs.getLong("file_size"), rs.getLong("crc32c"));
                 }
             }
         }
         return null;
     }
 
+    /**
+     * Содержимое снапшота: из хранилища блобов или из колонки content (журналы до v2).
+     */
+    private byte[] readContent(Connection conn, ResultSet rs) throws SQLException {
+        String blobHash = rs.getString("blob_hash");
+        return blobHash != null ? blobs.get(conn, blobHash) : rs.getBytes("content");
+    }
+
+    /**
+     * Освобождает ссылки на блобы у снапшотов, выбранных запросом, перед удалением записей.
+     */
+    private void releaseBlobs(Connection conn, String sql, StatementBinder binder) throws SQLException {
+        List<String> hashes = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            binder.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    hashes.add(rs.getString(1));
+                }
+            }
+        }
+        for (String hash : hashes) {
+            blobs.release(conn, hash);
+        }
+    }
+
+    /**
+     * Суммарный размер блобов снапшотов: исходный и фактически хранимый (для диагностики).
+     */
+    public BlobStats getBlobStats(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(raw_size), 0), COALESCE(SUM(stored_size), 0) FROM snapshot_blobs");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return new BlobStats(rs.getInt(1), rs.getLong(2), rs.getLong(3));
+        }
+    }
+
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
     // ==================== Diff Stats ====================
 
     /**
@@ -614,6 +663,11 @@ public class JournalRepository {
         public boolean isRedo() { return "REDO".equals(stack); }
     }
 
+    /**
+     * Статистика хранилища блобов снапшотов (из таблицы snapshot_blobs).
+     */
+    public record BlobStats(int blobCount, long rawBytes, long storedBytes) {}
+
     /**
      * Снапшот файла (из таблицы file_snapshots).
      */
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Отложенная (write-behind) запись закоммиченных транзакций в журнал задачи.
+ * <p>
+ * commit() инструмента только ставит транзакцию в очередь: снапшоты "до" остаются
+ * в памяти, а для файловой базы дополнительно сбрасываются с fsync в
+ * ~/.nts/tasks/{taskId}/journal-pending/, чтобы пережить падение процесса.
+ * Один писатель на задачу забирает всё накопившееся и пишет одной транзакцией H2
+ * (group commit) в порядке постановки. Операции, читающие журнал (undo/redo,
+ * чекпоинты, история), сначала дожидаются {@link #awaitDurable()}.
+ * <p>
+ * Порядок сбросов: файл в journal-pending (fsync) - транзакция H2 вместе с номерами
+ * записанных транзакций (journal_applied) - CHECKPOINT SYNC (H2 может держать коммит
+ * в памяти до WRITE_DELAY) - удаление файла. При инициализации базы оставшиеся файлы
+ * воспроизводятся в исходном порядке, уже записанные номера пропускаются
+ * ({@link #replayPending()}), поэтому повторное воспроизведение не дублирует записи.
+ * <p>
+ * Номер транзакции выдаётся под монитором, сброс в journal-pending идёт вне его;
+ * писатель берёт только готовый префикс очереди, поэтому порядок записи совпадает
+ * с порядком номеров. Не записавшаяся транзакция остаётся в голове очереди и
+ * повторяется с нарастающей паузой; следующие за ней ждут. После нескольких
+ * неудач подряд барьер {@link #awaitDurable()} завершается ошибкой.
+ */
+final class JournalWriter {
+
+    /**
+     * Запись одной транзакции в рамках открытой транзакции H2.
+     */
+    @FunctionalInterface
+    interface Sink {
+        void write(Connection conn, TaskTransactionManager.Transaction tx, int editCount) throws SQLException;
+    }
+
+    private static final int MAGIC = 0x4E54534A; // "NTSJ"
+    private static final int VERSION = 1;
+
+    // NTS_JOURNAL_ASYNC=false возвращает синхронную запись в потоке инструмента
+    private static final boolean ASYNC = !"false".equalsIgnoreCase(System.getenv("NTS_JOURNAL_ASYNC"));
+
+    private static final ExecutorService WRITERS = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Повтор неудавшейся записи: пауза удваивается от RETRY_BASE_MS до RETRY_MAX_MS
+    private static final long RETRY_BASE_MS = 100;
+    private static final long RETRY_MAX_MS = 5_000;
+    private static final int FAILURES_BEFORE_ERROR = 3;
+
+    /**
+     * Транзакция в очереди. spillFile и ready меняются под monitor.
+     */
+    private static final class Pending {
+        final long seq;
+        final TaskTransactionManager.Transaction tx;
+        final int editCount;
+        Path spillFile;
+        boolean ready;
+
+        Pending(long seq, TaskTransactionManager.Transaction tx, int editCount) {
+            this.seq = seq;
+            this.tx = tx;
+            this.editCount = editCount;
+        }
+    }
+
+    private final JournalDatabase db;
+    private final Sink sink;
+    private final Path pendingDir; // null для in-memory базы
+
+    private final Object monitor = new Object();
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private long submittedSeq;
+    private long completedSeq;
+    private boolean draining;
+    private Exception failure; // не null, пока голова очереди не записывается FAILURES_BEFORE_ERROR раз подряд
+    private long generation;   // меняется при discardPending()
+    private Exception lastError; // только поток писателя
+
+    JournalWriter(JournalDatabase db, Sink sink) {
+        this.db = db;
+        this.sink = sink;
+        this.pendingDir = db.getDbPath() != null ? db.getDbPath().resolveSibling("journal-pending") : null;
+    }
+
+    /**
+     * Ставит закоммиченную транзакцию в очередь записи.
+     */
+    void submit(TaskTransactionManager.Transaction tx, int editCount) {
+        Pending pending;
+        synchronized (monitor) {
+            pending = new Pending(++submittedSeq, tx, editCount);
+            queue.addLast(pending);
+        }
+        // fsync вне монитора: писатель и барьер не ждут сброса чужой транзакции
+        Path spillFile = spill(pending.seq, tx);
+        boolean startWriter;
+        synchronized (monitor) {
+            pending.spillFile = spillFile;
+            pending.ready = true;
+            startWriter = !draining;
+            draining = true;
+        }
+        if (ASYNC) {
+            if (startWriter) {
+                WRITERS.execute(this::drain);
+            }
+        } else {
+            if (startWriter) {
+                drain();
+            }
+            awaitDurable();
+        }
+    }
+
+    /**
+     * Барьер: ждёт, пока все поставленные на момент вызова транзакции будут записаны в H2.
+     *
+     * @throws IllegalStateException если запись в H2 не удаётся (транзакции остаются в очереди)
+     */
+    void awaitDurable() {
+        synchronized (monitor) {
+            long target = submittedSeq;
+            boolean interrupted = false;
+            while (completedSeq < target) {
+                if (failure != null) {
+                    throw new IllegalStateException("Journal write failed, " + (target - completedSeq)
+                            + " transaction(s) not written: " + failure.getMessage(), failure);
+                }
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Количество транзакций, ещё не записанных в H2.
+     */
+    int pendingCount() {
+        synchronized (monitor) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Прекращает запись оставшихся транзакций (сброс задачи). Файлы journal-pending
+     * остаются и воспроизводятся при следующей инициализации базы.
+     */
+    void discardPending() {
+        synchronized (monitor) {
+            queue.clear();
+            completedSeq = submittedSeq;
+            failure = null;
+            generation++;
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Забирает из очереди готовый префикс и пишет одной транзакцией H2, пока очередь не опустеет.
+     */
+    private void drain() {
+        int failures = 0;
+        while (true) {
+            List<Pending> batch = new ArrayList<>();
+            long batchGeneration;
+            synchronized (monitor) {
+                for (Pending pending : queue) {
+                    if (!pending.ready) {
+                        break;
+                    }
+                    batch.add(pending);
+                }
+                if (batch.isEmpty()) {
+                    // Голова ещё сбрасывается на диск - писателя запустит её submit()
+                    draining = false;
+                    monitor.notifyAll();
+                    return;
+                }
+                batchGeneration = generation;
+            }
+
+            int written = writeBatch(batch) ? batch.size() : writeInOrder(batch);
+            failures = written == batch.size() ? 0 : written > 0 ? 1 : failures + 1;
+
+            synchronized (monitor) {
+                if (batchGeneration == generation) {
+                    for (int i = 0; i < written; i++) {
+                        completedSeq = queue.pollFirst().seq;
+                    }
+                    failure = failures >= FAILURES_BEFORE_ERROR ? lastError : null;
+                }
+                monitor.notifyAll();
+                if (failures == 0) {
+                    continue;
+                }
+                if (!ASYNC && failure != null) {
+                    // Синхронный режим: не держим поток инструмента, повтор - при следующем submit()
+                    draining = false;
+                    return;
+                }
+                long pause = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(failures - 1, 6));
+                try {
+                    monitor.wait(pause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Пишет транзакции по одной до первой неудачи: ошибка одной записи не теряет
+     * предыдущие, а следующие не обгоняют её. Возвращает число записанных.
+     */
+    private int writeInOrder(List<Pending> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (!writeBatch(List.of(batch.get(i)))) {
+                return i;
+            }
+        }
+        return batch.size();
+    }
+
+    private boolean writeBatch(List<Pending> batch) {
+        boolean spilled = false;
+        try (Connection conn = db.getInitializedConnection()) {
+            conn.setAutoCommit(false);
+            for (Pending pending : batch) {
+                pending.tx.updateStats();
+                sink.write(conn, pending.tx, pending.editCount);
+                if (pending.spillFile != null) {
+                    markApplied(conn, pending.seq);
+                    spilled = true;
+                }
+            }
+            conn.commit();
+            if (spilled && !checkpoint(conn)) {
+                // Транзакция записана, но не сброшена: файлы остаются, повтор пропустит их по номерам
+                return true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Файл в journal-pending остаётся и будет воспроизведён при следующей инициализации
+            System.err.println("Warning: Failed to commit transaction to DB: " + e.getMessage());
+            lastError = e;
+            return false;
+        }
+        for (Pending pending : batch) {
+            deleteQuietly(pending.spillFile);
+        }
+        return true;
+    }
+
+    private static void markApplied(Connection conn, long seq) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("MERGE INTO journal_applied(seq) VALUES (?)")) {
+            ps.setLong(1, seq);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Сбрасывает закоммиченные данные H2 на диск, не дожидаясь WRITE_DELAY.
+     */
+    private static boolean checkpoint(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CHECKPOINT SYNC");
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Warning: Failed to flush journal DB: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // ==================== Crash Recovery ====================
+
+    /**
+     * Воспроизводит транзакции, не успевшие попасть в H2 до завершения процесса.
+     * Транзакции, уже записанные в H2 (падение между коммитом и удалением файла),
+     * пропускаются по номеру. Вызывается при инициализации базы до любых других операций журнала.
+     */
+    void replayPending() {
+        if (pendingDir == null) {
+            return;
+        }
+        Set<Long> applied;
+        try (Connection conn = db.getInitializedConnection()) {
+            applied = readApplied(conn);
+        } catch (SQLException e) {
+            // Без списка записанных номеров повтор мог бы задвоить записи - откладываем до следующего запуска
+            System.err.println("Warning: Failed to read applied journal entries: " + e.getMessage());
+            return;
+        }
+
+        List<Path> files = List.of();
+        if (Files.isDirectory(pendingDir)) {
+            try (Stream<Path> list = Files.list(pendingDir)) {
+                files = list.filter(p -> p.getFileName().toString().endsWith(".pending")).sorted().toList();
+            } catch (IOException e) {
+                return;
+            }
+        }
+
+        // Номера, чьи файлы остались: их записи в journal_applied ещё нужны
+        Set<Long> remaining = new HashSet<>();
+        for (Path file : files) {
+            long seq = parseSeq(file);
+            synchronized (monitor) {
+                submittedSeq = Math.max(submittedSeq, seq);
+                completedSeq = submittedSeq;
+            }
+            if (applied.contains(seq)) {
+                deleteOrKeep(file, seq, remaining);
+                continue;
+            }
+            TaskTransactionManager.Transaction tx = readSpill(file);
+            if (tx == null) {
+                deleteQuietly(file);
+                continue;
+            }
+            try (Connection conn = db.getInitializedConnection()) {
+                conn.setAutoCommit(false);
+                sink.write(conn, tx, -1);
+                markApplied(conn, seq);
+                conn.commit();
+                applied.add(seq);
+                if (checkpoint(conn)) {
+                    deleteOrKeep(file, seq, remaining);
+                } else {
+                    remaining.add(seq);
+                }
+            } catch (SQLException e) {
+                System.err.println("Warning: Failed to replay pending journal entry " + file.getFileName()
+                        + ": " + e.getMessage());
+            }
+        }
+
+        applied.removeAll(remaining);
+        pruneApplied(applied);
+    }
+
+    private static void deleteOrKeep(Path file, long seq, Set<Long> remaining) {
+        deleteQuietly(file);
+        if (Files.exists(file)) {
+            remaining.add(seq);
+        }
+    }
+
+    private static Set<Long> readApplied(Connection conn) throws SQLException {
+        Set<Long> applied = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT seq FROM journal_applied")) {
+            while (rs.next()) {
+                applied.add(rs.getLong(1));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Удаляет номера, для которых файлов в journal-pending больше нет: номера новых
+     * транзакций продолжаются от оставшихся файлов и с ними не пересекаются.
+     */
+    private void pruneApplied(Set<Long> obsolete) {
+        if (obsolete.isEmpty()) {
+            return;
+        }
+        try (Connection conn = db.getInitializedConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM journal_applied WHERE seq = ?")) {
+            for (long seq : obsolete) {
+                ps.setLong(1, seq);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (SQLException e) {
+            // Лишние номера не мешают: следующая инициализация удалит их снова
+        }
+    }
+
+    private Path spill(long seq, TaskTransactionManager.Transaction tx) {
+        if (pendingDir == null || !ASYNC) {
+            return null;
+        }
+        try {
+            Files.createDirectories(pendingDir);
+            Path file = pendingDir.resolve(String.format("%016d.pending", seq));
+            Path tmp = pendingDir.resolve(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 DataOutputStream out = new DataOutputStream(
+                         new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, tx.timestamp.toString());
+                writeString(out, tx.description);
+                writeString(out, tx.instruction);
+                out.writeInt(tx.snapshots.size());
+                for (var entry : tx.snapshots.entrySet()) {
+                    writeString(out, entry.getKey().toString());
+                    byte[] content = entry.getValue();
+                    out.writeInt(content != null ? content.length : -1);
+                    if (content != null) {
+                        out.write(content);
+                    }
+                }
+                // Файл должен быть на диске раньше, чем commit() инструмента вернёт управление
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(pendingDir);
+            return file;
+        } catch (IOException e) {
+            // Запись в H2 всё равно произойдёт, теряется только защита от падения процесса
+            return null;
+        }
+    }
+
+    private static TaskTransactionManager.Transaction readSpill(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            LocalDateTime timestamp = LocalDateTime.parse(readString(in));
+            TaskTransactionManager.Transaction tx =
+                    new TaskTransactionManager.Transaction(readString(in), readString(in), timestamp);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Path path = Path.of(readString(in));
+                int length = in.readInt();
+                byte[] content = null;
+                if (length >= 0) {
+                    content = new byte[length];
+                    in.readFully(content);
+                }
+                tx.snapshots.put(path, content);
+            }
+            return tx;
+        } catch (IOException | RuntimeException e) {
+            // Недописанный файл (падение во время сброса) - транзакция не была подтверждена инструментом
+            return null;
+        }
+    }
+
+    private static long parseSeq(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.indexOf('.')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * fsync директории, чтобы переименование файла пережило сбой питания.
+     * Не на всех платформах директорию можно открыть (Windows) - тогда пропускаем.
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | RuntimeException ignored) {
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Индекс начал строк текста для чтения диапазонов без разбиения всего файла.
+ * <p>
+ * Строки разделяются по {@code \n}, символ {@code \r} остаётся в конце строки —
+ * так же, как {@code content.split("\n", -1)}, на котором построены CRC диапазонов
+ * {@link LineAccessToken}. Индекс строится одним проходом по тексту, а выборка
+ * диапазона обращается только к его символам.
+ * <p>
+ * Номера строк 1-based, как в инструментах.
+ */
+public final class LineIndex {
+
+    private final String text;
+    private final int[] starts;
+    private final int lineCount;
+
+    private LineIndex(String text, int[] starts, int lineCount) {
+        this.text = text;
+        this.starts = starts;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Строит индекс для текста.
+     */
+    public static LineIndex of(String text) {
+        int[] starts = new int[Math.max(16, text.length() / 32)];
+        int count = 1;
+        int pos = text.indexOf('\n');
+        while (pos >= 0) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[count++] = pos + 1;
+            pos = text.indexOf('\n', pos + 1);
+        }
+        return new LineIndex(text, starts, count);
+    }
+
+    /**
+     * Память массива смещений строк (без самого текста).
+     */
+    long footprint() {
+        return starts.length * 4L + 16;
+    }
+
+    /**
+     * Индексированный текст.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Количество строк (как длина {@code text.split("\n", -1)}).
+     */
+    public int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Смещение начала строки.
+     */
+    public int lineStart(int line) {
+        checkLine(line);
+        return starts[line - 1];
+    }
+
+    /**
+     * Смещение конца строки (позиция {@code \n} или конец текста).
+     */
+    public int lineEnd(int line) {
+        checkLine(line);
+        return line < lineCount ? starts[line] - 1 : text.length();
+    }
+
+    /**
+     * Текст строки без {@code \n}.
+     */
+    public String line(int line) {
+        return text.substring(lineStart(line), lineEnd(line));
+    }
+
+    /**
+     * Содержимое диапазона строк, соединённых {@code \n}. Границы приводятся
+     * к существующим строкам; для пустого диапазона возвращается пустая строка.
+     *
+     * @param startLine начало диапазона (включительно)
+     * @param endLine   конец диапазона (включительно)
+     */
+    public String range(int startLine, int endLine) {
+        int start = Math.max(1, startLine);
+        int end = Math.min(lineCount, endLine);
+        if (start > end) {
+            return "";
+        }
+        return text.substring(starts[start - 1], lineEnd(end));
+    }
+
+    /**
+     * Находит первую строку, в которой есть совпадение с паттерном.
+     * Паттерн применяется к каждой строке отдельно, как к подстроке.
+     *
+     * @return номер строки или -1
+     */
+    public int find(Pattern pattern) {
+        Matcher matcher = pattern.matcher(text);
+        for (int line = 1; line <= lineCount; line++) {
+            matcher.region(starts[line - 1], lineEnd(line));
+            if (matcher.find()) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Строки в виде списка. Подстроки создаются при обращении к элементам.
+     */
+    public List<String> lines() {
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return line(index + 1);
+            }
+
+            @Override
+            public int size() {
+                return lineCount;
+            }
+        };
+    }
+
+    private void checkLine(int line) {
+        if (line < 1 || line > lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " out of range 1-" + lineCount);
+        }
+    }
+}
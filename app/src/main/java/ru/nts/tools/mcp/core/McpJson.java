@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Общие объекты Jackson для транспорта и инструментов.
+ * <p>
+ * ObjectMapper тяжёл в создании (кэши сериализаторов строятся при первом использовании),
+ * поэтому один экземпляр разделяется всем сервером. Сам MAPPER не перенастраивается после
+ * инициализации; для чтения и записи используются неизменяемые и потокобезопасные
+ * {@link ObjectReader}/{@link ObjectWriter}.
+ */
+public final class McpJson {
+
+    /**
+     * Общий ObjectMapper (создание узлов, конвертация). Не перенастраивать.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Читатель JSON-RPC сообщений.
+     */
+    public static final ObjectReader READER = MAPPER.reader();
+
+    /**
+     * Писатель для потоковой сериализации. Не сбрасывает поток после каждого значения -
+     * сброс выполняет владелец потока, когда очередь отправки опустела.
+     */
+    public static final ObjectWriter WRITER = MAPPER.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private McpJson() {
+    }
+}
@@ -85,6 +85,13 @@ public interface McpTool {
         // Валидация обязательных параметров по схеме
         validateRequiredParams(params);
 
+        // Вызов без токена запроса (тесты, прямые вызовы) получает собственный,
+        // чтобы таймаут мог остановить работу инструмента
+        boolean ownToken = TaskContext.cancellation() == CancellationToken.NONE;
+        if (ownToken) {
+            TaskContext.setCancellation(new CancellationToken());
+        }
+
         JsonNode response;
         try {
             // Проверяем, нужен ли таймаут для этого инструмента
@@ -106,6 +113,8 @@ public interface McpTool {
             response = createErrorResponse("TIMEOUT_EXCEEDED",
                     "Tool execution exceeded " + DEFAULT_TIMEOUT_SECONDS + " seconds timeout. " +
                     "Consider breaking down the operation into smaller parts.");
+        } catch (CancellationException e) {
+            response = createErrorResponse("CANCELLED", e.getMessage());
         } catch (IllegalArgumentException e) {
             response = createErrorResponse("INVALID_ARGUMENTS", "Invalid request parameters: " + e.getMessage());
         } catch (SecurityException e) {
@@ -118,6 +127,9 @@ public interface McpTool {
             response = createErrorResponse("INTERNAL_BUG", "Internal server error: " + e.toString());
         } finally {
             TipFilter.clear();
+            if (ownToken) {
+                TaskContext.setCancellation(null);
+            }
         }
 
         // Внедрение AI-HUD как отдельного элемента контента (метаданные)
@@ -128,8 +140,7 @@ public interface McpTool {
                 JsonNode contentNode = res.get("content");
                 if (contentNode instanceof ArrayNode contentArray) {
                     // Создаем отдельный блок для HUD
-                    com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                    ObjectNode hudNode = mapper.createObjectNode();
+                    ObjectNode hudNode = McpJson.MAPPER.createObjectNode();
                     hudNode.put("type", "text");
                     hudNode.put("text", TodoManager.getHudInfo().toString());
 
@@ -143,33 +154,43 @@ public interface McpTool {
     }
 
     /**
-     * Выполняет инструмент с ограничением по времени.
-     * Сохраняет контекст задачи при переключении потоков.
+     * Выполняет инструмент с ограничением по времени на общем планировщике виртуальных потоков.
+     * Сохраняет контекст задачи и токен отмены при переключении потоков.
+     * По таймауту или отмене клиентом токен отменяется, а поток-исполнитель прерывается -
+     * циклы инструмента, проверяющие токен, завершаются вместо работы в фоне.
      *
      * @param params параметры вызова
      * @param timeoutSeconds таймаут в секундах
      * @return результат выполнения
      * @throws TimeoutException если время выполнения превысило таймаут
+     * @throws CancellationException если вызов отменён клиентом
      * @throws Exception другие исключения от execute()
      */
     private JsonNode executeWithTimeout(JsonNode params, int timeoutSeconds) throws Exception {
         // Захватываем контекст текущей сессии для передачи в worker thread
         TaskContext parentContext = TaskContext.currentOrDefault();
-
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CancellationToken token = TaskContext.cancellation();
+
+        Future<JsonNode> future = ToolScheduler.EXECUTOR.submit(() -> {
+            // Устанавливаем контекст сессии в worker thread
+            TaskContext.setCurrent(parentContext);
+            TaskContext.setCancellation(token);
+            try {
+                token.throwIfCancelled();
+                return execute(params);
+            } finally {
+                // Очищаем контекст в worker thread
+                TaskContext.clearCurrent();
+            }
+        });
+        token.onCancel(() -> future.cancel(true));
         try {
-            Future<JsonNode> future = executor.submit(() -> {
-                // Устанавливаем контекст сессии в worker thread
-                TaskContext.setCurrent(parentContext);
-                try {
-                    return execute(params);
-                } finally {
-                    // Очищаем контекст в worker thread
-                    TaskContext.clearCurrent();
-                }
-            });
             return future.get(timeoutSeconds, TimeUnit.SECONDS);
         } catch (TimeoutException e) {
+            token.cancel("timeout after " + timeoutSeconds + " seconds");
+            throw e;
+        } catch (CancellationException e) {
+            token.throwIfCancelled();
             throw e;
         } catch (ExecutionException e) {
             // Разворачиваем исключение из Future
@@ -180,9 +201,8 @@ public interface McpTool {
             throw new RuntimeException(cause);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            token.cancel("interrupted");
             throw new RuntimeException("Tool execution was interrupted", e);
-        } finally {
-            executor.shutdownNow();
         }
     }
 
@@ -201,8 +221,7 @@ public interface McpTool {
     }
 
     private JsonNode createErrorResponse(String type, String message) {
-        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-        ObjectNode res = mapper.createObjectNode();
+        ObjectNode res = McpJson.MAPPER.createObjectNode();
         res.putArray("content").addObject().put("type", "text").put("text", "Error [" + type + "]: " + message);
         res.put("isError", true);
         return res;
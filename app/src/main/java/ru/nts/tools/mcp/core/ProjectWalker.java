@@ -0,0 +1,563 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Общий обход дерева проекта для всех инструментов, сканирующих файлы.
+ * <p>
+ * Особенности:
+ * <ul>
+ *   <li>Правила .gitignore, .ignore и .git/info/exclude вычисляются нативно
+ *       ({@link IgnoreRules}), без запуска git. Игнорируемые директории
+ *       отсекаются целиком и не читаются.</li>
+ *   <li>Директории обходятся параллельно на work-stealing пуле обхода:
+ *       каждая директория — отдельная задача. У каждого обхода свой пул с ограниченным
+ *       параллелизмом, поэтому обход, ждущий медленного потребителя, не занимает потоки
+ *       других обходов. Фильтр с чтением файлов выполняется на виртуальных потоках,
+ *       чтобы блокирующий ввод-вывод не занимал потоки пула.</li>
+ *   <li>Результаты отдаются потоком через ограниченную очередь: если потребитель
+ *       не успевает, обход приостанавливается (backpressure). Закрытие потока
+ *       или ранний выход (limit, findFirst) останавливает обход. Брошенный незакрытый
+ *       поток или потребитель, не читающий дольше {@link #MAX_CONSUMER_STALL_MS},
+ *       также останавливают обход.</li>
+ * </ul>
+ * Порядок выдачи файлов не определён. Поток обязательно нужно закрывать
+ * (try-with-resources), как и {@link Files#walk}.
+ *
+ * <pre>{@code
+ * try (Stream<Path> files = ProjectWalker.create(root).skipHidden(true).stream()) {
+ *     files.forEach(...);
+ * }
+ * }</pre>
+ */
+public final class ProjectWalker {
+
+    /**
+     * Директории, которые пропускаются при включённом autoIgnore даже без .gitignore:
+     * метаданные VCS и IDE, зависимости и результаты сборки.
+     */
+    public static final Set<String> DEFAULT_SKIP_DIRECTORIES = Set.of(
+            ".git", ".svn", ".hg", ".idea", ".vscode", ".gradle", ".nts",
+            "node_modules", "build", "target", "dist", "out", "__pycache__"
+    );
+
+    /**
+     * Ёмкость очереди результатов: при заполнении обход ждёт потребителя.
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Интервал повторной попытки записи в заполненную очередь (для проверки отмены).
+     */
+    private static final long OFFER_TIMEOUT_MS = 50;
+
+    /**
+     * Сколько обход ждёт потребителя, который перестал читать из заполненной очереди.
+     * После этого обход прерывается, а потребитель при возврате получает исключение.
+     */
+    static final long MAX_CONSUMER_STALL_MS = 60_000;
+
+    private static final Entry END = new Entry(null, null);
+
+    private static final BiPredicate<Path, BasicFileAttributes> ACCEPT_ALL = (p, a) -> true;
+
+    /**
+     * Фильтры (размер, язык, поиск по содержимому) читают файлы - выполняются на виртуальных потоках.
+     */
+    private static final ExecutorService FILTER_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Останавливает обход, если поток бросили без закрытия.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final int PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Пул одного обхода. Потоки создаются по мере появления задач; пул закрывается, когда
+     * завершается последняя задача обхода (в том числе после отмены).
+     */
+    private static ForkJoinPool newWalkPool() {
+        return new ForkJoinPool(
+                PARALLELISM,
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("nts-walker-" + thread.getPoolIndex());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                null, true);
+    }
+
+    private final Path root;
+    private int maxDepth = Integer.MAX_VALUE;
+    private boolean autoIgnore = true;
+    private boolean skipHidden = false;
+    private boolean skipProtected = false;
+    private boolean includeDirectories = false;
+    private BiPredicate<Path, BasicFileAttributes> filter = ACCEPT_ALL;
+    private long consumerStallMs = MAX_CONSUMER_STALL_MS;
+
+    private ProjectWalker(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Создаёт обход с корнем в указанной директории (или файле).
+     * По умолчанию: без ограничения глубины, с autoIgnore, только файлы.
+     */
+    public static ProjectWalker create(Path root) {
+        return new ProjectWalker(root);
+    }
+
+    /**
+     * Максимальная глубина (непосредственные потомки корня имеют глубину 1).
+     */
+    public ProjectWalker maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Учитывать правила .gitignore/.ignore и {@link #DEFAULT_SKIP_DIRECTORIES}.
+     */
+    public ProjectWalker autoIgnore(boolean autoIgnore) {
+        this.autoIgnore = autoIgnore;
+        return this;
+    }
+
+    /**
+     * Пропускать скрытые директории (имя начинается с точки).
+     */
+    public ProjectWalker skipHidden(boolean skipHidden) {
+        this.skipHidden = skipHidden;
+        return this;
+    }
+
+    /**
+     * Пропускать пути, защищённые {@link PathSanitizer#isProtected(Path)}.
+     */
+    public ProjectWalker skipProtected(boolean skipProtected) {
+        this.skipProtected = skipProtected;
+        return this;
+    }
+
+    /**
+     * Выдавать также директории (по умолчанию только файлы).
+     */
+    public ProjectWalker includeDirectories(boolean includeDirectories) {
+        this.includeDirectories = includeDirectories;
+        return this;
+    }
+
+    /**
+     * Фильтр выдаваемых путей. Выполняется параллельно с обходом на виртуальных потоках,
+     * поэтому дорогие проверки (размер, язык, быстрый поиск по содержимому)
+     * не блокируют потоки обхода директорий.
+     */
+    public ProjectWalker filter(BiPredicate<Path, BasicFileAttributes> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Сколько ждать потребителя, переставшего читать поток (для тестов).
+     */
+    ProjectWalker consumerStallTimeout(long millis) {
+        this.consumerStallMs = millis;
+        return this;
+    }
+
+    /**
+     * Поток путей. Должен быть закрыт.
+     */
+    public Stream<Path> stream() {
+        return entries().map(Entry::path);
+    }
+
+    /**
+     * Поток путей вместе с атрибутами (размер, mtime). Должен быть закрыт.
+     */
+    public Stream<Entry> entries() {
+        BasicFileAttributes rootAttrs;
+        try {
+            rootAttrs = Files.readAttributes(root, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return Stream.empty();
+        }
+        if (!rootAttrs.isDirectory()) {
+            return filter.test(root, rootAttrs) ? Stream.of(new Entry(root, rootAttrs)) : Stream.empty();
+        }
+
+        Walk walk = new Walk(TaskContext.cancellation(), TimeUnit.MILLISECONDS.toNanos(consumerStallMs));
+        IgnoreRules rules = autoIgnore ? IgnoreRules.forRoot(root) : IgnoreRules.empty();
+        walk.pending.incrementAndGet();
+        walk.pool.execute(new DirectoryTask(walk, root, 0, rules));
+
+        Spliterator<Entry> spliterator = new Spliterators.AbstractSpliterator<>(
+                Long.MAX_VALUE, Spliterator.NONNULL | Spliterator.DISTINCT) {
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Entry> action) {
+                if (done) {
+                    return false;
+                }
+                try {
+                    Entry entry;
+                    while ((entry = walk.queue.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) == null) {
+                        // Потребитель ждёт результатов - он не завис, даже если фильтры медленные
+                        walk.lastRead = System.nanoTime();
+                        if (walk.stalled) {
+                            done = true;
+                            throw new IllegalStateException("Project walk of " + root
+                                    + " aborted: stream was not read for " + consumerStallMs + " ms");
+                        }
+                        if (walk.token.isCancelled()) {
+                            break;
+                        }
+                        if (walk.cancelled.get()) {
+                            done = true;
+                            return false;
+                        }
+                    }
+                    walk.lastRead = System.nanoTime();
+                    if (walk.token.isCancelled()) {
+                        // Запрос отменён: останавливаем обход и прерываем потребителя
+                        done = true;
+                        walk.cancel();
+                        walk.token.throwIfCancelled();
+                    }
+                    if (entry == END) {
+                        done = true;
+                        return false;
+                    }
+                    action.accept(entry);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    done = true;
+                    walk.cancel();
+                    return false;
+                }
+            }
+        };
+        CLEANER.register(spliterator, walk::cancel);
+        return StreamSupport.stream(spliterator, false).onClose(walk::cancel);
+    }
+
+    /**
+     * Собирает не более {@code limit} путей.
+     */
+    public List<Path> collect(int limit) {
+        try (Stream<Path> s = stream()) {
+            return s.limit(limit).toList();
+        }
+    }
+
+    /**
+     * Проверяет, выдал бы обход указанный путь (без учёта фильтра).
+     * Используется для точечных обновлений, чтобы не обходить проект заново.
+     */
+    public boolean accepts(Path path) {
+        Path file = path.toAbsolutePath().normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            return false;
+        }
+        Path relative = root.relativize(file);
+        int count = relative.getNameCount();
+        if (count > maxDepth) {
+            return false;
+        }
+        IgnoreRules rules = autoIgnore ? IgnoreRules.forRoot(root) : IgnoreRules.empty();
+        Path current = root;
+        for (int i = 0; i < count; i++) {
+            current = current.resolve(relative.getName(i));
+            boolean last = i == count - 1;
+            boolean isDir = !last || Files.isDirectory(current);
+            if (isSkipped(current, isDir, rules)) {
+                return false;
+            }
+            if (!last && autoIgnore) {
+                rules = rules.forDirectory(current);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Пропускается ли путь по настройкам обхода (скрытые, стандартные, защищённые, .gitignore).
+     */
+    private boolean isSkipped(Path child, boolean isDir, IgnoreRules rules) {
+        String name = child.getFileName().toString();
+        if (isDir) {
+            if (skipHidden && name.startsWith(".")) {
+                return true;
+            }
+            if (autoIgnore && DEFAULT_SKIP_DIRECTORIES.contains(name)) {
+                return true;
+            }
+        }
+        if (skipProtected && PathSanitizer.isProtected(child)) {
+            return true;
+        }
+        return autoIgnore && rules.isIgnored(child, isDir);
+    }
+
+    /**
+     * Путь с атрибутами, прочитанными при обходе.
+     */
+    public record Entry(Path path, BasicFileAttributes attrs) {
+    }
+
+    /**
+     * Состояние одного обхода: очередь результатов, счётчик незавершённых задач, флаг отмены
+     * и токен отмены запроса, запустившего обход (задачи пула не видят ThreadLocal запроса).
+     */
+    private static final class Walk {
+        final ForkJoinPool pool = newWalkPool();
+        final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        // Фильтры в работе: не больше ёмкости очереди, чтобы обход не опережал потребителя
+        final Semaphore filterSlots = new Semaphore(QUEUE_CAPACITY);
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CancellationToken token;
+        final long stallNanos;
+        volatile long lastRead = System.nanoTime();
+        volatile boolean stalled;
+
+        Walk(CancellationToken token, long stallNanos) {
+            this.token = token;
+            this.stallNanos = stallNanos;
+        }
+
+        boolean isCancelled() {
+            return cancelled.get() || token.isCancelled();
+        }
+
+        void emit(Entry entry) {
+            try {
+                while (!cancelled.get()) {
+                    if (queue.offer(entry, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                    abortIfStalled();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+        }
+
+        /**
+         * Занимает место для фильтра. false - обход остановлен.
+         */
+        boolean acquireFilterSlot() {
+            try {
+                while (!cancelled.get()) {
+                    if (filterSlots.tryAcquire(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    abortIfStalled();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+            return false;
+        }
+
+        /**
+         * Потребитель не читает дольше stallNanos: потоки обхода не ждут его бесконечно.
+         */
+        private void abortIfStalled() {
+            if (System.nanoTime() - lastRead > stallNanos) {
+                stalled = true;
+                cancel();
+            }
+        }
+
+        void taskDone() {
+            if (pending.decrementAndGet() == 0) {
+                emitEnd();
+                pool.shutdown();
+            }
+        }
+
+        void emitEnd() {
+            if (cancelled.get()) {
+                return;
+            }
+            emit(END);
+        }
+
+        void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                // Освобождаем место, чтобы заблокированные задачи быстрее увидели отмену
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Задача обхода одной директории. Поддиректории форкаются как отдельные задачи.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+        private final Walk walk;
+        private final Path dir;
+        private final int depth;
+        private final IgnoreRules parentRules;
+
+        DirectoryTask(Walk walk, Path dir, int depth, IgnoreRules parentRules) {
+            this.walk = walk;
+            this.dir = dir;
+            this.depth = depth;
+            this.parentRules = parentRules;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (!walk.isCancelled() && depth < maxDepth) {
+                    visit();
+                }
+            } finally {
+                walk.taskDone();
+            }
+        }
+
+        private void visit() {
+            List<Path> children = new ArrayList<>();
+            List<Path> ignoreFiles = new ArrayList<>(1);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path child : ds) {
+                    children.add(child);
+                    if (IgnoreRules.IGNORE_FILE_NAMES.contains(child.getFileName().toString())) {
+                        ignoreFiles.add(child);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Нечитаемая директория пропускается, как visitFileFailed в walkFileTree
+                return;
+            }
+
+            // Файлы правил корня уже учтены в IgnoreRules.forRoot
+            IgnoreRules rules = parentRules;
+            if (autoIgnore && depth > 0 && !ignoreFiles.isEmpty()) {
+                // .ignore имеет приоритет над .gitignore
+                ignoreFiles.sort((a, b) -> Integer.compare(
+                        IgnoreRules.IGNORE_FILE_NAMES.indexOf(a.getFileName().toString()),
+                        IgnoreRules.IGNORE_FILE_NAMES.indexOf(b.getFileName().toString())));
+                for (Path ignoreFile : ignoreFiles) {
+                    rules = rules.withFile(ignoreFile);
+                }
+            }
+
+            for (Path child : children) {
+                if (walk.isCancelled()) {
+                    return;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isSymbolicLink()) {
+                        // По ссылкам на директории не спускаемся, ссылки на файлы выдаём
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                        if (attrs.isDirectory()) {
+                            continue;
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    continue;
+                }
+
+                boolean isDir = attrs.isDirectory();
+                if (isSkipped(child, isDir, rules)) {
+                    continue;
+                }
+
+                if (isDir) {
+                    if (includeDirectories) {
+                        emitFiltered(child, attrs);
+                    }
+                    walk.pending.incrementAndGet();
+                    new DirectoryTask(walk, child, depth + 1, rules).fork();
+                } else if (attrs.isRegularFile()) {
+                    emitFiltered(child, attrs);
+                }
+            }
+        }
+
+        /**
+         * Выдаёт путь, прошедший фильтр. Пользовательский фильтр выполняется вне пула обхода.
+         */
+        private void emitFiltered(Path child, BasicFileAttributes attrs) {
+            if (filter == ACCEPT_ALL) {
+                walk.emit(new Entry(child, attrs));
+                return;
+            }
+            if (!walk.acquireFilterSlot()) {
+                return;
+            }
+            walk.pending.incrementAndGet();
+            try {
+                FILTER_EXECUTOR.execute(() -> {
+                    try {
+                        if (!walk.isCancelled() && filter.test(child, attrs)) {
+                            walk.emit(new Entry(child, attrs));
+                        }
+                    } catch (RuntimeException e) {
+                        // Ошибка фильтра пропускает файл, как нечитаемый файл при обходе
+                    } finally {
+                        walk.filterSlots.release();
+                        walk.taskDone();
+                    }
+                });
+            } catch (RuntimeException e) {
+                walk.filterSlots.release();
+                walk.taskDone();
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+
+/**
+ * Общее для всех задач JVM хранилище содержимого снапшотов {@link ExternalChangeTracker}.
+ * <p>
+ * Содержимое хранится сжатым (UTF-8 + Deflate) и нужно только при обнаружении
+ * внешнего изменения, когда прежняя версия файла пишется в журнал. Сжатые данные
+ * в памяти ограничены бюджетом (NTS_SNAPSHOT_MEMORY_MB, по умолчанию 32 MB):
+ * при превышении давно не использованные записи выгружаются во временные файлы
+ * ~/.nts/snapshots/{pid}/, которые удаляются при освобождении записи и при выходе.
+ */
+final class SnapshotContentStore {
+
+    private static final long DEFAULT_BUDGET_MB = 32;
+
+    // Накладные расходы на запись помимо сжатых байтов
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static volatile long memoryBudget = readBudget();
+
+    // LRU резидентных записей; доступ синхронизирован на самой карте
+    private static final LinkedHashMap<Content, Boolean> resident = new LinkedHashMap<>(64, 0.75f, true);
+    private static long residentBytes;
+
+    private static volatile Path spillDir;
+
+    private SnapshotContentStore() {
+    }
+
+    /**
+     * Сжатое содержимое одного снапшота. Разделяется между снапшотами
+     * одного и того же состояния файла (например, при перемещении).
+     */
+    static final class Content {
+        private final int utf8Length;
+        private byte[] compressed;
+        private Path spillFile;
+        private boolean released;
+
+        private Content(int utf8Length, byte[] compressed) {
+            this.utf8Length = utf8Length;
+            this.compressed = compressed;
+        }
+
+        /**
+         * Восстанавливает строку. Выгруженное содержимое читается с диска,
+         * но обратно в память не загружается.
+         */
+        String materialize() {
+            byte[] data;
+            Path file;
+            synchronized (this) {
+                data = compressed;
+                file = spillFile;
+            }
+            if (data == null) {
+                if (file == null) {
+                    return null;
+                }
+                try {
+                    data = Files.readAllBytes(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Snapshot content is no longer available: " + file, e);
+                }
+            }
+            return inflate(data, utf8Length);
+        }
+
+        synchronized boolean isResident() {
+            return compressed != null;
+        }
+
+        private synchronized long weight() {
+            return compressed == null ? 0 : compressed.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * Сжимает содержимое и учитывает его в бюджете памяти.
+     */
+    static Content store(String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        Content content = new Content(utf8.length, CompressionUtils.deflate(utf8));
+        synchronized (resident) {
+            resident.put(content, Boolean.TRUE);
+            residentBytes += content.weight();
+        }
+        enforceBudget();
+        return content;
+    }
+
+    /**
+     * Отмечает использование содержимого (продвигает в LRU).
+     */
+    static void touch(Content content) {
+        synchronized (resident) {
+            resident.get(content);
+        }
+    }
+
+    /**
+     * Освобождает содержимое: убирает из памяти и удаляет выгруженный файл.
+     */
+    static void release(Content content) {
+        if (content == null) {
+            return;
+        }
+        synchronized (resident) {
+            if (resident.remove(content) != null) {
+                residentBytes -= content.weight();
+            }
+        }
+        Path file;
+        synchronized (content) {
+            content.released = true;
+            content.compressed = null;
+            file = content.spillFile;
+            content.spillFile = null;
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Останется до выхода из JVM
+            }
+        }
+    }
+
+    /**
+     * Выгружает на диск давно не использованные записи, пока резидентный
+     * объём превышает бюджет. При ошибке записи содержимое остаётся в памяти.
+     */
+    private static void enforceBudget() {
+        while (true) {
+            Content victim;
+            synchronized (resident) {
+                if (residentBytes <= memoryBudget || resident.isEmpty()) {
+                    return;
+                }
+                Iterator<Content> it = resident.keySet().iterator();
+                victim = it.next();
+                it.remove();
+                residentBytes -= victim.weight();
+            }
+            if (!spill(victim)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean spill(Content content) {
+        byte[] data;
+        synchronized (content) {
+            data = content.compressed;
+        }
+        if (data == null) {
+            return true;
+        }
+        try {
+            Path file = Files.createTempFile(getSpillDir(), "snap-", ".z");
+            Files.write(file, data);
+            boolean stale;
+            synchronized (content) {
+                stale = content.released;
+                if (!stale) {
+                    content.spillFile = file;
+                    content.compressed = null;
+                }
+            }
+            if (stale) {
+                Files.deleteIfExists(file);
+            }
+            return true;
+        } catch (IOException e) {
+            synchronized (resident) {
+                if (!content.released) {
+                    resident.put(content, Boolean.TRUE);
+                    residentBytes += content.weight();
+                }
+            }
+            return false;
+        }
+    }
+
+    private static Path getSpillDir() throws IOException {
+        Path dir = spillDir;
+        if (dir == null) {
+            synchronized (SnapshotContentStore.class) {
+                dir = spillDir;
+                if (dir == null) {
+                    dir = PathSanitizer.getTaskRoot().resolve("snapshots")
+                            .resolve(String.valueOf(ProcessHandle.current().pid()));
+                    Files.createDirectories(dir);
+                    Path toDelete = dir;
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(toDelete)));
+                    spillDir = dir;
+                }
+            }
+        }
+        return dir;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String inflate(byte[] data, int utf8Length) {
+        try {
+            return new String(CompressionUtils.inflate(data, utf8Length), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted snapshot content", e);
+        }
+    }
+
+    private static long readBudget() {
+        String env = System.getenv("NTS_SNAPSHOT_MEMORY_MB");
+        if (env != null && !env.isBlank()) {
+            try {
+                return Math.max(0, Long.parseLong(env.trim())) << 20;
+            } catch (NumberFormatException ignored) {
+                // Используем значение по умолчанию
+            }
+        }
+        return DEFAULT_BUDGET_MB << 20;
+    }
+
+    // ==================== Для тестов и диагностики ====================
+
+    static long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    static void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+        enforceBudget();
+    }
+
+    static long getResidentBytes() {
+        synchronized (resident) {
+            return residentBytes;
+        }
+    }
+}
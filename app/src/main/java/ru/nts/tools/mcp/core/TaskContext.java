@@ -45,6 +45,9 @@ public class TaskContext {
     // ThreadLocal для доступа к контексту в текущем потоке
     private static final ThreadLocal<TaskContext> currentContext = new ThreadLocal<>();
 
+    // Токен отмены запроса, обрабатываемого текущим потоком
+    private static final ThreadLocal<CancellationToken> currentCancellation = new ThreadLocal<>();
+
     // Флаг для принудительного использования in-memory DB (для тестов)
     private static volatile boolean forceInMemoryDb;
 
@@ -175,6 +178,28 @@ public class TaskContext {
      */
     public static void clearCurrent() {
         currentContext.remove();
+        currentCancellation.remove();
+    }
+
+    /**
+     * Устанавливает токен отмены запроса для текущего потока.
+     * Передаётся в поток-исполнитель инструмента вместе с контекстом задачи.
+     */
+    public static void setCancellation(CancellationToken token) {
+        if (token == null) {
+            currentCancellation.remove();
+        } else {
+            currentCancellation.set(token);
+        }
+    }
+
+    /**
+     * Токен отмены текущего запроса или {@link CancellationToken#NONE}, если поток
+     * не обрабатывает запрос.
+     */
+    public static CancellationToken cancellation() {
+        CancellationToken token = currentCancellation.get();
+        return token != null ? token : CancellationToken.NONE;
     }
 
     /**
@@ -528,6 +553,7 @@ public class TaskContext {
      * Очистка ресурсов задачи.
      */
     private void cleanup() {
+        transactionManager.awaitJournal();
         transactionManager.getDatabase().close();
         transactionManager.reset();
         lineAccessTracker.reset();
@@ -32,6 +32,8 @@ import java.util.zip.CRC32C;
  *
  * Каждая задача имеет собственный экземпляр этого класса.
  * Снапшоты файлов хранятся как BLOB в H2 (не как .bak файлы на диске).
+ * Закоммиченные транзакции пишутся в H2 асинхронно ({@link JournalWriter}),
+ * операции чтения журнала сначала дожидаются их записи.
  *
  * Поддерживает:
  * - Task Tokens: внутри транзакции CRC-проверка токенов отключена
@@ -53,6 +55,7 @@ public class TaskTransactionManager {
     // H2 database and repository
     private final JournalDatabase db;
     private final JournalRepository repo;
+    private final JournalWriter journalWriter;
 
     // Per-task счетчики (кеш из H2, атомарные для thread-safety)
     private final AtomicInteger totalEdits = new AtomicInteger(0);
@@ -82,10 +85,12 @@ public class TaskTransactionManager {
                 ? JournalDatabase.inMemory()
                 : new JournalDatabase(taskContext.getTaskDir());
         this.repo = new JournalRepository();
+        this.journalWriter = new JournalWriter(db, this::commitToDb);
     }
 
     /**
      * Возвращает JournalDatabase для внешнего доступа (например, из TaskContext при миграции).
+     * Для чтения записей журнала сначала вызывайте {@link #awaitJournal()}.
      */
     public JournalDatabase getDatabase() {
         return db;
@@ -98,6 +103,7 @@ public class TaskTransactionManager {
     public void initializeDb() {
         try {
             db.initialize();
+            journalWriter.replayPending();
             try (Connection conn = db.getInitializedConnection()) {
                 totalEdits.set(repo.getCounter(conn, "totalEdits"));
                 totalUndos.set(repo.getCounter(conn, "totalUndos"));
@@ -137,9 +143,9 @@ public class TaskTransactionManager {
 
         if (level <= 0) {
             if (!tx.isEmpty()) {
-                tx.updateStats();
-                commitToDb(tx);
-                totalEdits.incrementAndGet();
+                // Состояние "после" фиксируется сейчас, diff и запись в H2 - в фоне
+                tx.captureAfterState();
+                journalWriter.submit(tx, totalEdits.incrementAndGet());
                 editsSinceLastVerify.incrementAndGet();
             }
             currentTransaction.remove();
@@ -167,54 +173,59 @@ public class TaskTransactionManager {
     }
 
     /**
-     * Записывает закоммиченную транзакцию в H2.
+     * Дожидается записи в H2 всех закоммиченных транзакций задачи.
      */
-    private void commitToDb(Transaction tx) {
-        try (Connection conn = db.getInitializedConnection()) {
-            conn.setAutoCommit(false);
-
-            // Очищаем REDO стек
-            repo.clearStack(conn, "REDO");
-
-            // Получаем следующий position
-            int pos = repo.getMaxPosition(conn, "UNDO") + 1;
-
-            // Вставляем journal_entry
-            long entryId = repo.insertEntry(conn, "UNDO", "TRANSACTION", pos,
-                    tx.timestamp, tx.description, Status.COMMITTED.name(),
-                    tx.instruction, null, null, null, null);
-
-            // Вставляем file_snapshots
-            for (Map.Entry<Path, byte[]> e : tx.snapshots.entrySet()) {
-                Path absPath = e.getKey();
-                byte[] content = e.getValue(); // null if file was created
-                String relPath = toRelativePath(absPath);
-                long size = content != null ? content.length : 0;
-                long crc = content != null ? computeCrc32c(content) : 0;
-                repo.insertSnapshot(conn, entryId, relPath, content, size, crc);
-            }
+    public void awaitJournal() {
+        journalWriter.awaitDurable();
+    }
 
-            // Вставляем diff_stats
-            for (Map.Entry<Path, FileDiffStats> e : tx.stats.entrySet()) {
-                FileDiffStats s = e.getValue();
-                String relPath = toRelativePath(e.getKey());
-                String blocks = s.affectedBlocks.isEmpty() ? null : String.join(",", s.affectedBlocks);
-                repo.insertDiffStats(conn, entryId, relPath, s.added, s.deleted, blocks, s.unifiedDiff);
-            }
+    /**
+     * Записывает закоммиченную транзакцию в H2 в рамках транзакции писателя журнала.
+     *
+     * @param editCount значение счетчика правок после этой транзакции, -1 при воспроизведении
+     */
+    private void commitToDb(Connection conn, Transaction tx, int editCount) throws SQLException {
+        // Очищаем REDO стек
+        repo.clearStack(conn, "REDO");
+
+        // Получаем следующий position
+        int pos = repo.getMaxPosition(conn, "UNDO") + 1;
+
+        // Вставляем journal_entry
+        long entryId = repo.insertEntry(conn, "UNDO", "TRANSACTION", pos,
+                tx.timestamp, tx.description, Status.COMMITTED.name(),
+                tx.instruction, null, null, null, null);
+
+        // Вставляем file_snapshots
+        for (Map.Entry<Path, byte[]> e : tx.snapshots.entrySet()) {
+            Path absPath = e.getKey();
+            byte[] content = e.getValue(); // null if file was created
+            String relPath = toRelativePath(absPath);
+            long size = content != null ? content.length : 0;
+            long crc = content != null ? computeCrc32c(content) : 0;
+            repo.insertSnapshot(conn, entryId, relPath, content, size, crc);
+        }
 
-            // Обрезаем UNDO стек если превышен лимит
-            int undoSize = repo.getStackSize(conn, "UNDO");
-            while (undoSize > MAX_HISTORY_SIZE) {
-                repo.deleteOldestEntry(conn, "UNDO");
-                undoSize--;
-            }
+        // Вставляем diff_stats
+        for (Map.Entry<Path, FileDiffStats> e : tx.stats.entrySet()) {
+            FileDiffStats s = e.getValue();
+            String relPath = toRelativePath(e.getKey());
+            String blocks = s.affectedBlocks.isEmpty() ? null : String.join(",", s.affectedBlocks);
+            repo.insertDiffStats(conn, entryId, relPath, s.added, s.deleted, blocks, s.unifiedDiff);
+        }
 
-            // Обновляем счетчик
-            repo.setCounter(conn, "totalEdits", totalEdits.get() + 1);
+        // Обрезаем UNDO стек если превышен лимит
+        int undoSize = repo.getStackSize(conn, "UNDO");
+        while (undoSize > MAX_HISTORY_SIZE) {
+            repo.deleteOldestEntry(conn, "UNDO");
+            undoSize--;
+        }
 
-            conn.commit();
-        } catch (SQLException e) {
-            System.err.println("Warning: Failed to commit transaction to DB: " + e.getMessage());
+        // Обновляем счетчик
+        if (editCount >= 0) {
+            repo.setCounter(conn, "totalEdits", editCount);
+        } else {
+            repo.incrementCounter(conn, "totalEdits");
         }
     }
 
@@ -266,6 +277,10 @@ public class TaskTransactionManager {
         return virtualContents.get().containsKey(path.toAbsolutePath().normalize());
     }
 
+    public Set<Path> getVirtualPaths() {
+        return Set.copyOf(virtualContents.get().keySet());
+    }
+
     // ==================== File Lineage API ====================
 
     public void recordFileMove(Path oldPath, Path newPath) {
@@ -295,7 +310,7 @@ public class TaskTransactionManager {
 
     public void recordExternalChange(Path path, String previousContent, long previousCrc, long currentCrc, String description) {
         Path absPath = path.toAbsolutePath().normalize();
-        ensureDbInitialized();
+        ensureJournalReady();
 
         try (Connection conn = db.getInitializedConnection()) {
             conn.setAutoCommit(false);
@@ -332,7 +347,7 @@ public class TaskTransactionManager {
     // ==================== Checkpoints ====================
 
     public void createCheckpoint(String name) {
-        ensureDbInitialized();
+        ensureJournalReady();
         try (Connection conn = db.getInitializedConnection()) {
             int pos = repo.getMaxPosition(conn, "UNDO") + 1;
             repo.insertEntry(conn, "UNDO", "CHECKPOINT", pos,
@@ -344,7 +359,7 @@ public class TaskTransactionManager {
     }
 
     public String rollbackToCheckpoint(String name) throws IOException {
-        ensureDbInitialized();
+        ensureJournalReady();
         try (Connection conn = db.getInitializedConnection()) {
             int cpPos = repo.findCheckpointPosition(conn, "UNDO", name);
             if (cpPos < 0) {
@@ -377,7 +392,7 @@ public class TaskTransactionManager {
     // ==================== Undo / Redo ====================
 
     public String undo() throws IOException {
-        ensureDbInitialized();
+        ensureJournalReady();
         try (Connection conn = db.getInitializedConnection()) {
             conn.setAutoCommit(false);
             JournalRepository.JournalEntry entry = repo.getLastEntry(conn, "UNDO");
@@ -413,7 +428,7 @@ public class TaskTransactionManager {
     }
 
     public UndoResult smartUndo() throws IOException {
-        ensureDbInitialized();
+        ensureJournalReady();
         try (Connection conn = db.getInitializedConnection()) {
             conn.setAutoCommit(false);
             JournalRepository.JournalEntry entry = repo.getLastEntry(conn, "UNDO");
@@ -479,7 +494,7 @@ public class TaskTransactionManager {
     }
 
     public String redo() throws IOException {
-        ensureDbInitialized();
+        ensureJournalReady();
         try (Connection conn = db.getInitializedConnection()) {
             conn.setAutoCommit(false);
             JournalRepository.JournalEntry entry = repo.getLastEntry(conn, "REDO");
@@ -618,7 +633,7 @@ public class TaskTransactionManager {
     // ==================== Query API ====================
 
     public List<String> getFileHistory(Path path) {
-        ensureDbInitialized();
+        ensureJournalReady();
         List<String> history = new ArrayList<>();
         String relPath = toRelativePath(path.toAbsolutePath().normalize());
 
@@ -665,7 +680,7 @@ public class TaskTransactionManager {
     }
 
     public List<String> getTaskInstructions() {
-        ensureDbInitialized();
+        ensureJournalReady();
         List<String> instructions = new ArrayList<>();
         try (Connection conn = db.getInitializedConnection()) {
             List<JournalRepository.JournalEntry> entries = repo.getEntries(conn, "UNDO");
@@ -681,7 +696,7 @@ public class TaskTransactionManager {
     }
 
     public String getJournal() {
-        ensureDbInitialized();
+        ensureJournalReady();
         StringBuilder sb = new StringBuilder();
         sb.append("=== TRANSACTION JOURNAL ===\n");
 
@@ -773,7 +788,7 @@ public class TaskTransactionManager {
      * Returns all file paths affected by edits in this task (from journal).
      */
     public List<String> getAffectedPaths() {
-        ensureDbInitialized();
+        ensureJournalReady();
         try (Connection conn = db.getInitializedConnection()) {
             return repo.getAffectedPaths(conn);
         } catch (Exception e) {
@@ -785,7 +800,7 @@ public class TaskTransactionManager {
      * Returns recent journal entries (last N operations).
      */
     public List<String> getRecentJournal(int limit) {
-        ensureDbInitialized();
+        ensureJournalReady();
         try (Connection conn = db.getInitializedConnection()) {
             return repo.getRecentEntries(conn, limit);
         } catch (Exception e) {
@@ -796,6 +811,13 @@ public class TaskTransactionManager {
     // ==================== Reset / Cleanup ====================
 
     public void reset() {
+        try {
+            journalWriter.awaitDurable();
+        } catch (IllegalStateException e) {
+            // Незаписанные транзакции останутся в journal-pending до следующей инициализации
+            System.err.println("Warning: " + e.getMessage());
+            journalWriter.discardPending();
+        }
         Transaction tx = currentTransaction.get();
         // In-memory rollback of uncommitted transaction (no DB interaction needed)
         currentTransaction.remove();
@@ -814,6 +836,15 @@ public class TaskTransactionManager {
         }
     }
 
+    /**
+     * Подготовка к прямой работе с журналом: база инициализирована,
+     * отложенные коммиты записаны (порядок записей сохраняется).
+     */
+    private void ensureJournalReady() {
+        ensureDbInitialized();
+        journalWriter.awaitDurable();
+    }
+
     private String toRelativePath(Path absolutePath) {
         if (absolutePath == null) return null;
         Path root = PathSanitizer.getRoot();
@@ -862,6 +893,8 @@ public class TaskTransactionManager {
         // Снапшоты: путь файла -> его содержимое ДО изменения (null если файл не существовал)
         final Map<Path, byte[]> snapshots = new LinkedHashMap<>();
         final Map<Path, FileDiffStats> stats = new HashMap<>();
+        // Содержимое файлов после транзакции (для diff в писателе журнала)
+        private Map<Path, String> afterContents;
 
         Transaction(String description, String instruction, LocalDateTime timestamp) {
             this.description = description;
@@ -879,21 +912,43 @@ public class TaskTransactionManager {
             }
         }
 
+        /**
+         * Фиксирует содержимое файлов после транзакции, пока их не изменили следующие правки.
+         * Нечитаемые (бинарные) файлы пропускаются - для них diff не строится.
+         */
+        void captureAfterState() {
+            afterContents = new HashMap<>();
+            for (Path original : snapshots.keySet()) {
+                try {
+                    afterContents.put(original, Files.exists(original)
+                            ? EncodingUtils.readTextFile(original).content()
+                            : "");
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Вычисляет статистику различий по зафиксированному состоянию "после".
+         * Для транзакций, восстановленных после падения, состояние неизвестно - статистики нет.
+         */
         void updateStats() {
+            if (afterContents == null) {
+                return;
+            }
             for (Map.Entry<Path, byte[]> entry : snapshots.entrySet()) {
                 Path original = entry.getKey();
                 byte[] oldBytes = entry.getValue();
-                try {
-                    String oldContent = (oldBytes != null) ? new String(oldBytes, java.nio.charset.StandardCharsets.UTF_8) : "";
-                    String newContent = Files.exists(original)
-                            ? EncodingUtils.readTextFile(original).content()
-                            : "";
-                    if (!oldContent.equals(newContent)) {
-                        stats.put(original, calculateStats(original.getFileName().toString(), oldContent, newContent));
-                    }
-                } catch (IOException ignored) {
+                String newContent = afterContents.get(original);
+                if (newContent == null) {
+                    continue;
+                }
+                String oldContent = (oldBytes != null) ? new String(oldBytes, java.nio.charset.StandardCharsets.UTF_8) : "";
+                if (!oldContent.equals(newContent)) {
+                    stats.put(original, calculateStats(original.getFileName().toString(), oldContent, newContent));
                 }
             }
+            afterContents = null;
         }
 
         private FileDiffStats calculateStats(String fileName, String oldContent, String newContent) {
@@ -17,9 +17,14 @@ package ru.nts.tools.mcp.core;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,11 +33,32 @@ import java.util.regex.Pattern;
  * Обеспечивает парсинг Markdown планов и формирование данных для AI-HUD.
  *
  * Делегирует хранение активного TODO к task-scoped TaskContext.
+ * Разобранное состояние плана хранится в памяти и обновляется при записи
+ * через TodoTool ({@link #updateTodo}); внешние правки файла обнаруживаются
+ * по размеру, mtime и fileKey, поэтому HUD не перечитывает план на каждый ответ.
  */
 public class TodoManager {
 
     private static final Pattern TODO_ITEM_PATTERN = Pattern.compile("(?m)^\\s*([-*]|\\d+\\.)\\s+\\[([ xX])]\\s+(.*)$");
 
+    // Разобранные планы по абсолютному пути файла (todos у каждой задачи свои)
+    private static final Map<Path, CachedTodo> models = new ConcurrentHashMap<>();
+
+    /**
+     * Разобранный план: данные HUD и завершённые задачи.
+     */
+    private record TodoModel(HudInfo hud, List<String> completed) {}
+
+    /**
+     * Модель плана и версия файла, из которой она получена.
+     */
+    private record CachedTodo(long size, FileTime mtime, Object fileKey, TodoModel model) {
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && mtime.equals(attrs.lastModifiedTime())
+                    && java.util.Objects.equals(fileKey, attrs.fileKey());
+        }
+    }
+
     /**
      * Устанавливает активный TODO для текущей задачи.
      * Вызывается из TodoTool при создании плана.
@@ -170,46 +196,9 @@ public class TodoManager {
             return new HudInfo(null, 0, 0, 0, null, 0);
         }
 
-        Path todoDir = getTodosDir();
-        Path activeFile = todoDir.resolve(taskTodoFile);
-
-        if (!Files.exists(activeFile)) {
-            return new HudInfo(null, 0, 0, 0, null, 0);
-        }
-
         try {
-            List<String> lines = java.util.Arrays.asList(EncodingUtils.readTextFile(activeFile).content().split("\n", -1));
-            String title = "Untitled";
-            int done = 0;
-            int failed = 0;
-            int total = 0;
-            String nextTask = null;
-            int nextId = 0;
-            int currentId = 0;
-
-            for (String line : lines) {
-                if (line.startsWith("# ")) {
-                    title = line.substring(2).trim();
-                    if (title.startsWith("TODO: ")) title = title.substring(6);
-                    continue;
-                }
-
-                Matcher m = TODO_ITEM_PATTERN.matcher(line);
-                if (m.find()) {
-                    total++;
-                    currentId++;
-                    String marker = m.group(2);
-                    if ("x".equals(marker)) {
-                        done++;
-                    } else if ("X".equals(marker)) {
-                        failed++;
-                    } else if (nextTask == null) {
-                        nextTask = m.group(3).trim();
-                        nextId = currentId;
-                    }
-                }
-            }
-            return new HudInfo(title, done, failed, total, nextTask, nextId);
+            TodoModel model = loadModel(getTodosDir().resolve(taskTodoFile));
+            return model != null ? model.hud() : new HudInfo(null, 0, 0, 0, null, 0);
         } catch (IOException e) {
             return new HudInfo("Error", 0, 0, 0, null, 0);
         }
@@ -220,33 +209,107 @@ public class TodoManager {
      * Использует только TODO текущей задачи.
      */
     public static List<String> getCompletedTasks() {
-        List<String> completed = new ArrayList<>();
-
         String taskTodoFile = getTaskTodo();
         if (taskTodoFile == null) {
-            return completed;
+            return new ArrayList<>();
         }
 
-        Path todoDir = getTodosDir();
-        Path activeFile = todoDir.resolve(taskTodoFile);
+        try {
+            TodoModel model = loadModel(getTodosDir().resolve(taskTodoFile));
+            return model != null ? new ArrayList<>(model.completed()) : new ArrayList<>();
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
 
-        if (!Files.exists(activeFile)) {
-            return completed;
+    /**
+     * Обновляет модель плана после записи файла.
+     * Вызывается из TodoTool с только что записанным содержимым, чтобы не перечитывать файл.
+     *
+     * @param file файл плана
+     * @param content записанное содержимое
+     */
+    public static void updateTodo(Path file, String content) {
+        Path normalized = file.toAbsolutePath().normalize();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(normalized, BasicFileAttributes.class);
+            remember(normalized, attrs, parse(content));
+        } catch (IOException e) {
+            models.remove(normalized);
         }
+    }
 
+    /**
+     * Возвращает модель плана: из памяти, если файл не менялся, иначе разбирает его заново.
+     *
+     * @return модель или null, если файла нет
+     */
+    private static TodoModel loadModel(Path file) throws IOException {
+        Path normalized = file.toAbsolutePath().normalize();
+        BasicFileAttributes attrs;
         try {
-            List<String> lines = java.util.Arrays.asList(EncodingUtils.readTextFile(activeFile).content().split("\n", -1));
-            for (String line : lines) {
-                Matcher m = TODO_ITEM_PATTERN.matcher(line);
-                if (m.find()) {
-                    String marker = m.group(2);
-                    // x = done, X = failed - оба считаются завершенными для отчета
-                    if ("x".equals(marker) || "X".equals(marker)) {
-                        completed.add(m.group(3).trim());
-                    }
+            attrs = Files.readAttributes(normalized, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            models.remove(normalized);
+            return null;
+        }
+
+        CachedTodo cached = models.get(normalized);
+        if (cached != null && cached.matches(attrs)) {
+            return cached.model();
+        }
+
+        TodoModel model = parse(EncodingUtils.readTextFile(normalized).content());
+        remember(normalized, attrs, model);
+        return model;
+    }
+
+    private static void remember(Path file, BasicFileAttributes attrs, TodoModel model) {
+        // Версию, которую нельзя отличить по mtime (та же секунда), не запоминаем
+        if (FileContentCache.isRacy(attrs.lastModifiedTime())) {
+            models.remove(file);
+        } else {
+            models.put(file, new CachedTodo(attrs.size(), attrs.lastModifiedTime(), attrs.fileKey(), model));
+        }
+    }
+
+    /**
+     * Разбирает Markdown план за один проход: заголовок, счётчики, следующая задача
+     * и список завершённых задач.
+     */
+    private static TodoModel parse(String content) {
+        String title = "Untitled";
+        int done = 0;
+        int failed = 0;
+        int total = 0;
+        String nextTask = null;
+        int nextId = 0;
+        List<String> completed = new ArrayList<>();
+
+        for (String line : content.split("\n", -1)) {
+            if (line.startsWith("# ")) {
+                title = line.substring(2).trim();
+                if (title.startsWith("TODO: ")) title = title.substring(6);
+                continue;
+            }
+
+            Matcher m = TODO_ITEM_PATTERN.matcher(line);
+            if (m.find()) {
+                total++;
+                String marker = m.group(2);
+                // x = done, X = failed - оба считаются завершенными для отчета
+                if ("x".equals(marker)) {
+                    done++;
+                    completed.add(m.group(3).trim());
+                } else if ("X".equals(marker)) {
+                    failed++;
+                    completed.add(m.group(3).trim());
+                } else if (nextTask == null) {
+                    nextTask = m.group(3).trim();
+                    nextId = total;
                 }
             }
-        } catch (IOException ignored) {}
-        return completed;
+        }
+        return new TodoModel(new HudInfo(title, done, failed, total, nextTask, nextId), List.copyOf(completed));
     }
 }
@@ -0,0 +1,1007 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Триграммный индекс текстовых файлов проекта для grep и project_replace.
+ * <p>
+ * Для каждого файла индексируются триграммы — тройки подряд идущих байтов текста
+ * в UTF-8. Обратный индекс (триграмма -> номера файлов) позволяет до чтения файлов
+ * отсечь те, где паттерн заведомо не встречается: файл-кандидат должен содержать
+ * все триграммы литерала, а для regex — его обязательных литеральных фрагментов
+ * ({@link #requiredLiterals}).
+ * <p>
+ * Индекс не даёт ложных отрицаний: файлы, которых нет в индексе, файлы с изменившимися
+ * размером или mtime и файлы, изменённые инструментами ({@link #markFileChanged}),
+ * всегда считаются кандидатами и переиндексируются в фоне.
+ * <p>
+ * Особенности:
+ * - Асинхронное построение при инициализации задачи
+ * - Списки файлов хранятся дельтами номеров в varint; номера не переиспользуются,
+ *   удалённые записи вычищаются при накоплении
+ * - Тёплый старт: индекс сохраняется на диск ({@link TrigramIndexStore})
+ * - Отключается переменной окружения NTS_TRIGRAM_INDEX=false
+ */
+public final class TrigramIndex {
+
+    private static final TrigramIndex INSTANCE = new TrigramIndex();
+
+    /**
+     * Индекс включён (по умолчанию да).
+     */
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getenv("NTS_TRIGRAM_INDEX"));
+
+    /**
+     * Максимальное количество файлов в индексе. Остальные файлы просто ищутся напрямую.
+     */
+    private static final int MAX_FILES_TO_INDEX = 100_000;
+
+    /**
+     * Максимальный размер индексируемого файла (2MB).
+     */
+    private static final long MAX_FILE_SIZE_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * Окно "гоночного" mtime: файл, изменённый незадолго до чтения, мог быть перезаписан
+     * в пределах гранулярности mtime, поэтому такой записи индекса не доверяем.
+     */
+    private static final long RACY_MTIME_WINDOW_MS = 2000;
+
+    /**
+     * Минимум удалённых записей, после которого списки файлов перестраиваются.
+     */
+    private static final int COMPACT_MIN_DEAD = 4096;
+
+    /**
+     * Запись файла в индексе.
+     *
+     * @param trusted mtime файла был вне "гоночного" окна при чтении
+     */
+    private record FileEntry(int id, long size, long mtime, boolean trusted) {}
+
+    // ==================== СОСТОЯНИЕ ====================
+
+    private final ConcurrentHashMap<Path, FileEntry> files = new ConcurrentHashMap<>();
+
+    /**
+     * Защищает списки файлов, множество живых номеров и счётчики.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private PostingTable postings = new PostingTable();
+    private final BitSet alive = new BitSet();
+    private int nextId = 0;
+    private int deadCount = 0;
+
+    /**
+     * Файлы, изменённые инструментами: путь -> поколение изменения.
+     */
+    private final ConcurrentHashMap<Path, Long> pendingFiles = new ConcurrentHashMap<>();
+    private final AtomicLong changeGeneration = new AtomicLong();
+
+    /**
+     * Файлы, переиндексация которых уже запланирована.
+     */
+    private final Set<Path> reindexing = ConcurrentHashMap.newKeySet();
+
+    private volatile Path indexedRoot = null;
+    private final AtomicBoolean indexing = new AtomicBoolean(false);
+    private final AtomicBoolean indexed = new AtomicBoolean(false);
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    /**
+     * Ограничение одновременно читаемых файлов при построении индекса.
+     */
+    private final Semaphore readPermits = new Semaphore(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private TrigramIndex() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            persist();
+            executor.shutdownNow();
+        }));
+    }
+
+    public static TrigramIndex getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== ИНДЕКСАЦИЯ ====================
+
+    public boolean isIndexed() {
+        return indexed.get();
+    }
+
+    public boolean isIndexing() {
+        return indexing.get();
+    }
+
+    /**
+     * Возвращает количество проиндексированных файлов.
+     */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * Запускает асинхронное построение (или актуализацию) индекса проекта.
+     * Возвращается немедленно, индексация идёт в фоне.
+     *
+     * @param projectRoot корень проекта
+     */
+    public CompletableFuture<Void> indexProjectAsync(Path projectRoot) {
+        Path root = projectRoot.toAbsolutePath().normalize();
+        if (!ENABLED || (indexed.get() && root.equals(indexedRoot)) || !indexing.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                indexProjectSync(root);
+            } finally {
+                indexing.set(false);
+            }
+        }, executor);
+    }
+
+    private void indexProjectSync(Path root) {
+        if (!root.equals(indexedRoot)) {
+            clear();
+            // Тёплый старт: записи неизменённых файлов берутся из сохранённого индекса
+            install(new TrigramIndexStore(PathSanitizer.getTaskRoot(), root).load(root));
+            indexedRoot = root;
+        }
+
+        Map<Path, BasicFileAttributes> current = new HashMap<>();
+        try (Stream<ProjectWalker.Entry> walk = ProjectWalker.create(root)
+                .skipProtected(true)
+                .filter((file, attrs) -> attrs.size() <= MAX_FILE_SIZE_BYTES)
+                .entries()) {
+            walk.limit(MAX_FILES_TO_INDEX).forEach(e -> current.put(e.path(), e.attrs()));
+        }
+
+        // Удалённые и ставшие игнорируемыми файлы
+        for (Path file : files.keySet()) {
+            if (!current.containsKey(file)) {
+                removeFile(file);
+            }
+        }
+
+        try (var scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            current.forEach((file, attrs) -> {
+                if (!isFresh(files.get(file), attrs)) {
+                    scope.submit(() -> indexFile(file));
+                }
+            });
+        }
+
+        indexed.set(true);
+        persist();
+    }
+
+    /**
+     * Сообщает индексу об изменении файла или директории инструментом.
+     * До переиндексации файл считается кандидатом для любого запроса.
+     */
+    public void markFileChanged(Path path) {
+        Path root = indexedRoot;
+        if (!ENABLED || root == null) {
+            return;
+        }
+        Path normalized = path.toAbsolutePath().normalize();
+        if (!normalized.startsWith(root)) {
+            return;
+        }
+        if (Files.isDirectory(normalized)) {
+            try (Stream<Path> walk = ProjectWalker.create(normalized).skipProtected(true).stream()) {
+                walk.forEach(this::markFileChanged);
+            }
+            return;
+        }
+        if (!Files.exists(normalized)) {
+            // Удалённый файл или перемещённая директория
+            for (Path file : files.keySet()) {
+                if (file.startsWith(normalized)) {
+                    removeFile(file);
+                }
+            }
+            return;
+        }
+        pendingFiles.put(normalized, changeGeneration.incrementAndGet());
+        scheduleReindex(normalized);
+    }
+
+    private void scheduleReindex(Path file) {
+        if (reindexing.add(file)) {
+            try {
+                executor.submit(() -> {
+                    try {
+                        indexFile(file);
+                    } finally {
+                        reindexing.remove(file);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                reindexing.remove(file);
+            }
+        }
+    }
+
+    /**
+     * Индексирует один файл: читает, выделяет триграммы и заменяет его запись.
+     */
+    private void indexFile(Path file) {
+        Long generation = pendingFiles.get(file);
+        try {
+            readPermits.acquire();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attrs.isRegularFile() || attrs.size() > MAX_FILE_SIZE_BYTES) {
+                    removeFile(file);
+                    return;
+                }
+                // Атрибуты снимаются до чтения: если файл изменится во время чтения,
+                // при следующей проверке его mtime разойдётся с записью
+                long readTime = System.currentTimeMillis();
+                long mtime = attrs.lastModifiedTime().toMillis();
+                int[] trigrams = fileTrigrams(FileUtils.safeReadAllBytes(file));
+                putFile(file, attrs.size(), mtime, readTime - mtime > RACY_MTIME_WINDOW_MS, trigrams);
+            } finally {
+                readPermits.release();
+            }
+        } catch (NoSuchFileException e) {
+            removeFile(file);
+        } catch (IOException | RuntimeException e) {
+            // Нечитаемый файл остаётся вне индекса и ищется напрямую
+            removeFile(file);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (generation != null) {
+                pendingFiles.remove(file, generation);
+            }
+        }
+    }
+
+    private void putFile(Path file, long size, long mtime, boolean trusted, int[] trigrams) {
+        lock.writeLock().lock();
+        try {
+            FileEntry old = files.get(file);
+            if (old != null) {
+                kill(old.id());
+            }
+            int id = nextId++;
+            alive.set(id);
+            for (int trigram : trigrams) {
+                postings.add(trigram, id);
+            }
+            files.put(file, new FileEntry(id, size, mtime, trusted));
+            dirty.set(true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeFile(Path file) {
+        lock.writeLock().lock();
+        try {
+            FileEntry old = files.remove(file);
+            if (old != null) {
+                kill(old.id());
+                dirty.set(true);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Помечает номер файла удалённым. При накоплении удалённых списки перестраиваются.
+     * Вызывается под блокировкой записи.
+     */
+    private void kill(int id) {
+        alive.clear(id);
+        deadCount++;
+        if (deadCount >= COMPACT_MIN_DEAD && deadCount > alive.cardinality()) {
+            postings = postings.retain(alive);
+            deadCount = 0;
+        }
+    }
+
+    private boolean isFresh(FileEntry entry, BasicFileAttributes attrs) {
+        return entry != null && entry.trusted()
+                && entry.size() == attrs.size()
+                && entry.mtime() == attrs.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Очищает индекс.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            files.clear();
+            postings = new PostingTable();
+            alive.clear();
+            nextId = 0;
+            deadCount = 0;
+            pendingFiles.clear();
+            indexed.set(false);
+            dirty.set(false);
+            indexedRoot = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== ЗАПРОСЫ ====================
+
+    /**
+     * Подготавливает фильтр файлов для поиска паттерна.
+     *
+     * @param searchRoot корень поиска (должен лежать внутри проиндексированного проекта)
+     * @param pattern    литерал или регулярное выражение
+     * @param isRegex    является ли паттерн регулярным выражением
+     * @return фильтр или null, если индекс не может сузить поиск (не построен,
+     * не покрывает корень, в паттерне нет обязательных триграмм)
+     */
+    public Query query(Path searchRoot, String pattern, boolean isRegex) {
+        Path root = indexedRoot;
+        if (!ENABLED || root == null || !searchRoot.toAbsolutePath().normalize().startsWith(root)) {
+            return null;
+        }
+        int[] trigrams = queryTrigrams(isRegex ? requiredLiterals(pattern) : List.of(pattern));
+        if (trigrams.length == 0) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            return new Query(postings.intersect(trigrams, alive), nextId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Фильтр файлов одного запроса. Безопасен для вызова из нескольких потоков обхода.
+     */
+    public final class Query {
+        private final BitSet candidates;
+        private final int idLimit;
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private Query(BitSet candidates, int idLimit) {
+            this.candidates = candidates;
+            this.idLimit = idLimit;
+        }
+
+        /**
+         * Может ли файл содержать паттерн. false возвращается только для файлов,
+         * чья запись в индексе актуальна и не содержит нужных триграмм.
+         *
+         * @param file  абсолютный нормализованный путь
+         * @param attrs атрибуты файла из обхода
+         */
+        public boolean mayContain(Path file, BasicFileAttributes attrs) {
+            FileEntry entry = files.get(file);
+            if (entry == null) {
+                if (pendingFiles.containsKey(file)) {
+                    scheduleReindex(file);
+                }
+                return true;
+            }
+            // Записи, добавленные после построения запроса, в candidates не отражены
+            if (entry.id() >= idLimit || pendingFiles.containsKey(file)) {
+                return true;
+            }
+            if (!isFresh(entry, attrs)) {
+                if (System.currentTimeMillis() - attrs.lastModifiedTime().toMillis() > RACY_MTIME_WINDOW_MS) {
+                    scheduleReindex(file);
+                }
+                return true;
+            }
+            if (candidates.get(entry.id())) {
+                return true;
+            }
+            skipped.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * Количество файлов, отсечённых индексом.
+         */
+        public int skippedFiles() {
+            return skipped.get();
+        }
+    }
+
+    // ==================== ТРИГРАММЫ ====================
+
+    /**
+     * Триграммы содержимого файла. Текст приводится к UTF-8: для ASCII и UTF-8
+     * используются исходные байты, остальные кодировки декодируются.
+     */
+    static int[] fileTrigrams(byte[] bytes) {
+        boolean ascii = true;
+        for (byte b : bytes) {
+            if (b <= 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            return trigrams(bytes, 0, bytes.length);
+        }
+
+        Charset charset = EncodingUtils.detectEncoding(bytes);
+        byte[] clean = EncodingUtils.stripBom(bytes, charset);
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            // Корректные символы текста лежат в исходных байтах как есть
+            return trigrams(clean, 0, clean.length);
+        }
+        byte[] utf8 = new String(clean, charset).getBytes(StandardCharsets.UTF_8);
+        return trigrams(utf8, 0, utf8.length);
+    }
+
+    /**
+     * Отсортированные уникальные триграммы фрагмента без переводов строк.
+     * Переводы строк исключаются, так как поиск нормализует \r\n.
+     */
+    static int[] trigrams(byte[] text, int from, int to) {
+        if (to - from < 3) {
+            return new int[0];
+        }
+        int[] keys = new int[to - from - 2];
+        int count = 0;
+        for (int i = from; i + 2 < to; i++) {
+            byte b0 = text[i], b1 = text[i + 1], b2 = text[i + 2];
+            if (isLineBreak(b0) || isLineBreak(b1) || isLineBreak(b2)) {
+                continue;
+            }
+            keys[count++] = ((b0 & 0xFF) << 16) | ((b1 & 0xFF) << 8) | (b2 & 0xFF);
+        }
+        Arrays.sort(keys, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || keys[unique - 1] != keys[i]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, unique);
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static int[] queryTrigrams(List<String> literals) {
+        int[] all = new int[0];
+        for (String literal : literals) {
+            byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+            int[] keys = trigrams(bytes, 0, bytes.length);
+            int[] merged = Arrays.copyOf(all, all.length + keys.length);
+            System.arraycopy(keys, 0, merged, all.length, keys.length);
+            all = merged;
+        }
+        return Arrays.stream(all).distinct().toArray();
+    }
+
+    /**
+     * Выделяет литеральные фрагменты, обязательные для любого совпадения regex.
+     * Разбор консервативный: при альтернативе на верхнем уровне, inline-флагах
+     * ({@code (?i)}) и сложных экранированиях возвращается пустой список (фильтрации нет).
+     * Группы и классы символов пропускаются целиком, символ с квантификатором
+     * {@code ?}, {@code *} или {@code {0,..}} из фрагмента исключается.
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int n = regex.length();
+        int i = 0;
+        while (i < n) {
+            char c = regex.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return List.of();
+            }
+            char literal;
+            int width;
+            switch (c) {
+                case '|', '*', '+', '?', '{', ')' -> {
+                    // Альтернатива или квантификатор без литерала перед ним
+                    return List.of();
+                }
+                case '(' -> {
+                    if (i + 2 < n && regex.charAt(i + 1) == '?'
+                            && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                        return List.of(); // inline-флаги меняют сравнение
+                    }
+                    flush(run, literals);
+                    i = skipQuantifier(regex, skipGroup(regex, i));
+                    if (i < 0) {
+                        return List.of();
+                    }
+                    continue;
+                }
+                case '[' -> {
+                    flush(run, literals);
+                    i = skipQuantifier(regex, skipClass(regex, i));
+                    if (i < 0) {
+                        return List.of();
+                    }
+                    continue;
+                }
+                case '.', '^', '$' -> {
+                    flush(run, literals);
+                    i = skipQuantifier(regex, i + 1);
+                    if (i < 0) {
+                        return List.of();
+                    }
+                    continue;
+                }
+                case '\\' -> {
+                    if (i + 1 >= n) {
+                        return List.of();
+                    }
+                    char e = regex.charAt(i + 1);
+                    if (!Character.isLetterOrDigit(e)) {
+                        literal = e;
+                        width = 2;
+                    } else if ("dDsSwWbBAGZzRhHvVtnrfae".indexOf(e) >= 0) {
+                        flush(run, literals);
+                        i = skipQuantifier(regex, i + 2);
+                        if (i < 0) {
+                            return List.of();
+                        }
+                        continue;
+                    } else {
+                        // Свойства, коды символов, \Q..\E, обратные ссылки — не разбираем
+                        return List.of();
+                    }
+                }
+                default -> {
+                    literal = c;
+                    width = 1;
+                }
+            }
+
+            int next = i + width;
+            char q = next < n ? regex.charAt(next) : 0;
+            if (q == '*' || q == '?' || q == '+' || q == '{') {
+                int minCount = q == '+' ? 1 : q == '{' ? parseMinCount(regex, next) : 0;
+                if (minCount < 0) {
+                    return List.of();
+                }
+                if (minCount > 0) {
+                    run.append(literal);
+                }
+                // Повторение разрывает фрагмент: следующий символ не обязательно идёт сразу после
+                flush(run, literals);
+                i = skipQuantifier(regex, next);
+                if (i < 0) {
+                    return List.of();
+                }
+                continue;
+            }
+            run.append(literal);
+            i = next;
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (!run.isEmpty()) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Пропускает группу, начинающуюся в позиции {@code start}.
+     *
+     * @return позиция после закрывающей скобки или -1
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Пропускает класс символов (с вложенными классами Java), начинающийся в {@code start}.
+     *
+     * @return позиция после закрывающей скобки или -1
+     */
+    private static int skipClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                // ']' сразу после '[' или '[^' — литерал
+                int first = i + 1;
+                if (first < regex.length() && regex.charAt(first) == '^') {
+                    first++;
+                }
+                if (first < regex.length() && regex.charAt(first) == ']') {
+                    i = first;
+                }
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Пропускает квантификатор (с ленивым/жадным суффиксом) в позиции {@code i}, если он есть.
+     *
+     * @return позиция после квантификатора, {@code i} без квантификатора или -1
+     */
+    private static int skipQuantifier(String regex, int i) {
+        if (i < 0 || i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        if (c == '*' || c == '+' || c == '?') {
+            i++;
+        } else if (c == '{') {
+            int close = regex.indexOf('}', i);
+            if (close < 0 || parseMinCount(regex, i) < 0) {
+                return -1;
+            }
+            i = close + 1;
+        } else {
+            return i;
+        }
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Минимальное число повторений квантификатора {@code {m}}, {@code {m,}} или {@code {m,n}}.
+     *
+     * @return m или -1, если это не квантификатор
+     */
+    private static int parseMinCount(String regex, int open) {
+        int close = regex.indexOf('}', open);
+        if (close < 0) {
+            return -1;
+        }
+        String body = regex.substring(open + 1, close);
+        String min = body.contains(",") ? body.substring(0, body.indexOf(',')) : body;
+        if (min.isEmpty() || !min.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(min);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ==================== ПЕРСИСТЕНТНОСТЬ ====================
+
+    /**
+     * Сохраняет индекс на диск, если он изменился после последнего сохранения.
+     * Номера файлов при сохранении уплотняются, недоверенные записи не сохраняются.
+     */
+    private void persist() {
+        Path root = indexedRoot;
+        if (root == null || !indexed.get() || !dirty.compareAndSet(true, false)) {
+            return;
+        }
+
+        List<TrigramIndexStore.StoredFile> storedFiles = new ArrayList<>();
+        List<TrigramIndexStore.StoredList> storedLists = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<Map.Entry<Path, FileEntry>> entries = new ArrayList<>(files.entrySet());
+            entries.removeIf(e -> !e.getValue().trusted());
+            entries.sort(Comparator.comparingInt(e -> e.getValue().id()));
+
+            int[] remap = new int[nextId];
+            Arrays.fill(remap, -1);
+            for (Map.Entry<Path, FileEntry> e : entries) {
+                remap[e.getValue().id()] = storedFiles.size();
+                storedFiles.add(new TrigramIndexStore.StoredFile(e.getKey(), e.getValue().size(), e.getValue().mtime()));
+            }
+            postings.forEach((trigram, list) -> {
+                PostingList remapped = list.remap(remap);
+                if (remapped.count > 0) {
+                    storedLists.add(new TrigramIndexStore.StoredList(trigram, remapped.count, remapped.lastId,
+                            Arrays.copyOf(remapped.data, remapped.length)));
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            new TrigramIndexStore(PathSanitizer.getTaskRoot(), root).save(root, storedFiles, storedLists);
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+        }
+    }
+
+    private void install(TrigramIndexStore.Snapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            List<TrigramIndexStore.StoredFile> stored = snapshot.files();
+            for (int id = 0; id < stored.size(); id++) {
+                TrigramIndexStore.StoredFile file = stored.get(id);
+                files.put(file.file(), new FileEntry(id, file.size(), file.mtime(), true));
+                alive.set(id);
+            }
+            nextId = stored.size();
+            for (TrigramIndexStore.StoredList list : snapshot.lists()) {
+                postings.put(list.trigram(), new PostingList(list.data(), list.data().length, list.count(), list.lastId()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== СПИСКИ ФАЙЛОВ ====================
+
+    /**
+     * Возрастающий список номеров файлов, закодированный дельтами в varint.
+     */
+    private static final class PostingList {
+        byte[] data;
+        int length;
+        int count;
+        int lastId;
+
+        PostingList() {
+            this(new byte[4], 0, 0, -1);
+        }
+
+        PostingList(byte[] data, int length, int count, int lastId) {
+            this.data = data;
+            this.length = length;
+            this.count = count;
+            this.lastId = lastId;
+        }
+
+        void add(int id) {
+            int delta = id - lastId;
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            lastId = id;
+            count++;
+        }
+
+        int[] toArray() {
+            int[] ids = new int[count];
+            int id = -1;
+            int pos = 0;
+            for (int k = 0; k < count; k++) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                id += delta;
+                ids[k] = id;
+            }
+            return ids;
+        }
+
+        /**
+         * Новый список с перенумерованными файлами; номера с отображением -1 отбрасываются.
+         * Отображение должно сохранять порядок.
+         */
+        PostingList remap(int[] mapping) {
+            PostingList result = new PostingList();
+            for (int id : toArray()) {
+                int mapped = mapping[id];
+                if (mapped >= 0) {
+                    result.add(mapped);
+                }
+            }
+            return result;
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntryConsumer {
+        void accept(int trigram, PostingList list);
+    }
+
+    /**
+     * Таблица триграмма -> список файлов с открытой адресацией (без упаковки ключей).
+     */
+    private static final class PostingTable {
+        private int[] keys = newKeys(1 << 12);
+        private PostingList[] lists = new PostingList[1 << 12];
+        private int size;
+
+        private static int[] newKeys(int capacity) {
+            int[] k = new int[capacity];
+            Arrays.fill(k, -1); // триграммы занимают 24 бита, -1 — пустой слот
+            return k;
+        }
+
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            int s = (key * 0x9E3779B9) >>> 7 & mask;
+            while (keys[s] != -1 && keys[s] != key) {
+                s = (s + 1) & mask;
+            }
+            return s;
+        }
+
+        PostingList get(int key) {
+            int s = slot(key);
+            return keys[s] == key ? lists[s] : null;
+        }
+
+        void put(int key, PostingList list) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int s = slot(key);
+            if (keys[s] == -1) {
+                keys[s] = key;
+                size++;
+            }
+            lists[s] = list;
+        }
+
+        void add(int key, int id) {
+            PostingList list = get(key);
+            if (list == null) {
+                list = new PostingList();
+                put(key, list);
+            }
+            list.add(id);
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            PostingList[] oldLists = lists;
+            keys = newKeys(oldKeys.length * 2);
+            lists = new PostingList[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    int s = slot(oldKeys[i]);
+                    keys[s] = oldKeys[i];
+                    lists[s] = oldLists[i];
+                }
+            }
+        }
+
+        void forEach(EntryConsumer action) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != -1) {
+                    action.accept(keys[i], lists[i]);
+                }
+            }
+        }
+
+        /**
+         * Новая таблица только с живыми номерами файлов.
+         */
+        PostingTable retain(BitSet alive) {
+            PostingTable result = new PostingTable();
+            forEach((key, list) -> {
+                PostingList kept = new PostingList();
+                for (int id : list.toArray()) {
+                    if (alive.get(id)) {
+                        kept.add(id);
+                    }
+                }
+                if (kept.count > 0) {
+                    result.put(key, kept);
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Номера живых файлов, содержащих все триграммы.
+         */
+        BitSet intersect(int[] trigrams, BitSet alive) {
+            PostingList[] selected = new PostingList[trigrams.length];
+            for (int i = 0; i < trigrams.length; i++) {
+                selected[i] = get(trigrams[i]);
+                if (selected[i] == null) {
+                    return new BitSet();
+                }
+            }
+            // Начинаем с самого короткого списка
+            Arrays.sort(selected, Comparator.comparingInt(l -> l.count));
+
+            int[] result = selected[0].toArray();
+            int size = result.length;
+            for (int l = 1; l < selected.length && size > 0; l++) {
+                int[] other = selected[l].toArray();
+                int kept = 0, j = 0;
+                for (int k = 0; k < size; k++) {
+                    int id = result[k];
+                    while (j < other.length && other[j] < id) {
+                        j++;
+                    }
+                    if (j < other.length && other[j] == id) {
+                        result[kept++] = id;
+                    }
+                }
+                size = kept;
+            }
+
+            BitSet candidates = new BitSet();
+            for (int k = 0; k < size; k++) {
+                if (alive.get(result[k])) {
+                    candidates.set(result[k]);
+                }
+            }
+            return candidates;
+        }
+    }
+}
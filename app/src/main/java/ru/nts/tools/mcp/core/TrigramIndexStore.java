@@ -0,0 +1,149 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Персистентное хранилище триграммного индекса для тёплого старта.
+ * <p>
+ * Файл лежит в корне задач: ~/.nts/index/trigrams-{hash корня проекта}.idx.
+ * Файлы проекта нумеруются подряд в порядке записи, списки файлов по триграммам
+ * хранятся в том же виде, что и в памяти (дельты номеров в varint), поэтому
+ * загрузка не требует перекодирования.
+ * <p>
+ * Формат (DataOutputStream, big-endian):
+ * <pre>
+ * magic "NTST" | version | savedAt | root
+ * fileCount | (relPath size mtime)*
+ * listCount | (trigram count lastId length byte[length])*
+ * </pre>
+ */
+final class TrigramIndexStore {
+
+    private static final int MAGIC = 0x4E545354; // "NTST"
+    private static final int VERSION = 1;
+
+    private final Path storeFile;
+
+    /**
+     * Сохранённый файл проекта. Номер файла — его позиция в списке.
+     */
+    record StoredFile(Path file, long size, long mtime) {}
+
+    /**
+     * Сохранённый список файлов одной триграммы.
+     */
+    record StoredList(int trigram, int count, int lastId, byte[] data) {}
+
+    /**
+     * Загруженный снимок индекса.
+     */
+    record Snapshot(List<StoredFile> files, List<StoredList> lists) {
+        static final Snapshot EMPTY = new Snapshot(List.of(), List.of());
+    }
+
+    TrigramIndexStore(Path taskRoot, Path projectRoot) {
+        CRC32C crc = new CRC32C();
+        crc.update(projectRoot.toString().getBytes(StandardCharsets.UTF_8));
+        this.storeFile = taskRoot.resolve("index").resolve(String.format("trigrams-%08x.idx", crc.getValue()));
+    }
+
+    Path getStoreFile() {
+        return storeFile;
+    }
+
+    /**
+     * Загружает снимок индекса. При отсутствии, повреждении или несовпадении
+     * корня/версии возвращает пустой снимок - индекс будет построен заново.
+     */
+    Snapshot load(Path projectRoot) {
+        if (!Files.isRegularFile(storeFile)) {
+            return Snapshot.EMPTY;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storeFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return Snapshot.EMPTY;
+            }
+            in.readLong(); // savedAt
+            if (!projectRoot.toString().equals(in.readUTF())) {
+                return Snapshot.EMPTY;
+            }
+
+            int fileCount = in.readInt();
+            List<StoredFile> files = new ArrayList<>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                files.add(new StoredFile(projectRoot.resolve(in.readUTF()), in.readLong(), in.readLong()));
+            }
+
+            int listCount = in.readInt();
+            List<StoredList> lists = new ArrayList<>(listCount);
+            for (int i = 0; i < listCount; i++) {
+                int trigram = in.readInt();
+                int count = in.readInt();
+                int lastId = in.readInt();
+                if (lastId >= fileCount) {
+                    return Snapshot.EMPTY;
+                }
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                lists.add(new StoredList(trigram, count, lastId, data));
+            }
+            return new Snapshot(files, lists);
+        } catch (IOException | RuntimeException e) {
+            // Повреждённый или устаревший формат - строим индекс заново
+            return Snapshot.EMPTY;
+        }
+    }
+
+    /**
+     * Атомарно сохраняет индекс (запись во временный файл и перемещение).
+     */
+    void save(Path projectRoot, List<StoredFile> files, List<StoredList> lists) throws IOException {
+        Files.createDirectories(storeFile.getParent());
+        Path tmp = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(projectRoot.toString());
+
+            out.writeInt(files.size());
+            for (StoredFile file : files) {
+                out.writeUTF(projectRoot.relativize(file.file()).toString());
+                out.writeLong(file.size());
+                out.writeLong(file.mtime());
+            }
+
+            out.writeInt(lists.size());
+            for (StoredList list : lists) {
+                out.writeInt(list.trigram());
+                out.writeInt(list.count());
+                out.writeInt(list.lastId());
+                out.writeInt(list.data().length);
+                out.write(list.data());
+            }
+        }
+        Files.move(tmp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
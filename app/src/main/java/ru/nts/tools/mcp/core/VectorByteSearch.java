@@ -0,0 +1,144 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * SIMD-реализация {@link ByteSearch} на Vector API.
+ * <p>
+ * Поиск литерала ("SIMD-friendly substring"): для блока из {@code LANES} позиций
+ * сравниваются сразу все байты с первым байтом паттерна и байты со сдвигом
+ * {@code m - 1} с последним. Только позиции, где совпали оба, проверяются полностью.
+ * На обычном тексте кандидатов единицы на блок, поэтому проход идёт со скоростью
+ * чтения памяти.
+ * <p>
+ * Класс загружается только при {@link ByteSearch#VECTOR_AVAILABLE}.
+ */
+final class VectorByteSearch {
+
+    /**
+     * Предпочтительная форма, но не шире 512 бит: маска кандидатов в {@link #findAll}
+     * читается через {@link VectorMask#toLong()}, который вмещает не более 64 позиций
+     * (на SVE до 2048 бит дорожек было бы 256).
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() <= Long.SIZE
+            ? ByteVector.SPECIES_PREFERRED
+            : ByteVector.SPECIES_512;
+    private static final int LANES = SPECIES.length();
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private VectorByteSearch() {}
+
+    static long[] findAll(MemorySegment segment, long from, byte[] pattern, int maxResults) {
+        long[] hits = new long[16];
+        int count = 0;
+        int m = pattern.length;
+        long n = segment.byteSize();
+
+        ByteVector first = ByteVector.broadcast(SPECIES, pattern[0]);
+        ByteVector last = ByteVector.broadcast(SPECIES, pattern[m - 1]);
+
+        long i = from;
+        // Оба блока [i, i + LANES) и [i + m - 1, i + m - 1 + LANES) должны лежать в сегменте
+        long vectorEnd = n - m + 1 - LANES;
+        while (i <= vectorEnd) {
+            VectorMask<Byte> mask = ByteVector.fromMemorySegment(SPECIES, segment, i, ORDER).eq(first);
+            if (m > 1) {
+                mask = mask.and(ByteVector.fromMemorySegment(SPECIES, segment, i + m - 1, ORDER).eq(last));
+            }
+            long bits = mask.toLong();
+            while (bits != 0) {
+                long pos = i + Long.numberOfTrailingZeros(bits);
+                if (matchesInner(segment, pos, pattern)) {
+                    hits = ByteSearch.add(hits, ++count, pos);
+                    if (maxResults > 0 && count >= maxResults) {
+                        hits[0] = count;
+                        return hits;
+                    }
+                }
+                bits &= bits - 1;
+            }
+            i += LANES;
+        }
+
+        // Хвост короче вектора
+        for (; i <= n - m; i++) {
+            if (segment.get(ValueLayout.JAVA_BYTE, i) == pattern[0]
+                    && segment.get(ValueLayout.JAVA_BYTE, i + m - 1) == pattern[m - 1]
+                    && matchesInner(segment, i, pattern)) {
+                hits = ByteSearch.add(hits, ++count, i);
+                if (maxResults > 0 && count >= maxResults) {
+                    break;
+                }
+            }
+        }
+        hits[0] = count;
+        return hits;
+    }
+
+    static int countLineBreaks(MemorySegment segment, long from, long to) {
+        ByteVector lf = ByteVector.broadcast(SPECIES, (byte) '\n');
+        ByteVector cr = ByteVector.broadcast(SPECIES, (byte) '\r');
+
+        int count = 0;
+        long i = from;
+        // Второй блок сдвинут на 1, чтобы отличить \r\n от одиночного \r
+        for (; i + LANES + 1 <= to; i += LANES) {
+            ByteVector block = ByteVector.fromMemorySegment(SPECIES, segment, i, ORDER);
+            ByteVector next = ByteVector.fromMemorySegment(SPECIES, segment, i + 1, ORDER);
+            count += block.eq(lf).trueCount();
+            count += block.eq(cr).andNot(next.eq(lf)).trueCount();
+        }
+        return count + ByteSearch.countLineBreaksScalar(segment, i, to);
+    }
+
+    static int skipPlainAscii(byte[] bytes, int from) {
+        ByteVector esc = ByteVector.broadcast(SPECIES, (byte) 0x1B);
+        ByteVector zero = ByteVector.zero(SPECIES);
+
+        int i = from;
+        int bound = from + SPECIES.loopBound(bytes.length - from);
+        for (; i < bound; i += LANES) {
+            ByteVector block = ByteVector.fromArray(SPECIES, bytes, i);
+            // Знаковое сравнение: байты >= 0x80 отрицательны
+            VectorMask<Byte> stop = block.compare(VectorOperators.LE, zero).or(block.eq(esc));
+            if (stop.anyTrue()) {
+                return i + stop.firstTrue();
+            }
+        }
+        return ByteSearch.skipPlainAsciiScalar(bytes, i);
+    }
+
+    /**
+     * Проверяет байты паттерна между первым и последним (крайние уже совпали).
+     */
+    private static boolean matchesInner(MemorySegment segment, long pos, byte[] pattern) {
+        for (int j = 1; j < pattern.length - 1; j++) {
+            if (segment.get(ValueLayout.JAVA_BYTE, pos + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
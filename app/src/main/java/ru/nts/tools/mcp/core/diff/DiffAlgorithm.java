@@ -0,0 +1,56 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.diff;
+
+/**
+ * Алгоритм построчного сравнения двух последовательностей.
+ *
+ * Строки заранее интернированы в целочисленные идентификаторы (равные строки - равные id),
+ * поэтому алгоритм работает только с массивами int и не зависит от содержимого строк.
+ * Результат записывается в виде флагов изменений (как в GNU diff): отмеченные строки A
+ * считаются удаленными, отмеченные строки B - добавленными, неотмеченные образуют
+ * общую подпоследовательность в одинаковом порядке.
+ */
+public interface DiffAlgorithm {
+
+    /**
+     * Myers O(ND) в линейной памяти (поиск "среднего змея", итеративное разбиение).
+     * Дает минимальный diff. Используется по умолчанию.
+     */
+    DiffAlgorithm MYERS = new MyersDiff();
+
+    /**
+     * Histogram diff (развитие patience diff): якорями служат редкие строки,
+     * что дает более читаемые чанки на перемещенных блоках и повторяющихся строках.
+     * Для участков без редких строк откатывается на Myers.
+     */
+    DiffAlgorithm HISTOGRAM = new HistogramDiff(MYERS);
+
+    /**
+     * Сравнивает диапазоны a[aStart, aEnd) и b[bStart, bEnd) и отмечает изменения.
+     *
+     * @param a        Идентификаторы строк старой версии
+     * @param aStart   Начало диапазона в a (включительно)
+     * @param aEnd     Конец диапазона в a (исключительно)
+     * @param b        Идентификаторы строк новой версии
+     * @param bStart   Начало диапазона в b (включительно)
+     * @param bEnd     Конец диапазона в b (исключительно)
+     * @param aChanged Флаги удаленных строк (индексация как в a)
+     * @param bChanged Флаги добавленных строк (индексация как в b)
+     */
+    void diff(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd,
+              boolean[] aChanged, boolean[] bChanged);
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.diff;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Histogram diff (по мотивам JGit HistogramDiff).
+ *
+ * В каждом участке строится гистограмма строк старой версии, затем ищется
+ * самый длинный общий фрагмент, содержащий наименее частую строку. Участок
+ * разбивается по этому якорю на две части, которые обрабатываются так же.
+ * Если в участке нет строк с частотой не выше {@link #MAX_CHAIN_LENGTH},
+ * участок передается запасному алгоритму.
+ */
+final class HistogramDiff implements DiffAlgorithm {
+
+    /**
+     * Строки, встречающиеся чаще, не рассматриваются как якоря (скобки, пустые строки).
+     */
+    private static final int MAX_CHAIN_LENGTH = 64;
+
+    private final DiffAlgorithm fallback;
+
+    HistogramDiff(DiffAlgorithm fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void diff(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd,
+                     boolean[] aChanged, boolean[] bChanged) {
+        int maxId = 0;
+        for (int i = aStart; i < aEnd; i++) maxId = Math.max(maxId, a[i]);
+        for (int j = bStart; j < bEnd; j++) maxId = Math.max(maxId, b[j]);
+
+        // Гистограмма по id строки: количество вхождений и цепочка позиций в a
+        int[] count = new int[maxId + 1];
+        int[] head = new int[maxId + 1];
+        Arrays.fill(head, -1);
+        int[] next = new int[aEnd - aStart];
+
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{aStart, aEnd, bStart, bEnd});
+        while (!stack.isEmpty()) {
+            int[] range = stack.pop();
+            int aLo = range[0], aHi = range[1], bLo = range[2], bHi = range[3];
+
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo++;
+                bLo++;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi--;
+                bHi--;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                for (int i = aLo; i < aHi; i++) aChanged[i] = true;
+                for (int j = bLo; j < bHi; j++) bChanged[j] = true;
+                continue;
+            }
+
+            for (int i = aHi - 1; i >= aLo; i--) {
+                int id = a[i];
+                next[i - aStart] = head[id];
+                head[id] = i;
+                count[id]++;
+            }
+
+            int bestCnt = Integer.MAX_VALUE;
+            int bestLen = 0;
+            int bestAs = -1, bestAe = -1, bestBs = -1, bestBe = -1;
+            for (int bi = bLo; bi < bHi; ) {
+                int c = count[b[bi]];
+                int nextBi = bi + 1;
+                if (c == 0 || c > MAX_CHAIN_LENGTH || c > bestCnt) {
+                    bi = nextBi;
+                    continue;
+                }
+                for (int ai = head[b[bi]]; ai >= 0; ai = next[ai - aStart]) {
+                    int as = ai, bs = bi, ae = ai + 1, be = bi + 1;
+                    int rc = c;
+                    while (as > aLo && bs > bLo && a[as - 1] == b[bs - 1]) {
+                        as--;
+                        bs--;
+                        rc = Math.min(rc, count[a[as]]);
+                    }
+                    while (ae < aHi && be < bHi && a[ae] == b[be]) {
+                        rc = Math.min(rc, count[a[ae]]);
+                        ae++;
+                        be++;
+                    }
+                    int len = ae - as;
+                    if (rc < bestCnt || (rc == bestCnt && len > bestLen)) {
+                        bestCnt = rc;
+                        bestLen = len;
+                        bestAs = as;
+                        bestAe = ae;
+                        bestBs = bs;
+                        bestBe = be;
+                    }
+                    if (be > nextBi) {
+                        nextBi = be;
+                    }
+                }
+                bi = nextBi;
+            }
+
+            for (int i = aLo; i < aHi; i++) {
+                count[a[i]] = 0;
+                head[a[i]] = -1;
+            }
+
+            if (bestAs < 0) {
+                fallback.diff(a, aLo, aHi, b, bLo, bHi, aChanged, bChanged);
+                continue;
+            }
+            stack.push(new int[]{bestAe, aHi, bestBe, bHi});
+            stack.push(new int[]{aLo, bestAs, bLo, bestBs});
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.diff;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Реализация алгоритма Myers "An O(ND) Difference Algorithm" в линейной памяти.
+ *
+ * Особенности:
+ * - Строки, отсутствующие в другой последовательности, сразу помечаются как измененные
+ *   и исключаются из поиска (на полностью переписанных файлах D вырождается в 0).
+ * - Разбиение по "среднему змею" выполняется итеративно через явный стек,
+ *   поэтому глубина рекурсии не зависит от размера файла.
+ * - Рабочие массивы V выделяются один раз на вызов: O(N + M) памяти.
+ * - Как в GNU diff, при слишком большом числе правок поиск прерывается и участок
+ *   делится по самой дальней точке прямого прохода (diff остается корректным, но
+ *   может быть не минимальным).
+ */
+final class MyersDiff implements DiffAlgorithm {
+
+    /**
+     * Нижняя граница числа шагов D, после которого поиск "среднего змея" прерывается.
+     */
+    private static final int MIN_TOO_EXPENSIVE = 4096;
+
+    @Override
+    public void diff(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd,
+                     boolean[] aChanged, boolean[] bChanged) {
+        long[] inA = presence(a, aStart, aEnd);
+        long[] inB = presence(b, bStart, bEnd);
+
+        // Отбрасываем строки, которые не могут участвовать в общей подпоследовательности
+        int[] aMap = new int[aEnd - aStart];
+        int n = 0;
+        for (int i = aStart; i < aEnd; i++) {
+            if (contains(inB, a[i])) {
+                aMap[n++] = i;
+            } else {
+                aChanged[i] = true;
+            }
+        }
+        int[] bMap = new int[bEnd - bStart];
+        int m = 0;
+        for (int j = bStart; j < bEnd; j++) {
+            if (contains(inA, b[j])) {
+                bMap[m++] = j;
+            } else {
+                bChanged[j] = true;
+            }
+        }
+        if (n == 0 || m == 0) {
+            markAll(aMap, 0, n, aChanged);
+            markAll(bMap, 0, m, bChanged);
+            return;
+        }
+
+        int[] ca = new int[n];
+        for (int k = 0; k < n; k++) ca[k] = a[aMap[k]];
+        int[] cb = new int[m];
+        for (int k = 0; k < m; k++) cb[k] = b[bMap[k]];
+
+        int maxD = (n + m + 1) / 2;
+        int[] v1 = new int[2 * maxD + 2];
+        int[] v2 = new int[2 * maxD + 2];
+        int tooExpensive = tooExpensive(n + m);
+
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, n, 0, m});
+        while (!stack.isEmpty()) {
+            int[] range = stack.pop();
+            int aLo = range[0], aHi = range[1], bLo = range[2], bHi = range[3];
+
+            while (aLo < aHi && bLo < bHi && ca[aLo] == cb[bLo]) {
+                aLo++;
+                bLo++;
+            }
+            while (aLo < aHi && bLo < bHi && ca[aHi - 1] == cb[bHi - 1]) {
+                aHi--;
+                bHi--;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                markAll(aMap, aLo, aHi, aChanged);
+                markAll(bMap, bLo, bHi, bChanged);
+                continue;
+            }
+
+            long split = middleSnake(ca, aLo, aHi, cb, bLo, bHi, v1, v2, tooExpensive);
+            int x = aLo + (int) (split >>> 32);
+            int y = bLo + (int) split;
+            if (split < 0 || (x == aLo && y == bLo) || (x == aHi && y == bHi)) {
+                // Разбиение не сокращает задачу - считаем диапазон полностью измененным
+                markAll(aMap, aLo, aHi, aChanged);
+                markAll(bMap, bLo, bHi, bChanged);
+                continue;
+            }
+            stack.push(new int[]{x, aHi, y, bHi});
+            stack.push(new int[]{aLo, x, bLo, y});
+        }
+    }
+
+    /**
+     * Находит точку разбиения на "среднем змее" одновременным поиском
+     * с начала и с конца диапазонов.
+     *
+     * @return Упакованные относительные координаты (x << 32 | y) или -1, если путь не найден.
+     */
+    private static long middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                    int[] v1, int[] v2, int tooExpensive) {
+        int len1 = aHi - aLo;
+        int len2 = bHi - bLo;
+        int maxD = (len1 + len2 + 1) / 2;
+        int vOffset = maxD;
+        int vLength = 2 * maxD + 2;
+        Arrays.fill(v1, 0, vLength, -1);
+        Arrays.fill(v2, 0, vLength, -1);
+        v1[vOffset + 1] = 0;
+        v2[vOffset + 1] = 0;
+
+        int delta = len1 - len2;
+        // При нечетной разнице длин пересечение проверяется на прямом проходе, иначе - на обратном
+        boolean front = (delta % 2 != 0);
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        long furthest = -1;
+        int furthestSum = -1;
+
+        for (int d = 0; d < maxD; d++) {
+            if (d >= tooExpensive && furthest >= 0) {
+                return furthest;
+            }
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k1Offset = vOffset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])) {
+                    x1 = v1[k1Offset + 1];
+                } else {
+                    x1 = v1[k1Offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < len1 && y1 < len2 && a[aLo + x1] == b[bLo + y1]) {
+                    x1++;
+                    y1++;
+                }
+                v1[k1Offset] = x1;
+                if (x1 <= len1 && y1 >= 0 && y1 <= len2 && x1 + y1 > furthestSum) {
+                    furthestSum = x1 + y1;
+                    furthest = ((long) x1 << 32) | y1;
+                }
+                if (x1 > len1) {
+                    k1end += 2;
+                } else if (y1 > len2) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2Offset = vOffset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1) {
+                        int x2 = len1 - v2[k2Offset];
+                        if (x1 >= x2) {
+                            return ((long) x1 << 32) | y1;
+                        }
+                    }
+                }
+            }
+
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k2Offset = vOffset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])) {
+                    x2 = v2[k2Offset + 1];
+                } else {
+                    x2 = v2[k2Offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < len1 && y2 < len2 && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+                    x2++;
+                    y2++;
+                }
+                v2[k2Offset] = x2;
+                if (x2 > len1) {
+                    k2end += 2;
+                } else if (y2 > len2) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1Offset = vOffset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1) {
+                        int x1 = v1[k1Offset];
+                        int y1 = vOffset + x1 - k1Offset;
+                        if (x1 >= len1 - x2) {
+                            return ((long) x1 << 32) | y1;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Порог в духе GNU diff: примерно sqrt(N + M), но не меньше {@link #MIN_TOO_EXPENSIVE}.
+     */
+    private static int tooExpensive(int total) {
+        int limit = 1;
+        for (int diags = total + 3; diags != 0; diags >>= 2) {
+            limit <<= 1;
+        }
+        return Math.max(MIN_TOO_EXPENSIVE, limit);
+    }
+
+    private static long[] presence(int[] ids, int start, int end) {
+        int max = 0;
+        for (int i = start; i < end; i++) {
+            if (ids[i] > max) max = ids[i];
+        }
+        long[] bits = new long[(max >>> 6) + 1];
+        for (int i = start; i < end; i++) {
+            bits[ids[i] >>> 6] |= 1L << ids[i];
+        }
+        return bits;
+    }
+
+    private static boolean contains(long[] bits, int id) {
+        int word = id >>> 6;
+        return word < bits.length && (bits[word] & (1L << id)) != 0;
+    }
+
+    private static void markAll(int[] map, int from, int to, boolean[] changed) {
+        for (int k = from; k < to; k++) {
+            changed[map[k]] = true;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import org.treesitter.TSLanguage;
+import org.treesitter.TSParser;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Ограниченный пул нативных парсеров tree-sitter.
+ * <p>
+ * TSParser не потокобезопасен, а индексация и поиск выполняются на виртуальных потоках:
+ * ThreadLocal на каждый виртуальный поток создавал бы новый нативный парсер на каждый файл.
+ * Пул выдаёт парсер на время одного разбора и принимает его обратно. Число одновременных
+ * разборов ограничено семафором по числу ядер, поэтому парсеров каждого языка никогда не
+ * больше этого числа; чтение файлов при этом остаётся на виртуальных потоках без ограничения.
+ * <p>
+ * Нативная память парсера освобождается только сборщиком мусора, поэтому созданные парсеры
+ * не выбрасываются, а учитываются: число живых парсеров и оценка занимаемой ими памяти.
+ */
+final class ParserPool {
+
+    /**
+     * Оценка нативной памяти одного парсера после разбора типичного файла
+     * (стек, лексер и пулы поддеревьев; замер RSS на Java-файле около 500 строк).
+     */
+    static final long PARSER_NATIVE_BYTES_ESTIMATE = 320 * 1024;
+
+    private final int parallelism;
+    private final Semaphore permits;
+    private final Function<String, TSLanguage> languages;
+    private final Map<String, Queue<TSParser>> idle = new ConcurrentHashMap<>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    ParserPool(int parallelism, Function<String, TSLanguage> languages) {
+        this.parallelism = parallelism;
+        this.permits = new Semaphore(parallelism);
+        this.languages = languages;
+    }
+
+    /**
+     * Выполняет действие с парсером указанного языка. Парсер возвращается в пул после действия.
+     * Если все разрешения заняты, поток ждёт освобождения.
+     *
+     * @throws CancellationException если ожидание парсера прервано
+     */
+    <T> T withParser(String langId, Function<TSParser, T> action) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a parser");
+        }
+        try {
+            Queue<TSParser> queue = idle.computeIfAbsent(langId, k -> new ConcurrentLinkedQueue<>());
+            TSParser parser = queue.poll();
+            if (parser == null) {
+                parser = newParser(langId);
+            }
+            try {
+                return action.apply(parser);
+            } catch (RuntimeException | Error e) {
+                // Прерванный разбор оставляет состояние, которое помешает следующему
+                parser.reset();
+                throw e;
+            } finally {
+                queue.offer(parser);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private TSParser newParser(String langId) {
+        TSParser parser = new TSParser();
+        parser.setLanguage(languages.apply(langId));
+        created.incrementAndGet();
+        return parser;
+    }
+
+    /**
+     * Текущее состояние пула.
+     */
+    TreeSitterManager.ParserStats stats() {
+        int idleCount = 0;
+        for (Queue<TSParser> queue : idle.values()) {
+            idleCount += queue.size();
+        }
+        int live = created.get();
+        return new TreeSitterManager.ParserStats(parallelism, live, idleCount,
+                parallelism - permits.availablePermits(), live * PARSER_NATIVE_BYTES_ESTIMATE);
+    }
+}
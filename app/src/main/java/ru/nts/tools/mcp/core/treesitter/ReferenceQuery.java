@@ -0,0 +1,120 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import org.treesitter.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Скомпилированный tree-sitter запрос, находящий узлы-идентификаторы
+ * ({@link SymbolExtractor#REFERENCE_NODE_TYPES}) одного языка.
+ * <p>
+ * Обход дерева и отбор узлов по типу выполняются в нативном коде: в Java
+ * возвращаются только идентификаторы, а не каждый узел дерева. Текстовый предикат
+ * (совпадение имени) проверяется по байтам UTF-8 без создания строк.
+ * <p>
+ * Запрос неизменяем и используется из разных потоков; курсор создаётся на каждый обход.
+ */
+final class ReferenceQuery {
+
+    private static final Map<String, Optional<ReferenceQuery>> CACHE = new ConcurrentHashMap<>();
+
+    private final TSQuery query;
+
+    /**
+     * Индекс типа узла в {@link SymbolExtractor#REFERENCE_NODE_TYPES} по номеру захвата.
+     */
+    private final int[] kindByCapture;
+
+    private ReferenceQuery(TSQuery query, int[] kindByCapture) {
+        this.query = query;
+        this.kindByCapture = kindByCapture;
+    }
+
+    /**
+     * Получатель найденного идентификатора.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        void visit(TSNode node, int kind);
+    }
+
+    /**
+     * Запрос для языка (компилируется один раз). Пусто, если в грамматике нет
+     * ни одного из типов идентификаторов.
+     */
+    static Optional<ReferenceQuery> forLanguage(String langId) {
+        return CACHE.computeIfAbsent(langId, ReferenceQuery::compile);
+    }
+
+    private static Optional<ReferenceQuery> compile(String langId) {
+        TSLanguage language = TreeSitterManager.getInstance().getLanguage(langId);
+        List<String> types = SymbolExtractor.REFERENCE_NODE_TYPES;
+        StringBuilder source = new StringBuilder();
+        for (String type : types) {
+            // Тип, которого нет в грамматике, делает невалидным весь запрос
+            if (language.symbolForName(type, true) != 0) {
+                source.append('(').append(type).append(") @").append(type).append('\n');
+            }
+        }
+        if (source.isEmpty()) {
+            return Optional.empty();
+        }
+
+        TSQuery query = new TSQuery(language, source.toString());
+        int[] kindByCapture = new int[query.getCaptureCount()];
+        for (int i = 0; i < kindByCapture.length; i++) {
+            kindByCapture[i] = types.indexOf(query.getCaptureNameForId(i));
+        }
+        return Optional.of(new ReferenceQuery(query, kindByCapture));
+    }
+
+    /**
+     * Обходит все идентификаторы дерева в порядке их положения в файле.
+     */
+    void forEach(TSNode root, Visitor visitor) {
+        TSQueryCursor cursor = new TSQueryCursor();
+        cursor.exec(query, root);
+        TSQueryMatch match = new TSQueryMatch();
+        while (cursor.nextMatch(match)) {
+            for (TSQueryCapture capture : match.getCaptures()) {
+                visitor.visit(capture.getNode(), kindByCapture[capture.getIndex()]);
+            }
+        }
+    }
+
+    /**
+     * Обходит идентификаторы с заданным текстом.
+     *
+     * @param name UTF-8 байты искомого имени
+     */
+    void forEachNamed(TSNode root, SourceText source, byte[] name, Visitor visitor) {
+        byte[] bytes = source.bytes();
+        forEach(root, (node, kind) -> {
+            int start = node.getStartByte();
+            int end = node.getEndByte();
+            if (end - start == name.length && end <= bytes.length
+                    && Arrays.equals(bytes, start, end, name, 0, name.length)) {
+                visitor.visit(node, kind);
+            }
+        });
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кэш с сегментированным LRU (SLRU) и ограничением по суммарному весу записей.
+ * <p>
+ * Новая запись попадает в испытательный сегмент, повторное обращение переводит её
+ * в защищённый. Вытеснение начинается с самых старых записей испытательного сегмента,
+ * поэтому однократный проход по множеству файлов (поиск, индексация) не вымывает
+ * рабочий набор, к которому обращаются повторно. Защищённый сегмент занимает не больше
+ * {@link #PROTECTED_SHARE} бюджета, излишек возвращается в испытательный.
+ * <p>
+ * Все операции выполняются под блокировкой кэша; веса записей не меняются после вставки.
+ */
+final class SegmentedLruCache<K, V> {
+
+    /**
+     * Доля бюджета, доступная защищённому сегменту.
+     */
+    static final double PROTECTED_SHARE = 0.8;
+
+    private final long maxWeight;
+    private final long maxProtectedWeight;
+    private final ToLongFunction<V> weigher;
+
+    /**
+     * Оба сегмента в порядке доступа: первый элемент - самый давний.
+     */
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(64, 0.75f, true);
+    private long probationWeight;
+    private long protectedWeight;
+
+    SegmentedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.maxProtectedWeight = (long) (maxWeight * PROTECTED_SHARE);
+        this.weigher = weigher;
+    }
+
+    /**
+     * Возвращает значение и отмечает обращение: запись из испытательного сегмента
+     * переходит в защищённый.
+     */
+    synchronized V get(K key) {
+        V value = protectedSegment.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value == null) {
+            return null;
+        }
+        long weight = weigher.applyAsLong(value);
+        probationWeight -= weight;
+        protectedSegment.put(key, value);
+        protectedWeight += weight;
+        demoteOverflow();
+        return value;
+    }
+
+    /**
+     * Возвращает значение без изменения порядка вытеснения.
+     */
+    synchronized V peek(K key) {
+        V value = protectedSegment.get(key);
+        return value != null ? value : probation.get(key);
+    }
+
+    /**
+     * Добавляет или заменяет запись. Замена сохраняет сегмент записи.
+     * Запись тяжелее всего бюджета не кэшируется (прежнее значение удаляется).
+     */
+    synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            remove(key);
+            return;
+        }
+        V old = protectedSegment.get(key);
+        if (old != null) {
+            protectedSegment.put(key, value);
+            protectedWeight += weight - weigher.applyAsLong(old);
+            demoteOverflow();
+        } else {
+            old = probation.put(key, value);
+            probationWeight += weight - (old != null ? weigher.applyAsLong(old) : 0);
+        }
+        evict(key);
+    }
+
+    /**
+     * Заменяет запись, только если текущее значение - expected (по ссылке).
+     */
+    synchronized boolean replace(K key, V expected, V value) {
+        if (peek(key) != expected || expected == null) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    synchronized V remove(K key) {
+        V value = protectedSegment.remove(key);
+        if (value != null) {
+            protectedWeight -= weigher.applyAsLong(value);
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            probationWeight -= weigher.applyAsLong(value);
+        }
+        return value;
+    }
+
+    synchronized void clear() {
+        probation.clear();
+        protectedSegment.clear();
+        probationWeight = 0;
+        protectedWeight = 0;
+    }
+
+    synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    synchronized long weight() {
+        return probationWeight + protectedWeight;
+    }
+
+    long maxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Переносит самые давние записи защищённого сегмента в испытательный.
+     */
+    private void demoteOverflow() {
+        Iterator<Map.Entry<K, V>> it = protectedSegment.entrySet().iterator();
+        while (protectedWeight > maxProtectedWeight && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            long weight = weigher.applyAsLong(eldest.getValue());
+            it.remove();
+            protectedWeight -= weight;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationWeight += weight;
+        }
+    }
+
+    /**
+     * Вытесняет записи, пока вес превышает бюджет: сначала испытательный сегмент,
+     * затем защищённый. Только что вставленная запись вытесняется последней.
+     */
+    private void evict(K inserted) {
+        evictFrom(probation, inserted, true);
+        evictFrom(protectedSegment, inserted, false);
+    }
+
+    private void evictFrom(LinkedHashMap<K, V> segment, K inserted, boolean isProbation) {
+        Iterator<Map.Entry<K, V>> it = segment.entrySet().iterator();
+        while (probationWeight + protectedWeight > maxWeight && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            if (eldest.getKey().equals(inserted)) {
+                continue;
+            }
+            long weight = weigher.applyAsLong(eldest.getValue());
+            it.remove();
+            if (isProbation) {
+                probationWeight -= weight;
+            } else {
+                protectedWeight -= weight;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import org.treesitter.TSNode;
+
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 представление исходного текста одного парсинга.
+ * <p>
+ * tree-sitter оперирует байтовыми смещениями, а контент хранится как String.
+ * Раньше каждое извлечение текста узла перекодировало весь файл в UTF-8,
+ * из-за чего обход дерева был квадратичным по размеру файла.
+ * Здесь байты кодируются один раз, а текст узла вырезается за O(длина узла):
+ * - ASCII-контент: байтовые смещения совпадают с символьными, используется substring
+ * - иначе: через карту байт -> символ, которая строится лениво при первом обращении
+ * <p>
+ * Последний использованный экземпляр запоминается для текущего потока, поэтому
+ * {@link #of(String)} для той же строки (по ссылке) не перекодирует её повторно.
+ */
+public final class SourceText {
+
+    private static final ThreadLocal<SoftReference<SourceText>> LAST = new ThreadLocal<>();
+
+    private final String content;
+    private byte[] bytes;
+    private boolean ascii;
+    private int[] byteToChar;
+
+    private SourceText(String content, byte[] bytes) {
+        this.content = content;
+        this.bytes = bytes;
+        this.ascii = bytes != null && bytes.length == content.length();
+    }
+
+    /**
+     * Возвращает представление для контента, переиспользуя последнее в текущем потоке.
+     */
+    public static SourceText of(String content) {
+        SoftReference<SourceText> ref = LAST.get();
+        SourceText last = ref != null ? ref.get() : null;
+        if (last != null && last.content == content) {
+            return last;
+        }
+        return remember(new SourceText(content, null));
+    }
+
+    /**
+     * Создаёт представление с уже закодированными байтами (например, из кэша деревьев).
+     *
+     * @param content контент
+     * @param utf8 байты контента в UTF-8 (не копируются и не должны изменяться)
+     */
+    public static SourceText of(String content, byte[] utf8) {
+        return remember(new SourceText(content, utf8));
+    }
+
+    private static SourceText remember(SourceText text) {
+        LAST.set(new SoftReference<>(text));
+        return text;
+    }
+
+    public String content() {
+        return content;
+    }
+
+    /**
+     * Байты контента в UTF-8. Не изменять.
+     */
+    public byte[] bytes() {
+        if (bytes == null) {
+            bytes = content.getBytes(StandardCharsets.UTF_8);
+            ascii = bytes.length == content.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Текст узла по его байтовым смещениям.
+     */
+    public String text(TSNode node) {
+        return text(node.getStartByte(), node.getEndByte());
+    }
+
+    /**
+     * Текст диапазона байт [startByte, endByte). Для некорректного диапазона - пустая строка.
+     */
+    public String text(int startByte, int endByte) {
+        byte[] b = bytes();
+        if (startByte < 0 || endByte > b.length || startByte >= endByte) {
+            return "";
+        }
+        if (ascii) {
+            return content.substring(startByte, endByte);
+        }
+        return content.substring(charOffset(startByte), charOffset(endByte));
+    }
+
+    /**
+     * Преобразует байтовое смещение UTF-8 в индекс символа (UTF-16) строки.
+     * Смещение внутри многобайтового символа округляется к его началу.
+     */
+    public int charOffset(int byteOffset) {
+        byte[] b = bytes();
+        if (ascii) {
+            return byteOffset;
+        }
+        int[] map = byteToChar;
+        if (map == null) {
+            map = buildByteToChar(b);
+            byteToChar = map;
+        }
+        return map[Math.max(0, Math.min(byteOffset, b.length))];
+    }
+
+    private static int[] buildByteToChar(byte[] b) {
+        int[] map = new int[b.length + 1];
+        int chars = 0;
+        int i = 0;
+        while (i < b.length) {
+            int lead = b[i] & 0xFF;
+            int len = lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+            int end = Math.min(i + len, b.length);
+            for (int k = i; k < end; k++) {
+                map[k] = chars;
+            }
+            // 4-байтовые последовательности - суррогатная пара в UTF-16
+            chars += len == 4 ? 2 : 1;
+            i = end;
+        }
+        map[b.length] = chars;
+        return map;
+    }
+}
@@ -28,7 +28,8 @@ import static ru.nts.tools.mcp.core.treesitter.SymbolExtractorUtils.*;
 
 /**
  * Извлекает символы из AST дерева с помощью tree-sitter.
- * Использует прямой обход дерева для максимальной совместимости.
+ * Определения извлекаются обходом дерева через {@link TSTreeCursor}, ссылки ищутся
+ * скомпилированными запросами {@link ReferenceQuery}.
  */
 public final class SymbolExtractor {
 
@@ -65,37 +66,33 @@ public final class SymbolExtractor {
      */
     public List<SymbolInfo> extractDefinitions(TSTree tree, Path path, String content, String langId) {
         List<SymbolInfo> symbols = new ArrayList<>();
-        TSNode root = tree.getRootNode();
-
-        extractSymbolsRecursive(root, path, content, langId, null, symbols);
-
-        return symbols;
-    }
-
-    /**
-     * Рекурсивно обходит AST и извлекает символы.
-     */
-    private void extractSymbolsRecursive(TSNode node, Path path, String content,
-                                          String langId, String parentName,
-                                          List<SymbolInfo> symbols) {
-        String nodeType = node.getType();
-
-        // Извлекаем символ если это определение
-        Optional<SymbolInfo> symbol = extractSymbolFromNode(node, nodeType, path, content, langId, parentName);
-        symbol.ifPresent(symbols::add);
-
-        // Определяем новое имя родителя для вложенных символов
-        String newParentName = parentName;
-        if (symbol.isPresent() && isContainerSymbol(symbol.get().kind())) {
-            newParentName = symbol.get().name();
+        LanguageSymbolExtractor extractor = extractors.get(langId);
+        if (extractor == null) {
+            return symbols;
         }
 
-        // Рекурсивно обходим дочерние узлы
-        int childCount = node.getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            TSNode child = node.getChild(i);
-            if (child != null && !child.isNull()) {
-                extractSymbolsRecursive(child, path, content, langId, newParentName, symbols);
+        // Обход в прямом порядке курсором: переходы между узлами выполняются в нативном коде.
+        // parents[depth] - имя ближайшего контейнера для узлов на глубине depth
+        TSTreeCursor cursor = new TSTreeCursor(tree.getRootNode());
+        List<String> parents = new ArrayList<>();
+        String parentName = null;
+        while (true) {
+            TSNode node = cursor.currentNode();
+            Optional<SymbolInfo> symbol = extractor.extractSymbol(node, node.getType(), path, content, parentName);
+            symbol.ifPresent(symbols::add);
+
+            if (cursor.gotoFirstChild()) {
+                parents.add(parentName);
+                if (symbol.isPresent() && isContainerSymbol(symbol.get().kind())) {
+                    parentName = symbol.get().name();
+                }
+                continue;
+            }
+            while (!cursor.gotoNextSibling()) {
+                if (!cursor.gotoParent()) {
+                    return symbols;
+                }
+                parentName = parents.removeLast();
             }
         }
     }
@@ -114,18 +111,6 @@ public final class SymbolExtractor {
                 kind == SymbolKind.NAMESPACE;
     }
 
-    /**
-     * Извлекает символ из узла AST.
-     */
-    private Optional<SymbolInfo> extractSymbolFromNode(TSNode node, String nodeType, Path path, String content,
-                                                        String langId, String parentName) {
-        LanguageSymbolExtractor extractor = extractors.get(langId);
-        if (extractor != null) {
-            return extractor.extractSymbol(node, nodeType, path, content, parentName);
-        }
-        return Optional.empty();
-    }
-
     // ===================== УТИЛИТЫ =====================
 
     /**
@@ -140,39 +125,57 @@ public final class SymbolExtractor {
                 .min((a, b) -> Integer.compare(a.location().lineSpan(), b.location().lineSpan()));
     }
 
+    /**
+     * Типы узлов-идентификаторов, которые считаются ссылками на символ.
+     * Индекс в списке используется как компактный код вида узла в {@link SymbolIndex}.
+     */
+    public static final List<String> REFERENCE_NODE_TYPES = List.of(
+            "identifier",
+            "simple_identifier",
+            "type_identifier",
+            "property_identifier",
+            "field_identifier"
+    );
+
+    /**
+     * Получатель вхождений идентификаторов при обходе дерева.
+     */
+    @FunctionalInterface
+    public interface IdentifierVisitor {
+        /**
+         * @param name      текст идентификатора
+         * @param kind      индекс типа узла в {@link #REFERENCE_NODE_TYPES}
+         * @param startByte смещение начала в байтах UTF-8
+         * @param row       строка (0-based)
+         * @param column    колонка в байтах (0-based)
+         */
+        void visit(String name, int kind, int startByte, int row, int column);
+    }
+
     /**
      * Находит все ссылки на символ в файле.
      */
     public List<Location> findReferences(TSTree tree, Path path, String content,
                                           String langId, String symbolName) {
         List<Location> references = new ArrayList<>();
-        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
-        findReferencesRecursive(tree.getRootNode(), path, contentBytes, symbolName, references);
+        ReferenceQuery.forLanguage(langId).ifPresent(query ->
+                query.forEachNamed(tree.getRootNode(), SourceText.of(content),
+                        symbolName.getBytes(StandardCharsets.UTF_8),
+                        (node, kind) -> references.add(nodeToLocation(node, path))));
         return references;
     }
 
-    private void findReferencesRecursive(TSNode node, Path path, byte[] contentBytes,
-                                          String symbolName, List<Location> references) {
-        String nodeType = node.getType();
-
-        if (nodeType.equals("identifier") ||
-                nodeType.equals("simple_identifier") ||
-                nodeType.equals("type_identifier") ||
-                nodeType.equals("property_identifier") ||
-                nodeType.equals("field_identifier")) {
-
-            String text = getNodeTextFromBytes(node, contentBytes);
-            if (text.equals(symbolName)) {
-                references.add(nodeToLocation(node, path));
-            }
-        }
-
-        int childCount = node.getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            TSNode child = node.getChild(i);
-            if (child != null && !child.isNull()) {
-                findReferencesRecursive(child, path, contentBytes, symbolName, references);
-            }
-        }
+    /**
+     * Обходит все идентификаторы файла за один проход (для индекса использований).
+     */
+    public void collectIdentifiers(TSTree tree, SourceText source, String langId, IdentifierVisitor visitor) {
+        ReferenceQuery.forLanguage(langId).ifPresent(query ->
+                query.forEach(tree.getRootNode(), (node, kind) -> {
+                    String text = source.text(node);
+                    if (!text.isEmpty()) {
+                        TSPoint start = node.getStartPoint();
+                        visitor.visit(text, kind, node.getStartByte(), start.getRow(), start.getColumn());
+                    }
+                }));
     }
 }
@@ -50,10 +50,10 @@ public final class SymbolExtractorUtils {
     /**
      * Извлекает текст узла из содержимого файла (используя байтовые смещения).
      * КРИТИЧНО: tree-sitter возвращает байтовые смещения, а не символьные!
+     * Контент кодируется в UTF-8 один раз на строку (см. {@link SourceText}).
      */
     public static String getNodeText(TSNode node, String content) {
-        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
-        return getNodeTextFromBytes(node, contentBytes);
+        return SourceText.of(content).text(node);
     }
 
     /**
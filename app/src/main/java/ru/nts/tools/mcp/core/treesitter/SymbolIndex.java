@@ -15,10 +15,14 @@
  */
 package ru.nts.tools.mcp.core.treesitter;
 
+import ru.nts.tools.mcp.core.CancellationToken;
+import ru.nts.tools.mcp.core.PathSanitizer;
+import ru.nts.tools.mcp.core.ProjectWalker;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.Location;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.SymbolKind;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
@@ -28,6 +32,7 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.CRC32C;
 
 /**
@@ -36,10 +41,17 @@ import java.util.zip.CRC32C;
  * Обеспечивает O(1) поиск символов по имени вместо сканирования файлов.
  * Индексация происходит асинхронно при инициализации проекта.
  * <p>
+ * Хранит два индекса:
+ * - определения (имя -> объявления символов)
+ * - использования (идентификатор -> файл -> вхождения), по которому
+ *   references/rename/change_signature работают без обхода и перепарсинга проекта
+ * <p>
  * Особенности:
  * - Асинхронная индексация с прогрессом
- * - Инкрементальное обновление при изменении файлов
+ * - Инкрементальное обновление при изменении файлов (ленивое, перед запросом)
  * - CRC-based инвалидация
+ * - Тёплый старт: индекс сохраняется на диск ({@link SymbolIndexStore}),
+ *   при повторном запуске переиндексируются только изменённые файлы
  * - Thread-safe операции
  */
 public final class SymbolIndex {
@@ -62,31 +74,81 @@ public final class SymbolIndex {
     private static final Duration INDEXING_TIMEOUT = Duration.ofMinutes(2);
 
     /**
-     * Директории, которые пропускаем при индексации.
+     * Окно "гоночного" mtime: файлы, изменённые незадолго до сохранения индекса,
+     * могли быть перезаписаны в пределах гранулярности mtime файловой системы,
+     * поэтому при тёплом старте их актуальность дополнительно проверяется по CRC.
      */
-    private static final Set<String> SKIP_DIRECTORIES = Set.of(
-            ".git", ".svn", ".hg", ".idea", ".vscode",
-            "node_modules", "build", "target", "dist", "out",
-            "__pycache__", ".gradle", "bin", "obj"
-    );
+    private static final long RACY_MTIME_WINDOW_MS = 2000;
 
     // ==================== ИНДЕКСЫ ====================
 
     /**
-     * Главный индекс: имя символа -> список записей.
+     * Главный индекс: определения символов по файлам и по именам ({@link SymbolTable}).
+     */
+    private final SymbolTable definitions = new SymbolTable();
+
+    /**
+     * Индекс имён для поиска по проекту (workspace symbols). Изменения набора имён в
+     * {@link #definitions} накладываются поверх последнего построенного дерева; когда
+     * их накапливается больше {@link #NAME_OVERLAY_REBUILD_THRESHOLD}, дерево
+     * перестраивается в фоне (не больше одного построения одновременно).
+     */
+    private volatile NameTrieSnapshot nameTrie = null;
+    private final AtomicBoolean nameTrieRebuilding = new AtomicBoolean();
+    private static final int NAME_OVERLAY_REBUILD_THRESHOLD = 1024;
+
+    /**
+     * Сколько имён каждого вида совпадения рассматривается при поиске по проекту.
      */
-    private final ConcurrentHashMap<String, CopyOnWriteArrayList<IndexedSymbol>> symbolsByName = new ConcurrentHashMap<>();
+    private static final int MAX_CANDIDATE_NAMES = 2000;
 
     /**
-     * Обратный индекс: путь файла -> множество имён символов (для инвалидации).
+     * Индекс использований: идентификатор -> файл -> упакованные вхождения.
+     * На каждое вхождение {@link #OCCURRENCE_STRIDE} int: startByte, строка, колонка (0-based, байты),
+     * вид узла (индекс в {@link SymbolExtractor#REFERENCE_NODE_TYPES}).
      */
-    private final ConcurrentHashMap<Path, Set<String>> symbolNamesByFile = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Path, int[]>> referencesByName = new ConcurrentHashMap<>();
+
+    /**
+     * Обратный индекс использований: путь файла -> идентификаторы (для инвалидации).
+     */
+    private final ConcurrentHashMap<Path, Set<String>> referenceNamesByFile = new ConcurrentHashMap<>();
+
+    static final int OCCURRENCE_STRIDE = 4;
 
     /**
      * CRC файлов для проверки актуальности.
      */
     private final ConcurrentHashMap<Path, Long> fileCrcs = new ConcurrentHashMap<>();
 
+    /**
+     * Размер и mtime файлов на момент индексации (ключ актуальности персистентного индекса).
+     */
+    private final ConcurrentHashMap<Path, FileStamp> fileStamps = new ConcurrentHashMap<>();
+
+    /**
+     * Файлы, проиндексированные в пределах {@link #RACY_MTIME_WINDOW_MS} от своего mtime:
+     * их перезапись в тот же тик mtime не видна по размеру и mtime, поэтому перед
+     * поиском использований они сверяются по CRC.
+     */
+    private final Set<Path> racyFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Индекс изменён после последнего сохранения на диск.
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    /**
+     * Файлы, изменённые инструментами после индексации. Переиндексируются лениво перед запросом.
+     */
+    private final Set<Path> pendingFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Индекс покрывает проект не полностью (лимит файлов или таймаут).
+     * В этом случае поиск использований должен сканировать проект.
+     */
+    private volatile boolean truncated = false;
+
     /**
      * Корень проиндексированного проекта.
      */
@@ -110,8 +172,9 @@ public final class SymbolIndex {
     private final SymbolExtractor extractor = SymbolExtractor.getInstance();
 
     private SymbolIndex() {
-        // Shutdown hook для очистки executor
+        // Shutdown hook для сохранения индекса и очистки executor
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            persist();
             executor.shutdown();
             try {
                 if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -156,9 +219,15 @@ public final class SymbolIndex {
      * Возвращает количество проиндексированных символов.
      */
     public int getSymbolCount() {
-        return symbolsByName.values().stream()
-                .mapToInt(List::size)
-                .sum();
+        return definitions.size();
+    }
+
+    /**
+     * Возвращает статистику таблицы определений, включая оценку памяти на символ.
+     */
+    public SymbolStats getSymbolStats() {
+        return new SymbolStats(definitions.size(), definitions.nameCount(), getFileCount(),
+                definitions.estimatedBytes());
     }
 
     /**
@@ -179,7 +248,7 @@ public final class SymbolIndex {
         if (!indexing.compareAndSet(false, true)) {
             // Уже идёт индексация
             return CompletableFuture.completedFuture(
-                    new IndexingResult(false, 0, 0, Duration.ZERO, "Indexing already in progress"));
+                    new IndexingResult(false, 0, 0, 0, Duration.ZERO, "Indexing already in progress"));
         }
 
         Path normalizedRoot = projectRoot.toAbsolutePath().normalize();
@@ -188,12 +257,15 @@ public final class SymbolIndex {
         if (indexed.get() && normalizedRoot.equals(indexedRoot)) {
             indexing.set(false);
             return CompletableFuture.completedFuture(
-                    new IndexingResult(true, getFileCount(), getSymbolCount(), Duration.ZERO, "Already indexed"));
+                    result(true, Duration.ZERO, "Already indexed"));
         }
 
         return CompletableFuture.supplyAsync(() -> {
             try {
-                return indexProjectSync(normalizedRoot);
+                IndexingResult result = indexProjectSync(normalizedRoot);
+                // Итог с оценкой памяти на символ - в лог сервера
+                System.err.println("[SYMBOL_INDEX] " + result);
+                return result;
             } finally {
                 indexing.set(false);
             }
@@ -208,26 +280,41 @@ public final class SymbolIndex {
         indexedFilesCount.set(0);
 
         // Очищаем старый индекс
-        symbolsByName.clear();
-        symbolNamesByFile.clear();
+        definitions.clear();
+        referencesByName.clear();
+        referenceNamesByFile.clear();
         fileCrcs.clear();
+        fileStamps.clear();
+        racyFiles.clear();
+        pendingFiles.clear();
+        truncated = false;
         indexed.set(false);
         indexedRoot = projectRoot;
 
         try {
             // 1. Собираем файлы для индексации
-            List<Path> filesToIndex = collectFilesToIndex(projectRoot);
+            Map<Path, FileStamp> filesToIndex = collectFilesToIndex(projectRoot);
             totalFilesToIndex.set(filesToIndex.size());
 
             if (filesToIndex.isEmpty()) {
                 indexed.set(true);
-                return new IndexingResult(true, 0, 0,
+                return new IndexingResult(true, 0, 0, 0,
                         Duration.between(indexingStartTime, Instant.now()),
                         "No files to index");
             }
 
-            // 2. Параллельная индексация с таймаутом
-            List<CompletableFuture<Void>> futures = filesToIndex.stream()
+            // 2. Тёплый старт: восстанавливаем неизменённые файлы из персистентного индекса
+            SymbolIndexStore store = new SymbolIndexStore(PathSanitizer.getTaskRoot(), projectRoot);
+            SymbolIndexStore.Snapshot snapshot = store.load(projectRoot);
+            List<Path> staleFiles = restoreFromStore(snapshot, filesToIndex);
+            int restored = filesToIndex.size() - staleFiles.size();
+            if (snapshot.files().size() != restored) {
+                // Удалённые файлы нужно убрать из сохранённого индекса
+                dirty.set(true);
+            }
+
+            // 3. Параллельная индексация изменённых файлов с таймаутом
+            List<CompletableFuture<Void>> futures = staleFiles.stream()
                     .map(file -> CompletableFuture.runAsync(() -> indexFile(file), executor))
                     .toList();
 
@@ -236,80 +323,158 @@ public final class SymbolIndex {
                     .join();
 
             indexed.set(true);
+            persist();
 
             Duration elapsed = Duration.between(indexingStartTime, Instant.now());
-            return new IndexingResult(true, getFileCount(), getSymbolCount(), elapsed, "Success");
+            String message = restored > 0
+                    ? "Success (warm start: " + restored + " restored, " + staleFiles.size() + " reindexed)"
+                    : "Success";
+            return result(true, elapsed, message);
 
         } catch (CompletionException e) {
             // Таймаут или другая ошибка - частично проиндексировано
+            truncated = true;
             indexed.set(true);
             Duration elapsed = Duration.between(indexingStartTime, Instant.now());
             String message = e.getCause() instanceof java.util.concurrent.TimeoutException
                     ? "Timeout (partial indexing)"
                     : "Partial indexing: " + e.getMessage();
-            return new IndexingResult(true, getFileCount(), getSymbolCount(), elapsed, message);
+            return result(true, elapsed, message);
         } catch (Exception e) {
             Duration elapsed = Duration.between(indexingStartTime, Instant.now());
-            return new IndexingResult(false, getFileCount(), getSymbolCount(), elapsed,
-                    "Error: " + e.getMessage());
+            return result(false, elapsed, "Error: " + e.getMessage());
         }
     }
 
+    private IndexingResult result(boolean success, Duration elapsed, String message) {
+        SymbolStats stats = getSymbolStats();
+        return new IndexingResult(success, getFileCount(), stats.symbols(), stats.bytesPerSymbol(), elapsed, message);
+    }
+
     /**
-     * Собирает файлы для индексации.
+     * Собирает файлы для индексации вместе с их размером и mtime.
      */
-    private List<Path> collectFilesToIndex(Path root) {
-        List<Path> files = new ArrayList<>();
+    private Map<Path, FileStamp> collectFilesToIndex(Path root) {
+        Map<Path, FileStamp> files = new LinkedHashMap<>();
+
+        try (Stream<ProjectWalker.Entry> walk = indexableFiles(root, root)) {
+            for (Iterator<ProjectWalker.Entry> it = walk.iterator(); it.hasNext(); ) {
+                if (files.size() >= MAX_FILES_TO_INDEX) {
+                    truncated = true;
+                    break;
+                }
+                ProjectWalker.Entry entry = it.next();
+                files.put(entry.path(), FileStamp.of(entry.attrs()));
+            }
+        }
 
-        try {
-            Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), 20,
-                    new SimpleFileVisitor<>() {
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                            if (files.size() >= MAX_FILES_TO_INDEX) {
-                                return FileVisitResult.TERMINATE;
-                            }
-
-                            // Проверяем размер
-                            if (attrs.size() > MAX_FILE_SIZE_BYTES) {
-                                return FileVisitResult.CONTINUE;
-                            }
-
-                            // Проверяем, поддерживается ли язык
-                            if (LanguageDetector.detect(file).isPresent()) {
-                                files.add(file);
-                            }
-
-                            return FileVisitResult.CONTINUE;
-                        }
+        return files;
+    }
 
-                        @Override
-                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                            String dirName = dir.getFileName().toString();
-                            if (SKIP_DIRECTORIES.contains(dirName) || dirName.startsWith(".")) {
-                                return FileVisitResult.SKIP_SUBTREE;
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
+    /**
+     * Файлы под scope, которые попали бы в индекс при полной индексации корня root.
+     */
+    private static Stream<ProjectWalker.Entry> indexableFiles(Path root, Path scope) {
+        return projectWalker(root)
+                .filter((file, attrs) -> file.startsWith(scope) && attrs.size() <= MAX_FILE_SIZE_BYTES
+                        && LanguageDetector.detect(file).isPresent())
+                .entries();
+    }
 
-                        @Override
-                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
+    /**
+     * Обход проекта с теми же правилами, что и при полной индексации:
+     * .gitignore, стандартные директории сборки и скрытые директории пропускаются.
+     */
+    private static ProjectWalker projectWalker(Path root) {
+        return ProjectWalker.create(root)
+                .maxDepth(20)
+                .skipHidden(true);
+    }
+
+    /**
+     * Восстанавливает символы файлов, не изменившихся с момента сохранения индекса.
+     *
+     * @return файлы, которые нужно переиндексировать
+     */
+    private List<Path> restoreFromStore(SymbolIndexStore.Snapshot snapshot, Map<Path, FileStamp> files) {
+        if (snapshot.files().isEmpty()) {
+            return new ArrayList<>(files.keySet());
+        }
+
+        List<Path> stale = new ArrayList<>();
+
+        for (Map.Entry<Path, FileStamp> e : files.entrySet()) {
+            Path file = e.getKey();
+            FileStamp stamp = e.getValue();
+            SymbolIndexStore.FileEntry entry = snapshot.files().get(file);
+            if (entry == null || entry.size() != stamp.size() || entry.mtime() != stamp.mtime()
+                    || (entry.mtime() >= snapshot.savedAt() - RACY_MTIME_WINDOW_MS && !crcMatches(file, entry.crc()))) {
+                stale.add(file);
+                continue;
+            }
+
+            definitions.put(file, entry.crc(), entry.symbols());
+            putReferences(file, entry.references());
+            fileCrcs.put(file, entry.crc());
+            fileStamps.put(file, stamp);
+            markIfRacy(file, stamp);
+            indexedFilesCount.incrementAndGet();
+        }
+
+        return stale;
+    }
+
+    private boolean crcMatches(Path file, long expectedCrc) {
+        try {
+            CRC32C crc = new CRC32C();
+            crc.update(Files.readAllBytes(file));
+            return crc.getValue() == expectedCrc;
         } catch (IOException e) {
-            // Игнорируем ошибки обхода
+            return false;
+        }
+    }
+
+    /**
+     * Сохраняет индекс на диск, если он изменился после последнего сохранения.
+     * Ошибки записи не критичны: при следующем запуске индекс будет построен заново.
+     */
+    private void persist() {
+        Path root = indexedRoot;
+        if (root == null || !indexed.get() || !dirty.compareAndSet(true, false)) {
+            return;
         }
 
-        return files;
+        Map<Path, Map<String, int[]>> referencesByFile = new HashMap<>();
+        referencesByName.forEach((name, byFile) -> byFile.forEach((file, occurrences) ->
+                referencesByFile.computeIfAbsent(file, k -> new HashMap<>()).put(name, occurrences)));
+
+        List<SymbolIndexStore.FileEntry> entries = new ArrayList<>(fileStamps.size());
+        fileStamps.forEach((file, stamp) -> {
+            Long crc = fileCrcs.get(file);
+            if (crc != null) {
+                entries.add(new SymbolIndexStore.FileEntry(file, stamp.size(), stamp.mtime(), crc,
+                        definitions.symbolsOf(file),
+                        referencesByFile.getOrDefault(file, Map.of())));
+            }
+        });
+
+        try {
+            new SymbolIndexStore(PathSanitizer.getTaskRoot(), root).save(root, entries);
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+        }
     }
 
     /**
      * Индексирует один файл.
      */
     private void indexFile(Path file) {
+        Path normalizedPath = file.toAbsolutePath().normalize();
+        FileStamp stamp = null;
         try {
-            Path normalizedPath = file.toAbsolutePath().normalize();
+            // Снимаем размер и mtime до чтения: если файл изменится во время индексации,
+            // при следующем запуске он будет переиндексирован
+            stamp = FileStamp.of(Files.readAttributes(normalizedPath, BasicFileAttributes.class));
 
             // Парсим файл
             TreeSitterManager.ParseResult parseResult = treeManager.getCachedOrParseWithContent(normalizedPath);
@@ -323,10 +488,9 @@ public final class SymbolIndex {
                     parseResult.tree(), normalizedPath, parseResult.content(), parseResult.langId());
 
             // Добавляем в индекс
-            Set<String> symbolNames = ConcurrentHashMap.newKeySet();
-
+            List<IndexedSymbol> indexedSymbols = new ArrayList<>(symbols.size());
             for (SymbolInfo symbol : symbols) {
-                IndexedSymbol indexed = new IndexedSymbol(
+                indexedSymbols.add(new IndexedSymbol(
                         symbol.name(),
                         symbol.kind(),
                         normalizedPath,
@@ -334,26 +498,143 @@ public final class SymbolIndex {
                         symbol.location().endLine(),
                         symbol.parentName(),
                         crc
-                );
-
-                symbolsByName
-                        .computeIfAbsent(symbol.name(), k -> new CopyOnWriteArrayList<>())
-                        .add(indexed);
-
-                symbolNames.add(symbol.name());
+                ));
             }
-
-            symbolNamesByFile.put(normalizedPath, symbolNames);
+            definitions.put(normalizedPath, crc, indexedSymbols);
+
+            // Индекс использований: все идентификаторы файла за один обход дерева
+            Map<String, OccurrenceList> occurrences = new HashMap<>();
+            extractor.collectIdentifiers(parseResult.tree(), parseResult.source(), parseResult.langId(),
+                    (name, kind, startByte, row, column) -> occurrences
+                            .computeIfAbsent(name, k -> new OccurrenceList())
+                            .add(startByte, row, column, kind));
+            Map<String, int[]> references = new HashMap<>(occurrences.size() * 2);
+            occurrences.forEach((name, list) -> references.put(name, list.toArray()));
+            putReferences(normalizedPath, references);
+
+            fileStamps.put(normalizedPath, stamp);
+            markIfRacy(normalizedPath, stamp);
+            dirty.set(true);
 
         } catch (Exception e) {
-            // Игнорируем ошибки индексации отдельных файлов
+            // Игнорируем ошибки индексации отдельных файлов. Версию запоминаем, чтобы файл,
+            // который не разбирается, не считался новым при каждой проверке актуальности
+            if (stamp != null) {
+                fileStamps.put(normalizedPath, stamp);
+            }
         } finally {
             indexedFilesCount.incrementAndGet();
         }
     }
 
+    private void markIfRacy(Path file, FileStamp stamp) {
+        if (stamp.mtime() >= System.currentTimeMillis() - RACY_MTIME_WINDOW_MS) {
+            racyFiles.add(file);
+        }
+    }
+
+    private void putReferences(Path file, Map<String, int[]> references) {
+        Set<String> names = ConcurrentHashMap.newKeySet(references.size());
+        references.forEach((name, occurrences) -> {
+            referencesByName.computeIfAbsent(name, k -> new ConcurrentHashMap<>()).put(file, occurrences);
+            names.add(name);
+        });
+        referenceNamesByFile.put(file, names);
+    }
+
     // ==================== ПОИСК ====================
 
+    /**
+     * Проверяет, может ли индекс отвечать на поиск использований в проекте:
+     * индекс построен, покрывает корень и не был обрезан лимитом файлов или таймаутом.
+     *
+     * @param projectRoot корень проекта (или его поддиректория)
+     */
+    public boolean coversProject(Path projectRoot) {
+        Path root = indexedRoot;
+        return root != null && indexed.get() && !indexing.get() && !truncated
+                && projectRoot.toAbsolutePath().normalize().startsWith(root);
+    }
+
+    /**
+     * Ищет все использования идентификатора в файлах под указанным корнем.
+     * <p>
+     * Перед ответом проиндексированные файлы под корнем сверяются с диском по размеру
+     * и mtime (недавно проиндексированные - ещё и по CRC). Изменённые в обход
+     * инструментов и удалённые файлы переиндексируются здесь же, поэтому ответ
+     * соответствует диску без обхода проекта. Новые файлы попадают в индекс через
+     * {@link #markFileChanged(Path)}.
+     *
+     * @param symbolName имя идентификатора
+     * @param root       корень поиска
+     * @return локации вхождений (колонки 1-based, в байтах, как у tree-sitter)
+     */
+    public List<Location> findReferences(String symbolName, Path root) {
+        refreshPendingFiles();
+        Path normalizedRoot = root.toAbsolutePath().normalize();
+        reindexStaleFiles(normalizedRoot);
+
+        Map<Path, int[]> postings = referencesByName.get(symbolName);
+        if (postings == null) {
+            return Collections.emptyList();
+        }
+
+        int nameLength = symbolName.getBytes(StandardCharsets.UTF_8).length;
+        List<Location> locations = new ArrayList<>();
+        postings.forEach((file, occurrences) -> {
+            if (!file.startsWith(normalizedRoot)) {
+                return;
+            }
+            for (int i = 0; i < occurrences.length; i += OCCURRENCE_STRIDE) {
+                int line = occurrences[i + 1] + 1;
+                int column = occurrences[i + 2] + 1;
+                locations.add(Location.singleLine(file, line, column, column + nameLength));
+            }
+        });
+        return locations;
+    }
+
+    /**
+     * Переиндексирует проиндексированные файлы под scope, которые на диске не совпадают
+     * с индексом (изменены или удалены). Проверка - stat каждого файла, без обхода проекта.
+     */
+    private void reindexStaleFiles(Path scope) {
+        for (Map.Entry<Path, FileStamp> entry : fileStamps.entrySet()) {
+            Path file = entry.getKey();
+            if (!file.startsWith(scope)) {
+                continue;
+            }
+            CancellationToken.checkCurrent();
+            FileStamp current;
+            try {
+                current = FileStamp.of(Files.readAttributes(file, BasicFileAttributes.class));
+            } catch (IOException e) {
+                current = null; // удалён
+            }
+            if (current == null || !current.equals(entry.getValue()) || !racyCrcMatches(file, current)) {
+                invalidateFile(file);
+            }
+        }
+    }
+
+    /**
+     * Сверяет по CRC файл, проиндексированный в окне гоночного mtime. Когда mtime
+     * выходит из окна, дальнейшие изменения видны по mtime и проверка снимается.
+     */
+    private boolean racyCrcMatches(Path file, FileStamp stamp) {
+        if (!racyFiles.contains(file)) {
+            return true;
+        }
+        Long crc = fileCrcs.get(file);
+        if (crc == null || !crcMatches(file, crc)) {
+            return false;
+        }
+        if (stamp.mtime() < System.currentTimeMillis() - RACY_MTIME_WINDOW_MS) {
+            racyFiles.remove(file);
+        }
+        return true;
+    }
+
     /**
      * Ищет определения символа по имени.
      *
@@ -361,8 +642,9 @@ public final class SymbolIndex {
      * @return список локаций определений
      */
     public List<Location> findDefinitions(String symbolName) {
-        List<IndexedSymbol> symbols = symbolsByName.get(symbolName);
-        if (symbols == null || symbols.isEmpty()) {
+        refreshPendingFiles();
+        List<IndexedSymbol> symbols = definitions.lookup(symbolName);
+        if (symbols.isEmpty()) {
             return Collections.emptyList();
         }
 
@@ -380,8 +662,9 @@ public final class SymbolIndex {
      * @return Optional с локацией определения
      */
     public Optional<Location> findFirstDefinition(String symbolName) {
-        List<IndexedSymbol> symbols = symbolsByName.get(symbolName);
-        if (symbols == null || symbols.isEmpty()) {
+        refreshPendingFiles();
+        List<IndexedSymbol> symbols = definitions.lookup(symbolName);
+        if (symbols.isEmpty()) {
             return Optional.empty();
         }
 
@@ -399,8 +682,9 @@ public final class SymbolIndex {
      * @return множество путей к файлам
      */
     public Set<Path> findFilesContainingSymbol(String symbolName) {
-        List<IndexedSymbol> symbols = symbolsByName.get(symbolName);
-        if (symbols == null || symbols.isEmpty()) {
+        refreshPendingFiles();
+        List<IndexedSymbol> symbols = definitions.lookup(symbolName);
+        if (symbols.isEmpty()) {
             return Collections.emptySet();
         }
 
@@ -410,6 +694,130 @@ public final class SymbolIndex {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Ищет символы проекта по неточному имени: префикс, camel-hump ({@code gUBI} - getUserById)
+     * или имя с опечаткой. Результаты ранжируются по виду совпадения, виду символа
+     * (типы, затем методы, затем поля) и близости файла к near.
+     *
+     * @param query запрос
+     * @param near  файл или директория, относительно которой оценивается близость (может быть null)
+     * @param limit максимум результатов
+     */
+    public List<SymbolMatch> searchWorkspaceSymbols(String query, Path near, int limit) {
+        refreshPendingFiles();
+        List<SymbolNameTrie.Match> names = nameTrie().search(query, MAX_CANDIDATE_NAMES);
+        Path nearPath = near != null ? near.toAbsolutePath().normalize() : null;
+
+        record Ranked(SymbolMatch match, int kindRank, int proximity) {}
+        List<Ranked> ranked = new ArrayList<>();
+        for (SymbolNameTrie.Match name : names) {
+            for (IndexedSymbol symbol : definitions.lookup(name.name())) {
+                if (isSymbolValid(symbol)) {
+                    ranked.add(new Ranked(new SymbolMatch(symbol, name.type(), name.distance()),
+                            kindRank(symbol.kind()), proximity(symbol.file(), nearPath)));
+                }
+            }
+        }
+        ranked.sort(Comparator.<Ranked>comparingInt(r -> r.match().matchType().ordinal())
+                .thenComparingInt(r -> r.match().distance())
+                .thenComparingInt(Ranked::kindRank)
+                .thenComparing(Comparator.comparingInt(Ranked::proximity).reversed())
+                .thenComparingInt(r -> r.match().symbol().name().length())
+                .thenComparing(r -> r.match().symbol().name())
+                .thenComparing(r -> r.match().symbol().file().toString())
+                .thenComparingInt(r -> r.match().symbol().startLine()));
+        return ranked.stream().limit(limit).map(Ranked::match).toList();
+    }
+
+    private SymbolNameTrie nameTrie() {
+        int version = definitions.namesVersion();
+        NameTrieSnapshot snapshot = nameTrie;
+        if (snapshot == null || snapshot.version() != version) {
+            synchronized (definitions) {
+                snapshot = nameTrie;
+                if (snapshot == null || snapshot.version() != version) {
+                    List<Map.Entry<String, Boolean>> changes =
+                            snapshot != null ? definitions.nameChangesSince(snapshot.baseVersion()) : null;
+                    if (changes == null) {
+                        // Первое построение или журнал изменений сброшен - строим синхронно
+                        snapshot = buildNameTrie(version);
+                    } else {
+                        snapshot = new NameTrieSnapshot(version, snapshot.baseVersion(), snapshot.base(),
+                                snapshot.base().withChanges(changes));
+                        if (snapshot.trie().overlaySize() > NAME_OVERLAY_REBUILD_THRESHOLD) {
+                            scheduleNameTrieRebuild();
+                        }
+                    }
+                    nameTrie = snapshot;
+                }
+            }
+        }
+        return snapshot.trie();
+    }
+
+    /**
+     * Строит дерево по текущим именам. Версия снята до снимка имён: изменения во время
+     * построения остаются в журнале и накладываются при следующем поиске повторно.
+     */
+    private NameTrieSnapshot buildNameTrie(int version) {
+        SymbolNameTrie trie = SymbolNameTrie.build(definitions.names());
+        definitions.discardNameChanges(version);
+        return new NameTrieSnapshot(version, version, trie, trie);
+    }
+
+    private void scheduleNameTrieRebuild() {
+        if (!nameTrieRebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.submit(() -> {
+                try {
+                    int version = definitions.namesVersion();
+                    SymbolNameTrie trie = SymbolNameTrie.build(definitions.names());
+                    synchronized (definitions) {
+                        NameTrieSnapshot current = nameTrie;
+                        if (current != null && current.baseVersion() < version) {
+                            definitions.discardNameChanges(version);
+                            nameTrie = new NameTrieSnapshot(version, version, trie, trie);
+                        }
+                    }
+                } finally {
+                    nameTrieRebuilding.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Индекс закрывается
+            nameTrieRebuilding.set(false);
+        }
+    }
+
+    /**
+     * Типы важнее методов, методы важнее полей и прочих символов.
+     */
+    private static int kindRank(SymbolKind kind) {
+        return switch (kind) {
+            case CLASS, INTERFACE, ENUM, STRUCT, TRAIT, OBJECT, MODULE, NAMESPACE -> 0;
+            case METHOD, FUNCTION, CONSTRUCTOR -> 1;
+            case FIELD, PROPERTY, CONSTANT -> 2;
+            default -> 3;
+        };
+    }
+
+    /**
+     * Количество общих начальных компонентов пути.
+     */
+    private static int proximity(Path file, Path near) {
+        if (near == null) {
+            return 0;
+        }
+        int limit = Math.min(file.getNameCount(), near.getNameCount());
+        int common = 0;
+        while (common < limit && file.getName(common).equals(near.getName(common))) {
+            common++;
+        }
+        return common;
+    }
+
     /**
      * Проверяет, актуален ли символ (файл не изменился).
      */
@@ -439,6 +847,43 @@ public final class SymbolIndex {
 
     // ==================== ИНВАЛИДАЦИЯ ====================
 
+    /**
+     * Отмечает файл как изменённый. Переиндексация откладывается до ближайшего запроса,
+     * чтобы серия правок одного файла не вызывала повторный разбор на каждой записи.
+     *
+     * @param file путь к изменённому, созданному или удалённому файлу
+     */
+    public void markFileChanged(Path file) {
+        Path root = indexedRoot;
+        if (root == null) {
+            return;
+        }
+        Path normalizedPath = file.toAbsolutePath().normalize();
+        if (isIndexable(root, normalizedPath)) {
+            pendingFiles.add(normalizedPath);
+        }
+    }
+
+    private void refreshPendingFiles() {
+        if (pendingFiles.isEmpty()) {
+            return;
+        }
+        for (Iterator<Path> it = pendingFiles.iterator(); it.hasNext(); ) {
+            // Переиндексация идёт в потоке запроса: при отмене необработанные файлы остаются в очереди
+            CancellationToken.checkCurrent();
+            Path file = it.next();
+            it.remove();
+            invalidateFile(file);
+        }
+    }
+
+    /**
+     * Проверяет, попал бы файл в индекс при полной индексации корня.
+     */
+    private static boolean isIndexable(Path root, Path file) {
+        return LanguageDetector.detect(file).isPresent() && projectWalker(root).accepts(file);
+    }
+
     /**
      * Инвалидирует и переиндексирует файл.
      * Вызывается при изменении файла.
@@ -448,21 +893,23 @@ public final class SymbolIndex {
     public void invalidateFile(Path file) {
         Path normalizedPath = file.toAbsolutePath().normalize();
 
-        // Удаляем старые записи
-        Set<String> oldSymbolNames = symbolNamesByFile.remove(normalizedPath);
-        if (oldSymbolNames != null) {
-            for (String symbolName : oldSymbolNames) {
-                CopyOnWriteArrayList<IndexedSymbol> symbols = symbolsByName.get(symbolName);
-                if (symbols != null) {
-                    symbols.removeIf(s -> s.file().equals(normalizedPath));
-                    if (symbols.isEmpty()) {
-                        symbolsByName.remove(symbolName);
-                    }
-                }
+        // Удаляем старые записи: O(символов файла)
+        definitions.remove(normalizedPath);
+
+        Set<String> oldReferenceNames = referenceNamesByFile.remove(normalizedPath);
+        if (oldReferenceNames != null) {
+            for (String name : oldReferenceNames) {
+                referencesByName.computeIfPresent(name, (k, byFile) -> {
+                    byFile.remove(normalizedPath);
+                    return byFile.isEmpty() ? null : byFile;
+                });
             }
         }
 
         fileCrcs.remove(normalizedPath);
+        fileStamps.remove(normalizedPath);
+        racyFiles.remove(normalizedPath);
+        dirty.set(true);
 
         // Переиндексируем
         if (Files.exists(normalizedPath)) {
@@ -474,9 +921,15 @@ public final class SymbolIndex {
      * Очищает весь индекс.
      */
     public void clear() {
-        symbolsByName.clear();
-        symbolNamesByFile.clear();
+        definitions.clear();
+        referencesByName.clear();
+        referenceNamesByFile.clear();
         fileCrcs.clear();
+        fileStamps.clear();
+        racyFiles.clear();
+        pendingFiles.clear();
+        truncated = false;
+        dirty.set(false);
         indexed.set(false);
         indexedRoot = null;
         indexedFilesCount.set(0);
@@ -485,12 +938,38 @@ public final class SymbolIndex {
 
     // ==================== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ====================
 
+    /**
+     * CRC содержимого в UTF-8: для разобранных файлов это те же байты, что читает
+     * {@link #crcMatches} при тёплом старте, независимо от кодировки платформы.
+     */
     private long calculateCrc(String content) {
         CRC32C crc = new CRC32C();
-        crc.update(content.getBytes());
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
         return crc.getValue();
     }
 
+    /**
+     * Растущий буфер упакованных вхождений одного идентификатора.
+     */
+    private static final class OccurrenceList {
+        private int[] data = new int[OCCURRENCE_STRIDE * 2];
+        private int size;
+
+        void add(int startByte, int row, int column, int kind) {
+            if (size + OCCURRENCE_STRIDE > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = startByte;
+            data[size++] = row;
+            data[size++] = column;
+            data[size++] = kind;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
     // ==================== ЗАПИСИ ====================
 
     /**
@@ -506,14 +985,67 @@ public final class SymbolIndex {
             long fileCrc
     ) {}
 
+    /**
+     * Размер и время изменения файла.
+     */
+    record FileStamp(long size, long mtime) {
+        static FileStamp of(BasicFileAttributes attrs) {
+            return new FileStamp(attrs.size(), attrs.lastModifiedTime().toMillis());
+        }
+    }
+
+    /**
+     * Символ, найденный поиском по проекту.
+     *
+     * @param symbol    символ
+     * @param matchType вид совпадения имени с запросом
+     * @param distance  расстояние редактирования для {@link SymbolNameTrie.MatchType#FUZZY}
+     */
+    public record SymbolMatch(IndexedSymbol symbol, SymbolNameTrie.MatchType matchType, int distance) {}
+
+    /**
+     * @param version     версия набора имён, которой соответствует trie
+     * @param baseVersion версия, по которой построено дерево base
+     * @param trie        base с наложенными изменениями после baseVersion
+     */
+    private record NameTrieSnapshot(int version, int baseVersion, SymbolNameTrie base, SymbolNameTrie trie) {}
+
+    /**
+     * Статистика таблицы определений.
+     *
+     * @param symbols        количество символов
+     * @param names          количество различных имён
+     * @param files          количество проиндексированных файлов
+     * @param estimatedBytes оценка памяти таблицы (без индекса использований)
+     */
+    public record SymbolStats(int symbols, int names, int files, long estimatedBytes) {
+
+        /**
+         * Оценка памяти на один символ в байтах.
+         */
+        public long bytesPerSymbol() {
+            return symbols == 0 ? 0 : estimatedBytes / symbols;
+        }
+    }
+
     /**
      * Результат индексации.
+     *
+     * @param bytesPerSymbol оценка памяти таблицы определений на символ ({@link SymbolStats#bytesPerSymbol()})
      */
     public record IndexingResult(
             boolean success,
             int filesIndexed,
             int symbolsIndexed,
+            long bytesPerSymbol,
             Duration duration,
             String message
-    ) {}
+    ) {
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d files, %d symbols (~%d B/symbol) in %d ms",
+                    message, filesIndexed, symbolsIndexed, bytesPerSymbol, duration.toMillis());
+        }
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import ru.nts.tools.mcp.core.treesitter.SymbolIndex.IndexedSymbol;
+import ru.nts.tools.mcp.core.treesitter.SymbolInfo.SymbolKind;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Персистентное хранилище индекса определений для тёплого старта.
+ * <p>
+ * Файл лежит в корне задач: ~/.nts/index/symbols-{hash корня проекта}.idx.
+ * Каждая запись файла проекта хранит ключ актуальности (размер, mtime, CRC32C),
+ * его символы и вхождения идентификаторов. Все строки (пути, имена, виды) вынесены
+ * в общую таблицу, поэтому формат компактный и читается одним последовательным проходом.
+ * Вхождения идут в порядке документа и кодируются дельтами в varint.
+ * <p>
+ * Формат (DataOutputStream, big-endian):
+ * <pre>
+ * magic "NTSI" | version | savedAt | root
+ * stringCount | string*
+ * fileCount | (pathIdx size mtime crc
+ *              symbolCount (nameIdx kindIdx startLine endLine parentIdx)*
+ *              refNameCount (nameIdx occCount (Δbyte Δrow column kind)*)*)*
+ * </pre>
+ */
+final class SymbolIndexStore {
+
+    private static final int MAGIC = 0x4E545349; // "NTSI"
+    private static final int VERSION = 2;
+
+    private final Path storeFile;
+
+    /**
+     * Сохранённые данные одного файла проекта.
+     */
+    record FileEntry(Path file, long size, long mtime, long crc,
+                     List<IndexedSymbol> symbols, Map<String, int[]> references) {}
+
+    /**
+     * Загруженный снимок индекса.
+     *
+     * @param savedAt время сохранения (для проверки "гоночных" mtime)
+     * @param files   записи по абсолютному пути файла
+     */
+    record Snapshot(long savedAt, Map<Path, FileEntry> files) {
+        static final Snapshot EMPTY = new Snapshot(0, Map.of());
+    }
+
+    SymbolIndexStore(Path taskRoot, Path projectRoot) {
+        CRC32C crc = new CRC32C();
+        crc.update(projectRoot.toString().getBytes(StandardCharsets.UTF_8));
+        this.storeFile = taskRoot.resolve("index").resolve(String.format("symbols-%08x.idx", crc.getValue()));
+    }
+
+    Path getStoreFile() {
+        return storeFile;
+    }
+
+    /**
+     * Загружает снимок индекса. При отсутствии, повреждении или несовпадении
+     * корня/версии возвращает пустой снимок - индекс будет построен заново.
+     */
+    Snapshot load(Path projectRoot) {
+        if (!Files.isRegularFile(storeFile)) {
+            return Snapshot.EMPTY;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storeFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return Snapshot.EMPTY;
+            }
+            long savedAt = in.readLong();
+            if (!projectRoot.toString().equals(in.readUTF())) {
+                return Snapshot.EMPTY;
+            }
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            int fileCount = in.readInt();
+            Map<Path, FileEntry> files = new HashMap<>(fileCount * 2);
+            for (int f = 0; f < fileCount; f++) {
+                Path file = projectRoot.resolve(strings[in.readInt()]);
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long crc = in.readLong();
+                int symbolCount = in.readInt();
+                List<IndexedSymbol> symbols = new ArrayList<>(symbolCount);
+                for (int s = 0; s < symbolCount; s++) {
+                    String name = strings[in.readInt()];
+                    SymbolKind kind = SymbolKind.valueOf(strings[in.readInt()]);
+                    int startLine = in.readInt();
+                    int endLine = in.readInt();
+                    int parentIdx = in.readInt();
+                    symbols.add(new IndexedSymbol(name, kind, file, startLine, endLine,
+                            parentIdx < 0 ? null : strings[parentIdx], crc));
+                }
+                int refNameCount = in.readInt();
+                Map<String, int[]> references = new HashMap<>(refNameCount * 2);
+                for (int r = 0; r < refNameCount; r++) {
+                    String name = strings[in.readInt()];
+                    int[] occurrences = new int[in.readInt() * SymbolIndex.OCCURRENCE_STRIDE];
+                    int startByte = 0, row = 0;
+                    for (int o = 0; o < occurrences.length; o += SymbolIndex.OCCURRENCE_STRIDE) {
+                        startByte += readVarInt(in);
+                        row += readVarInt(in);
+                        occurrences[o] = startByte;
+                        occurrences[o + 1] = row;
+                        occurrences[o + 2] = readVarInt(in);
+                        occurrences[o + 3] = in.readUnsignedByte();
+                    }
+                    references.put(name, occurrences);
+                }
+                files.put(file, new FileEntry(file, size, mtime, crc, symbols, references));
+            }
+            return new Snapshot(savedAt, files);
+        } catch (IOException | RuntimeException e) {
+            // Повреждённый или устаревший формат - строим индекс заново
+            return Snapshot.EMPTY;
+        }
+    }
+
+    /**
+     * Атомарно сохраняет индекс (запись во временный файл и перемещение).
+     */
+    void save(Path projectRoot, Collection<FileEntry> entries) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+
+        // Сначала формируем тело, чтобы таблица строк была полной к моменту записи заголовка
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeInt(entries.size());
+        for (FileEntry entry : entries) {
+            body.writeInt(intern(projectRoot.relativize(entry.file()).toString(), stringIds, strings));
+            body.writeLong(entry.size());
+            body.writeLong(entry.mtime());
+            body.writeLong(entry.crc());
+            body.writeInt(entry.symbols().size());
+            for (IndexedSymbol symbol : entry.symbols()) {
+                body.writeInt(intern(symbol.name(), stringIds, strings));
+                body.writeInt(intern(symbol.kind().name(), stringIds, strings));
+                body.writeInt(symbol.startLine());
+                body.writeInt(symbol.endLine());
+                body.writeInt(symbol.parentName() == null ? -1 : intern(symbol.parentName(), stringIds, strings));
+            }
+            body.writeInt(entry.references().size());
+            for (Map.Entry<String, int[]> ref : entry.references().entrySet()) {
+                int[] occurrences = ref.getValue();
+                body.writeInt(intern(ref.getKey(), stringIds, strings));
+                body.writeInt(occurrences.length / SymbolIndex.OCCURRENCE_STRIDE);
+                int startByte = 0, row = 0;
+                for (int o = 0; o < occurrences.length; o += SymbolIndex.OCCURRENCE_STRIDE) {
+                    writeVarInt(body, occurrences[o] - startByte);
+                    writeVarInt(body, occurrences[o + 1] - row);
+                    writeVarInt(body, occurrences[o + 2]);
+                    body.writeByte(occurrences[o + 3]);
+                    startByte = occurrences[o];
+                    row = occurrences[o + 1];
+                }
+            }
+        }
+        body.flush();
+
+        Files.createDirectories(storeFile.getParent());
+        Path tmp = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(projectRoot.toString());
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                out.writeUTF(s);
+            }
+            bodyBytes.writeTo(out);
+        }
+        Files.move(tmp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<String> strings) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = strings.size();
+            ids.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import java.util.*;
+
+/**
+ * Неизменяемый индекс имён символов для поиска по префиксу, camel-hump и с опечатками.
+ * <p>
+ * Имена хранятся в сжатом префиксном дереве (radix tree) по ключу в нижнем регистре:
+ * узел - диапазон отсортированных ключей с общим префиксом, ребро - участок ключа,
+ * поэтому поддерево любого узла - непрерывный диапазон, а узлов не больше 2n.
+ * Второе дерево построено по инициалам горбов ({@code getUserById} - {@code gubi}).
+ * <ul>
+ *   <li>префикс - бинарный поиск диапазона ключей;</li>
+ *   <li>camel-hump ({@code gUBI}, {@code getUsr}, {@code UserSvc}) - диапазон по инициалам
+ *       запроса и проверка кандидатов по горбам;</li>
+ *   <li>опечатки - обход дерева со строкой расстояния Левенштейна на каждый символ ребра
+ *       и отсечением ветвей, где расстояние уже превышает предел.</li>
+ * </ul>
+ * Строится целиком по снимку имён. Небольшие изменения набора имён накладываются
+ * поверх построенного дерева ({@link #withChanges}): удалённые имена отбрасываются
+ * из результатов, добавленные проверяются перебором, пока дерево не перестроено.
+ */
+public final class SymbolNameTrie {
+
+    /**
+     * Вид совпадения имени с запросом, от лучшего к худшему.
+     */
+    public enum MatchType { EXACT, PREFIX, CAMEL_HUMPS, FUZZY }
+
+    /**
+     * Совпадение имени.
+     *
+     * @param name     имя символа
+     * @param type     вид совпадения
+     * @param distance расстояние редактирования (для {@link MatchType#FUZZY}, иначе 0)
+     */
+    public record Match(String name, MatchType type, int distance) {}
+
+    private final String[] names;
+    private final Radix byName;
+    private final Radix byInitials;
+
+    // Наложенные изменения: имена, которых нет в дереве, и имена дерева, которых больше нет
+    private final String[] added;
+    private final Set<String> removed;
+
+    private SymbolNameTrie(String[] names, Radix byName, Radix byInitials, String[] added, Set<String> removed) {
+        this.names = names;
+        this.byName = byName;
+        this.byInitials = byInitials;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * Строит индекс по набору имён (дубликаты допускаются).
+     */
+    public static SymbolNameTrie build(Collection<String> source) {
+        String[] names = source.stream().distinct().toArray(String[]::new);
+        String[] lower = new String[names.length];
+        String[] initials = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            lower[i] = names[i].toLowerCase(Locale.ROOT);
+            initials[i] = initials(names[i]);
+        }
+        return new SymbolNameTrie(names, Radix.build(lower), Radix.build(initials), new String[0], Set.of());
+    }
+
+    /**
+     * Индекс с тем же деревом и наложенными изменениями набора имён. Изменения
+     * применяются по порядку, учитывается последнее для каждого имени; прежний
+     * слой изменений этого экземпляра не переносится.
+     *
+     * @param changes пары (имя, true - появилось / false - исчезло)
+     */
+    public SymbolNameTrie withChanges(List<Map.Entry<String, Boolean>> changes) {
+        Map<String, Boolean> last = new HashMap<>();
+        for (Map.Entry<String, Boolean> change : changes) {
+            last.put(change.getKey(), change.getValue());
+        }
+        List<String> addedNames = new ArrayList<>();
+        Set<String> removedNames = new HashSet<>();
+        last.forEach((name, present) -> {
+            boolean inTrie = containsInTrie(name);
+            if (present && !inTrie) {
+                addedNames.add(name);
+            } else if (!present && inTrie) {
+                removedNames.add(name);
+            }
+        });
+        return new SymbolNameTrie(names, byName, byInitials, addedNames.toArray(String[]::new), removedNames);
+    }
+
+    public int size() {
+        return names.length - removed.size() + added.length;
+    }
+
+    /**
+     * Число имён в наложенном слое (добавленных и удалённых после построения дерева).
+     */
+    public int overlaySize() {
+        return added.length + removed.size();
+    }
+
+    private boolean containsInTrie(String name) {
+        int[] range = byName.prefixRange(name.toLowerCase(Locale.ROOT));
+        for (int k = range[0]; k < range[1]; k++) {
+            if (byName.keys[k].length() != name.length()) {
+                continue;
+            }
+            for (int v = byName.valueFrom(k); v < byName.valueTo(k); v++) {
+                if (names[byName.value(v)].equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ищет имена, подходящие под запрос. Каждое имя возвращается один раз с лучшим видом
+     * совпадения; на каждый вид берётся не больше maxPerType имён.
+     */
+    public List<Match> search(String query, int maxPerType) {
+        if (query.isEmpty() || size() == 0) {
+            return List.of();
+        }
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        Map<String, Match> found = new LinkedHashMap<>();
+
+        // Точное совпадение и префикс (без учёта регистра)
+        int[] range = byName.prefixRange(lowerQuery);
+        int prefixCount = 0;
+        for (int k = range[0]; k < range[1] && prefixCount < maxPerType; k++) {
+            boolean exact = byName.keys[k].length() == lowerQuery.length();
+            for (int v = byName.valueFrom(k); v < byName.valueTo(k); v++) {
+                String name = names[byName.value(v)];
+                if (!removed.contains(name)) {
+                    found.putIfAbsent(name, new Match(name, exact ? MatchType.EXACT : MatchType.PREFIX, 0));
+                    prefixCount++;
+                }
+            }
+        }
+
+        // Горбы: запрос делится на сегменты, инициалы сегментов - префикс инициалов имени
+        List<List<String>> segmentations = new ArrayList<>(2);
+        segmentations.add(segments(query));
+        if (segmentations.getFirst().size() == 1 && query.length() > 1 && query.chars().allMatch(Character::isLetterOrDigit)) {
+            // Запрос без заглавных (gubi) - каждый символ начинает горб
+            segmentations.add(query.chars().mapToObj(c -> String.valueOf((char) c)).toList());
+        }
+        segmentations.removeIf(segments -> segments.size() < 2);
+        int camelCount = 0;
+        for (List<String> segments : segmentations) {
+            int[] initialsRange = byInitials.prefixRange(humpKey(segments));
+            for (int k = initialsRange[0]; k < initialsRange[1] && camelCount < maxPerType; k++) {
+                for (int v = byInitials.valueFrom(k); v < byInitials.valueTo(k); v++) {
+                    String name = names[byInitials.value(v)];
+                    if (!found.containsKey(name) && !removed.contains(name) && matchesHumps(name, segments)) {
+                        found.put(name, new Match(name, MatchType.CAMEL_HUMPS, 0));
+                        camelCount++;
+                    }
+                }
+            }
+        }
+
+        // Опечатки: расстояние Левенштейна по всему имени
+        int maxDistance = lowerQuery.length() <= 3 ? 0 : lowerQuery.length() <= 6 ? 1 : 2;
+        if (maxDistance > 0) {
+            // Обход идёт в порядке ключей - сначала собираем, затем берём ближайшие
+            List<long[]> hits = new ArrayList<>();
+            byName.fuzzy(lowerQuery, maxDistance, (k, distance) -> hits.add(new long[]{distance, k}));
+            hits.sort(Comparator.comparingLong(hit -> hit[0]));
+            int fuzzyCount = 0;
+            for (long[] hit : hits) {
+                int k = (int) hit[1];
+                for (int v = byName.valueFrom(k); v < byName.valueTo(k) && fuzzyCount < maxPerType; v++) {
+                    String name = names[byName.value(v)];
+                    if (!found.containsKey(name) && !removed.contains(name)) {
+                        found.put(name, new Match(name, MatchType.FUZZY, (int) hit[0]));
+                        fuzzyCount++;
+                    }
+                }
+            }
+        }
+
+        for (String name : added) {
+            Match match = matchAdded(name, lowerQuery, segmentations, maxDistance);
+            if (match != null) {
+                found.putIfAbsent(name, match);
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    /**
+     * Проверка имени из наложенного слоя теми же правилами, что и поиск по дереву.
+     */
+    private static Match matchAdded(String name, String lowerQuery, List<List<String>> segmentations,
+                                    int maxDistance) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.startsWith(lowerQuery)) {
+            return new Match(name, lower.length() == lowerQuery.length() ? MatchType.EXACT : MatchType.PREFIX, 0);
+        }
+        String nameInitials = initials(name);
+        for (List<String> segments : segmentations) {
+            if (nameInitials.startsWith(humpKey(segments)) && matchesHumps(name, segments)) {
+                return new Match(name, MatchType.CAMEL_HUMPS, 0);
+            }
+        }
+        if (maxDistance > 0 && Math.abs(lower.length() - lowerQuery.length()) <= maxDistance) {
+            int[] row = new int[lowerQuery.length() + 1];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = j;
+            }
+            for (int i = 0; i < lower.length(); i++) {
+                row = Radix.nextRow(row, lower.charAt(i), lowerQuery);
+            }
+            int distance = row[lowerQuery.length()];
+            if (distance <= maxDistance) {
+                return new Match(name, MatchType.FUZZY, distance);
+            }
+        }
+        return null;
+    }
+
+    private static String humpKey(List<String> segments) {
+        StringBuilder key = new StringBuilder(segments.size());
+        for (String segment : segments) {
+            key.append(Character.toLowerCase(segment.charAt(0)));
+        }
+        return key.toString();
+    }
+
+    // ==================== ГОРБЫ ====================
+
+    /**
+     * Инициалы горбов в нижнем регистре: getUserById - gubi, HTTPServer - hs, user_id - ui.
+     */
+    static String initials(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            if (isHumpStart(name, i)) {
+                sb.append(Character.toLowerCase(name.charAt(i)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isHumpStart(String name, int i) {
+        char c = name.charAt(i);
+        if (!Character.isLetterOrDigit(c)) {
+            return false;
+        }
+        if (i == 0) {
+            return true;
+        }
+        char prev = name.charAt(i - 1);
+        if (!Character.isLetterOrDigit(prev)) {
+            return true;
+        }
+        if (Character.isUpperCase(c)) {
+            return !Character.isUpperCase(prev)
+                    || (i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1)));
+        }
+        return Character.isDigit(c) != Character.isDigit(prev);
+    }
+
+    /**
+     * Сегменты запроса: новый сегмент начинается с заглавной буквы или после разделителя.
+     */
+    static List<String> segments(String query) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                if (!current.isEmpty()) {
+                    segments.add(current.toString());
+                    current.setLength(0);
+                }
+                continue;
+            }
+            if (Character.isUpperCase(c) && !current.isEmpty()) {
+                segments.add(current.toString());
+                current.setLength(0);
+            }
+            current.append(c);
+        }
+        if (!current.isEmpty()) {
+            segments.add(current.toString());
+        }
+        return segments;
+    }
+
+    /**
+     * Сегмент k совпадает с горбом k имени: первый символ совпадает, остальные
+     * встречаются в горбе по порядку (Svc - Service). Регистр не учитывается.
+     */
+    static boolean matchesHumps(String name, List<String> segments) {
+        int pos = 0;
+        for (String segment : segments) {
+            while (pos < name.length() && !isHumpStart(name, pos)) {
+                pos++;
+            }
+            if (pos >= name.length() || !sameIgnoreCase(name.charAt(pos), segment.charAt(0))) {
+                return false;
+            }
+            pos++;
+            for (int j = 1; j < segment.length(); j++) {
+                while (pos < name.length() && !isHumpStart(name, pos) && !sameIgnoreCase(name.charAt(pos), segment.charAt(j))) {
+                    pos++;
+                }
+                if (pos >= name.length() || isHumpStart(name, pos)) {
+                    return false;
+                }
+                pos++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameIgnoreCase(char a, char b) {
+        return Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
+    // ==================== ДЕРЕВО ====================
+
+    @FunctionalInterface
+    private interface KeyVisitor {
+        void visit(int keyIndex, int distance);
+    }
+
+    /**
+     * Сжатое префиксное дерево над отсортированными различными ключами.
+     * Значения ключа k - values[valueStart[k] .. valueStart[k + 1]).
+     */
+    private static final class Radix {
+        final String[] keys;
+        private final int[] valueStart;
+        private final int[] values;
+
+        // Узлы: диапазон ключей [lo, hi), длина префикса узла, непрерывный диапазон детей
+        private int[] nodeLo, nodeHi, nodeDepth, firstChild, childCount;
+        private int nodeCount;
+
+        private Radix(String[] keys, int[] valueStart, int[] values) {
+            this.keys = keys;
+            this.valueStart = valueStart;
+            this.values = values;
+            int capacity = 2 * keys.length + 1;
+            nodeLo = new int[capacity];
+            nodeHi = new int[capacity];
+            nodeDepth = new int[capacity];
+            firstChild = new int[capacity];
+            childCount = new int[capacity];
+            nodeCount = 1;
+            fill(0, 0, keys.length, 0);
+        }
+
+        /**
+         * @param keyOfValue ключ для каждого значения (значение - индекс в массиве)
+         */
+        static Radix build(String[] keyOfValue) {
+            Integer[] order = new Integer[keyOfValue.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> keyOfValue[i]));
+
+            List<String> keys = new ArrayList<>();
+            int[] valueStart = new int[order.length + 1];
+            int[] values = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                String key = keyOfValue[order[i]];
+                if (keys.isEmpty() || !keys.getLast().equals(key)) {
+                    valueStart[keys.size()] = i;
+                    keys.add(key);
+                }
+                values[i] = order[i];
+            }
+            valueStart[keys.size()] = order.length;
+            return new Radix(keys.toArray(String[]::new), Arrays.copyOf(valueStart, keys.size() + 1), values);
+        }
+
+        int valueFrom(int key) {
+            return valueStart[key];
+        }
+
+        int valueTo(int key) {
+            return valueStart[key + 1];
+        }
+
+        int value(int i) {
+            return values[i];
+        }
+
+        /**
+         * Диапазон ключей [from, to), начинающихся с префикса.
+         */
+        int[] prefixRange(String prefix) {
+            int from = lowerBound(prefix);
+            int to;
+            char last = prefix.isEmpty() ? Character.MAX_VALUE : prefix.charAt(prefix.length() - 1);
+            if (last != Character.MAX_VALUE) {
+                // Первый ключ за всеми ключами с префиксом: "abc" -> "abd"
+                to = lowerBound(prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+            } else {
+                to = from;
+                while (to < keys.length && keys[to].startsWith(prefix)) {
+                    to++;
+                }
+            }
+            return new int[]{from, to};
+        }
+
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Заполняет узел node диапазоном [lo, hi) с префиксом длины depth и строит детей.
+         */
+        private void fill(int node, int lo, int hi, int depth) {
+            nodeLo[node] = lo;
+            nodeHi[node] = hi;
+            nodeDepth[node] = depth;
+            int i = lo;
+            if (i < hi && keys[i].length() == depth) {
+                i++; // ключ заканчивается в этом узле
+            }
+            // Сначала выделяем непрерывный диапазон детей, затем заполняем их
+            List<int[]> groups = new ArrayList<>();
+            while (i < hi) {
+                char c = keys[i].charAt(depth);
+                int j = i + 1;
+                while (j < hi && keys[j].charAt(depth) == c) {
+                    j++;
+                }
+                groups.add(new int[]{i, j});
+                i = j;
+            }
+            firstChild[node] = nodeCount;
+            childCount[node] = groups.size();
+            nodeCount += groups.size();
+            for (int g = 0; g < groups.size(); g++) {
+                int childLo = groups.get(g)[0];
+                int childHi = groups.get(g)[1];
+                fill(firstChild[node] + g, childLo, childHi,
+                        commonPrefix(keys[childLo], keys[childHi - 1], depth + 1));
+            }
+        }
+
+        private static int commonPrefix(String a, String b, int from) {
+            int limit = Math.min(a.length(), b.length());
+            int i = from;
+            while (i < limit && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Обходит ключи на расстоянии Левенштейна не больше maxDistance от запроса.
+         */
+        void fuzzy(String query, int maxDistance, KeyVisitor visitor) {
+            int[] row = new int[query.length() + 1];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = j;
+            }
+            fuzzy(0, 0, row, query, maxDistance, visitor);
+        }
+
+        /**
+         * Продлевает строку расстояний символами ребра узла (от длины префикса родителя from).
+         */
+        private void fuzzy(int node, int from, int[] parentRow, String query, int maxDistance,
+                           KeyVisitor visitor) {
+            String edge = keys[nodeLo[node]];
+            int[] row = parentRow;
+            for (int d = from; d < nodeDepth[node]; d++) {
+                row = nextRow(row, edge.charAt(d), query);
+                if (min(row) > maxDistance) {
+                    return;
+                }
+            }
+            if (edge.length() == nodeDepth[node] && row[query.length()] <= maxDistance) {
+                visitor.visit(nodeLo[node], row[query.length()]);
+            }
+            for (int c = 0; c < childCount[node]; c++) {
+                fuzzy(firstChild[node] + c, nodeDepth[node], row, query, maxDistance, visitor);
+            }
+        }
+
+        private static int[] nextRow(int[] prev, char c, String query) {
+            int[] row = new int[prev.length];
+            row[0] = prev[0] + 1;
+            for (int j = 1; j < row.length; j++) {
+                int substitution = prev[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+                row[j] = Math.min(substitution, Math.min(prev[j] + 1, row[j - 1] + 1));
+            }
+            return row;
+        }
+
+        private static int min(int[] row) {
+            int min = Integer.MAX_VALUE;
+            for (int v : row) {
+                min = Math.min(min, v);
+            }
+            return min;
+        }
+    }
+}
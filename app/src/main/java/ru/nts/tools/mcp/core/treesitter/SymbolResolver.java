@@ -17,19 +17,22 @@ package ru.nts.tools.mcp.core.treesitter;
 
 import org.treesitter.TSNode;
 import org.treesitter.TSTree;
+import ru.nts.tools.mcp.core.CancellationToken;
 import ru.nts.tools.mcp.core.FastSearch;
 import ru.nts.tools.mcp.core.PathSanitizer;
+import ru.nts.tools.mcp.core.ProjectWalker;
+import ru.nts.tools.mcp.core.TaskContext;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.Location;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.SymbolKind;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Разрешает определения и ссылки символов.
@@ -479,13 +482,7 @@ public final class SymbolResolver {
      * КРИТИЧНО: tree-sitter возвращает байтовые смещения, а не символьные!
      */
     private String getNodeText(TSNode node, String content) {
-        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
-        int start = node.getStartByte();
-        int end = node.getEndByte();
-        if (start >= 0 && end <= contentBytes.length && start < end) {
-            return new String(contentBytes, start, end - start, StandardCharsets.UTF_8);
-        }
-        return "";
+        return SourceText.of(content).text(node);
     }
 
     /**
@@ -661,55 +658,17 @@ public final class SymbolResolver {
         String globPattern = LanguageDetector.getGlobPattern(langId);
         PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + globPattern);
 
-        // Быстрый поиск с использованием FastSearch.containsText()
-        List<Path> candidateFiles = new ArrayList<>();
-
-        try {
-            Files.walkFileTree(projectRoot, EnumSet.noneOf(FileVisitOption.class), 15,
-                    new SimpleFileVisitor<>() {
-                        int count = 0;
-
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                            if (count >= MAX_FILES_TO_SCAN) {
-                                return FileVisitResult.TERMINATE;
-                            }
-                            if (matcher.matches(file) && !file.equals(currentFile)) {
-                                // Быстрая проверка без полного чтения файла в память
-                                try {
-                                    if (FastSearch.containsText(file, symbolName)) {
-                                        candidateFiles.add(file);
-                                        count++;
-                                    }
-                                } catch (IOException e) {
-                                    // Игнорируем нечитаемые файлы
-                                }
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-
-                        @Override
-                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                            String dirName = dir.getFileName().toString();
-                            // Пропускаем скрытые директории и build директории
-                            if (dirName.startsWith(".") ||
-                                    dirName.equals("node_modules") ||
-                                    dirName.equals("build") ||
-                                    dirName.equals("target") ||
-                                    dirName.equals("dist") ||
-                                    dirName.equals("out")) {
-                                return FileVisitResult.SKIP_SUBTREE;
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-        } catch (IOException e) {
-            // Игнорируем ошибки обхода
-        }
+        // Быстрый поиск с использованием FastSearch.containsText() в потоках обхода
+        List<Path> candidateFiles = scanProject(projectRoot,
+                file -> matcher.matches(file) && !file.equals(currentFile), symbolName);
 
         // Параллельный поиск с глобальным таймаутом
+        CancellationToken token = TaskContext.cancellation();
         List<CompletableFuture<Optional<SymbolInfo>>> futures = candidateFiles.stream()
                 .map(file -> CompletableFuture.supplyAsync(() -> {
+                    if (token.isCancelled()) {
+                        return Optional.<SymbolInfo>empty();
+                    }
                     try {
                         TreeSitterManager.ParseResult pr = treeManager.getCachedOrParseWithContent(file);
                         List<SymbolInfo> defs = extractor.extractDefinitions(
@@ -724,14 +683,8 @@ public final class SymbolResolver {
                 }, executor))
                 .toList();
 
-        try {
-            // Глобальный таймаут на всю операцию
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .orTimeout(OPERATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
-                    .join();
-        } catch (CompletionException e) {
-            // Таймаут или другая ошибка - возвращаем что успели найти
-        }
+        // Глобальный таймаут на всю операцию; при отмене запроса ожидание прерывается
+        awaitAll(futures, token);
 
         // Возвращаем первый найденный результат
         for (CompletableFuture<Optional<SymbolInfo>> future : futures) {
@@ -750,6 +703,22 @@ public final class SymbolResolver {
         return Optional.empty();
     }
 
+    /**
+     * Ожидает параллельные задачи с глобальным таймаутом. По таймауту возвращает управление,
+     * чтобы вызывающий собрал то, что успели найти; при отмене запроса бросает CancellationException.
+     */
+    private static void awaitAll(List<? extends CompletableFuture<?>> futures, CancellationToken token) {
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .orTimeout(OPERATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        token.onCancel(() -> all.cancel(false));
+        try {
+            all.join();
+        } catch (CompletionException | CancellationException e) {
+            // Таймаут или другая ошибка - вызывающий вернёт что успели найти
+        }
+        token.throwIfCancelled();
+    }
+
     /**
      * Ищет ссылки в директории.
      */
@@ -775,8 +744,12 @@ public final class SymbolResolver {
         }
 
         // Параллельный поиск ссылок с глобальным таймаутом
+        CancellationToken token = TaskContext.cancellation();
         List<CompletableFuture<List<Location>>> futures = candidateFiles.stream()
                 .map(file -> CompletableFuture.supplyAsync(() -> {
+                    if (token.isCancelled()) {
+                        return Collections.<Location>emptyList();
+                    }
                     try {
                         TreeSitterManager.ParseResult pr = treeManager.getCachedOrParseWithContent(file);
                         return extractor.findReferences(
@@ -787,13 +760,8 @@ public final class SymbolResolver {
                 }, executor))
                 .toList();
 
-        try {
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .orTimeout(OPERATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
-                    .join();
-        } catch (CompletionException e) {
-            // Таймаут - возвращаем что успели найти
-        }
+        // Глобальный таймаут на всю операцию; при отмене запроса ожидание прерывается
+        awaitAll(futures, token);
 
         List<Location> references = new ArrayList<>();
         for (CompletableFuture<List<Location>> future : futures) {
@@ -811,8 +779,8 @@ public final class SymbolResolver {
 
     /**
      * Ищет ссылки в проекте.
-     * ВАЖНО: Для поиска ИСПОЛЬЗОВАНИЙ символа нужно сканировать файлы по тексту (FastSearch),
-     * а не использовать SymbolIndex, который хранит только ОПРЕДЕЛЕНИЯ символов.
+     * Если индекс использований покрывает проект и актуален - это поиск по индексу без
+     * перепарсинга файлов. Иначе файлы сканируются по тексту (FastSearch).
      */
     private List<Location> findReferencesInProject(Path currentFile, String symbolName,
                                                     String langId) throws IOException {
@@ -821,13 +789,24 @@ public final class SymbolResolver {
             return findReferencesInDirectory(currentFile.getParent(), symbolName, langId);
         }
 
-        // Для поиска ссылок (использований) нужно сканировать файлы по тексту,
-        // а не использовать индекс определений (он хранит только места где символ ОПРЕДЕЛЁН)
+        if (symbolIndex.coversProject(projectRoot)) {
+            PathMatcher matcher = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + LanguageDetector.getGlobPattern(langId));
+            return symbolIndex.findReferences(symbolName, projectRoot).stream()
+                    .filter(loc -> matcher.matches(loc.path()))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+
+        // Индекс недоступен (не построен или не покрывает проект): сканируем файлы по тексту
         List<Path> candidateFiles = scanFilesForSymbol(projectRoot, symbolName, langId);
 
         // Параллельный поиск ссылок с глобальным таймаутом
+        CancellationToken token = TaskContext.cancellation();
         List<CompletableFuture<List<Location>>> futures = candidateFiles.stream()
                 .map(file -> CompletableFuture.supplyAsync(() -> {
+                    if (token.isCancelled()) {
+                        return Collections.<Location>emptyList();
+                    }
                     try {
                         TreeSitterManager.ParseResult pr = treeManager.getCachedOrParseWithContent(file);
                         return extractor.findReferences(
@@ -838,13 +817,8 @@ public final class SymbolResolver {
                 }, executor))
                 .toList();
 
-        try {
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .orTimeout(OPERATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
-                    .join();
-        } catch (CompletionException e) {
-            // Таймаут - возвращаем что успели найти
-        }
+        // Глобальный таймаут на всю операцию; при отмене запроса ожидание прерывается
+        awaitAll(futures, token);
 
         List<Location> allReferences = new ArrayList<>();
         for (CompletableFuture<List<Location>> future : futures) {
@@ -866,51 +840,32 @@ public final class SymbolResolver {
     private List<Path> scanFilesForSymbol(Path projectRoot, String symbolName, String langId) {
         String globPattern = LanguageDetector.getGlobPattern(langId);
         PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + globPattern);
+        return scanProject(projectRoot, matcher::matches, symbolName);
+    }
 
-        List<Path> candidateFiles = new ArrayList<>();
+    /**
+     * Обходит проект и возвращает первые по пути {@link #MAX_FILES_TO_SCAN} файлов, которые
+     * проходят фильтр и содержат текст символа. Проверка содержимого выполняется параллельно
+     * с обходом; отбор идёт после сортировки всех кандидатов, поэтому не зависит от порядка обхода.
+     */
+    private static List<Path> scanProject(Path projectRoot, Predicate<Path> fileFilter,
+                                          String symbolName) {
+        ProjectWalker walker = ProjectWalker.create(projectRoot)
+                .maxDepth(15)
+                .skipHidden(true)
+                .filter((file, attrs) -> fileFilter.test(file) && containsText(file, symbolName));
+        try (Stream<Path> files = walker.stream()) {
+            return files.sorted().limit(MAX_FILES_TO_SCAN).toList();
+        }
+    }
 
+    private static boolean containsText(Path file, String text) {
         try {
-            Files.walkFileTree(projectRoot, EnumSet.noneOf(FileVisitOption.class), 15,
-                    new SimpleFileVisitor<>() {
-                        int count = 0;
-
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                            if (count >= MAX_FILES_TO_SCAN) {
-                                return FileVisitResult.TERMINATE;
-                            }
-                            if (matcher.matches(file)) {
-                                try {
-                                    // Быстрая проверка без полного чтения файла
-                                    if (FastSearch.containsText(file, symbolName)) {
-                                        candidateFiles.add(file);
-                                        count++;
-                                    }
-                                } catch (IOException e) {
-                                    // Игнорируем
-                                }
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-
-                        @Override
-                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                            String dirName = dir.getFileName().toString();
-                            if (dirName.startsWith(".") ||
-                                    dirName.equals("node_modules") ||
-                                    dirName.equals("build") ||
-                                    dirName.equals("target") ||
-                                    dirName.equals("dist") ||
-                                    dirName.equals("out")) {
-                                return FileVisitResult.SKIP_SUBTREE;
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
+            // Быстрая проверка без полного чтения файла в память
+            return FastSearch.containsText(file, text);
         } catch (IOException e) {
-            // Игнорируем
+            // Игнорируем нечитаемые файлы
+            return false;
         }
-
-        return candidateFiles;
     }
 }
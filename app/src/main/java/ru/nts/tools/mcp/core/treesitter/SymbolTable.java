@@ -0,0 +1,379 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import ru.nts.tools.mcp.core.treesitter.SymbolIndex.IndexedSymbol;
+import ru.nts.tools.mcp.core.treesitter.SymbolInfo.SymbolKind;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Таблица определений символов для {@link SymbolIndex}.
+ * <p>
+ * Символы одного файла хранятся блоком в колоночных массивах (имя, родитель, вид,
+ * строки начала и конца), путь и CRC - один раз на блок. По имени ведутся списки
+ * вхождений (блок, номер символа в блоке) с дописыванием за амортизированное O(1).
+ * <p>
+ * Замена или удаление файла помечает его блок удалённым и увеличивает счётчик
+ * удалённых записей в списках его имён - O(символов файла). Списки очищаются
+ * от удалённых записей, когда их становится больше половины.
+ * <p>
+ * Имена интернируются: все блоки ссылаются на одну строку для одного имени.
+ */
+final class SymbolTable {
+
+    private static final SymbolKind[] KINDS = SymbolKind.values();
+
+    /**
+     * Оценка заголовка объекта или массива и ссылки (сжатые указатели).
+     */
+    private static final int HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private final ConcurrentHashMap<Path, FileSymbols> files = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Postings> byName = new ConcurrentHashMap<>();
+    private final AtomicInteger symbolCount = new AtomicInteger();
+
+    /**
+     * Меняется при появлении или удалении имени (для перестроения {@link SymbolNameTrie}).
+     */
+    private final AtomicInteger namesVersion = new AtomicInteger();
+
+    /**
+     * Журнал появления и исчезновения имён с версиями больше changesFrom: по нему
+     * {@link SymbolNameTrie} дополняется без перестроения. Переполненный журнал
+     * сбрасывается, тогда дерево строится заново.
+     */
+    private static final int MAX_NAME_CHANGES = 16_384;
+    private final ArrayDeque<NameChange> nameChanges = new ArrayDeque<>();
+    private int changesFrom;
+
+    private record NameChange(int version, String name, boolean present) {}
+
+    /**
+     * Заменяет символы файла.
+     *
+     * @param symbols символы файла (поле fileCrc не используется, берётся crc)
+     */
+    void put(Path file, long crc, List<IndexedSymbol> symbols) {
+        int n = symbols.size();
+        FileSymbols block = new FileSymbols(file, crc, n);
+        for (int i = 0; i < n; i++) {
+            IndexedSymbol symbol = symbols.get(i);
+            block.names[i] = symbol.name();
+            block.parents[i] = symbol.parentName();
+            block.kinds[i] = (byte) symbol.kind().ordinal();
+            block.startLines[i] = symbol.startLine();
+            block.endLines[i] = symbol.endLine();
+        }
+
+        // Сначала списки по именам, затем публикация блока: читатель не увидит блок частично
+        for (int i = 0; i < n; i++) {
+            block.names[i] = addPosting(block.names[i], block, i);
+        }
+        for (int i = 0; i < n; i++) {
+            String parent = block.parents[i];
+            if (parent != null) {
+                Postings postings = byName.get(parent);
+                block.parents[i] = postings != null ? postings.name : parent;
+            }
+        }
+        symbolCount.addAndGet(n);
+        FileSymbols old = files.put(file, block);
+        if (old != null) {
+            retire(old);
+        }
+    }
+
+    /**
+     * Удаляет символы файла.
+     */
+    void remove(Path file) {
+        FileSymbols old = files.remove(file);
+        if (old != null) {
+            retire(old);
+        }
+    }
+
+    void clear() {
+        files.clear();
+        byName.clear();
+        synchronized (nameChanges) {
+            nameChanges.clear();
+            changesFrom = namesVersion.incrementAndGet();
+        }
+        symbolCount.set(0);
+    }
+
+    int size() {
+        return symbolCount.get();
+    }
+
+    /**
+     * Символы с указанным именем в порядке добавления (только актуальные блоки).
+     */
+    List<IndexedSymbol> lookup(String name) {
+        Postings postings = byName.get(name);
+        return postings != null ? postings.live() : List.of();
+    }
+
+    /**
+     * Символы указанного файла.
+     */
+    List<IndexedSymbol> symbolsOf(Path file) {
+        FileSymbols block = files.get(file);
+        if (block == null) {
+            return List.of();
+        }
+        List<IndexedSymbol> result = new ArrayList<>(block.size());
+        for (int i = 0; i < block.size(); i++) {
+            result.add(block.symbol(i));
+        }
+        return result;
+    }
+
+    /**
+     * Оценка занимаемой памяти в байтах: блоки файлов, списки вхождений и строки имён.
+     */
+    long estimatedBytes() {
+        long bytes = 0;
+        for (FileSymbols block : files.values()) {
+            bytes += block.estimatedBytes();
+        }
+        for (Postings postings : byName.values()) {
+            bytes += postings.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    int nameCount() {
+        return byName.size();
+    }
+
+    int namesVersion() {
+        return namesVersion.get();
+    }
+
+    /**
+     * Изменения набора имён после версии since по порядку: (имя, true - появилось /
+     * false - исчезло). null, если журнал их уже не содержит.
+     */
+    List<Map.Entry<String, Boolean>> nameChangesSince(int since) {
+        synchronized (nameChanges) {
+            if (since < changesFrom) {
+                return null;
+            }
+            List<Map.Entry<String, Boolean>> result = new ArrayList<>();
+            for (NameChange change : nameChanges) {
+                if (change.version() > since) {
+                    result.add(Map.entry(change.name(), change.present()));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Забывает изменения до версии upTo включительно (они уже вошли в построенное дерево).
+     */
+    void discardNameChanges(int upTo) {
+        synchronized (nameChanges) {
+            while (!nameChanges.isEmpty() && nameChanges.peekFirst().version() <= upTo) {
+                nameChanges.pollFirst();
+            }
+            changesFrom = Math.max(changesFrom, upTo);
+        }
+    }
+
+    /**
+     * Снимок имён таблицы.
+     */
+    List<String> names() {
+        return new ArrayList<>(byName.keySet());
+    }
+
+    private String addPosting(String name, FileSymbols block, int index) {
+        while (true) {
+            Postings postings = byName.computeIfAbsent(name, k -> {
+                recordNameChange(k, true);
+                return new Postings(k);
+            });
+            if (postings.add(block, index)) {
+                return postings.name;
+            }
+            // Список только что удалён из таблицы как пустой - берём новый
+        }
+    }
+
+    private void retire(FileSymbols block) {
+        block.removed = true;
+        symbolCount.addAndGet(-block.size());
+        Map<String, Integer> perName = new HashMap<>();
+        for (String name : block.names) {
+            perName.merge(name, 1, Integer::sum);
+        }
+        // Пустой список удаляется атомарно с последней отметкой: добавление в него
+        // после этого невозможно, и добавляющий поток возьмёт новый список
+        perName.forEach((name, count) ->
+                byName.computeIfPresent(name, (k, postings) -> {
+                    if (postings.tombstone(count)) {
+                        recordNameChange(k, false);
+                        return null;
+                    }
+                    return postings;
+                }));
+    }
+
+    /**
+     * Вызывается под блокировкой записи имени в byName: порядок изменений одного имени
+     * в журнале совпадает с порядком изменений таблицы.
+     */
+    private void recordNameChange(String name, boolean present) {
+        synchronized (nameChanges) {
+            int version = namesVersion.incrementAndGet();
+            if (nameChanges.size() >= MAX_NAME_CHANGES) {
+                nameChanges.clear();
+                changesFrom = version;
+            } else {
+                nameChanges.addLast(new NameChange(version, name, present));
+            }
+        }
+    }
+
+    /**
+     * Символы одного файла в колоночном виде. После публикации не изменяются
+     * (кроме отметки удаления).
+     */
+    private static final class FileSymbols {
+        final Path file;
+        final long crc;
+        final String[] names;
+        final String[] parents;
+        final byte[] kinds;
+        final int[] startLines;
+        final int[] endLines;
+        volatile boolean removed;
+
+        FileSymbols(Path file, long crc, int size) {
+            this.file = file;
+            this.crc = crc;
+            this.names = new String[size];
+            this.parents = new String[size];
+            this.kinds = new byte[size];
+            this.startLines = new int[size];
+            this.endLines = new int[size];
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        IndexedSymbol symbol(int i) {
+            return new IndexedSymbol(names[i], KINDS[kinds[i]], file, startLines[i], endLines[i], parents[i], crc);
+        }
+
+        long estimatedBytes() {
+            long n = names.length;
+            return HEADER_BYTES + 6L * REFERENCE_BYTES + Long.BYTES + 1
+                    + 5L * HEADER_BYTES + n * (2L * REFERENCE_BYTES + 1 + 2L * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Список вхождений одного имени: параллельные массивы блоков и номеров символов.
+     */
+    private static final class Postings {
+        final String name;
+        private FileSymbols[] blocks = new FileSymbols[2];
+        private int[] indexes = new int[2];
+        private int size;
+        private int dead;
+        private boolean retired;
+
+        Postings(String name) {
+            this.name = name;
+        }
+
+        synchronized boolean add(FileSymbols block, int index) {
+            if (retired) {
+                return false;
+            }
+            if (size == blocks.length) {
+                blocks = Arrays.copyOf(blocks, size * 2);
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            blocks[size] = block;
+            indexes[size] = index;
+            size++;
+            return true;
+        }
+
+        /**
+         * Учитывает удалённые записи. Возвращает true, если живых записей не осталось
+         * и список нужно убрать из таблицы.
+         */
+        synchronized boolean tombstone(int count) {
+            dead += count;
+            if (dead * 2 > size) {
+                compact();
+            }
+            if (size == 0) {
+                retired = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized List<IndexedSymbol> live() {
+            List<IndexedSymbol> result = new ArrayList<>(Math.max(0, size - dead));
+            for (int i = 0; i < size; i++) {
+                if (!blocks[i].removed) {
+                    result.add(blocks[i].symbol(indexes[i]));
+                }
+            }
+            return result;
+        }
+
+        synchronized long estimatedBytes() {
+            // Сам список, его массивы и строка имени (Latin-1)
+            return HEADER_BYTES + 3L * REFERENCE_BYTES + 2L * Integer.BYTES + 1
+                    + 2L * HEADER_BYTES + (long) blocks.length * (REFERENCE_BYTES + Integer.BYTES)
+                    + 2L * HEADER_BYTES + REFERENCE_BYTES + name.length();
+        }
+
+        private void compact() {
+            int live = 0;
+            for (int i = 0; i < size; i++) {
+                if (!blocks[i].removed) {
+                    blocks[live] = blocks[i];
+                    indexes[live] = indexes[i];
+                    live++;
+                }
+            }
+            Arrays.fill(blocks, live, size, null);
+            int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, live)) * 2);
+            if (capacity < blocks.length) {
+                blocks = Arrays.copyOf(blocks, capacity);
+                indexes = Arrays.copyOf(indexes, capacity);
+            }
+            size = live;
+            dead = 0;
+        }
+    }
+}
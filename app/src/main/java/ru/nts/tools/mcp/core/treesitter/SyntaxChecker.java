@@ -17,9 +17,10 @@ package ru.nts.tools.mcp.core.treesitter;
 
 import org.treesitter.TSNode;
 import org.treesitter.TSTree;
+import ru.nts.tools.mcp.core.FileContentCache;
+import ru.nts.tools.mcp.core.LineIndex;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -57,7 +58,7 @@ public final class SyntaxChecker {
         }
 
         try {
-            String content = Files.readString(path);
+            String content = FileContentCache.read(path).utf8();
             return checkContent(path, content);
         } catch (IOException e) {
             return EMPTY;
@@ -79,11 +80,12 @@ public final class SyntaxChecker {
         }
 
         try {
+            // Через кэш: после правки файла дерево перепарсивается инкрементально
             TreeSitterManager tsm = TreeSitterManager.getInstance();
-            TSTree tree = tsm.parse(content, langId.get());
+            TSTree tree = tsm.getCachedOrParse(path, content).tree();
             TSNode root = tree.getRootNode();
 
-            String[] lines = content.split("\n", -1);
+            LineIndex lines = LineIndex.of(content);
             List<SyntaxError> errors = new ArrayList<>();
             collectErrors(root, lines, errors);
 
@@ -94,7 +96,7 @@ public final class SyntaxChecker {
         }
     }
 
-    private static void collectErrors(TSNode node, String[] lines, List<SyntaxError> errors) {
+    private static void collectErrors(TSNode node, LineIndex lines, List<SyntaxError> errors) {
         if (errors.size() >= MAX_ERRORS) return;
 
         if (node.getType().equals("ERROR") || node.isMissing()) {
@@ -112,7 +114,7 @@ public final class SyntaxChecker {
             }
 
             // Контекст: строка кода
-            String context = (line - 1 < lines.length) ? lines[line - 1].trim() : "";
+            String context = (line <= lines.lineCount()) ? lines.line(line).trim() : "";
             if (context.length() > 80) {
                 context = context.substring(0, 80) + "...";
             }
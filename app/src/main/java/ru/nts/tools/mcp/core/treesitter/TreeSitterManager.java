@@ -16,20 +16,30 @@
 package ru.nts.tools.mcp.core.treesitter;
 
 import org.treesitter.*;
+import ru.nts.tools.mcp.core.FileContentCache;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.CRC32C;
 
 /**
  * Менеджер tree-sitter парсеров.
  * Управляет пулом парсеров для различных языков и кэшем AST деревьев.
- * Thread-safe через ThreadLocal парсеров.
+ * Thread-safe: парсер выдаётся из ограниченного пула {@link ParserPool} на время одного разбора.
+ * <p>
+ * Поддерживает инкрементальный репарсинг: кэш хранит исходный текст дерева,
+ * и при изменении файла старое дерево правится через {@link TSTree#edit(TSInputEdit)}
+ * и передаётся парсеру, который переиспользует неизменённые поддеревья.
+ * <p>
+ * Кэш деревьев ограничен оценкой нативной памяти (сегментированный LRU, {@link SegmentedLruCache}).
+ * Актуальность записи проверяется по stat файла (размер, mtime, inode): неизменённый файл
+ * не перечитывается и не хешируется. Явного освобождения деревьев нет - биндинг освобождает
+ * TSTree через Cleaner, когда на дерево и его узлы не остаётся ссылок, поэтому вытеснение
+ * безопасно для потоков, которые ещё обходят выданное дерево.
  */
 public final class TreeSitterManager {
 
@@ -41,19 +51,27 @@ public final class TreeSitterManager {
     private final Map<String, TSLanguage> languages = new ConcurrentHashMap<>();
 
     /**
-     * ThreadLocal парсеры для каждого языка (TSParser не thread-safe).
+     * Пул парсеров (TSParser не thread-safe). Одновременных разборов не больше числа ядер.
      */
-    private final Map<String, ThreadLocal<TSParser>> parsers = new ConcurrentHashMap<>();
+    private final ParserPool parsers = new ParserPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), this::getLanguage);
 
     /**
-     * Кэш AST деревьев с CRC для инвалидации.
+     * Нативная память дерева на байт исходника. Замерено по RSS после разбора:
+     * около 16 байт для Java и 21 для Python.
      */
-    private final Map<Path, CachedTree> treeCache = new ConcurrentHashMap<>();
+    static final int NATIVE_BYTES_PER_SOURCE_BYTE = 20;
 
     /**
-     * Максимальный размер кэша деревьев.
+     * Бюджет кэша деревьев по умолчанию (NTS_AST_CACHE_MB).
      */
-    private static final int MAX_CACHE_SIZE = 100;
+    private static final long DEFAULT_CACHE_MB = 128;
+
+    /**
+     * Кэш AST деревьев: версия файла (stat и CRC) для инвалидации, вес - оценка памяти.
+     */
+    private final SegmentedLruCache<Path, CachedTree> treeCache =
+            new SegmentedLruCache<>(readCacheBudget(), CachedTree::estimatedSize);
 
     /**
      * Максимальное количество строк для полного кэширования.
@@ -67,17 +85,6 @@ public final class TreeSitterManager {
      */
     private static final long MAX_PARSE_SIZE_BYTES = 5 * 1024 * 1024;
 
-    /**
-     * Максимальный общий размер кэша AST деревьев (50MB).
-     * При превышении старые записи будут удалены.
-     */
-    private static final long MAX_CACHED_AST_BYTES = 50 * 1024 * 1024;
-
-    /**
-     * Текущий размер кэша в байтах (приблизительно).
-     */
-    private final AtomicLong cachedAstSize = new AtomicLong(0);
-
     private TreeSitterManager() {}
 
     public static TreeSitterManager getInstance() {
@@ -118,22 +125,6 @@ public final class TreeSitterManager {
         };
     }
 
-    /**
-     * Получает или создает TSParser для текущего потока.
-     *
-     * @param langId идентификатор языка
-     * @return TSParser настроенный на указанный язык
-     */
-    private TSParser getParser(String langId) {
-        ThreadLocal<TSParser> parserHolder = parsers.computeIfAbsent(langId,
-                k -> ThreadLocal.withInitial(() -> {
-                    TSParser parser = new TSParser();
-                    parser.setLanguage(getLanguage(k));
-                    return parser;
-                }));
-        return parserHolder.get();
-    }
-
     /**
      * Парсит файл и возвращает AST дерево.
      *
@@ -151,7 +142,7 @@ public final class TreeSitterManager {
                             "Cannot detect language for: " + path));
         }
 
-        String content = Files.readString(path);
+        String content = FileContentCache.read(path).utf8();
         return parse(content, effectiveLangId);
     }
 
@@ -164,8 +155,7 @@ public final class TreeSitterManager {
      * @throws IllegalArgumentException если язык не поддерживается
      */
     public TSTree parse(String content, String langId) {
-        TSParser parser = getParser(langId);
-        TSTree tree = parser.parseString(null, content);
+        TSTree tree = parsers.withParser(langId, parser -> parser.parseString(null, content));
         if (tree == null) {
             throw new IllegalStateException("Failed to parse content for language: " + langId);
         }
@@ -174,7 +164,7 @@ public final class TreeSitterManager {
 
     /**
      * Получает AST дерево из кэша или парсит файл.
-     * Кэш инвалидируется если CRC файла изменился.
+     * Кэш инвалидируется если версия файла (stat) или его CRC изменились.
      *
      * @param path путь к файлу
      * @return AST дерево
@@ -182,34 +172,14 @@ public final class TreeSitterManager {
      */
     public TSTree getCachedOrParse(Path path) throws IOException {
         Path normalizedPath = path.toAbsolutePath().normalize();
-        String content = Files.readString(normalizedPath);
-        long currentCrc = calculateCrc(content);
-
+        FileContentCache.Stamp stamp = FileContentCache.Stamp.of(normalizedPath);
         CachedTree cached = treeCache.get(normalizedPath);
-        if (cached != null && cached.crc32c == currentCrc) {
+        if (cached != null && cached.isFreshFor(stamp)) {
             return cached.tree;
         }
-
-        String langId = LanguageDetector.detect(normalizedPath)
-                .orElseThrow(() -> new IllegalArgumentException(
-                        "Cannot detect language for: " + normalizedPath));
-
-        TSTree tree = parse(content, langId);
-
-        // Оценка размера AST (примерно 3x от размера исходного кода)
-        long estimatedSize = (long) content.length() * 3;
-
-        // Проверяем лимиты кэша
-        evictIfNeeded(estimatedSize);
-
-        // Ограничиваем размер кэша по количеству
-        if (treeCache.size() >= MAX_CACHE_SIZE) {
-            evictOldestEntries(MAX_CACHE_SIZE / 4);
-        }
-
-        treeCache.put(normalizedPath, new CachedTree(tree, currentCrc, Instant.now(), langId, estimatedSize));
-        cachedAstSize.addAndGet(estimatedSize);
-        return tree;
+        // Изменённый файл: байты и CRC берутся из общего кэша содержимого
+        FileContentCache.FileContent file = FileContentCache.read(normalizedPath);
+        return resolve(normalizedPath, file.utf8(), file.bytes(), file.crc32c(), file.stamp(), true).tree;
     }
 
     /**
@@ -225,47 +195,215 @@ public final class TreeSitterManager {
         Path normalizedPath = path.toAbsolutePath().normalize();
 
         // Проверяем размер файла перед чтением
-        long fileSize = Files.size(normalizedPath);
-        if (fileSize > MAX_PARSE_SIZE_BYTES) {
+        FileContentCache.Stamp stamp = FileContentCache.Stamp.of(normalizedPath);
+        if (stamp.size() > MAX_PARSE_SIZE_BYTES) {
             throw new IllegalArgumentException(String.format(
                     "File too large for AST parsing: %d bytes (max: %d bytes). Path: %s",
-                    fileSize, MAX_PARSE_SIZE_BYTES, normalizedPath));
+                    stamp.size(), MAX_PARSE_SIZE_BYTES, normalizedPath));
         }
 
-        String content = Files.readString(normalizedPath);
-        long currentCrc = calculateCrc(content);
-
         CachedTree cached = treeCache.get(normalizedPath);
+        if (cached != null && cached.isFreshFor(stamp)) {
+            return new ParseResult(cached.tree, cached.content, cached.langId, cached.crc32c,
+                    SourceText.of(cached.content, cached.source));
+        }
+
+        FileContentCache.FileContent file = FileContentCache.read(normalizedPath);
+        String content = file.utf8();
+
+        // Не кэшируем очень большие файлы для экономии памяти
+        CachedTree resolved = resolve(normalizedPath, content, file.bytes(), file.crc32c(), file.stamp(),
+                countLines(content) <= MAX_LINES_FOR_CACHING);
+        return new ParseResult(resolved.tree, content, resolved.langId, resolved.crc32c,
+                SourceText.of(content, resolved.source));
+    }
+
+    /**
+     * Получает AST дерево для переданного контента файла, используя кэш.
+     * Если в кэше есть дерево для предыдущей версии файла, выполняется
+     * инкрементальный репарсинг относительно него.
+     * <p>
+     * В кэш попадает только контент, записанный на диск (сообщённый через {@link #applyEdit}).
+     * Несохранённый контент (проверка синтаксиса, предпросмотр batch) парсится мимо кэша
+     * и не вытесняет дерево файла.
+     *
+     * @param path путь к файлу (ключ кэша и определение языка)
+     * @param content содержимое файла
+     * @return результат парсинга
+     */
+    public ParseResult getCachedOrParse(Path path, String content) {
+        Path normalizedPath = path.toAbsolutePath().normalize();
+        byte[] source = content.getBytes(StandardCharsets.UTF_8);
+        long currentCrc = calculateCrc(source);
+
+        CachedTree cached = treeCache.peek(normalizedPath);
         if (cached != null && cached.crc32c == currentCrc) {
-            return new ParseResult(cached.tree, content, cached.langId, currentCrc);
+            // Версия файла из кэша или записанная через applyEdit (отложенный репарсинг)
+            CachedTree resolved = resolve(normalizedPath, content, source, currentCrc, null,
+                    countLines(content) <= MAX_LINES_FOR_CACHING);
+            return new ParseResult(resolved.tree, content, resolved.langId, resolved.crc32c,
+                    SourceText.of(content, resolved.source));
         }
 
-        String langId = LanguageDetector.detect(normalizedPath)
+        String langId = cached != null ? cached.langId : LanguageDetector.detect(normalizedPath)
                 .orElseThrow(() -> new IllegalArgumentException(
                         "Cannot detect language for: " + normalizedPath));
+        TSTree tree = cached != null ? reparse(cached, source, content) : parse(content, langId);
+        return new ParseResult(tree, content, langId, currentCrc, SourceText.of(content, source));
+    }
 
-        TSTree tree = parse(content, langId);
-
-        // Подсчитываем строки для решения о кэшировании
-        int lineCount = countLines(content);
+    /**
+     * Сообщает менеджеру о новом содержимом файла после записи.
+     * Кэшированное дерево правится диапазоном изменения (байты и точки строка/столбец),
+     * а репарсинг откладывается до следующего обращения к файлу и выполняется
+     * инкрементально относительно старого дерева.
+     * Файл также отмечается изменённым в {@link SymbolIndex}.
+     *
+     * @param path путь к файлу
+     * @param newContent новое содержимое файла
+     */
+    public void applyEdit(Path path, String newContent) {
+        Path normalizedPath = path.toAbsolutePath().normalize();
+        SymbolIndex.getInstance().markFileChanged(normalizedPath);
+        CachedTree cached = treeCache.peek(normalizedPath);
+        if (cached == null) {
+            return;
+        }
 
-        // Не кэшируем очень большие файлы для экономии памяти
-        if (lineCount <= MAX_LINES_FOR_CACHING) {
-            // Оценка размера AST
-            long estimatedSize = (long) content.length() * 3;
+        byte[] source = newContent.getBytes(StandardCharsets.UTF_8);
+        if (Arrays.equals(cached.source, source)) {
+            return;
+        }
 
-            // Проверяем лимиты кэша
-            evictIfNeeded(estimatedSize);
+        // Правим копию: исходное дерево могут читать другие потоки
+        TSTree edited = cached.tree.copy();
+        edited.edit(computeEdit(cached.source, source));
+        CachedTree pending = new CachedTree(edited, calculateCrc(source), null,
+                cached.langId, estimateSize(newContent, source), newContent, source, true);
+        treeCache.replace(normalizedPath, cached, pending);
+    }
 
-            if (treeCache.size() >= MAX_CACHE_SIZE) {
-                evictOldestEntries(MAX_CACHE_SIZE / 4);
+    /**
+     * Возвращает актуальное дерево для контента: из кэша, инкрементальным
+     * репарсингом от закэшированной версии или полным парсингом.
+     * UTF-8 байты и их CRC уже известны; массив байтов не изменяется.
+     *
+     * @param stamp версия файла, из которой прочитано содержимое, или null для переданного контента
+     */
+    private CachedTree resolve(Path normalizedPath, String content, byte[] source, long currentCrc,
+                               FileContentCache.Stamp stamp, boolean cacheable) {
+        FileContentCache.Stamp freshStamp = stamp != null && stamp.isStable() && stamp.size() == source.length
+                ? stamp : null;
+        CachedTree cached = treeCache.get(normalizedPath);
+        if (cached != null && cached.crc32c == currentCrc && !cached.pendingReparse) {
+            if (freshStamp != null && !freshStamp.equals(cached.stamp)) {
+                // Содержимое то же (touch, перезапись тем же текстом) - запоминаем новую версию файла
+                treeCache.replace(normalizedPath, cached, cached.withStamp(freshStamp));
             }
+            return cached;
+        }
 
-            treeCache.put(normalizedPath, new CachedTree(tree, currentCrc, Instant.now(), langId, estimatedSize));
-            cachedAstSize.addAndGet(estimatedSize);
+        String langId = cached != null ? cached.langId : LanguageDetector.detect(normalizedPath)
+                .orElseThrow(() -> new IllegalArgumentException(
+                        "Cannot detect language for: " + normalizedPath));
+
+        TSTree tree = cached != null ? reparse(cached, source, content) : parse(content, langId);
+        CachedTree fresh = new CachedTree(tree, currentCrc, freshStamp, langId,
+                estimateSize(content, source), content, source, false);
+
+        if (cacheable) {
+            treeCache.put(normalizedPath, fresh);
+        } else if (cached != null) {
+            treeCache.remove(normalizedPath);
+        }
+        return fresh;
+    }
+
+    /**
+     * Инкрементально перепарсивает контент относительно закэшированного дерева.
+     */
+    private TSTree reparse(CachedTree base, byte[] source, String content) {
+        TSTree oldTree = base.tree.copy();
+        if (!Arrays.equals(base.source, source)) {
+            oldTree.edit(computeEdit(base.source, source));
+        }
+        TSTree tree = parsers.withParser(base.langId, parser -> parser.parseString(oldTree, content));
+        if (tree == null) {
+            throw new IllegalStateException("Failed to parse content for language: " + base.langId);
+        }
+        return tree;
+    }
+
+    /**
+     * Вычисляет единый диапазон изменения между двумя версиями UTF-8 текста
+     * по общему префиксу и суффиксу. Границы выравниваются по символам UTF-8.
+     *
+     * @param oldSource старое содержимое в UTF-8
+     * @param newSource новое содержимое в UTF-8
+     * @return описание правки для {@link TSTree#edit(TSInputEdit)}
+     */
+    static TSInputEdit computeEdit(byte[] oldSource, byte[] newSource) {
+        int start = Arrays.mismatch(oldSource, newSource);
+        if (start < 0) {
+            start = oldSource.length;
+        }
+        // Не начинаем правку с середины многобайтового символа
+        while (start > 0 && start < oldSource.length && (oldSource[start] & 0xC0) == 0x80) {
+            start--;
+        }
+
+        int suffix = 0;
+        while (suffix < oldSource.length - start && suffix < newSource.length - start
+                && oldSource[oldSource.length - 1 - suffix] == newSource[newSource.length - 1 - suffix]) {
+            suffix++;
+        }
+        int oldEnd = oldSource.length - suffix;
+        int newEnd = newSource.length - suffix;
+        while (oldEnd < oldSource.length && (oldSource[oldEnd] & 0xC0) == 0x80) {
+            oldEnd++;
+            newEnd++;
         }
 
-        return new ParseResult(tree, content, langId, currentCrc);
+        TSPoint startPoint = advancePoint(oldSource, 0, start, 0, 0);
+        TSPoint oldEndPoint = advancePoint(oldSource, start, oldEnd, startPoint.getRow(), startPoint.getColumn());
+        TSPoint newEndPoint = advancePoint(newSource, start, newEnd, startPoint.getRow(), startPoint.getColumn());
+        return new TSInputEdit(start, oldEnd, newEnd, startPoint, oldEndPoint, newEndPoint);
+    }
+
+    /**
+     * Сдвигает точку (строка, столбец в байтах) по тексту от from до to.
+     */
+    private static TSPoint advancePoint(byte[] source, int from, int to, int row, int column) {
+        for (int i = from; i < to; i++) {
+            if (source[i] == '\n') {
+                row++;
+                column = 0;
+            } else {
+                column++;
+            }
+        }
+        return new TSPoint(row, column);
+    }
+
+    /**
+     * Оценка размера записи кэша: нативное дерево, байты исходника и его строка
+     * (байт на символ для ASCII, иначе два).
+     */
+    static long estimateSize(String content, byte[] source) {
+        long chars = source.length == content.length() ? content.length() : content.length() * 2L;
+        return (long) source.length * (NATIVE_BYTES_PER_SOURCE_BYTE + 1) + chars;
+    }
+
+    private static long readCacheBudget() {
+        String env = System.getenv("NTS_AST_CACHE_MB");
+        if (env != null && !env.isBlank()) {
+            try {
+                return Math.max(0, Long.parseLong(env.trim())) << 20;
+            } catch (NumberFormatException ignored) {
+                // Используем значение по умолчанию
+            }
+        }
+        return DEFAULT_CACHE_MB << 20;
     }
 
     /**
@@ -308,10 +446,7 @@ public final class TreeSitterManager {
      * @param path путь к файлу
      */
     public void invalidateCache(Path path) {
-        CachedTree removed = treeCache.remove(path.toAbsolutePath().normalize());
-        if (removed != null) {
-            cachedAstSize.addAndGet(-removed.estimatedSize);
-        }
+        treeCache.remove(path.toAbsolutePath().normalize());
     }
 
     /**
@@ -319,7 +454,6 @@ public final class TreeSitterManager {
      */
     public void clearCache() {
         treeCache.clear();
-        cachedAstSize.set(0);
     }
 
     /**
@@ -333,20 +467,39 @@ public final class TreeSitterManager {
      * Возвращает оценочный размер кэша в байтах.
      */
     public long getCacheSizeBytes() {
-        return cachedAstSize.get();
+        return treeCache.weight();
     }
 
     /**
-     * Проверяет, есть ли файл в кэше с актуальной CRC.
+     * Возвращает бюджет кэша деревьев в байтах.
+     */
+    public long getCacheBudgetBytes() {
+        return treeCache.maxWeight();
+    }
+
+    /**
+     * Состояние пула парсеров: живые и свободные парсеры, занятые разрешения
+     * и оценка нативной памяти парсеров.
+     */
+    public ParserStats getParserStats() {
+        return parsers.stats();
+    }
+
+    /**
+     * Проверяет, есть ли файл в кэше с актуальной версией (stat или CRC).
      */
     public boolean isCached(Path path) {
-        CachedTree cached = treeCache.get(path.toAbsolutePath().normalize());
-        if (cached == null) {
+        CachedTree cached = treeCache.peek(path.toAbsolutePath().normalize());
+        if (cached == null || cached.pendingReparse) {
             return false;
         }
         try {
-            String content = Files.readString(path);
-            return cached.crc32c == calculateCrc(content);
+            if (cached.isFreshFor(FileContentCache.Stamp.of(path))) {
+                return true;
+            }
+            FileContentCache.FileContent file = FileContentCache.read(path);
+            file.utf8(); // файл должен оставаться корректным UTF-8
+            return cached.crc32c == file.crc32c();
         } catch (IOException e) {
             return false;
         }
@@ -356,43 +509,60 @@ public final class TreeSitterManager {
      * Вычисляет CRC32C хеш содержимого.
      */
     private long calculateCrc(String content) {
+        return calculateCrc(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long calculateCrc(byte[] source) {
         CRC32C crc = new CRC32C();
-        crc.update(content.getBytes());
+        crc.update(source);
         return crc.getValue();
     }
 
     /**
-     * Удаляет старые записи если размер кэша превышает лимит.
+     * Кэшированное AST дерево с метаданными.
+     * content - текст, которому соответствует дерево; отдаётся при попадании в кэш без повторного декодирования.
+     * source - тот же текст в UTF-8 (база для вычисления правок).
+     * stamp - версия файла на диске, которой соответствует source (null, если версия ненадёжна
+     * или дерево построено по переданному контенту).
+     * pendingReparse - дерево уже отредактировано через edit(), но ещё не перепарсено.
      */
-    private void evictIfNeeded(long additionalSize) {
-        long targetSize = MAX_CACHED_AST_BYTES - additionalSize;
-        while (cachedAstSize.get() > targetSize && !treeCache.isEmpty()) {
-            evictOldestEntries(1);
+    private record CachedTree(TSTree tree, long crc32c, FileContentCache.Stamp stamp, String langId,
+                              long estimatedSize, String content, byte[] source, boolean pendingReparse) {
+
+        /**
+         * Дерево соответствует файлу без чтения содержимого: совпала надёжная версия файла.
+         */
+        boolean isFreshFor(FileContentCache.Stamp current) {
+            return !pendingReparse && stamp != null && stamp.equals(current);
         }
-    }
 
-    /**
-     * Удаляет указанное количество старых записей.
-     */
-    private void evictOldestEntries(int count) {
-        treeCache.entrySet().stream()
-                .sorted((a, b) -> a.getValue().parsedAt.compareTo(b.getValue().parsedAt))
-                .limit(count)
-                .forEach(entry -> {
-                    CachedTree removed = treeCache.remove(entry.getKey());
-                    if (removed != null) {
-                        cachedAstSize.addAndGet(-removed.estimatedSize);
-                    }
-                });
+        CachedTree withStamp(FileContentCache.Stamp newStamp) {
+            return new CachedTree(tree, crc32c, newStamp, langId, estimatedSize, content, source, false);
+        }
     }
 
     /**
-     * Кэшированное AST дерево с метаданными.
+     * Состояние пула парсеров.
+     *
+     * @param parallelism          максимум одновременных разборов
+     * @param liveParsers          создано нативных парсеров (по всем языкам)
+     * @param idleParsers          парсеров в пуле, ожидающих разбора
+     * @param activeParses         разборов, выполняющихся сейчас
+     * @param estimatedNativeBytes оценка нативной памяти живых парсеров
      */
-    private record CachedTree(TSTree tree, long crc32c, Instant parsedAt, String langId, long estimatedSize) {}
+    public record ParserStats(int parallelism, int liveParsers, int idleParsers, int activeParses,
+                              long estimatedNativeBytes) {
+    }
 
     /**
      * Результат парсинга с контентом.
+     *
+     * @param source UTF-8 представление контента для извлечения текста узлов без перекодирования
      */
-    public record ParseResult(TSTree tree, String content, String langId, long crc32c) {}
+    public record ParseResult(TSTree tree, String content, String langId, long crc32c, SourceText source) {
+
+        public ParseResult(TSTree tree, String content, String langId, long crc32c) {
+            this(tree, content, langId, crc32c, SourceText.of(content));
+        }
+    }
 }
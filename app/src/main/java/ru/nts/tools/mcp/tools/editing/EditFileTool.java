@@ -19,9 +19,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import ru.nts.tools.mcp.core.*;
+import ru.nts.tools.mcp.core.treesitter.TreeSitterManager;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
@@ -32,7 +31,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.zip.CRC32C;
 
 /**
  * Инструмент для построчного редактирования файлов.
@@ -421,17 +419,18 @@ public class EditFileTool implements McpTool {
         // Предотвращение загрузки гигантских файлов (OOM Protection)
         PathSanitizer.checkFileSize(path);
 
-        // Чтение файла и определение кодировки за один проход
+        // Чтение файла и определение кодировки за один проход (текст и CRC из одного чтения)
+        FileContentCache.FileContent file = FileContentCache.read(path);
         EncodingUtils.TextFileContent fileData;
         if (fileParams.has("encoding")) {
             try {
                 Charset forced = Charset.forName(fileParams.get("encoding").asText());
-                fileData = EncodingUtils.readTextFile(path, forced);
+                fileData = file.decode(forced);
             } catch (Exception e) {
-                fileData = EncodingUtils.readTextFile(path);
+                fileData = file.text();
             }
         } else {
-            fileData = EncodingUtils.readTextFile(path);
+            fileData = file.text();
         }
         
         Charset charset = fileData.charset();
@@ -442,9 +441,10 @@ public class EditFileTool implements McpTool {
         }
         
         String content = fileData.content();
-        String[] contentLines = content.split("\n", -1);
-        int oldLineCount = contentLines.length;
-        long currentCrc = calculateCRC32(path);
+        // Индекс строк: поиск якорей и проверка токена не разбивают весь файл
+        LineIndex contentLines = file.lineIndex(fileData);
+        int oldLineCount = contentLines.lineCount();
+        long currentCrc = file.crc32c();
 
         // Определение разделителя строк
         String lineSeparator = content.contains("\r\n") ? "\r\n" : "\n";
@@ -484,7 +484,7 @@ public class EditFileTool implements McpTool {
         // Это должно совпадать с форматом в registerAccess (FileReadTool, ProjectReplaceTool, рефакторинг)
         int tokenStart = token.startLine();
         int tokenEnd = Math.min(token.endLine(), oldLineCount);
-        String tokenRawContent = extractRawContent(contentLines, tokenStart, tokenEnd);
+        String tokenRawContent = contentLines.range(tokenStart, tokenEnd);
 
         // Проверяем валидность токена (сравниваем CRC диапазона)
         var validation = LineAccessTracker.validateToken(token, tokenRawContent, oldLineCount);
@@ -562,7 +562,7 @@ public class EditFileTool implements McpTool {
         TransactionManager.markFileAccessedInTransaction(path);
 
         // Представление контента в виде списка строк для корректной манипуляции
-        List<String> currentLines = new ArrayList<>(Arrays.asList(contentLines));
+        List<String> currentLines = new ArrayList<>(contentLines.lines());
 
         // Регистрация состояния файла "ДО" в текущей транзакции
         if (!dryRun) {
@@ -597,6 +597,7 @@ public class EditFileTool implements McpTool {
                 // Автоматическое переключение на UTF-8 если контент содержит non-ASCII
                 Charset writeCharset = autoSwitchEncodingIfNeeded(charset, newContent, stats);
                 FileUtils.safeWrite(path, newContent, writeCharset);
+                TreeSitterManager.getInstance().applyEdit(path, newContent);
             }
         } else if (fileParams.has("startLine")) {
             // Одиночная правка по индексам
@@ -609,6 +610,7 @@ public class EditFileTool implements McpTool {
                 // Автоматическое переключение на UTF-8 если контент содержит non-ASCII
                 Charset writeCharset = autoSwitchEncodingIfNeeded(charset, newContent, stats);
                 FileUtils.safeWrite(path, newContent, writeCharset);
+                TreeSitterManager.getInstance().applyEdit(path, newContent);
             }
         } else {
             throw new IllegalArgumentException("Insufficient parameters for file: " + pathStr);
@@ -619,7 +621,7 @@ public class EditFileTool implements McpTool {
 
         // Вычисление итоговой контрольной суммы и обновление токенов
         if (!dryRun) {
-            stats.crc32 = calculateCRC32(path);
+            stats.crc32 = FileContentCache.read(path).crc32c();
             int newLineCount = currentLines.size();
             stats.newLineCount = newLineCount;
             int lineDelta = newLineCount - oldLineCount;
@@ -668,7 +670,7 @@ public class EditFileTool implements McpTool {
      * @param lines строки файла для поиска anchor
      * @return [startLine, endLine] - абсолютные номера строк (1-based)
      */
-    private int[] resolveEditRange(JsonNode op, String[] lines) {
+    private int[] resolveEditRange(JsonNode op, LineIndex lines) {
         int requestedStart = op.path("startLine").asInt(op.path("line").asInt(1));
         int requestedEnd = op.path("endLine").asInt(requestedStart);
         String contextPattern = op.path("contextStartPattern").asText(null);
@@ -679,8 +681,8 @@ public class EditFileTool implements McpTool {
         }
 
         // Относительная адресация: ищем anchor
-        int anchorIdx = findAnchorLine(Arrays.asList(lines), contextPattern);
-        if (anchorIdx == -1) {
+        int anchorIdx = lines.find(Pattern.compile(contextPattern)) - 1;
+        if (anchorIdx < 0) {
             // Паттерн не найден - используем как есть, ошибка будет позже
             return new int[]{requestedStart, requestedEnd};
         }
@@ -929,21 +931,6 @@ public class EditFileTool implements McpTool {
         return -1;
     }
 
-    /**
-     * Вычисляет CRC32C для файла.
-     */
-    private long calculateCRC32(Path path) throws Exception {
-        CRC32C crc = new CRC32C();
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(path.toFile()))) {
-            byte[] buffer = new byte[8192];
-            int len;
-            while ((len = bis.read(buffer)) != -1) {
-                crc.update(buffer, 0, len);
-            }
-        }
-        return crc.getValue();
-    }
-
     /**
      * Извлекает содержимое указанного диапазона строк.
      *
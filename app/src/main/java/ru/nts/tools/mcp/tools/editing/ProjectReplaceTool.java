@@ -22,7 +22,6 @@ import ru.nts.tools.mcp.core.*;
 
 import java.nio.charset.Charset;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.util.ArrayList;
@@ -61,6 +60,7 @@ public class ProjectReplaceTool implements McpTool {
             - Regex support for complex patterns
             - Include/exclude globs to limit scope
             - Binary files automatically skipped
+            - Paths ignored by .gitignore/.ignore, build/ and node_modules/ are not scanned
             - Report shows affected files with occurrence counts
             - DRY RUN MODE: Preview unified diff without modifying files
             - AUTO-CHECKPOINT: Task checkpoint created before changes
@@ -159,53 +159,64 @@ public class ProjectReplaceTool implements McpTool {
         }
 
         // 1. Предварительное сканирование
-        try (Stream<Path> walk = Files.walk(root)) {
-            Iterable<Path> iterable = walk.filter(p -> Files.isRegularFile(p) && !PathSanitizer.isProtected(p))::iterator;
-            for (Path p : iterable) {
-                try {
-                    Path relPath = root.relativize(p);
-                    // Нормализация пути для матчера (замена \ на /)
-                    Path normalizedRelPath = Path.of(relPath.toString().replace('\\', '/'));
-
-                    if (includeMatcher != null && !includeMatcher.matches(normalizedRelPath)) {
-                        continue;
-                    }
-                    if (excludeMatcher != null && excludeMatcher.matches(normalizedRelPath)) {
-                        continue;
-                    }
+        // Игнорируемые директории (.gitignore, node_modules, build) не сканируются.
+        // Обход параллельный, поэтому сортируем для стабильного порядка отчёта.
+        // Триграммный индекс отсекает файлы без совпадений. Он строится по автоопределённой
+        // кодировке, поэтому при явной кодировке не используется.
+        ProjectWalker walker = ProjectWalker.create(root).skipProtected(true);
+        TrigramIndex.Query indexQuery = forcedCharset == null
+                ? TrigramIndex.getInstance().query(root, query, isRegex) : null;
+        if (indexQuery != null) {
+            walker.filter(indexQuery::mayContain);
+        }
+        List<Path> files;
+        try (Stream<Path> walk = walker.stream()) {
+            files = walk.sorted().toList();
+        }
+        for (Path p : files) {
+            try {
+                Path relPath = root.relativize(p);
+                // Нормализация пути для матчера (замена \ на /)
+                Path normalizedRelPath = Path.of(relPath.toString().replace('\\', '/'));
 
-                    // Защита от огромных файлов
-                    PathSanitizer.checkFileSize(p);
-
-                    // Эффективное чтение с детекцией кодировки и проверкой на бинарность
-                    EncodingUtils.TextFileContent fileData = (forcedCharset != null) 
-                            ? EncodingUtils.readTextFile(p, forcedCharset) 
-                            : EncodingUtils.readTextFile(p);
-                    
-                    String content = fileData.content();
-                    int count = 0;
-
-                    if (isRegex) {
-                        Matcher m = pattern.matcher(content);
-                        while (m.find()) {
-                            count++;
-                        }
-                    } else {
-                        int idx = content.indexOf(query);
-                        while (idx >= 0) {
-                            count++;
-                            idx = content.indexOf(query, idx + query.length());
-                        }
-                    }
+                if (includeMatcher != null && !includeMatcher.matches(normalizedRelPath)) {
+                    continue;
+                }
+                if (excludeMatcher != null && excludeMatcher.matches(normalizedRelPath)) {
+                    continue;
+                }
 
-                    if (count > 0) {
-                        Charset outputCharset = (forcedCharset != null) ? forcedCharset : fileData.charset();
-                        tasks.add(new ReplaceTask(p, content, outputCharset, count));
-                        totalOccurrences += count;
+                // Защита от огромных файлов
+                PathSanitizer.checkFileSize(p);
+
+                // Эффективное чтение с детекцией кодировки и проверкой на бинарность
+                EncodingUtils.TextFileContent fileData = (forcedCharset != null) 
+                        ? EncodingUtils.readTextFile(p, forcedCharset) 
+                        : EncodingUtils.readTextFile(p);
+                
+                String content = fileData.content();
+                int count = 0;
+
+                if (isRegex) {
+                    Matcher m = pattern.matcher(content);
+                    while (m.find()) {
+                        count++;
                     }
-                } catch (Exception ignored) {
-                    // Игнорируем бинарные файлы, ошибки доступа или слишком большие файлы в процессе массового сканирования
+                } else {
+                    int idx = content.indexOf(query);
+                    while (idx >= 0) {
+                        count++;
+                        idx = content.indexOf(query, idx + query.length());
+                    }
+                }
+
+                if (count > 0) {
+                    Charset outputCharset = (forcedCharset != null) ? forcedCharset : fileData.charset();
+                    tasks.add(new ReplaceTask(p, content, outputCharset, count));
+                    totalOccurrences += count;
                 }
+            } catch (Exception ignored) {
+                // Игнорируем бинарные файлы, ошибки доступа или слишком большие файлы в процессе массового сканирования
             }
         }
 
@@ -25,6 +25,7 @@ import ru.nts.tools.mcp.core.McpTool;
 import ru.nts.tools.mcp.core.PathSanitizer;
 import ru.nts.tools.mcp.core.TaskContext;
 import ru.nts.tools.mcp.core.TransactionManager;
+import ru.nts.tools.mcp.core.treesitter.SymbolIndex;
 
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
@@ -163,6 +164,7 @@ public class FileManageTool implements McpTool {
             TransactionManager.markFileAccessedInTransaction(path);
 
             TransactionManager.commit();
+            markIndexChanged(path);
         } catch (Exception e) {
             TransactionManager.rollback();
             throw e;
@@ -200,6 +202,7 @@ public class FileManageTool implements McpTool {
             Files.copy(src, dest);
             TransactionManager.markFileAccessedInTransaction(dest);
             TransactionManager.commit();
+            markIndexChanged(dest);
         } catch (Exception e) {
             TransactionManager.rollback();
             throw e;
@@ -237,6 +240,7 @@ public class FileManageTool implements McpTool {
                 });
             }
             TransactionManager.commit();
+            markIndexChanged(dest);
             return createResponse(String.format("Copied directory %s to %s (%d files)",
                     srcStr, destStr, fileCount[0]));
         } catch (Exception e) {
@@ -269,6 +273,7 @@ public class FileManageTool implements McpTool {
         }
 
         TransactionManager.startTransaction("Delete: " + pathStr);
+        markIndexChanged(path);
         try {
             ExternalChangeTracker externalTracker = TaskContext.currentOrDefault().externalChanges();
             if (Files.isDirectory(path)) {
@@ -322,7 +327,9 @@ public class FileManageTool implements McpTool {
             }
             TransactionManager.backup(src);
             TransactionManager.backup(dest);
+            markIndexChanged(src);
             Files.move(src, dest);
+            markIndexChanged(dest);
             // Переносим токены доступа на новый путь
             LineAccessTracker.moveTokens(src, dest);
             // Переносим снапшот для отслеживания внешних изменений
@@ -348,7 +355,9 @@ public class FileManageTool implements McpTool {
         try {
             TransactionManager.backup(path);
             TransactionManager.backup(newPath);
+            markIndexChanged(path);
             Files.move(path, newPath);
+            markIndexChanged(newPath);
             // Переносим токены доступа на новый путь
             LineAccessTracker.moveTokens(path, newPath);
             // Переносим снапшот для отслеживания внешних изменений
@@ -402,6 +411,25 @@ public class FileManageTool implements McpTool {
         return res;
     }
 
+    /**
+     * Отмечает файл (или все файлы директории) изменённым в индексе символов.
+     * Переиндексация выполняется лениво при следующем запросе к индексу.
+     */
+    private static void markIndexChanged(Path path) {
+        SymbolIndex index = SymbolIndex.getInstance();
+        if (!index.isIndexed() && !index.isIndexing()) {
+            return;
+        }
+        if (!Files.isDirectory(path)) {
+            index.markFileChanged(path);
+            return;
+        }
+        try (var s = Files.walk(path)) {
+            s.filter(Files::isRegularFile).forEach(index::markFileChanged);
+        } catch (IOException ignored) {
+        }
+    }
+
     private JsonNode createResponse(String msg) {
         ObjectNode res = mapper.createObjectNode();
         res.putArray("content").addObject().put("type", "text").put("text", msg);
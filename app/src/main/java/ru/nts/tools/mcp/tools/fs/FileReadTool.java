@@ -24,8 +24,6 @@ import ru.nts.tools.mcp.core.treesitter.SymbolExtractor;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo;
 import ru.nts.tools.mcp.core.treesitter.TreeSitterManager;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -34,7 +32,6 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
-import java.util.zip.CRC32C;
 
 /**
  * Инструмент для чтения файлов с системой токенов доступа к строкам.
@@ -257,19 +254,22 @@ public class FileReadTool implements McpTool {
                     "Use action='info' to get file metadata first.");
         }
 
-        // Загружаем файл с учетом принудительной кодировки если указана
+        // Загружаем файл с учетом принудительной кодировки если указана.
+        // Текст и CRC берутся из одного чтения файла
+        FileContentCache.FileContent file = FileContentCache.read(path);
         EncodingUtils.TextFileContent fileData;
         if (params.has("encoding")) {
             Charset forcedCharset = Charset.forName(params.get("encoding").asText());
-            fileData = EncodingUtils.readTextFile(path, forcedCharset);
+            fileData = file.decode(forcedCharset);
         } else {
-            fileData = EncodingUtils.readTextFile(path);
+            fileData = file.text();
         }
 
         String content = fileData.content();
-        String[] lines = content.split("\n", -1);
-        int lineCount = lines.length;
-        long crc32 = calculateCRC32(path);
+        // Индекс строк вместо разбиения файла: диапазоны читаются по смещениям
+        LineIndex lines = file.lineIndex(fileData);
+        int lineCount = lines.lineCount();
+        long crc32 = file.crc32c();
 
         // Проверяем внешние изменения
         ExternalChangeTracker externalTracker = TaskContext.currentOrDefault().externalChanges();
@@ -388,7 +388,7 @@ public class FileReadTool implements McpTool {
         return createReadResponse(path, lineCount, fileData.charset().name(), crc32, startLine, endLine, rangeContent, newToken, hasExternalChange, coveringTokenTip);
     }
 
-    private JsonNode executeReadRanges(Path path, JsonNode rangesNode, String[] lines, long crc32, int lineCount, Charset charset, boolean hasExternalChange) {
+    private JsonNode executeReadRanges(Path path, JsonNode rangesNode, LineIndex lines, long crc32, int lineCount, Charset charset, boolean hasExternalChange) {
         StringBuilder sb = new StringBuilder();
         List<String> tokens = new ArrayList<>();
 
@@ -503,22 +503,22 @@ public class FileReadTool implements McpTool {
                     ". Use nts_file_search(action='list') to browse directory contents.");
         }
         BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-        Charset charset = EncodingUtils.detectEncoding(path);
-        long crc32 = calculateCRC32(path);
+        FileContentCache.FileContent file = FileContentCache.read(path);
+        Charset charset = file.charset();
+        long crc32 = file.crc32c();
         List<String> head = new ArrayList<>();
         long lineCount = 0;
 
         // Для больших файлов показываем больше строк (обычно там imports)
         final int headLimit = 10;
 
-        try (var linesStream = Files.lines(path, charset)) {
-            var it = linesStream.peek(l -> {
+        try {
+            var it = file.decode(charset).content().lines().iterator();
+            while (it.hasNext()) {
+                String l = it.next();
                 if (head.size() < headLimit) {
                     head.add(l);
                 }
-            }).iterator();
-            while (it.hasNext()) {
-                it.next();
                 lineCount++;
             }
         } catch (Exception e) {
@@ -647,26 +647,21 @@ public class FileReadTool implements McpTool {
         };
     }
 
-    private int findPatternLine(String[] lines, String patternStr) {
-        Pattern pattern = Pattern.compile(patternStr);
-        for (int i = 0; i < lines.length; i++) {
-            if (pattern.matcher(lines[i]).find()) {
-                return i;
-            }
-        }
-        return -1;
+    private int findPatternLine(LineIndex lines, String patternStr) {
+        int line = lines.find(Pattern.compile(patternStr));
+        return line > 0 ? line - 1 : -1;
     }
 
-    private String extractLines(String[] lines, int startLine, int endLine) {
-        int startIdx = Math.max(0, startLine - 1);
-        int endIdx = Math.min(lines.length, endLine);
+    private String extractLines(LineIndex lines, int startLine, int endLine) {
+        int start = Math.max(1, startLine);
+        int end = Math.min(lines.lineCount(), endLine);
 
         StringBuilder sb = new StringBuilder();
-        for (int i = startIdx; i < endIdx; i++) {
-            if (i > startIdx) {
+        for (int line = start; line <= end; line++) {
+            if (line > start) {
                 sb.append("\n");
             }
-            sb.append(String.format("%4d\t%s", i + 1, lines[i].replace("\r", "")));
+            sb.append(String.format("%4d\t%s", line, lines.line(line).replace("\r", "")));
         }
         return sb.toString();
     }
@@ -676,30 +671,8 @@ public class FileReadTool implements McpTool {
      * Используется для вычисления CRC токена - должно совпадать с форматом
      * в ProjectReplaceTool и операциях рефакторинга.
      */
-    private String extractRawContent(String[] lines, int startLine, int endLine) {
-        int startIdx = Math.max(0, startLine - 1);
-        int endIdx = Math.min(lines.length, endLine);
-
-        StringBuilder sb = new StringBuilder();
-        for (int i = startIdx; i < endIdx; i++) {
-            if (i > startIdx) {
-                sb.append("\n");
-            }
-            sb.append(lines[i]);
-        }
-        return sb.toString();
-    }
-
-    private long calculateCRC32(Path path) throws IOException {
-        CRC32C crc = new CRC32C();
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(path.toFile()))) {
-            byte[] buffer = new byte[8192];
-            int len;
-            while ((len = bis.read(buffer)) != -1) {
-                crc.update(buffer, 0, len);
-            }
-        }
-        return crc.getValue();
+    private String extractRawContent(LineIndex lines, int startLine, int endLine) {
+        return lines.range(startLine, endLine);
     }
 
     private JsonNode createReadResponse(Path path, int totalLines, String encoding, long crc32,
@@ -142,13 +142,15 @@ public class FileSearchTool implements McpTool {
 
         return switch (action) {
             case "list" -> executeList(pathStr, params);
-            case "find" -> executeFind(pathStr, params.get("pattern").asText());
+            case "find" -> executeFind(pathStr, params.get("pattern").asText(),
+                    params.path("autoIgnore").asBoolean(true));
             case "grep" ->
                     executeGrep(pathStr, params.get("pattern").asText(),
                             params.path("isRegex").asBoolean(false),
                             params.path("maxResults").asInt(100),
                             params.path("before").asInt(0),
-                            params.path("after").asInt(0));
+                            params.path("after").asInt(0),
+                            params.path("autoIgnore").asBoolean(true));
             case "structure" ->
                     executeStructure(pathStr, params.path("depth").asInt(3), params.path("autoIgnore").asBoolean(true));
             default -> throw new IllegalArgumentException("Unknown action: " + action);
@@ -160,14 +162,14 @@ public class FileSearchTool implements McpTool {
         int depth = params.path("depth").asInt(1);
         boolean autoIgnore = params.path("autoIgnore").asBoolean(true);
 
-        Set<String> ignored = autoIgnore ? getStandardIgnored() : new HashSet<>();
+        IgnoreRules ignoreRules = autoIgnore ? IgnoreRules.forRoot(path) : null;
         List<String> entries = new ArrayList<>();
-        listRecursive(path, entries, 0, depth, "", ignored);
+        listRecursive(path, entries, 0, depth, "", ignoreRules);
 
         return createResponse(entries.isEmpty() ? "(directory is empty)" : String.join("\n", entries));
     }
 
-    private void listRecursive(Path current, List<String> result, int level, int max, String indent, Set<String> ignored) throws IOException {
+    private void listRecursive(Path current, List<String> result, int level, int max, String indent, IgnoreRules ignoreRules) throws IOException {
         if (level >= max) {
             return;
         }
@@ -181,10 +183,10 @@ public class FileSearchTool implements McpTool {
         });
 
         for (Path p : sub) {
-            if (PathSanitizer.isProtected(p) || ignored.contains(p.getFileName().toString())) {
+            boolean isDir = Files.isDirectory(p);
+            if (PathSanitizer.isProtected(p) || isAutoIgnored(p, isDir, ignoreRules)) {
                 continue;
             }
-            boolean isDir = Files.isDirectory(p);
             int matches = (!isDir) ? SearchTracker.getMatchCount(p) : 0;
             String mStatus = matches > 0 ? " [MATCHES: " + matches + "]" : "";
 
@@ -198,12 +200,13 @@ public class FileSearchTool implements McpTool {
             }
 
             if (isDir) {
-                listRecursive(p, result, level + 1, max, indent + "  ", ignored);
+                listRecursive(p, result, level + 1, max, indent + "  ",
+                        ignoreRules != null ? ignoreRules.forDirectory(p) : null);
             }
         }
     }
 
-    private JsonNode executeFind(String pathStr, String pattern) throws IOException {
+    private JsonNode executeFind(String pathStr, String pattern, boolean autoIgnore) throws IOException {
         Path basePath = PathSanitizer.sanitize(pathStr, true);
         PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
         Path root = PathSanitizer.getRoot();
@@ -218,7 +221,10 @@ public class FileSearchTool implements McpTool {
         final PathMatcher finalFileNameMatcher = fileNameMatcher;
 
         List<String> found = new ArrayList<>();
-        try (var s = Files.walk(basePath)) {
+        ProjectWalker walker = ProjectWalker.create(basePath)
+                .autoIgnore(autoIgnore)
+                .includeDirectories(true);
+        try (var s = walker.stream()) {
             s.filter(p -> {
                 Path relativePath = root.relativize(p);
                 Path fileName = p.getFileName();
@@ -238,11 +244,13 @@ public class FileSearchTool implements McpTool {
                 return false;
             }).forEach(p -> found.add(root.relativize(p).toString()));
         }
+        // Обход параллельный, порядок выдачи не определён
+        Collections.sort(found);
         return createResponse("Found " + found.size() + " matches:\n" + String.join("\n", found));
     }
 
     private JsonNode executeGrep(String pathStr, String query, boolean isRegex, int maxResults,
-                                  int contextBefore, int contextAfter) throws Exception {
+                                  int contextBefore, int contextAfter, boolean autoIgnore) throws Exception {
         Path rootPath = PathSanitizer.sanitize(pathStr, true);
         if (!Files.exists(rootPath)) {
             throw new IllegalArgumentException("Search path not found: " + pathStr);
@@ -262,14 +270,23 @@ public class FileSearchTool implements McpTool {
 
         // Захватываем контекст сессии для проброса в worker threads
         final TaskContext parentContext = TaskContext.current();
+        final CancellationToken token = TaskContext.cancellation();
 
         // Создаём поток файлов: один файл или обход директории
         java.util.stream.Stream<Path> fileStream;
+        TrigramIndex.Query indexQuery = null;
         if (isSingleFile) {
             fileStream = java.util.stream.Stream.of(rootPath);
         } else {
-            fileStream = Files.walk(rootPath)
-                    .filter(path -> Files.isRegularFile(path) && !PathSanitizer.isProtected(path));
+            ProjectWalker walker = ProjectWalker.create(rootPath)
+                    .autoIgnore(autoIgnore)
+                    .skipProtected(true);
+            // Триграммный индекс отсекает файлы, где паттерн заведомо не встречается
+            indexQuery = TrigramIndex.getInstance().query(rootPath, query, isRegex);
+            if (indexQuery != null) {
+                walker.filter(indexQuery::mayContain);
+            }
+            fileStream = walker.stream();
         }
 
         try (var executor = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
@@ -279,15 +296,17 @@ public class FileSearchTool implements McpTool {
                     if (filesWithMatches.get() >= maxFiles) {
                         return;
                     }
+                    token.throwIfCancelled();
 
                     executor.submit(() -> {
-                        // Пробрасываем контекст сессии в worker thread
+                        // Пробрасываем контекст сессии и токен отмены в worker thread
                         if (parentContext != null) {
                             TaskContext.setCurrent(parentContext);
                         }
+                        TaskContext.setCancellation(token);
                         try {
                             // Двойная проверка внутри потока
-                            if (filesWithMatches.get() >= maxFiles) {
+                            if (filesWithMatches.get() >= maxFiles || token.isCancelled()) {
                                 return;
                             }
 
@@ -338,12 +357,15 @@ public class FileSearchTool implements McpTool {
                 });
             }
         }
+        token.throwIfCancelled();
 
         var sortedResults = new ArrayList<>(results);
         sortedResults.sort(Comparator.comparing(FileSearchResult::path));
 
         if (sortedResults.isEmpty()) {
-            return createResponse("No matches found. (Scanned " + filesProcessed.get() + " files)");
+            int skipped = indexQuery != null ? indexQuery.skippedFiles() : 0;
+            return createResponse("No matches found. (Scanned " + filesProcessed.get() + " files"
+                    + (skipped > 0 ? ", " + skipped + " skipped by trigram index" : "") + ")");
         }
 
         StringBuilder sb = new StringBuilder();
@@ -488,13 +510,13 @@ public class FileSearchTool implements McpTool {
 
     private JsonNode executeStructure(String pathStr, int depth, boolean autoIgnore) throws IOException {
         Path path = PathSanitizer.sanitize(pathStr, true);
-        Set<String> ignored = autoIgnore ? getStandardIgnored() : new HashSet<>();
+        IgnoreRules ignoreRules = autoIgnore ? IgnoreRules.forRoot(path) : null;
         StringBuilder sb = new StringBuilder();
-        generateTree(path, sb, 0, depth, "", ignored);
+        generateTree(path, sb, 0, depth, "", ignoreRules);
         return createResponse(sb.toString());
     }
 
-    private void generateTree(Path current, StringBuilder sb, int level, int max, String indent, Set<String> ignored) throws IOException {
+    private void generateTree(Path current, StringBuilder sb, int level, int max, String indent, IgnoreRules ignoreRules) throws IOException {
         if (level >= max) {
             return;
         }
@@ -509,24 +531,31 @@ public class FileSearchTool implements McpTool {
 
         for (int i = 0; i < sub.size(); i++) {
             Path p = sub.get(i);
-            if (PathSanitizer.isProtected(p) || ignored.contains(p.getFileName().toString())) {
+            boolean isDir = Files.isDirectory(p);
+            if (PathSanitizer.isProtected(p) || isAutoIgnored(p, isDir, ignoreRules)) {
                 continue;
             }
             boolean isLast = (i == sub.size() - 1);
             sb.append(indent).append(isLast ? "└── " : "├── ").append(p.getFileName()).append("\n");
-            if (Files.isDirectory(p)) {
-                generateTree(p, sb, level + 1, max, indent + (isLast ? "    " : "│   "), ignored);
+            if (isDir) {
+                generateTree(p, sb, level + 1, max, indent + (isLast ? "    " : "│   "),
+                        ignoreRules != null ? ignoreRules.forDirectory(p) : null);
             }
         }
     }
 
-    private Set<String> getStandardIgnored() {
-        Set<String> s = new HashSet<>(Arrays.asList(".git", ".gradle", ".idea", "build", ".nts"));
-        try {
-            s.addAll(GitUtils.getIgnoredPaths());
-        } catch (Exception ignored) {
+    /**
+     * Проверяет путь по стандартному списку пропускаемых директорий и правилам .gitignore.
+     * {@code ignoreRules == null} означает, что autoIgnore выключен.
+     */
+    private boolean isAutoIgnored(Path p, boolean isDir, IgnoreRules ignoreRules) {
+        if (ignoreRules == null) {
+            return false;
+        }
+        if (isDir && ProjectWalker.DEFAULT_SKIP_DIRECTORIES.contains(p.getFileName().toString())) {
+            return true;
         }
-        return s;
+        return ignoreRules.isIgnored(p, isDir);
     }
 
     private JsonNode createResponse(String msg) {
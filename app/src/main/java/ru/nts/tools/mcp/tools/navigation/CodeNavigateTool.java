@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
  * - Find References: поиск всех использований символа
  * - Hover: информация о символе
  * - List Symbols: все символы в файле
+ * - Workspace Symbols: поиск символов проекта по неточному имени (префикс, camel-hump, опечатки)
  * <p>
  * Интеграция с LAT: результаты содержат токены доступа для редактирования.
  */
@@ -58,6 +59,15 @@ public class CodeNavigateTool implements McpTool {
     private static final String SYMBOLS_WORKFLOW_TIP =
         "[TIP: To read specific symbol -> nts_file_read(path, symbol='symbolName')]";
 
+    // TIP: После поиска символов по проекту
+    private static final String WORKSPACE_SYMBOLS_TIP =
+        "[TIP: To open a match -> nts_code_navigate(action='definition', path='FILE', symbol='NAME')]";
+
+    /**
+     * Максимум результатов workspace_symbols.
+     */
+    private static final int WORKSPACE_SYMBOLS_LIMIT = 50;
+
     // TIP: Предупреждение о scope=project
     private static final String PROJECT_SCOPE_WARNING =
         "[WARNING: scope='project' scans many files. For large codebases, start with scope='file' or 'directory'.]";
@@ -74,6 +84,9 @@ public class CodeNavigateTool implements McpTool {
 
             ACTIONS (fast to slow):
             - symbols  : [FAST] List all symbols in file
+            - workspace_symbols: [FAST] Find symbols across the project by approximate name:
+                         prefix (getUs), camel humps (gUBI -> getUserById, UserSvc -> UserService)
+                         or a typo (getUsr). 'path' is optional and ranks nearby files first.
             - hover    : [FAST] Get symbol info at position
             - definition: [MEDIUM] Find where symbol is defined
             - references: [SLOW for scope=project] Find all usages
@@ -97,6 +110,7 @@ public class CodeNavigateTool implements McpTool {
             {"action":"references", "path":"User.java", "symbol":"getUserById", "scope":"file"}
             {"action":"symbols", "path":"User.java"}
             {"action":"hover", "path":"User.java", "line":10}
+            {"action":"workspace_symbols", "query":"gUBI"}
 
             LANGUAGES: Java, Kotlin, JS/TS/TSX, Python, Go, Rust, C/C++, C#, PHP, HTML
 
@@ -116,10 +130,11 @@ public class CodeNavigateTool implements McpTool {
         var props = schema.putObject("properties");
 
         props.putObject("action").put("type", "string").put("description",
-                "Navigation action: 'definition' (go to), 'references' (find all), 'hover' (info), 'symbols' (outline).");
+                "Navigation action: 'definition' (go to), 'references' (find all), 'hover' (info), 'symbols' (outline), " +
+                "'workspace_symbols' (find symbols across the project by approximate name).");
 
         props.putObject("path").put("type", "string").put("description",
-                "File path (relative or absolute). REQUIRED.");
+                "File path (relative or absolute). Required for all actions except 'workspace_symbols'.");
 
         props.putObject("line").put("type", "integer").put("description",
                 "Line number (1-based). Required for position-based search. Alternative to 'symbol'.");
@@ -131,6 +146,9 @@ public class CodeNavigateTool implements McpTool {
                 "Symbol name to search. Alternative to line/column. " +
                 "Use when you know the symbol name but not its exact position.");
 
+        props.putObject("query").put("type", "string").put("description",
+                "Name query for 'workspace_symbols': prefix, camel humps (gUBI) or a name with typos.");
+
         props.putObject("scope").put("type", "string").put("description",
                 "Search scope for references: 'file' (fast, default), 'directory' (medium), " +
                 "'project' (slow, scans 500+ files). Start with 'file', expand only if needed.");
@@ -140,7 +158,6 @@ public class CodeNavigateTool implements McpTool {
 
         var required = schema.putArray("required");
         required.add("action");
-        required.add("path");
 
         return schema;
     }
@@ -151,6 +168,9 @@ public class CodeNavigateTool implements McpTool {
         if (action.isEmpty()) {
             throw new IllegalArgumentException("Parameter 'action' is required.");
         }
+        if (action.equals("workspace_symbols")) {
+            return executeWorkspaceSymbols(params);
+        }
 
         String pathStr = params.path("path").asText("");
         if (pathStr.isEmpty()) {
@@ -175,7 +195,7 @@ public class CodeNavigateTool implements McpTool {
             case "hover" -> executeHover(path, params);
             case "symbols" -> executeSymbols(path);
             default -> throw new IllegalArgumentException(
-                    "Unknown action: " + action + ". Valid: definition, references, hover, symbols");
+                    "Unknown action: " + action + ". Valid: definition, references, hover, symbols, workspace_symbols");
         };
     }
 
@@ -429,6 +449,54 @@ public class CodeNavigateTool implements McpTool {
         return createTextResponse(sb.toString());
     }
 
+    /**
+     * Workspace Symbols: поиск символов проекта по неточному имени через индекс символов.
+     */
+    private JsonNode executeWorkspaceSymbols(JsonNode params) {
+        String query = params.path("query").asText(params.path("symbol").asText("")).strip();
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("Parameter 'query' is required for 'workspace_symbols' action.");
+        }
+        String pathStr = params.path("path").asText("");
+        Path near = pathStr.isEmpty() ? null : PathSanitizer.sanitize(pathStr, true);
+
+        SymbolIndex index = SymbolIndex.getInstance();
+        if (!index.isIndexed()) {
+            if (!index.isIndexing()) {
+                index.indexProjectAsync(PathSanitizer.getRoot());
+            }
+            return createTextResponse(String.format(
+                    "Symbol index is being built (%.0f%%). Retry 'workspace_symbols' shortly.",
+                    index.getIndexingProgress() * 100));
+        }
+
+        List<SymbolIndex.SymbolMatch> matches = index.searchWorkspaceSymbols(query, near, WORKSPACE_SYMBOLS_LIMIT);
+        if (matches.isEmpty()) {
+            return createTextResponse("No symbols matching '" + query + "' in the project.");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("**Workspace symbols for `").append(query).append("`** (")
+                .append(matches.size()).append(matches.size() == WORKSPACE_SYMBOLS_LIMIT ? "+" : "")
+                .append(")\n\n");
+        for (SymbolIndex.SymbolMatch match : matches) {
+            SymbolIndex.IndexedSymbol symbol = match.symbol();
+            sb.append("- `").append(symbol.name()).append("` ").append(symbol.kind());
+            if (symbol.parentName() != null) {
+                sb.append(" in `").append(symbol.parentName()).append("`");
+            }
+            sb.append(" — ").append(getRelativePath(symbol.file())).append(":").append(symbol.startLine());
+            sb.append(" [").append(match.matchType().name().toLowerCase(Locale.ROOT));
+            if (match.distance() > 0) {
+                sb.append(" ").append(match.distance());
+            }
+            sb.append("]\n");
+        }
+        sb.append("\n").append(WORKSPACE_SYMBOLS_TIP);
+
+        return createTextResponse(sb.toString());
+    }
+
     // ===================== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ =====================
 
     /**
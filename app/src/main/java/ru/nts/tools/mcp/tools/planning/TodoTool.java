@@ -181,6 +181,7 @@ public class TodoTool implements McpTool {
 
         String fullContent = "# TODO: " + title + "\n\n" + content;
         FileUtils.safeWrite(todoFile, fullContent, StandardCharsets.UTF_8);
+        TodoManager.updateTodo(todoFile, fullContent);
 
         TodoManager.setTaskTodo(fileName);
 
@@ -232,6 +233,7 @@ public class TodoTool implements McpTool {
             resultMsg = updateItem(targetFile, params);
                     } else if (params.has("content")) {
                         FileUtils.safeWrite(targetFile, params.get("content").asText(), StandardCharsets.UTF_8);
+                        TodoManager.updateTodo(targetFile, params.get("content").asText());
                         resultMsg = "Plan overwritten: " + fileName;
         } else {
             throw new IllegalArgumentException("Must provide 'content' or 'id' + 'status' for update.");
@@ -282,7 +284,9 @@ public class TodoTool implements McpTool {
 
         if (!found) throw new IllegalArgumentException("Task with ID " + targetId + " not found in plan.");
 
-        FileUtils.safeWrite(file, String.join("\n", newLines), StandardCharsets.UTF_8);
+        String newContent = String.join("\n", newLines);
+        FileUtils.safeWrite(file, newContent, StandardCharsets.UTF_8);
+        TodoManager.updateTodo(file, newContent);
 
         // Формируем информативное сообщение
         StringBuilder msg = new StringBuilder("Task #" + targetId);
@@ -319,6 +323,7 @@ public class TodoTool implements McpTool {
         String newContent = content.endsWith("\n") ? content : content + "\n";
         newContent += "- [ ] " + taskText + "\n";
         FileUtils.safeWrite(targetFile, newContent, StandardCharsets.UTF_8);
+        TodoManager.updateTodo(targetFile, newContent);
 
         return createResponse("Task added to " + fileName + ": " + taskText);
     }
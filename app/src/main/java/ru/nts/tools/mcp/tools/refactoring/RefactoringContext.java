@@ -143,6 +143,16 @@ public class RefactoringContext {
         return virtualContents.containsKey(path.toAbsolutePath().normalize());
     }
 
+    /**
+     * Возвращает все пути с виртуальным контентом: локальным и транзакционным (batch).
+     * Содержимое этих файлов отличается от диска, поэтому индекс для них неприменим.
+     */
+    public Set<Path> getVirtualPaths() {
+        Set<Path> paths = new HashSet<>(virtualContents.keySet());
+        paths.addAll(transactionManager.getVirtualPaths());
+        return paths;
+    }
+
     /**
      * Получает ParseResult с учётом виртуального контента.
      * Проверяет в порядке приоритета:
@@ -205,6 +215,7 @@ public class RefactoringContext {
     /**
      * Записывает файл и регистрирует его для обновления снапшота.
      * Этот метод должен использоваться всеми операциями рефакторинга.
+     * Кэшированное AST файла получает диапазон правки и перепарсивается инкрементально.
      *
      * @param path путь к файлу
      * @param content новое содержимое
@@ -214,6 +225,8 @@ public class RefactoringContext {
         try {
             FileUtils.safeWrite(path, content, charset);
             writtenFiles.add(path.toAbsolutePath().normalize());
+            // Правка кэшированного AST для инкрементального репарсинга на следующем шаге
+            treeManager.applyEdit(path, content);
         } catch (IOException e) {
             throw new RefactoringException("Failed to write file: " + path, e);
         }
@@ -833,7 +833,7 @@ public class ChangeSignatureOperation implements RefactoringOperation {
 
             String newContent = String.join("\n", lines);
             FileUtils.safeWrite(path, newContent, StandardCharsets.UTF_8);
-            context.getTreeManager().invalidateCache(path);
+            context.getTreeManager().applyEdit(path, newContent);
 
             // Вычисляем метаданные и регистрируем токен
             int lineCount = lines.size();
@@ -969,7 +969,7 @@ public class ChangeSignatureOperation implements RefactoringOperation {
 
             String newContent = String.join("\n", lines);
             FileUtils.safeWrite(path, newContent, StandardCharsets.UTF_8);
-            context.getTreeManager().invalidateCache(path);
+            context.getTreeManager().applyEdit(path, newContent);
 
             // Вычисляем метаданные и регистрируем токен
             int lineCount = lines.size();
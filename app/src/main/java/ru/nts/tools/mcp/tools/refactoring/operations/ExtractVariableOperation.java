@@ -154,7 +154,7 @@ public class ExtractVariableOperation implements RefactoringOperation {
 
                 String newContent = String.join("\n", lines);
                 FileUtils.safeWrite(path, newContent, StandardCharsets.UTF_8);
-                context.getTreeManager().invalidateCache(path);
+                context.getTreeManager().applyEdit(path, newContent);
 
                 // Вычисляем метаданные и регистрируем токен
                 int lineCount = lines.size();
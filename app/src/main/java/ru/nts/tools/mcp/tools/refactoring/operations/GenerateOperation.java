@@ -24,6 +24,7 @@ import ru.nts.tools.mcp.core.LineAccessTracker;
 import ru.nts.tools.mcp.core.PathSanitizer;
 import ru.nts.tools.mcp.core.TaskContext;
 import ru.nts.tools.mcp.core.treesitter.LanguageDetector;
+import ru.nts.tools.mcp.core.treesitter.SourceText;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.SymbolKind;
 import ru.nts.tools.mcp.core.treesitter.TreeSitterManager;
@@ -318,13 +319,7 @@ public class GenerateOperation implements RefactoringOperation {
      * Извлекает текст узла (корректная обработка UTF-8).
      */
     private String getNodeText(TSNode node, String content) {
-        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
-        int start = node.getStartByte();
-        int end = node.getEndByte();
-        if (start >= 0 && end <= contentBytes.length && start < end) {
-            return new String(contentBytes, start, end - start, StandardCharsets.UTF_8);
-        }
-        return "";
+        return SourceText.of(content).text(node);
     }
 
     /**
@@ -663,7 +658,7 @@ public class GenerateOperation implements RefactoringOperation {
         String newContent = String.join("\n", lines);
         FileUtils.safeWrite(path, newContent, StandardCharsets.UTF_8);
 
-        context.getTreeManager().invalidateCache(path);
+        context.getTreeManager().applyEdit(path, newContent);
 
         // Вычисляем метаданные и регистрируем токен
         int lineCount = lines.size();
@@ -138,7 +138,7 @@ public class InlineOperation implements RefactoringOperation {
 
                 String newContent = String.join("\n", lines);
                 FileUtils.safeWrite(filePath, newContent, StandardCharsets.UTF_8);
-                context.getTreeManager().invalidateCache(filePath);
+                context.getTreeManager().applyEdit(filePath, newContent);
 
                 // Вычисляем метаданные и регистрируем токен
                 int lineCount = lines.size();
@@ -455,7 +455,7 @@ public class InlineOperation implements RefactoringOperation {
 
             String newContent = String.join("\n", lines);
             FileUtils.safeWrite(path, newContent, StandardCharsets.UTF_8);
-            context.getTreeManager().invalidateCache(path);
+            context.getTreeManager().applyEdit(path, newContent);
 
             // Вычисляем метаданные и регистрируем токен
             int lineCount = lines.size();
@@ -17,6 +17,7 @@ package ru.nts.tools.mcp.tools.refactoring.operations;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import org.treesitter.TSNode;
+import ru.nts.tools.mcp.core.CancellationToken;
 import ru.nts.tools.mcp.core.FileUtils;
 import ru.nts.tools.mcp.core.LineAccessToken;
 import ru.nts.tools.mcp.core.LineAccessTracker;
@@ -297,6 +298,8 @@ public class MoveOperation implements RefactoringOperation {
                             p.getFileName().toString().endsWith(".ts") ||
                             p.getFileName().toString().endsWith(".js"))
                     .filter(p -> {
+                        // Парсинг каждого кандидата - долгий цикл, проверяем отмену запроса
+                        CancellationToken.checkCurrent();
                         try {
                             List<SymbolInfo> symbols = context.getSymbolResolver().listSymbols(p);
                             return symbols.stream()
@@ -355,7 +358,7 @@ public class MoveOperation implements RefactoringOperation {
 
             String newContent = String.join("\n", lines);
             FileUtils.safeWrite(path, newContent, StandardCharsets.UTF_8);
-            context.getTreeManager().invalidateCache(path);
+            context.getTreeManager().applyEdit(path, newContent);
 
             // Вычисляем метаданные и регистрируем токен
             int lineCount = lines.size();
@@ -415,7 +418,7 @@ public class MoveOperation implements RefactoringOperation {
 
             String newContent = String.join("\n", lines);
             FileUtils.safeWrite(targetPath, newContent, StandardCharsets.UTF_8);
-            context.getTreeManager().invalidateCache(targetPath);
+            context.getTreeManager().applyEdit(targetPath, newContent);
 
             // Вычисляем метаданные и регистрируем токен
             int lineCount = lines.size();
@@ -560,7 +563,7 @@ public class MoveOperation implements RefactoringOperation {
                 if (content.contains(oldImport)) {
                     String newContent = content.replace(oldImport, newImport);
                     FileUtils.safeWrite(file, newContent, StandardCharsets.UTF_8);
-                    context.getTreeManager().invalidateCache(file);
+                    context.getTreeManager().applyEdit(file, newContent);
 
                     changes.add(new RefactoringResult.FileChange(
                             file, 1,
@@ -619,7 +622,7 @@ public class MoveOperation implements RefactoringOperation {
                     context.backupFile(file);
                     String newContent = content.replace(oldQualified, newQualified);
                     FileUtils.safeWrite(file, newContent, StandardCharsets.UTF_8);
-                    context.getTreeManager().invalidateCache(file);
+                    context.getTreeManager().applyEdit(file, newContent);
 
                     int count = countOccurrences(content, oldQualified);
                     changes.add(new RefactoringResult.FileChange(
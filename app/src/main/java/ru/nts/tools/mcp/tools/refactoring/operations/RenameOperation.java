@@ -16,25 +16,28 @@
 package ru.nts.tools.mcp.tools.refactoring.operations;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import ru.nts.tools.mcp.core.CancellationToken;
 import ru.nts.tools.mcp.core.FileUtils;
 import ru.nts.tools.mcp.core.LineAccessToken;
 import ru.nts.tools.mcp.core.LineAccessTracker;
 import ru.nts.tools.mcp.core.PathSanitizer;
+import ru.nts.tools.mcp.core.ProjectWalker;
 import ru.nts.tools.mcp.core.TaskContext;
 import ru.nts.tools.mcp.core.treesitter.LanguageDetector;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo;
+import ru.nts.tools.mcp.core.treesitter.SymbolIndex;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.Location;
 import ru.nts.tools.mcp.core.treesitter.TreeSitterManager;
 import ru.nts.tools.mcp.tools.refactoring.*;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Операция переименования символа.
@@ -358,6 +361,7 @@ public class RenameOperation implements RefactoringOperation {
                     .toList();
 
             for (Path file : files) {
+                CancellationToken.checkCurrent();
                 locations.addAll(findReferencesInFile(file, symbolName, context));
             }
         }
@@ -383,51 +387,28 @@ public class RenameOperation implements RefactoringOperation {
             throw RefactoringException.unsupportedLanguage(langId);
         }
 
-        // Находим файлы-кандидаты
-        List<Path> candidateFiles = new ArrayList<>();
-
-        try {
-            Files.walkFileTree(projectRoot, EnumSet.noneOf(FileVisitOption.class), 15,
-                    new SimpleFileVisitor<>() {
-                        int count = 0;
-
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                            if (count >= MAX_FILES_TO_SCAN) {
-                                return FileVisitResult.TERMINATE;
-                            }
-                            String fileName = file.getFileName().toString();
-                            if (fileName.endsWith("." + fileExtension)) {
-                                try {
-                                    String content = Files.readString(file);
-                                    if (content.contains(symbolName)) {
-                                        candidateFiles.add(file);
-                                        count++;
-                                    }
-                                } catch (IOException ignored) {}
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-
-                        @Override
-                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                            String name = dir.getFileName().toString();
-                            if (name.startsWith(".") || name.equals("node_modules") ||
-                                    name.equals("build") || name.equals("target") ||
-                                    name.equals("dist") || name.equals("out")) {
-                                return FileVisitResult.SKIP_SUBTREE;
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-        } catch (IOException e) {
-            throw new RefactoringException("Failed to scan project: " + e.getMessage(), e);
+        SymbolIndex symbolIndex = SymbolIndex.getInstance();
+        if (symbolIndex.coversProject(projectRoot)) {
+            return findReferencesInIndex(symbolIndex.findReferences(symbolName, projectRoot),
+                    symbolName, projectRoot, fileExtension, context);
         }
 
-        // Параллельно анализируем кандидатов
+        // Находим файлы-кандидаты: проверка содержимого выполняется в потоках обхода
+        List<Path> candidateFiles = candidateFiles(ProjectWalker.create(projectRoot)
+                .maxDepth(15)
+                .skipHidden(true)
+                .filter((file, attrs) -> file.getFileName().toString().endsWith("." + fileExtension)
+                        && fileContains(file, symbolName)), symbolName);
+
+        // Параллельно анализируем кандидатов. При отмене запроса незапущенные задачи
+        // пропускаются, выполняющиеся прерываются
+        CancellationToken token = TaskContext.cancellation();
         List<Future<List<RenameLocation>>> futures = candidateFiles.stream()
-                .map(file -> executor.submit(() -> findReferencesInFile(file, symbolName, context)))
+                .map(file -> executor.submit(() -> token.isCancelled()
+                        ? List.<RenameLocation>of()
+                        : findReferencesInFile(file, symbolName, context)))
                 .toList();
+        token.onCancel(() -> futures.forEach(f -> f.cancel(true)));
 
         List<RenameLocation> allLocations = new ArrayList<>();
         for (Future<List<RenameLocation>> future : futures) {
@@ -435,10 +416,55 @@ public class RenameOperation implements RefactoringOperation {
                 allLocations.addAll(future.get(10, TimeUnit.SECONDS));
             } catch (Exception ignored) {}
         }
+        // Переименование по неполному списку ссылок недопустимо
+        token.throwIfCancelled();
 
         return allLocations;
     }
 
+    /**
+     * Собирает ссылки из ответа индекса использований, без анализа файлов.
+     * Файлы с виртуальным контентом (batch) анализируются по их текущему содержимому.
+     */
+    private List<RenameLocation> findReferencesInIndex(List<Location> indexed, String symbolName,
+                                                        Path projectRoot, String fileExtension,
+                                                        RefactoringContext context) {
+        Set<Path> virtualPaths = context.getVirtualPaths();
+        List<RenameLocation> locations = new ArrayList<>();
+
+        for (Location ref : indexed) {
+            if (ref.path().getFileName().toString().endsWith("." + fileExtension)
+                    && !virtualPaths.contains(ref.path())) {
+                locations.add(new RenameLocation(ref.path(), ref.startLine(),
+                        ref.startColumn(), ref.endColumn()));
+            }
+        }
+        for (Path file : virtualPaths) {
+            if (file.startsWith(projectRoot) && file.getFileName().toString().endsWith("." + fileExtension)) {
+                locations.addAll(findReferencesInFile(file, symbolName, context));
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Все файлы обхода в порядке путей. Переименование по неполному списку ссылок
+     * недопустимо: больше {@link #MAX_FILES_TO_SCAN} файлов - ошибка, а не обрезка
+     * (порядок параллельного обхода не определён, обрезка давала бы разный результат).
+     */
+    private static List<Path> candidateFiles(ProjectWalker walker, String symbolName) throws RefactoringException {
+        List<Path> files;
+        try (Stream<Path> stream = walker.stream()) {
+            files = stream.sorted().toList();
+        }
+        if (files.size() > MAX_FILES_TO_SCAN) {
+            throw new RefactoringException("Too many files reference '" + symbolName + "' to rename safely: "
+                    + files.size() + " (limit " + MAX_FILES_TO_SCAN + ")",
+                    List.of("Build the symbol index for the project or narrow the scope"));
+        }
+        return files;
+    }
+
     /**
      * Ищет ссылки в одном файле.
      */
@@ -556,8 +582,8 @@ public class RenameOperation implements RefactoringOperation {
             // Регистрируем токен доступа на весь файл
             LineAccessToken token = LineAccessTracker.registerAccess(filePath, 1, lineCount, newContent, lineCount, crc32c);
 
-            // Инвалидируем кэш tree-sitter
-            context.getTreeManager().invalidateCache(filePath);
+            // Передаём правку в tree-sitter для инкрементального репарсинга
+            context.getTreeManager().applyEdit(filePath, newContent);
 
             changes.add(new RefactoringResult.FileChange(
                     filePath, details.size(), details, token.encode(),
@@ -1022,7 +1048,8 @@ public class RenameOperation implements RefactoringOperation {
      * @return список локаций, найденных текстовым поиском
      */
     private List<RenameLocation> findTextReferences(String symbolName, Path originPath,
-                                                      String scope, RefactoringContext context) {
+                                                      String scope, RefactoringContext context)
+            throws RefactoringException {
         List<RenameLocation> locations = new ArrayList<>();
         String langId = LanguageDetector.detect(originPath).orElse(null);
         if (langId == null) return locations;
@@ -1039,60 +1066,43 @@ public class RenameOperation implements RefactoringOperation {
             default -> originPath.getParent();
         };
 
-        try {
-            int maxDepth = "project".equals(scope) ? 15 : 1;
-            boolean singleFile = "file".equals(scope);
-
-            Files.walkFileTree(searchRoot, EnumSet.noneOf(FileVisitOption.class), maxDepth,
-                    new SimpleFileVisitor<>() {
-                        int fileCount = 0;
-
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                            if (fileCount >= MAX_FILES_TO_SCAN) {
-                                return FileVisitResult.TERMINATE;
-                            }
-                            if (singleFile && !file.equals(originPath)) {
-                                return FileVisitResult.CONTINUE;
-                            }
-                            String fileName = file.getFileName().toString();
-                            if (!fileName.endsWith("." + fileExtension)) {
-                                return FileVisitResult.CONTINUE;
-                            }
-
-                            try {
-                                String content = Files.readString(file);
-                                if (content.contains(symbolName)) {
-                                    String[] lines = content.split("\n", -1);
-                                    for (int i = 0; i < lines.length; i++) {
-                                        Matcher m = wordPattern.matcher(lines[i]);
-                                        while (m.find()) {
-                                            locations.add(new RenameLocation(
-                                                    file, i + 1, m.start() + 1, m.end()));
-                                        }
-                                    }
-                                    fileCount++;
-                                }
-                            } catch (IOException ignored) {}
-                            return FileVisitResult.CONTINUE;
-                        }
+        int maxDepth = "project".equals(scope) ? 15 : 1;
+        boolean singleFile = "file".equals(scope);
 
-                        @Override
-                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                            String name = dir.getFileName().toString();
-                            if (name.startsWith(".") || name.equals("node_modules") ||
-                                    name.equals("build") || name.equals("target") ||
-                                    name.equals("dist") || name.equals("out")) {
-                                return FileVisitResult.SKIP_SUBTREE;
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-        } catch (IOException ignored) {}
+        List<Path> files = candidateFiles(ProjectWalker.create(singleFile ? originPath : searchRoot)
+                .maxDepth(maxDepth)
+                .skipHidden(true)
+                .filter((file, attrs) -> file.getFileName().toString().endsWith("." + fileExtension)
+                        && fileContains(file, symbolName)), symbolName);
+
+        for (Path file : files) {
+            try {
+                String content = Files.readString(file);
+                String[] lines = content.split("\n", -1);
+                for (int i = 0; i < lines.length; i++) {
+                    Matcher m = wordPattern.matcher(lines[i]);
+                    while (m.find()) {
+                        locations.add(new RenameLocation(
+                                file, i + 1, m.start() + 1, m.end()));
+                    }
+                }
+            } catch (IOException ignored) {}
+        }
 
         return locations;
     }
 
+    /**
+     * Проверяет, встречается ли текст в файле. Нечитаемые файлы считаются несовпавшими.
+     */
+    private static boolean fileContains(Path file, String text) {
+        try {
+            return Files.readString(file).contains(text);
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
     /**
      * Объединяет семантические и текстовые результаты с маркировкой уверенности.
      *
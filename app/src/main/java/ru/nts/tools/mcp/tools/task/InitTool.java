@@ -21,6 +21,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import ru.nts.tools.mcp.core.McpTool;
 import ru.nts.tools.mcp.core.PathSanitizer;
 import ru.nts.tools.mcp.core.TaskContext;
+import ru.nts.tools.mcp.core.TrigramIndex;
 import ru.nts.tools.mcp.core.treesitter.SymbolIndex;
 import ru.nts.tools.mcp.McpServer;
 
@@ -188,6 +189,12 @@ public class InitTool implements McpTool {
             symbolIndex.indexProjectAsync(projectRoot);
         }
 
+        // Триграммный индекс для grep и project_replace (тёплый старт с диска)
+        TrigramIndex trigramIndex = TrigramIndex.getInstance();
+        if (!trigramIndex.isIndexed() && !trigramIndex.isIndexing()) {
+            trigramIndex.indexProjectAsync(projectRoot);
+        }
+
         // Формируем информацию о roots
         String rootsInfo;
         if (allRoots.size() == 1) {
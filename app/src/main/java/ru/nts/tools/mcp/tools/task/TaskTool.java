@@ -293,6 +293,7 @@ public class TaskTool implements McpTool {
     private JsonNode executeJournalEntries(JsonNode params) throws Exception {
         TaskContext ctx = requireContext();
         TaskTransactionManager txm = ctx.transactions();
+        txm.awaitJournal();
         JournalDatabase db = txm.getDatabase();
         JournalRepository repo = new JournalRepository();
 
@@ -357,6 +358,7 @@ public class TaskTool implements McpTool {
         }
 
         TaskContext ctx = requireContext();
+        ctx.transactions().awaitJournal();
         JournalDatabase db = ctx.transactions().getDatabase();
         JournalRepository repo = new JournalRepository();
         long entryId = params.get("entryId").asLong();
@@ -412,6 +414,7 @@ public class TaskTool implements McpTool {
         }
 
         TaskContext ctx = requireContext();
+        ctx.transactions().awaitJournal();
         JournalDatabase db = ctx.transactions().getDatabase();
         JournalRepository repo = new JournalRepository();
 
@@ -118,4 +118,39 @@ class McpServerTest {
         }
         assertEquals(2, responseCount, "Сервер должен вернуть ровно два ответа на два входных запроса");
     }
-}
\ No newline at end of file
+
+    /**
+     * Тестирует поток из множества запросов с повреждённой строкой посередине.
+     * Каждый ответ должен занимать ровно одну строку, повреждённое сообщение пропускается,
+     * кириллица в ответе передаётся в UTF-8.
+     */
+    @Test
+    void testManyRequestsWithMalformedLine() throws Exception {
+        int count = 50;
+        StringBuilder requests = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            requests.append("{\"jsonrpc\":\"2.0\",\"id\":").append(i).append(",\"method\":\"ping\"}\n");
+            if (i == count / 2) {
+                requests.append("{not json\n");
+            }
+        }
+        requests.append("{\"jsonrpc\":\"2.0\",\"id\":\"кириллица\",\"method\":\"ping\"}\n");
+
+        System.setIn(new ByteArrayInputStream(requests.toString().getBytes(StandardCharsets.UTF_8)));
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+
+        McpServer.main(new String[0]);
+
+        String[] lines = outContent.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(count + 1, lines.length, "Каждый ответ - отдельная строка");
+        java.util.Set<String> ids = new java.util.HashSet<>();
+        for (String line : lines) {
+            var json = mapper.readTree(line);
+            assertTrue(json.get("result").isObject(), "Ответ на ping должен содержать result: " + line);
+            ids.add(json.get("id").asText());
+        }
+        assertEquals(count + 1, ids.size(), "Ответы не должны дублироваться или теряться");
+        assertTrue(ids.contains("кириллица"), "Кириллица должна пройти без искажений");
+    }
+}
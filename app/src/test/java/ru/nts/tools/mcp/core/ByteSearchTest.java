@@ -0,0 +1,127 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для ByteSearch: векторная реализация (если доступна) должна совпадать со скалярной.
+ */
+class ByteSearchTest {
+
+    @Test
+    void testFindAllMatchesScalar() {
+        Random random = new Random(42);
+        // Маленький алфавит — много кандидатов и перекрывающихся совпадений
+        byte[] alphabet = "ab\n\r".getBytes(StandardCharsets.US_ASCII);
+        for (int size : new int[]{0, 1, 7, 31, 32, 33, 64, 65, 127, 1000, 4099}) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = alphabet[random.nextInt(2)];
+            }
+            MemorySegment segment = MemorySegment.ofArray(data);
+            for (String pattern : new String[]{"a", "ab", "aba", "abba", "aabab", "abababababababababababababababababab"}) {
+                byte[] p = pattern.getBytes(StandardCharsets.US_ASCII);
+                for (int max : new int[]{0, 1, 5}) {
+                    for (int from : new int[]{0, 3}) {
+                        assertArrayEquals(
+                                hits(ByteSearch.findAllScalar(segment, from, p, max)),
+                                hits(ByteSearch.findAll(segment, from, p, max)),
+                                "size=" + size + " pattern=" + pattern + " max=" + max + " from=" + from);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFindAllAtBufferEdges() {
+        byte[] data = "needle....................................................needle".getBytes(StandardCharsets.US_ASCII);
+        long[] hits = hits(ByteSearch.findAll(MemorySegment.ofArray(data), 0, "needle".getBytes(StandardCharsets.US_ASCII), 0));
+
+        assertArrayEquals(new long[]{0, data.length - 6}, hits);
+    }
+
+    @Test
+    void testFindAllUtf8() {
+        String text = "привет мир, ".repeat(20) + "маркер";
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        long[] hits = hits(ByteSearch.findAll(MemorySegment.ofArray(data), 0, "маркер".getBytes(StandardCharsets.UTF_8), 0));
+
+        assertEquals(1, hits.length);
+        assertEquals(data.length - "маркер".getBytes(StandardCharsets.UTF_8).length, hits[0]);
+    }
+
+    @Test
+    void testCountLineBreaksMatchesScalar() {
+        Random random = new Random(7);
+        byte[] alphabet = "x\n\r".getBytes(StandardCharsets.US_ASCII);
+        for (int size : new int[]{0, 1, 2, 31, 32, 33, 65, 1000}) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            MemorySegment segment = MemorySegment.ofArray(data);
+            assertEquals(ByteSearch.countLineBreaksScalar(segment, 0, size),
+                    ByteSearch.countLineBreaks(segment, 0, size), "size=" + size);
+        }
+
+        byte[] mixed = "a\r\nb\rc\nd".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(3, ByteSearch.countLineBreaks(MemorySegment.ofArray(mixed), 0, mixed.length));
+    }
+
+    @Test
+    void testSkipPlainAsciiMatchesScalar() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            byte[] data = new byte[random.nextInt(300)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+            if (data.length > 0 && random.nextBoolean()) {
+                // Непростой байт в случайной позиции: не-ASCII, NUL или ESC
+                byte[] stops = {(byte) 0xD0, 0, 0x1B, (byte) 0x80};
+                data[random.nextInt(data.length)] = stops[random.nextInt(stops.length)];
+            }
+            int from = data.length == 0 ? 0 : random.nextInt(data.length);
+            assertEquals(ByteSearch.skipPlainAsciiScalar(data, from), ByteSearch.skipPlainAscii(data, from));
+        }
+    }
+
+    @Test
+    void testLineBoundaries() {
+        byte[] data = "one\r\ntwo\rthree\nfour".getBytes(StandardCharsets.US_ASCII);
+        MemorySegment segment = MemorySegment.ofArray(data);
+
+        assertEquals(5, ByteSearch.lineStart(segment, 0, 7));
+        assertEquals(8, ByteSearch.lineEnd(segment, 5));
+        assertEquals(0, ByteSearch.previousLineStart(segment, 0, 5));
+        assertEquals(5, ByteSearch.previousLineStart(segment, 0, 9));
+        assertEquals(9, ByteSearch.previousLineStart(segment, 0, 15));
+        assertEquals(data.length, ByteSearch.lineEnd(segment, 15));
+    }
+
+    private static long[] hits(long[] result) {
+        return Arrays.copyOfRange(result, 1, (int) result[0] + 1);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CancellationTokenTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        PathSanitizer.setRoot(tempDir);
+        PathSanitizer.setTaskRoot(tempDir);
+        TaskContext.resetAll();
+        TaskContext.setForceInMemoryDb(true);
+        TaskContext.setCurrent(TaskContext.getOrCreate("cancel-task"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        TaskContext.clearCurrent();
+    }
+
+    @Test
+    void cancelledToolStopsItsLoopAndReportsCancellation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        McpTool tool = new LoopingTool(started, stopped);
+
+        CancellationToken token = new CancellationToken();
+        TaskContext.setCancellation(token);
+        Thread.ofVirtual().start(() -> {
+            try {
+                started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            token.cancel("cancelled by test");
+        });
+
+        JsonNode response = tool.executeWithFeedback(McpJson.MAPPER.createObjectNode());
+
+        assertTrue(response.path("isError").asBoolean(), "Отменённый вызов должен вернуть ошибку");
+        String text = response.path("content").get(0).path("text").asText();
+        assertTrue(text.contains("CANCELLED"), text);
+        assertTrue(text.contains("cancelled by test"), text);
+        assertTrue(stopped.await(5, TimeUnit.SECONDS), "Цикл инструмента должен завершиться после отмены");
+    }
+
+    @Test
+    void walkerStopsWhenRequestIsCancelled() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(tempDir.resolve("f" + i + ".txt"), "x");
+        }
+        CancellationToken token = new CancellationToken();
+        TaskContext.setCancellation(token);
+
+        try (Stream<Path> files = ProjectWalker.create(tempDir).stream()) {
+            token.cancel("stop");
+            assertThrows(CancellationException.class, () -> files.forEach(p -> { }));
+        }
+    }
+
+    @Test
+    void noneTokenIsNeverCancelled() {
+        CancellationToken.NONE.cancel("ignored");
+        assertFalse(CancellationToken.NONE.isCancelled());
+        assertDoesNotThrow(CancellationToken.NONE::throwIfCancelled);
+    }
+
+    /**
+     * Инструмент с бесконечным циклом, проверяющим токен отмены.
+     */
+    private record LoopingTool(CountDownLatch started, CountDownLatch stopped) implements McpTool {
+        @Override
+        public String getName() {
+            return "test_loop";
+        }
+
+        @Override
+        public String getDescription() {
+            return "loop";
+        }
+
+        @Override
+        public String getCategory() {
+            return "test";
+        }
+
+        @Override
+        public JsonNode getInputSchema() {
+            return null;
+        }
+
+        @Override
+        public JsonNode execute(JsonNode params) {
+            started.countDown();
+            try {
+                while (true) {
+                    CancellationToken.checkCurrent();
+                    LockSupport.parkNanos(1_000_000);
+                }
+            } finally {
+                stopped.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionUtilsTest {
+
+    private static final byte[] TEXT = "class Sample { void run() {} }\n".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void roundTripWithKnownAndUnknownLength() throws DataFormatException {
+        byte[] deflated = CompressionUtils.deflate(TEXT);
+        assertTrue(deflated.length < TEXT.length);
+
+        assertArrayEquals(TEXT, CompressionUtils.inflate(deflated));
+        assertArrayEquals(TEXT, CompressionUtils.inflate(deflated, TEXT.length));
+        assertArrayEquals(new byte[0], CompressionUtils.inflate(CompressionUtils.deflate(new byte[0])));
+    }
+
+    @Test
+    void corruptedDataIsReported() {
+        byte[] deflated = CompressionUtils.deflate(TEXT);
+        byte[] truncated = Arrays.copyOf(deflated, deflated.length / 2);
+
+        assertThrows(DataFormatException.class, () -> CompressionUtils.inflate(truncated));
+        assertThrows(DataFormatException.class, () -> CompressionUtils.inflate(truncated, TEXT.length));
+        assertThrows(DataFormatException.class, () -> CompressionUtils.inflate(deflated, TEXT.length + 1));
+    }
+}
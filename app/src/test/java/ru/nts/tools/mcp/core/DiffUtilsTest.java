@@ -0,0 +1,140 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.Test;
+import ru.nts.tools.mcp.core.diff.DiffAlgorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для DiffUtils и подключаемых алгоритмов сравнения.
+ */
+class DiffUtilsTest {
+
+    @Test
+    void testIdenticalContentProducesEmptyDiff() {
+        assertEquals("", DiffUtils.getUnifiedDiff("a.txt", "same\ntext", "same\ntext"));
+    }
+
+    @Test
+    void testSingleLineReplacement() {
+        String diff = DiffUtils.getUnifiedDiff("a.txt", "a\nb\nc", "a\nx\nc");
+
+        assertEquals("""
+                --- a.txt (original)
+                +++ a.txt (modified)
+                @@ -1,3 +1,3 @@
+                 a
+                -b
+                +x
+                 c""", diff);
+    }
+
+    @Test
+    void testInsertIntoEmptyFile() {
+        String diff = DiffUtils.getUnifiedDiff("new.txt", "", "first\nsecond");
+
+        assertEquals("""
+                --- new.txt (original)
+                +++ new.txt (modified)
+                @@ -1,0 +1,2 @@
+                +first
+                +second""", diff);
+    }
+
+    @Test
+    void testDistantChangesProduceSeparateHunks() {
+        String oldContent = lines(1, 30);
+        List<String> modified = new ArrayList<>(List.of(oldContent.split("\n")));
+        modified.set(1, "changed 2");
+        modified.set(24, "changed 25");
+
+        String diff = DiffUtils.getUnifiedDiff("f", oldContent, String.join("\n", modified));
+
+        assertTrue(diff.contains("@@ -1,5 +1,5 @@"), diff);
+        assertTrue(diff.contains("@@ -22,7 +22,7 @@"), diff);
+        assertFalse(diff.contains("line 10"), "Lines outside context must not be printed: " + diff);
+    }
+
+    @Test
+    void testNearbyChangesMergeIntoOneHunk() {
+        String oldContent = lines(1, 20);
+        List<String> modified = new ArrayList<>(List.of(oldContent.split("\n")));
+        modified.set(4, "changed 5");
+        modified.set(10, "changed 11");
+
+        String diff = DiffUtils.getUnifiedDiff("f", oldContent, String.join("\n", modified));
+
+        assertEquals(1, diff.split("@@ -", -1).length - 1, diff);
+        assertTrue(diff.contains("@@ -2,13 +2,13 @@"), diff);
+    }
+
+    @Test
+    void testHistogramMatchesMyersOnSimpleEdits() {
+        String oldContent = lines(1, 50);
+        List<String> modified = new ArrayList<>(List.of(oldContent.split("\n")));
+        modified.remove(10);
+        modified.add(30, "inserted");
+        modified.set(40, "changed");
+        String newContent = String.join("\n", modified);
+
+        assertEquals(DiffUtils.getUnifiedDiff("f", oldContent, newContent, DiffAlgorithm.MYERS),
+                DiffUtils.getUnifiedDiff("f", oldContent, newContent, DiffAlgorithm.HISTOGRAM));
+    }
+
+    @Test
+    void testLargeFileDiffDoesNotExhaustMemory() {
+        // 20k строк: матрица LCS заняла бы ~1.6 GB, линейный Myers - несколько мегабайт
+        String oldContent = IntStream.rangeClosed(1, 20_000)
+                .mapToObj(i -> "    value" + (i % 500) + " = compute(" + i + ");")
+                .collect(Collectors.joining("\n"));
+        List<String> modified = new ArrayList<>(List.of(oldContent.split("\n")));
+        for (int i = 0; i < modified.size(); i += 997) {
+            modified.set(i, "// edited " + i);
+        }
+
+        for (DiffAlgorithm algorithm : List.of(DiffAlgorithm.MYERS, DiffAlgorithm.HISTOGRAM)) {
+            String diff = DiffUtils.getUnifiedDiff("big.txt", oldContent, String.join("\n", modified), algorithm);
+            assertEquals(21, diff.lines().filter(l -> l.startsWith("+// edited")).count());
+            assertEquals(21, diff.lines().filter(l -> l.startsWith("-    value")).count());
+        }
+    }
+
+    @Test
+    void testCompletelyDifferentContent() {
+        String diff = DiffUtils.getUnifiedDiff("f", "a\nb", "c\nd\ne");
+
+        assertEquals("""
+                --- f (original)
+                +++ f (modified)
+                @@ -1,2 +1,3 @@
+                -a
+                -b
+                +c
+                +d
+                +e""", diff);
+    }
+
+    private static String lines(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(i -> "line " + i).collect(Collectors.joining("\n"));
+    }
+}
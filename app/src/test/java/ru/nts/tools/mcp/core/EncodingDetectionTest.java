@@ -24,6 +24,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -124,4 +125,56 @@ class EncodingDetectionTest {
         assertTrue(detected.name().equalsIgnoreCase("EUC-KR") || detected.name().equalsIgnoreCase("MS949") || detected.name().equalsIgnoreCase("EUCKR") || detected.name().startsWith("EUC-KR"), "Должна быть определена корейская кодировка. Получено: " + detected.name());
         assertEquals(content, Files.readString(file, detected));
     }
+
+    /**
+     * ASCII без NUL и ESC определяется как UTF-8 без статистической детекции
+     * (ICU4J мог вернуть для JSON или коротких строк ISO-8859-x).
+     */
+    @Test
+    void testAsciiFastPath() {
+        assertEquals(StandardCharsets.UTF_8, EncodingUtils.detectEncoding("{\"a\": 1}".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(StandardCharsets.UTF_8, EncodingUtils.detectEncoding("hello world\n".repeat(1000).getBytes(StandardCharsets.US_ASCII)));
+
+        // NUL: UTF-16 без BOM остаётся за ICU4J
+        String text = "Plain text in UTF-16 without a byte order mark. ".repeat(20);
+        Charset detected = EncodingUtils.detectEncoding(text.getBytes(StandardCharsets.UTF_16LE));
+        assertTrue(detected.name().startsWith("UTF-16"), "Получено: " + detected.name());
+    }
+
+    /**
+     * Строгая валидация UTF-8: overlong-формы и суррогаты не считаются UTF-8.
+     */
+    @Test
+    void testStrictUtf8Validation() {
+        assertTrue(EncodingUtils.isValidUtf8("Привет 😀 мир".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(EncodingUtils.isUtf8Text("Привет 😀 мир".getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(EncodingUtils.isValidUtf8(new byte[]{(byte) 0xC0, (byte) 0xAF}));             // overlong '/'
+        assertFalse(EncodingUtils.isValidUtf8(new byte[]{(byte) 0xE0, (byte) 0x80, (byte) 0xAF})); // overlong
+        assertFalse(EncodingUtils.isValidUtf8(new byte[]{(byte) 0xED, (byte) 0xA0, (byte) 0x80})); // суррогат
+        assertFalse(EncodingUtils.isValidUtf8(new byte[]{(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80})); // > U+10FFFF
+        assertFalse(EncodingUtils.isValidUtf8(new byte[]{'a', (byte) 0xD0}));                      // обрезанная последовательность
+
+        // NUL и ESC допустимы в UTF-8, но быстрый путь их не принимает
+        assertTrue(EncodingUtils.isValidUtf8(new byte[]{'a', 0, 'b'}));
+        assertFalse(EncodingUtils.isUtf8Text(new byte[]{'a', 0, 'b'}));
+        assertFalse(EncodingUtils.isUtf8Text(new byte[]{0x1B, '$', 'B'}));
+    }
+
+    /**
+     * Кэш статистической детекции возвращает тот же результат и обновляется при смене содержимого.
+     */
+    @Test
+    void testDetectionCacheByContent(@TempDir Path tempDir) {
+        Path file = tempDir.resolve("legacy.txt");
+        Charset cp1251 = Charset.forName("windows-1251");
+        byte[] legacy = ("Это русский текст в кодировке Windows-1251. " + "Проверка кириллицы. ".repeat(20)).getBytes(cp1251);
+
+        Charset first = EncodingUtils.detectEncoding(file, legacy);
+        assertEquals(EncodingUtils.detectEncoding(legacy), first);
+        assertEquals(first, EncodingUtils.detectEncoding(file, legacy.clone()));
+
+        byte[] utf8 = "Теперь файл в UTF-8".getBytes(StandardCharsets.UTF_8);
+        assertEquals(StandardCharsets.UTF_8, EncodingUtils.detectEncoding(file, utf8));
+    }
 }
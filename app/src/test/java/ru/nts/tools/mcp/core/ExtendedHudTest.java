@@ -101,6 +101,27 @@ class ExtendedHudTest {
         assertTrue(hudStr.contains("First important task"), "Should contain task text: " + hudStr);
     }
 
+    @Test
+    void testHudReflectsExternalTodoEdit() throws Exception {
+        TaskContext ctx = TaskContext.current();
+        Path todoDir = ctx.getTodosDir();
+        Files.createDirectories(todoDir);
+        Path todo = todoDir.resolve("TODO_ext.md");
+        Files.writeString(todo, "# TODO: External\n- [ ] First\n- [ ] Second");
+        TodoManager.setTaskTodo("TODO_ext.md");
+
+        String first = TodoManager.getHudInfo().toString();
+        assertTrue(first.contains("○2"), "Should show 2 pending tasks: " + first);
+
+        // Правка мимо TodoTool (другой размер файла) должна попасть в HUD
+        Files.writeString(todo, "# TODO: External\n- [x] First done\n- [ ] Second");
+        String second = TodoManager.getHudInfo().toString();
+        assertTrue(second.contains("✓1"), "Should show 1 completed task: " + second);
+        assertTrue(second.contains("○1"), "Should show 1 pending task: " + second);
+        assertTrue(TodoManager.getCompletedTasks().contains("First done"),
+                "Completed list should follow the edited file");
+    }
+
     @Test
     void testHudShowsVerifyHint() throws Exception {
         // Set up TipFilter to allow nts_verify
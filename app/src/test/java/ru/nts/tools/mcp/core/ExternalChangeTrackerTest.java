@@ -342,4 +342,42 @@ class ExternalChangeTrackerTest {
         // Не должно быть исключений, и снапшот должен существовать
         assertTrue(tracker.hasSnapshot(file));
     }
+
+    // ==================== Тесты компактного хранения ====================
+
+    @Test
+    void testSnapshotSpilledToDiskWhenOverBudget() throws Exception {
+        long budget = SnapshotContentStore.getMemoryBudget();
+        Path file = tempDir.resolve("spill.txt");
+        String content = "строка с кириллицей\n".repeat(500);
+        try {
+            tracker.registerSnapshot(file, content, 1L, StandardCharsets.UTF_8, 500);
+            long residentBefore = SnapshotContentStore.getResidentBytes();
+
+            SnapshotContentStore.setMemoryBudget(0);
+            assertEquals(0, SnapshotContentStore.getResidentBytes());
+            assertTrue(residentBefore > 0);
+
+            // Содержимое восстанавливается из выгруженного файла
+            assertEquals(content, tracker.getSnapshot(file).content());
+        } finally {
+            SnapshotContentStore.setMemoryBudget(budget);
+            tracker.reset();
+        }
+    }
+
+    @Test
+    void testUnchangedReReadReusesStoredContent() throws Exception {
+        Path file = tempDir.resolve("reread.txt");
+        tracker.registerSnapshot(file, "same content", 42L, StandardCharsets.UTF_8, 1);
+        long resident = SnapshotContentStore.getResidentBytes();
+
+        // Тот же CRC - повторного сжатия и роста занятой памяти нет
+        tracker.registerSnapshot(file, "same content", 42L, StandardCharsets.UTF_8, 1);
+        assertEquals(resident, SnapshotContentStore.getResidentBytes());
+        assertEquals("same content", tracker.getSnapshot(file).content());
+
+        tracker.reset();
+        assertTrue(SnapshotContentStore.getResidentBytes() < resident);
+    }
 }
@@ -447,6 +447,58 @@ class FastSearchTest {
         assertTrue(elapsed < 200, "Search took too long: " + elapsed + "ms");
     }
 
+    @Test
+    void testMappedSearchMatchesDecodedSearch() throws Exception {
+        // > 10MB: литеральный поиск идёт по отображённым байтам без декодирования файла
+        StringBuilder content = new StringBuilder("\uFEFF");
+        int i = 0;
+        while (content.length() < 11 * 1024 * 1024) {
+            content.append("строка ").append(i).append(i % 7 == 0 ? " маркер" : "").append(" id=").append(i);
+            content.append(i % 3 == 0 ? "\r\n" : i % 11 == 0 ? "\r" : "\n");
+            i++;
+        }
+        content.append("последняя маркер");
+        byte[] bytes = content.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        Path file = tempDir.resolve("mapped.txt");
+        Files.write(file, bytes);
+
+        for (String pattern : List.of("маркер", "id=42", "id", "последняя")) {
+            for (int maxResults : new int[]{0, 50}) {
+                var mapped = FastSearch.search(file, pattern, false, maxResults, 2, 1);
+                var decoded = FastSearch.searchDecoded(file, bytes, java.nio.charset.StandardCharsets.UTF_8,
+                        pattern, false, maxResults, 2, 1);
+
+                assertNotNull(mapped, pattern);
+                assertEquals(decoded.crc32c(), mapped.crc32c());
+                assertEquals(decoded.lineCount(), mapped.lineCount());
+                assertEquals(decoded.matches(), mapped.matches(), pattern + " / " + maxResults);
+            }
+        }
+        assertNull(FastSearch.search(file, "отсутствует", false, 0, 0, 0));
+    }
+
+    @Test
+    void testByteSearchContextMatchesDecodedSearch() throws Exception {
+        // Редкие совпадения: строки между контекстами пропускаются без построчного прохода
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append(i % 97 == 0 || i % 97 == 2 ? "hit " : "line ").append(i);
+            content.append(i % 5 == 0 ? "\r\n" : "\n");
+        }
+        byte[] bytes = content.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        Path file = tempDir.resolve("sparse.txt");
+        Files.write(file, bytes);
+
+        for (int[] ctx : new int[][]{{0, 0}, {1, 0}, {0, 1}, {2, 2}, {5, 3}}) {
+            var fast = FastSearch.search(file, "hit", false, 0, ctx[0], ctx[1]);
+            var decoded = FastSearch.searchDecoded(file, bytes, java.nio.charset.StandardCharsets.UTF_8,
+                    "hit", false, 0, ctx[0], ctx[1]);
+
+            assertEquals(decoded.lineCount(), fast.lineCount());
+            assertEquals(decoded.matches(), fast.matches(), ctx[0] + "/" + ctx[1]);
+        }
+    }
+
     // ==================== Кодировки ====================
 
     @Test
@@ -461,6 +513,22 @@ class FastSearchTest {
         assertEquals(2, result.matches().get(0).lineNumber());
     }
 
+    @Test
+    void testUnencodablePatternInSingleByteCharset() throws Exception {
+        Path file = tempDir.resolve("cp1251.txt");
+        Files.write(file, "Привет мир\nЧто??? Вопросы ???\nКонец строки и файла\n"
+                .getBytes(java.nio.charset.Charset.forName("windows-1251")));
+
+        // Иероглифы не кодируются в windows-1251 и не должны совпадать с '?'
+        assertNull(FastSearch.search(file, "日本語", false, 0, 0, 0));
+        assertFalse(FastSearch.containsText(file, "日本語"));
+
+        var result = FastSearch.search(file, "Вопросы", false, 0, 0, 0);
+        assertNotNull(result);
+        assertEquals(2, result.matches().get(0).lineNumber());
+        assertTrue(FastSearch.containsText(file, "Вопросы"));
+    }
+
     @Test
     void testSpecialCharacters() throws Exception {
         Path file = tempDir.resolve("special.txt");
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для FileContentCache.
+ */
+class FileContentCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        FileContentCache.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        FileContentCache.clear();
+    }
+
+    @Test
+    @DisplayName("Неизменённый файл читается один раз")
+    void testUnchangedFileIsServedFromCache() throws Exception {
+        Path file = write("a.txt", "line1\nline2\n".getBytes(StandardCharsets.UTF_8));
+
+        FileContentCache.FileContent first = FileContentCache.read(file);
+        FileContentCache.FileContent second = FileContentCache.read(file);
+        assertSame(first, second);
+
+        CRC32C crc = new CRC32C();
+        crc.update(Files.readAllBytes(file));
+        assertEquals(crc.getValue(), first.crc32c());
+        assertEquals("line1\nline2\n", first.text().content());
+        assertSame(first.lineIndex(), second.lineIndex());
+        assertEquals("line2", first.lineIndex().line(2));
+        assertEquals(3, first.lineCount());
+    }
+
+    @Test
+    @DisplayName("Изменение файла сбрасывает запись")
+    void testChangedFileIsReread() throws Exception {
+        Path file = write("a.txt", "old".getBytes(StandardCharsets.UTF_8));
+        FileContentCache.FileContent first = FileContentCache.read(file);
+
+        // Внешнее изменение: другой размер и mtime
+        write("a.txt", "new content".getBytes(StandardCharsets.UTF_8));
+        FileContentCache.FileContent second = FileContentCache.read(file);
+        assertNotSame(first, second);
+        assertEquals("new content", second.text().content());
+
+        // Запись через FileUtils сбрасывает кэш сразу
+        FileUtils.safeWrite(file, "via tools", StandardCharsets.UTF_8);
+        assertEquals("via tools", FileContentCache.read(file).text().content());
+    }
+
+    @Test
+    @DisplayName("Кодировки, BOM и бинарные файлы обрабатываются как в EncodingUtils")
+    void testDecodingMatchesEncodingUtils() throws Exception {
+        Charset cp1251 = Charset.forName("windows-1251");
+        Path legacy = write("legacy.txt", "Привет, мир! Это текст в кодировке windows-1251.".getBytes(cp1251));
+        FileContentCache.FileContent content = FileContentCache.read(legacy);
+        assertEquals(cp1251, content.charset());
+        assertEquals("Привет, мир! Это текст в кодировке windows-1251.", content.text().content());
+        assertThrows(CharacterCodingException.class, content::utf8);
+
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a', 'b'};
+        Path withBom = write("bom.txt", bom);
+        assertEquals("ab", FileContentCache.read(withBom).text().content());
+        assertEquals("﻿ab", FileContentCache.read(withBom).utf8());
+
+        byte[] data = "header\0\0\0payload text\0more".getBytes(StandardCharsets.US_ASCII);
+        Path binary = write("data.bin", data);
+        assertThrows(java.io.IOException.class, () -> FileContentCache.read(binary).text());
+        assertEquals(data.length, FileContentCache.read(binary).bytes().length);
+    }
+
+    @Test
+    @DisplayName("Вес записи растёт по мере построения представлений, UTF-8 текст не дублируется")
+    void testWeightFollowsLazyViews() throws Exception {
+        Path file = write("ru.txt", "первая строка\nвторая строка\n".repeat(100).getBytes(StandardCharsets.UTF_8));
+        FileContentCache.FileContent content = FileContentCache.read(file);
+        long bytesOnly = FileContentCache.totalWeight();
+        assertTrue(bytesOnly >= content.bytes().length);
+
+        String text = content.text().content();
+        long withText = FileContentCache.totalWeight();
+        assertTrue(withText >= bytesOnly + text.length() * 2L);
+
+        assertSame(text, content.utf8());
+        assertEquals(withText, FileContentCache.totalWeight());
+
+        content.lineIndex();
+        assertTrue(FileContentCache.totalWeight() > withText);
+
+        FileUtils.safeDelete(file);
+        assertEquals(0, FileContentCache.totalWeight());
+    }
+
+    @Test
+    @DisplayName("Перемещение и удаление директории сбрасывают записи вложенных файлов")
+    void testDirectoryOperationsInvalidateNestedEntries() throws Exception {
+        Files.createDirectories(tempDir.resolve("pkg/sub"));
+        Path nested = write("pkg/sub/A.java", "class A {}".getBytes(StandardCharsets.UTF_8));
+        Path sibling = write("other.txt", "other".getBytes(StandardCharsets.UTF_8));
+        FileContentCache.read(nested);
+        FileContentCache.read(sibling);
+        assertTrue(FileContentCache.contains(nested));
+
+        FileUtils.safeMove(tempDir.resolve("pkg"), tempDir.resolve("moved"));
+        assertFalse(FileContentCache.contains(nested));
+        assertTrue(FileContentCache.contains(sibling));
+
+        Path moved = tempDir.resolve("moved/sub/A.java");
+        FileContentCache.read(moved);
+        Files.delete(moved);
+        FileUtils.safeDelete(tempDir.resolve("moved/sub"));
+        assertFalse(FileContentCache.contains(moved));
+
+        FileUtils.safeDelete(sibling);
+        assertFalse(FileContentCache.contains(sibling));
+    }
+
+    private Path write(String name, byte[] bytes) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.write(file, bytes);
+        // mtime в прошлом: запись не попадает в окно гонки на ФС с секундной точностью
+        FileTime previous = Files.getLastModifiedTime(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(previous.toMillis() - 60_000 + bytes.length));
+        return file;
+    }
+}
@@ -98,7 +98,7 @@ class JournalDatabaseTest {
              ResultSet rs = stmt.executeQuery(
                      "SELECT meta_value FROM task_metadata WHERE meta_key = 'schema_version'")) {
             assertTrue(rs.next());
-            assertEquals("1", rs.getString("meta_value"));
+            assertEquals("3", rs.getString("meta_value"));
         }
     }
 
@@ -155,6 +155,33 @@ class JournalDatabaseTest {
         }
     }
 
+    @Test
+    @DisplayName("pooled connections keep the database open and roll back on return")
+    void pooledConnections() throws Exception {
+        db.initialize();
+        JournalRepository repo = new JournalRepository();
+
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            repo.setMetadata(conn, "uncommitted", "value");
+            // Возврат в пул без commit
+        }
+        try (Connection conn = db.getConnection()) {
+            assertTrue(conn.getAutoCommit());
+            assertNull(repo.getMetadata(conn, "uncommitted"));
+            repo.setMetadata(conn, "committed", "value");
+        }
+        try (Connection conn = db.getConnection()) {
+            assertEquals("value", repo.getMetadata(conn, "committed"));
+        }
+
+        // close() закрывает пул и файл базы
+        db.close();
+        assertThrows(java.sql.SQLException.class, db::getConnection);
+        db.deleteFiles();
+        assertFalse(db.existsOnDisk());
+    }
+
     private void assertTableExists(Statement stmt, String tableName) throws Exception {
         ResultSet rs = stmt.executeQuery(
                 "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = '" + tableName + "'");
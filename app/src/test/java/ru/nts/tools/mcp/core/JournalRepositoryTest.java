@@ -287,6 +287,89 @@ class JournalRepositoryTest {
         }
     }
 
+    @Test
+    @DisplayName("identical snapshot content is stored once")
+    void snapshotContentDeduplicated() throws Exception {
+        try (Connection conn = db.getInitializedConnection()) {
+            byte[] content = "class Same {}\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 5; i++) {
+                long entryId = repo.insertEntry(conn, "UNDO", "TRANSACTION", i,
+                        LocalDateTime.now(), "edit " + i, "COMMITTED", null, null, null, null, null);
+                repo.insertSnapshot(conn, entryId, "Same.java", content, content.length, 1L);
+            }
+
+            JournalRepository.BlobStats stats = repo.getBlobStats(conn);
+            assertEquals(1, stats.blobCount());
+            assertEquals(content.length, stats.rawBytes());
+            assertTrue(stats.storedBytes() < content.length);
+        }
+    }
+
+    @Test
+    @DisplayName("consecutive versions are stored as deltas and restored exactly")
+    void snapshotVersionsStoredAsDeltas() throws Exception {
+        try (Connection conn = db.getInitializedConnection()) {
+            StringBuilder sb = new StringBuilder();
+            java.util.Random random = new java.util.Random(7);
+            for (int i = 0; i < 20_000; i++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+                if (i % 60 == 59) sb.append('\n');
+            }
+            String text = sb.toString();
+
+            List<byte[]> versions = new java.util.ArrayList<>();
+            List<Long> entryIds = new java.util.ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                text = text.substring(0, 1000 * i) + "edit" + i + text.substring(1000 * i + 5);
+                byte[] version = text.getBytes(StandardCharsets.UTF_8);
+                long entryId = repo.insertEntry(conn, "UNDO", "TRANSACTION", i,
+                        LocalDateTime.now(), "edit " + i, "COMMITTED", null, null, null, null, null);
+                repo.insertSnapshot(conn, entryId, "Big.txt", version, version.length, i);
+                versions.add(version);
+                entryIds.add(entryId);
+            }
+
+            // Хранится меньше, чем две полные копии, хотя версий двенадцать
+            JournalRepository.BlobStats stats = repo.getBlobStats(conn);
+            assertEquals(12, stats.blobCount());
+            assertTrue(stats.storedBytes() < 2L * versions.get(0).length, "stored " + stats.storedBytes());
+
+            for (int i = 0; i < versions.size(); i++) {
+                assertArrayEquals(versions.get(i), repo.getSnapshot(conn, entryIds.get(i), "Big.txt").content());
+            }
+
+            // Удаление старых записей не ломает дельты новых
+            for (int i = 0; i < 6; i++) {
+                repo.deleteEntry(conn, entryIds.get(i));
+            }
+            for (int i = 6; i < versions.size(); i++) {
+                assertArrayEquals(versions.get(i), repo.getSnapshot(conn, entryIds.get(i), "Big.txt").content());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("blobs are released when entries are deleted")
+    void snapshotBlobsReleased() throws Exception {
+        try (Connection conn = db.getInitializedConnection()) {
+            long undoId = repo.insertEntry(conn, "UNDO", "TRANSACTION", 0,
+                    LocalDateTime.now(), "undo", "COMMITTED", null, null, null, null, null);
+            long redoId = repo.insertEntry(conn, "REDO", "TRANSACTION", 0,
+                    LocalDateTime.now(), "redo", "COMMITTED", null, null, null, null, null);
+            repo.insertSnapshot(conn, undoId, "a.java", "shared".getBytes(), 6, 1L);
+            repo.insertSnapshot(conn, redoId, "a.java", "shared".getBytes(), 6, 1L);
+            repo.insertSnapshot(conn, redoId, "b.java", "only redo".getBytes(), 9, 2L);
+            assertEquals(2, repo.getBlobStats(conn).blobCount());
+
+            repo.clearStack(conn, "REDO");
+            assertEquals(1, repo.getBlobStats(conn).blobCount());
+            assertArrayEquals("shared".getBytes(), repo.getSnapshot(conn, undoId, "a.java").content());
+
+            repo.deleteEntry(conn, undoId);
+            assertEquals(0, repo.getBlobStats(conn).blobCount());
+        }
+    }
+
     // ==================== Diff Stats ====================
 
     @Test
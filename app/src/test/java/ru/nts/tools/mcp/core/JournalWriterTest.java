@@ -0,0 +1,197 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты отложенной записи журнала: порядок, барьер и воспроизведение после падения.
+ */
+class JournalWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JournalDatabase db;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        db = new JournalDatabase(tempDir);
+        db.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    @Test
+    void testSubmittedTransactionsWrittenInOrderBeforeBarrier() {
+        List<String> written = new CopyOnWriteArrayList<>();
+        JournalWriter writer = new JournalWriter(db, (conn, tx, editCount) -> written.add(tx.description));
+
+        for (int i = 0; i < 20; i++) {
+            writer.submit(transaction("edit " + i), i + 1);
+        }
+        writer.awaitDurable();
+
+        assertEquals(20, written.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("edit " + i, written.get(i));
+        }
+        assertEquals(0, writer.pendingCount());
+        assertNoPendingFiles();
+    }
+
+    @Test
+    void testPendingTransactionReplayedAfterFailure() throws Exception {
+        // Писатель, у которого запись в H2 не удаётся (как при падении до commit)
+        JournalWriter failing = new JournalWriter(db, (conn, tx, editCount) -> {
+            throw new SQLException("simulated crash");
+        });
+        failing.submit(transaction("lost edit"), 1);
+        assertThrows(IllegalStateException.class, failing::awaitDurable);
+        // Процесс "упал": очередь в памяти потеряна, остаётся только файл
+        failing.discardPending();
+
+        try (var files = Files.list(tempDir.resolve("journal-pending"))) {
+            assertTrue(files.anyMatch(p -> p.toString().endsWith(".pending")));
+        }
+
+        // Новый экземпляр (после перезапуска) воспроизводит неподтверждённую запись
+        JournalRepository repo = new JournalRepository();
+        JournalWriter recovered = new JournalWriter(db, (conn, tx, editCount) -> {
+            long id = repo.insertEntry(conn, "UNDO", "TRANSACTION", 0, tx.timestamp, tx.description,
+                    "COMMITTED", tx.instruction, null, null, null, null);
+            for (var entry : tx.snapshots.entrySet()) {
+                byte[] content = entry.getValue();
+                repo.insertSnapshot(conn, id, entry.getKey().getFileName().toString(),
+                        content, content != null ? content.length : 0, 0);
+            }
+        });
+        recovered.replayPending();
+
+        try (Connection conn = db.getConnection()) {
+            var entries = repo.getEntries(conn, "UNDO");
+            assertEquals(1, entries.size());
+            assertEquals("lost edit", entries.get(0).description());
+            var snapshot = repo.getSnapshot(conn, entries.get(0).id(), "a.txt");
+            assertArrayEquals("before".getBytes(StandardCharsets.UTF_8), snapshot.content());
+        }
+        assertNoPendingFiles();
+    }
+
+    @Test
+    void testAppliedTransactionNotReplayedTwice() throws Exception {
+        JournalRepository repo = new JournalRepository();
+        Path pendingDir = tempDir.resolve("journal-pending");
+        Path saved = tempDir.resolve("saved");
+        Files.createDirectories(saved);
+        // Копия файла journal-pending на момент записи в H2 - как если бы процесс упал до его удаления
+        JournalWriter writer = new JournalWriter(db, (conn, tx, editCount) -> {
+            insert(repo, conn, tx);
+            try (var files = Files.list(pendingDir)) {
+                for (Path file : files.toList()) {
+                    Files.copy(file, saved.resolve(file.getFileName()));
+                }
+            } catch (java.io.IOException e) {
+                throw new SQLException(e);
+            }
+        });
+        writer.submit(transaction("applied edit"), 1);
+        writer.awaitDurable();
+        assertNoPendingFiles();
+
+        try (var files = Files.list(saved)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, pendingDir.resolve(file.getFileName()));
+            }
+        }
+
+        JournalWriter recovered = new JournalWriter(db, (conn, tx, editCount) -> insert(repo, conn, tx));
+        recovered.replayPending();
+
+        try (Connection conn = db.getConnection();
+             var stmt = conn.createStatement();
+             var rs = stmt.executeQuery("SELECT COUNT(*) FROM journal_applied")) {
+            assertEquals(1, repo.getEntries(conn, "UNDO").size());
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+        assertNoPendingFiles();
+    }
+
+    @Test
+    void testFailedTransactionRetriedBeforeLaterOnes() {
+        List<String> written = new CopyOnWriteArrayList<>();
+        AtomicInteger failuresLeft = new AtomicInteger(2);
+        JournalWriter writer = new JournalWriter(db, (conn, tx, editCount) -> {
+            if (tx.description.equals("first") && failuresLeft.getAndDecrement() > 0) {
+                throw new SQLException("transient failure");
+            }
+            written.add(tx.description);
+        });
+
+        writer.submit(transaction("first"), 1);
+        writer.submit(transaction("second"), 2);
+        writer.awaitDurable();
+
+        // Неудачная запись не пропускается и не обгоняется следующими
+        assertEquals(List.of("first", "second"), written);
+        assertEquals(0, writer.pendingCount());
+        assertNoPendingFiles();
+    }
+
+    private static void insert(JournalRepository repo, Connection conn,
+                               TaskTransactionManager.Transaction tx) throws SQLException {
+        repo.insertEntry(conn, "UNDO", "TRANSACTION", 0, tx.timestamp, tx.description,
+                "COMMITTED", tx.instruction, null, null, null, null);
+    }
+
+    private TaskTransactionManager.Transaction transaction(String description) {
+        TaskTransactionManager.Transaction tx =
+                new TaskTransactionManager.Transaction(description, null, LocalDateTime.now());
+        tx.snapshots.put(tempDir.resolve("a.txt"), "before".getBytes(StandardCharsets.UTF_8));
+        tx.snapshots.put(tempDir.resolve("new.txt"), null);
+        return tx;
+    }
+
+    private void assertNoPendingFiles() {
+        Path pendingDir = tempDir.resolve("journal-pending");
+        if (Files.isDirectory(pendingDir)) {
+            try (var files = Files.list(pendingDir)) {
+                assertEquals(0, files.count());
+            } catch (java.io.IOException e) {
+                fail(e);
+            }
+        }
+    }
+}
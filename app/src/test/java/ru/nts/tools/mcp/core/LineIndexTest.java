@@ -0,0 +1,85 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для LineIndex: результаты должны совпадать с разбиением {@code split("\n", -1)}.
+ */
+class LineIndexTest {
+
+    private static final List<String> SAMPLES = List.of(
+            "",
+            "single",
+            "a\nb\nc",
+            "trailing\n",
+            "\n\n",
+            "crlf\r\nlines\r\n\r\nend",
+            "Привет\nмир\n"
+    );
+
+    @Test
+    @DisplayName("Строки и количество совпадают с split")
+    void testLinesMatchSplit() {
+        for (String text : SAMPLES) {
+            String[] expected = text.split("\n", -1);
+            LineIndex index = LineIndex.of(text);
+            assertEquals(expected.length, index.lineCount(), text);
+            assertEquals(Arrays.asList(expected), index.lines(), text);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], index.line(i + 1));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Диапазон совпадает с соединением строк и обрезается по границам")
+    void testRange() {
+        String text = "one\r\ntwo\nthree\n\nfive";
+        String[] lines = text.split("\n", -1);
+        LineIndex index = LineIndex.of(text);
+        for (int start = 1; start <= lines.length; start++) {
+            for (int end = start; end <= lines.length; end++) {
+                String expected = String.join("\n", Arrays.copyOfRange(lines, start - 1, end));
+                assertEquals(expected, index.range(start, end));
+            }
+        }
+        assertEquals("one\r\ntwo", index.range(0, 2));
+        assertEquals("five", index.range(5, 100));
+        assertEquals("", index.range(4, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.line(6));
+    }
+
+    @Test
+    @DisplayName("Поиск паттерна применяется к каждой строке отдельно")
+    void testFind() {
+        LineIndex index = LineIndex.of("package a;\n\npublic class Foo {\n  void bar() {}\n}\n");
+        assertEquals(3, index.find(Pattern.compile("class\\s+Foo")));
+        assertEquals(4, index.find(Pattern.compile("^\\s+void")));
+        assertEquals(5, index.find(Pattern.compile("^}$")));
+        assertEquals(2, index.find(Pattern.compile("^$")));
+        assertEquals(-1, index.find(Pattern.compile("Foo \\{\\n")));
+        assertEquals(-1, index.find(Pattern.compile("missing")));
+    }
+}
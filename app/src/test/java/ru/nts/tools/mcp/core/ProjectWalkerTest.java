@@ -0,0 +1,245 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для ProjectWalker и IgnoreRules - общего обхода проекта с учётом .gitignore.
+ */
+class ProjectWalkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Set<String> walk(ProjectWalker walker) {
+        try (Stream<Path> s = walker.stream()) {
+            return s.map(p -> tempDir.relativize(p).toString().replace('\\', '/'))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    private void write(String relative, String content) throws Exception {
+        Path file = tempDir.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    @Test
+    void testWalkFindsAllFiles() throws Exception {
+        write("a.txt", "a");
+        write("src/b.java", "b");
+        write("src/deep/nested/c.java", "c");
+
+        assertEquals(Set.of("a.txt", "src/b.java", "src/deep/nested/c.java"),
+                walk(ProjectWalker.create(tempDir)));
+    }
+
+    @Test
+    void testDefaultSkipDirectories() throws Exception {
+        write("src/Main.java", "x");
+        write("node_modules/lib/index.js", "x");
+        write("build/classes/Main.class", "x");
+        write("target/out.jar", "x");
+
+        assertEquals(Set.of("src/Main.java"), walk(ProjectWalker.create(tempDir)));
+        assertEquals(4, walk(ProjectWalker.create(tempDir).autoIgnore(false)).size());
+    }
+
+    @Test
+    void testGitignoreRules() throws Exception {
+        write(".gitignore", """
+                # комментарий
+                *.log
+                /generated/
+                vendor
+                docs/**/*.tmp
+                !keep.log
+                """);
+        write("app.log", "x");
+        write("keep.log", "x");
+        write("src/app.log", "x");
+        write("src/Main.java", "x");
+        write("generated/Gen.java", "x");
+        write("src/generated/Real.java", "x");
+        write("lib/vendor/dep.js", "x");
+        write("docs/a/b/file.tmp", "x");
+        write("docs/a/readme.md", "x");
+
+        assertEquals(Set.of(".gitignore", "keep.log", "src/Main.java", "src/generated/Real.java",
+                "docs/a/readme.md"), walk(ProjectWalker.create(tempDir)));
+    }
+
+    @Test
+    void testNestedIgnoreFileOverridesParent() throws Exception {
+        write(".gitignore", "*.gen\n");
+        write("module/.gitignore", "!important.gen\nlocal/\n");
+        write("a.gen", "x");
+        write("module/important.gen", "x");
+        write("module/other.gen", "x");
+        write("module/local/x.txt", "x");
+        write(".ignore", "*.bak\n");
+        write("file.bak", "x");
+
+        Set<String> files = walk(ProjectWalker.create(tempDir));
+        assertTrue(files.contains("module/important.gen"));
+        assertFalse(files.contains("a.gen"));
+        assertFalse(files.contains("module/other.gen"));
+        assertFalse(files.contains("module/local/x.txt"));
+        assertFalse(files.contains("file.bak"));
+    }
+
+    @Test
+    void testParentRulesApplyToSubdirectoryRoot() throws Exception {
+        Files.createDirectories(tempDir.resolve(".git/info"));
+        Files.writeString(tempDir.resolve(".git/info/exclude"), "secret.txt\n");
+        write(".gitignore", "*.out\n");
+        write("sub/a.out", "x");
+        write("sub/secret.txt", "x");
+        write("sub/ok.txt", "x");
+
+        assertEquals(Set.of("sub/ok.txt"), walk(ProjectWalker.create(tempDir.resolve("sub"))));
+    }
+
+    @Test
+    void testSkipHiddenAndMaxDepth() throws Exception {
+        write(".config/settings.json", "x");
+        write("a/b/c/d.txt", "x");
+        write("a/top.txt", "x");
+
+        assertEquals(Set.of("a/top.txt"),
+                walk(ProjectWalker.create(tempDir).skipHidden(true).maxDepth(2)));
+    }
+
+    @Test
+    void testFilterAndAccepts() throws Exception {
+        write("src/A.java", "class A {}");
+        write("src/B.kt", "class B");
+        write("build/C.java", "class C {}");
+        write("src/.gitignore", "Ignored.java\n");
+        write("src/Ignored.java", "class I {}");
+
+        ProjectWalker walker = ProjectWalker.create(tempDir)
+                .filter((p, attrs) -> p.toString().endsWith(".java"));
+        assertEquals(Set.of("src/A.java"), walk(walker));
+
+        assertTrue(walker.accepts(tempDir.resolve("src/A.java")));
+        assertTrue(walker.accepts(tempDir.resolve("src/New.java")));
+        assertFalse(walker.accepts(tempDir.resolve("build/C.java")));
+        assertFalse(walker.accepts(tempDir.resolve("src/Ignored.java")));
+        assertFalse(walker.accepts(tempDir.getParent().resolve("Other.java")));
+    }
+
+    @Test
+    void testEarlyCloseStopsLargeWalk() throws Exception {
+        for (int d = 0; d < 20; d++) {
+            for (int f = 0; f < 200; f++) {
+                write("dir" + d + "/file" + f + ".txt", "x");
+            }
+        }
+
+        List<Path> first = ProjectWalker.create(tempDir).collect(10);
+        assertEquals(10, first.size());
+
+        // Полный обход после раннего закрытия предыдущего работает корректно
+        assertEquals(4000, walk(ProjectWalker.create(tempDir)).size());
+    }
+
+    @Test
+    void testStalledConsumerAbortsWalk() throws Exception {
+        for (int f = 0; f < 3000; f++) {
+            write("dir" + (f % 10) + "/file" + f + ".txt", "x");
+        }
+
+        // Потребитель взял один путь и перестал читать, не закрыв поток
+        try (Stream<Path> files = ProjectWalker.create(tempDir).consumerStallTimeout(200).stream()) {
+            Iterator<Path> it = files.iterator();
+            it.next();
+            Thread.sleep(1000);
+            assertThrows(IllegalStateException.class, () -> it.forEachRemaining(p -> {}));
+        }
+    }
+
+    @Test
+    void testSlowConsumerDoesNotBlockOtherWalks() throws Exception {
+        for (int f = 0; f < 3000; f++) {
+            write("big/dir" + (f % 10) + "/file" + f + ".txt", "x");
+        }
+        write("small/a.txt", "a");
+
+        // Первый обход ждёт потребителя с заполненной очередью
+        try (Stream<Path> stalled = ProjectWalker.create(tempDir.resolve("big")).stream()) {
+            stalled.iterator().next();
+            Thread.sleep(300);
+
+            CompletableFuture<List<Path>> other = CompletableFuture.supplyAsync(
+                    () -> ProjectWalker.create(tempDir.resolve("small")).collect(10));
+            assertEquals(1, other.get(10, TimeUnit.SECONDS).size());
+        }
+    }
+
+    @Test
+    void testFilterRunsOnVirtualThreads() throws Exception {
+        write("a.txt", "a");
+        write("src/b.txt", "b");
+
+        assertEquals(Set.of("a.txt", "src/b.txt"),
+                walk(ProjectWalker.create(tempDir).filter((p, attrs) -> Thread.currentThread().isVirtual())));
+    }
+
+    @Test
+    void testSingleFileRoot() throws Exception {
+        write("only.txt", "x");
+        assertEquals(Set.of("only.txt"), walk(ProjectWalker.create(tempDir.resolve("only.txt"))));
+    }
+
+    @Test
+    void testIgnoreRulesMatchPatterns() {
+        IgnoreRules rules = IgnoreRules.empty().withLines(tempDir, List.of(
+                "logs/",
+                "/root.txt",
+                "a/**/z",
+                "file[0-9].txt",
+                "\\#hash",
+                "trailing   "));
+
+        assertTrue(rules.isIgnored(tempDir.resolve("x/logs"), true));
+        assertFalse(rules.isIgnored(tempDir.resolve("x/logs"), false));
+        assertTrue(rules.isIgnored(tempDir.resolve("root.txt"), false));
+        assertFalse(rules.isIgnored(tempDir.resolve("sub/root.txt"), false));
+        assertTrue(rules.isIgnored(tempDir.resolve("a/z"), false));
+        assertTrue(rules.isIgnored(tempDir.resolve("a/b/c/z"), false));
+        assertTrue(rules.isIgnored(tempDir.resolve("file7.txt"), false));
+        assertFalse(rules.isIgnored(tempDir.resolve("fileX.txt"), false));
+        assertTrue(rules.isIgnored(tempDir.resolve("#hash"), false));
+        assertTrue(rules.isIgnored(tempDir.resolve("trailing"), false));
+        assertEquals(IgnoreRules.Match.NONE, rules.match(tempDir.resolve("other.txt"), false));
+    }
+}
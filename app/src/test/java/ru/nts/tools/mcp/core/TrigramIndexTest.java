@@ -0,0 +1,183 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для TrigramIndex.
+ */
+class TrigramIndexTest {
+
+    private static Path taskRoot;
+    private Path projectDir;
+    private TrigramIndex index;
+
+    @BeforeAll
+    static void setUpClass() throws IOException {
+        // Персистентный индекс пишем во временный корень задач, а не в ~/.nts
+        taskRoot = Files.createTempDirectory("trigram-index-store");
+        PathSanitizer.setTaskRoot(taskRoot);
+    }
+
+    @AfterAll
+    static void tearDownClass() throws IOException {
+        deleteRecursively(taskRoot);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectDir = Files.createTempDirectory("trigram-index-test").toAbsolutePath().normalize();
+        index = TrigramIndex.getInstance();
+        index.clear();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        index.clear();
+        deleteRecursively(projectDir);
+    }
+
+    @Test
+    @DisplayName("requiredLiterals() выделяет обязательные фрагменты regex")
+    void testRequiredLiterals() {
+        assertEquals(List.of("hello"), TrigramIndex.requiredLiterals("hello"));
+        assertEquals(List.of("void ", "(int"), TrigramIndex.requiredLiterals("void \\w+\\(int"));
+        assertEquals(List.of("foo", "bar"), TrigramIndex.requiredLiterals("foo.*bar"));
+        assertEquals(List.of("colo", "r"), TrigramIndex.requiredLiterals("colou?r"));
+        assertEquals(List.of("ab", "c"), TrigramIndex.requiredLiterals("ab+c"));
+        assertEquals(List.of("get", "Name"), TrigramIndex.requiredLiterals("get(User|Account)Name"));
+        assertEquals(List.of("x", "y"), TrigramIndex.requiredLiterals("x[a-z\\]]{2,}y"));
+        assertEquals(List.of("a.b"), TrigramIndex.requiredLiterals("a\\.b"));
+
+        // Альтернатива, inline-флаги и неразбираемые экранирования не сужают поиск
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("foo|bar"));
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("(?i)hello"));
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("\\Qa.b\\E"));
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("\\u0041bc"));
+    }
+
+    @Test
+    @DisplayName("Запрос отсекает только файлы без триграмм паттерна")
+    void testQuerySkipsFilesWithoutPattern() throws Exception {
+        Path hit = write("Hit.java", "class Hit { void processOrder() {} }");
+        Path miss = write("Miss.java", "class Miss { void other() {} }");
+        Path cyrillic = write("Notes.txt", "Обработка заказа\nвторая строка");
+        buildIndex();
+
+        TrigramIndex.Query literal = index.query(projectDir, "processOrder", false);
+        assertNotNull(literal);
+        assertTrue(literal.mayContain(hit, attrs(hit)));
+        assertFalse(literal.mayContain(miss, attrs(miss)));
+        assertFalse(literal.mayContain(cyrillic, attrs(cyrillic)));
+        assertEquals(2, literal.skippedFiles());
+
+        TrigramIndex.Query regex = index.query(projectDir, "void \\w+Order\\(", true);
+        assertNotNull(regex);
+        assertTrue(regex.mayContain(hit, attrs(hit)));
+        assertFalse(regex.mayContain(miss, attrs(miss)));
+
+        TrigramIndex.Query unicode = index.query(projectDir, "Обработка", false);
+        assertNotNull(unicode);
+        assertTrue(unicode.mayContain(cyrillic, attrs(cyrillic)));
+        assertFalse(unicode.mayContain(hit, attrs(hit)));
+
+        // Паттерн короче триграммы индекс сузить не может
+        assertNull(index.query(projectDir, "ab", false));
+        assertNull(index.query(projectDir, "foo|bar", true));
+    }
+
+    @Test
+    @DisplayName("Изменённые и неизвестные индексу файлы всегда остаются кандидатами")
+    void testChangedFilesAreNotSkipped() throws Exception {
+        Path file = write("Service.java", "class Service {}");
+        buildIndex();
+
+        // Внешнее изменение: расходятся размер и mtime
+        Files.writeString(file, "class Service { void processOrder() {} }");
+        TrigramIndex.Query query = index.query(projectDir, "processOrder", false);
+        assertTrue(query.mayContain(file, attrs(file)));
+
+        // Файл, созданный после построения индекса
+        Path created = write("Created.java", "class Created {}");
+        assertTrue(index.query(projectDir, "processOrder", false).mayContain(created, attrs(created)));
+
+        // Изменение инструментом: до переиндексации файл — кандидат
+        Path other = write("Other.java", "class Other {}");
+        index.markFileChanged(other);
+        assertTrue(index.query(projectDir, "Other", false).mayContain(other, attrs(other)));
+    }
+
+    @Test
+    @DisplayName("Тёплый старт загружает индекс с диска")
+    void testWarmStart() throws Exception {
+        Path hit = write("Hit.java", "class Hit { void processOrder() {} }");
+        Path miss = write("Miss.java", "class Miss {}");
+        buildIndex();
+        assertEquals(2, index.getFileCount());
+
+        index.clear();
+        Path store = new TrigramIndexStore(taskRoot, projectDir).getStoreFile();
+        assertTrue(Files.exists(store), "Индекс должен быть сохранён на диск");
+        buildIndex();
+
+        TrigramIndex.Query query = index.query(projectDir, "processOrder", false);
+        assertTrue(query.mayContain(hit, attrs(hit)));
+        assertFalse(query.mayContain(miss, attrs(miss)));
+    }
+
+    private void buildIndex() throws Exception {
+        index.indexProjectAsync(projectDir).get(30, TimeUnit.SECONDS);
+        assertTrue(index.isIndexed());
+    }
+
+    /**
+     * Создаёт файл с mtime в прошлом, чтобы запись индекса считалась надёжной.
+     */
+    private Path write(String name, String content) throws IOException {
+        Path file = projectDir.resolve(name);
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        return file;
+    }
+
+    private static BasicFileAttributes attrs(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (var walk = Files.walk(dir)) {
+            walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // Игнорируем
+                }
+            });
+        }
+    }
+}
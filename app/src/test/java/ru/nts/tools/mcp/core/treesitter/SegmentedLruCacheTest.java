@@ -0,0 +1,87 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedLruCacheTest {
+
+    private static SegmentedLruCache<String, String> cache(long maxWeight) {
+        return new SegmentedLruCache<>(maxWeight, String::length);
+    }
+
+    @Test
+    void evictsOneTimeEntriesBeforeReusedOnes() {
+        SegmentedLruCache<String, String> cache = cache(30);
+        cache.put("hot", "0123456789");
+        assertNotNull(cache.get("hot")); // повторное обращение - защищённый сегмент
+
+        // Однократный проход по множеству записей не вытесняет рабочий набор
+        for (int i = 0; i < 10; i++) {
+            cache.put("scan" + i, "0123456789");
+        }
+
+        assertEquals("0123456789", cache.get("hot"));
+        assertNull(cache.get("scan0"));
+        assertTrue(cache.weight() <= 30);
+    }
+
+    @Test
+    void protectedSegmentOverflowIsDemoted() {
+        SegmentedLruCache<String, String> cache = cache(30);
+        for (String key : new String[]{"a", "b", "c"}) {
+            cache.put(key, "0123456789");
+            cache.get(key);
+        }
+        // Защищённый сегмент ограничен 80% бюджета: самая давняя запись вытесняется первой
+        cache.put("d", "0123456789");
+
+        assertNull(cache.peek("a"));
+        assertNotNull(cache.peek("b"));
+        assertNotNull(cache.peek("c"));
+        assertNotNull(cache.peek("d"));
+        assertEquals(30, cache.weight());
+    }
+
+    @Test
+    void tracksWeightOnReplaceAndRemove() {
+        SegmentedLruCache<String, String> cache = cache(100);
+        cache.put("k", "12345");
+        cache.put("k", "1234567890");
+        assertEquals(10, cache.weight());
+
+        String current = cache.peek("k");
+        assertFalse(cache.replace("k", "other", "x"));
+        assertTrue(cache.replace("k", current, "123"));
+        assertEquals(3, cache.weight());
+
+        assertEquals("123", cache.remove("k"));
+        assertEquals(0, cache.weight());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void entryLargerThanBudgetIsNotCached() {
+        SegmentedLruCache<String, String> cache = cache(5);
+        cache.put("k", "123");
+        cache.put("k", "123456");
+
+        assertNull(cache.peek("k"));
+        assertEquals(0, cache.weight());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для SourceText.
+ */
+class SourceTextTest {
+
+    @Test
+    void testAsciiSlicing() {
+        SourceText source = SourceText.of("class Foo {}");
+        assertEquals("Foo", source.text(6, 9));
+        assertEquals(6, source.charOffset(6));
+        assertEquals("", source.text(9, 6));
+        assertEquals("", source.text(0, 100));
+    }
+
+    @Test
+    void testMultiByteSlicing() {
+        String content = "// Привет 😀\nclass Ключ {}";
+        SourceText source = SourceText.of(content);
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(bytes, source.bytes());
+
+        int start = new String(bytes, StandardCharsets.UTF_8).indexOf("Ключ");
+        int startByte = content.substring(0, start).getBytes(StandardCharsets.UTF_8).length;
+        int endByte = startByte + "Ключ".getBytes(StandardCharsets.UTF_8).length;
+
+        assertEquals("Ключ", source.text(startByte, endByte));
+        assertEquals(start, source.charOffset(startByte));
+        assertEquals(content.length(), source.charOffset(bytes.length));
+        // Эмодзи - 4 байта и два char (суррогатная пара)
+        int emojiByte = "// Привет ".getBytes(StandardCharsets.UTF_8).length;
+        assertEquals("😀", source.text(emojiByte, emojiByte + 4));
+    }
+
+    @Test
+    void testReusesInstanceForSameString() {
+        String content = "fun main() {}";
+        assertSame(SourceText.of(content), SourceText.of(content));
+        assertNotSame(SourceText.of(content), SourceText.of(new String(content)));
+    }
+
+    @Test
+    void testNodeTextMatchesByteDecoding() {
+        String content = """
+                public class Пример {
+                    private String имя = "значение";
+                    public void печать() { System.out.println(имя); }
+                }
+                """;
+        TreeSitterManager.ParseResult pr = TreeSitterManager.getInstance()
+                .parseWithContent(Path.of("Example.java"), content);
+
+        List<SymbolInfo> symbols = SymbolExtractor.getInstance()
+                .extractDefinitions(pr.tree(), Path.of("Example.java"), content, pr.langId());
+        assertTrue(symbols.stream().anyMatch(s -> s.name().equals("Пример")), symbols.toString());
+        assertTrue(symbols.stream().anyMatch(s -> s.name().equals("печать")), symbols.toString());
+
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        SymbolExtractor.getInstance().collectIdentifiers(pr.tree(), pr.source(), pr.langId(),
+                (name, kind, startByte, row, column) -> assertEquals(
+                        new String(bytes, startByte, name.getBytes(StandardCharsets.UTF_8).length, StandardCharsets.UTF_8),
+                        name));
+    }
+}
@@ -15,6 +15,7 @@
  */
 package ru.nts.tools.mcp.core.treesitter;
 
+import org.treesitter.TSNode;
 import org.treesitter.TSTree;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,7 +23,9 @@ import ru.nts.tools.mcp.core.treesitter.SymbolInfo.Location;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.SymbolKind;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -185,4 +188,46 @@ class SymbolExtractorTest {
                     "Extracted text should be 'target', got '" + extracted + "' at line " + ref.startLine());
         }
     }
+
+    @Test
+    void queryFindsSameIdentifiersAsFullTreeWalk() {
+        Map<String, String> samples = Map.of(
+                "java", "class A { int value; int get(A other) { return other.value + value; } }",
+                "typescript", "class A { value: number = 0; get(other: A): number { return other.value + this.value; } }",
+                "javascript", "function value(a) { const b = { value: a }; return b.value + value(a); }",
+                "kotlin", "class A(val value: Int) { fun get(other: A): Int = other.value + value }",
+                "python", "class A:\n    def get(self, other):\n        return other.value + self.value\n",
+                "go", "type A struct { value int }\nfunc (a A) Get(o A) int { return o.value + a.value }\n",
+                "rust", "struct A { value: i32 }\nfn get(a: &A) -> i32 { a.value + value() }\n",
+                "cpp", "struct A { int value; };\nint get(A a) { return a.value + value; }\n",
+                "csharp", "class A { int value; int Get(A other) { return other.value + value; } }");
+
+        for (Map.Entry<String, String> sample : samples.entrySet()) {
+            String langId = sample.getKey();
+            String code = sample.getValue();
+            TSTree tree = manager.parse(code, langId);
+            SourceText source = SourceText.of(code);
+
+            List<String> expected = new ArrayList<>();
+            collectByWalk(tree.getRootNode(), source, expected);
+            List<String> actual = new ArrayList<>();
+            extractor.collectIdentifiers(tree, source, langId,
+                    (name, kind, startByte, row, column) -> actual.add(
+                            SymbolExtractor.REFERENCE_NODE_TYPES.get(kind) + ":" + name + "@" + startByte));
+
+            assertFalse(expected.isEmpty(), langId);
+            assertEquals(expected, actual, langId);
+            assertEquals(expected.stream().filter(e -> e.contains(":value@")).count(),
+                    extractor.findReferences(tree, Path.of("A"), code, langId, "value").size(), langId);
+        }
+    }
+
+    private static void collectByWalk(TSNode node, SourceText source, List<String> out) {
+        if (SymbolExtractor.REFERENCE_NODE_TYPES.contains(node.getType())) {
+            out.add(node.getType() + ":" + source.text(node) + "@" + node.getStartByte());
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            collectByWalk(node.getChild(i), source, out);
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package ru.nts.tools.mcp.core.treesitter;
 
 import org.junit.jupiter.api.*;
+import ru.nts.tools.mcp.core.PathSanitizer;
 import ru.nts.tools.mcp.core.treesitter.SymbolInfo.Location;
 
 import java.io.IOException;
@@ -34,18 +35,23 @@ import static org.junit.jupiter.api.Assertions.*;
 class SymbolIndexTest {
 
     private static Path tempDir;
+    private static Path taskRoot;
     private SymbolIndex index;
 
     @BeforeAll
     static void setUpClass() throws IOException {
         tempDir = Files.createTempDirectory("symbol-index-test");
+        // Персистентный индекс пишем во временный корень задач, а не в ~/.nts
+        taskRoot = Files.createTempDirectory("symbol-index-store");
+        PathSanitizer.setTaskRoot(taskRoot);
     }
 
     @AfterAll
     static void tearDownClass() throws IOException {
-        // Очищаем временную директорию
-        if (tempDir != null) {
-            Files.walk(tempDir)
+        // Очищаем временные директории
+        for (Path dir : new Path[]{tempDir, taskRoot}) {
+            if (dir == null) continue;
+            Files.walk(dir)
                     .sorted((a, b) -> b.compareTo(a))
                     .forEach(path -> {
                         try {
@@ -103,6 +109,8 @@ class SymbolIndexTest {
         assertTrue(result.success(), "Индексация должна быть успешной");
         assertTrue(result.filesIndexed() >= 1, "Должен быть проиндексирован хотя бы 1 файл");
         assertTrue(result.symbolsIndexed() >= 1, "Должен быть найден хотя бы 1 символ");
+        assertEquals(index.getSymbolStats().bytesPerSymbol(), result.bytesPerSymbol());
+        assertTrue(result.bytesPerSymbol() > 0, result.toString());
         assertTrue(index.isIndexed(), "Индекс должен быть готов");
     }
 
@@ -218,6 +226,28 @@ class SymbolIndexTest {
         assertFalse(index.isIndexed(), "Индекс должен быть не готов");
     }
 
+    @Test
+    @DisplayName("getSymbolStats() сообщает количество символов и память на символ")
+    void testSymbolStats() throws Exception {
+        Path javaFile = tempDir.resolve("Stats.java");
+        Files.writeString(javaFile, """
+                public class Stats {
+                    public int get() { return 1; }
+                    public String toString() { return "s"; }
+                }
+                """);
+
+        index.indexProjectAsync(tempDir).get(30, TimeUnit.SECONDS);
+        SymbolIndex.SymbolStats stats = index.getSymbolStats();
+
+        assertEquals(index.getSymbolCount(), stats.symbols());
+        assertTrue(stats.names() > 0 && stats.names() <= stats.symbols(), stats.toString());
+        assertTrue(stats.bytesPerSymbol() > 0, stats.toString());
+
+        index.clear();
+        assertEquals(0, index.getSymbolStats().estimatedBytes());
+    }
+
     @Test
     @DisplayName("getIndexingProgress() возвращает прогресс")
     void testGetIndexingProgress() {
@@ -251,4 +281,113 @@ class SymbolIndexTest {
         assertTrue(index.findDefinitions("Ignored").isEmpty(),
                 "Ignored из node_modules не должен быть проиндексирован");
     }
+
+    @Test
+    @DisplayName("Тёплый старт восстанавливает неизменённые файлы и переиндексирует изменённые")
+    void testWarmStartReindexesOnlyChangedFiles() throws Exception {
+        Path warmDir = Files.createDirectories(tempDir.resolve("warm"));
+        Path stable = warmDir.resolve("Stable.java");
+        Path changed = warmDir.resolve("Changed.java");
+        Files.writeString(stable, "public class Stable { void keep() {} }\n");
+        Files.writeString(changed, "public class Changed { void before() {} }\n");
+
+        SymbolIndex.IndexingResult cold = index.indexProjectAsync(warmDir).get(30, TimeUnit.SECONDS);
+        assertTrue(cold.success());
+        assertFalse(cold.message().contains("warm start"), cold.message());
+
+        // Эмулируем перезапуск сервера: память очищена, файл на диске изменён
+        index.clear();
+        Files.writeString(changed, "public class Changed { void afterRestart() {} }\n");
+        Files.setLastModifiedTime(changed, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+        SymbolIndex.IndexingResult warm = index.indexProjectAsync(warmDir).get(30, TimeUnit.SECONDS);
+        assertTrue(warm.success());
+        assertTrue(warm.message().contains("1 restored, 1 reindexed"), warm.message());
+
+        assertFalse(index.findDefinitions("keep").isEmpty(), "Символы неизменённого файла восстановлены");
+        assertFalse(index.findDefinitions("afterRestart").isEmpty(), "Изменённый файл переиндексирован");
+        assertTrue(index.findDefinitions("before").isEmpty(), "Устаревшие символы не восстановлены");
+    }
+
+    @Test
+    @DisplayName("Индекс использований находит вхождения идентификатора во всех файлах")
+    void testFindReferencesFromIndex() throws Exception {
+        Path refDir = Files.createDirectories(tempDir.resolve("refs"));
+        Path service = refDir.resolve("Service.java");
+        Path client = refDir.resolve("Client.java");
+        Files.writeString(service, """
+                public class Service {
+                    public void process() {}
+                }
+                """);
+        Files.writeString(client, """
+                public class Client {
+                    void run(Service s) {
+                        s.process();
+                        s.process();
+                    }
+                }
+                """);
+
+        index.indexProjectAsync(refDir).get(30, TimeUnit.SECONDS);
+        assertTrue(index.coversProject(refDir));
+
+        List<Location> refs = index.findReferences("process", refDir);
+        assertEquals(3, refs.size(), "Объявление и два вызова: " + refs);
+        assertTrue(refs.contains(Location.singleLine(client.toAbsolutePath().normalize(), 3, 11, 18)), refs.toString());
+
+        // Позиции совпадают с поиском по дереву
+        TreeSitterManager.ParseResult pr = TreeSitterManager.getInstance().getCachedOrParseWithContent(client);
+        List<Location> expected = SymbolExtractor.getInstance().findReferences(
+                pr.tree(), client.toAbsolutePath().normalize(), pr.content(), pr.langId(), "process");
+        assertEquals(Set.copyOf(expected), Set.copyOf(refs.stream()
+                .filter(l -> l.path().getFileName().toString().equals("Client.java")).toList()));
+    }
+
+    @Test
+    @DisplayName("Индекс использований подхватывает изменённые и новые файлы")
+    void testReferencesFollowFileChanges() throws Exception {
+        Path refDir = Files.createDirectories(tempDir.resolve("refs-changes"));
+        Path a = refDir.resolve("A.java");
+        Files.writeString(a, "class A { void target() {} }\n");
+
+        index.indexProjectAsync(refDir).get(30, TimeUnit.SECONDS);
+        assertEquals(1, index.findReferences("target", refDir).size());
+
+        // Внешнее изменение обнаруживается по размеру/mtime и переиндексируется до ответа
+        Files.writeString(a, "class A { void other() {} }\n");
+        Files.setLastModifiedTime(a, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertEquals(List.of(), index.findReferences("target", refDir));
+
+        // Новый файл попадает в индекс после уведомления
+        Path b = refDir.resolve("B.java");
+        Files.writeString(b, "class B { void call(A a) { a.other(); } }\n");
+        index.markFileChanged(b);
+        assertEquals(2, index.findReferences("other", refDir).size());
+
+        // Удалённый файл уходит из индекса без уведомления
+        Files.delete(b);
+        assertEquals(1, index.findReferences("other", refDir).size());
+    }
+
+    @Test
+    @DisplayName("Перезапись в тот же тик mtime обнаруживается по CRC")
+    void testReferencesDetectSameStampRewrite() throws Exception {
+        Path refDir = Files.createDirectories(tempDir.resolve("refs-racy"));
+        Path a = refDir.resolve("A.java");
+        // mtime с точностью до секунды, как на файловых системах с грубой гранулярностью
+        java.nio.file.attribute.FileTime mtime = java.nio.file.attribute.FileTime.from(
+                java.time.Instant.now().truncatedTo(java.time.temporal.ChronoUnit.SECONDS));
+        Files.writeString(a, "class A { void alpha() {} }\n");
+        Files.setLastModifiedTime(a, mtime);
+
+        index.indexProjectAsync(refDir).get(30, TimeUnit.SECONDS);
+        assertEquals(1, index.findReferences("alpha", refDir).size());
+
+        // Тот же размер и mtime, другое содержимое
+        Files.writeString(a, "class A { void omega() {} }\n");
+        Files.setLastModifiedTime(a, mtime);
+        assertEquals(1, index.findReferences("omega", refDir).size());
+        assertEquals(List.of(), index.findReferences("alpha", refDir));
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import org.junit.jupiter.api.Test;
+import ru.nts.tools.mcp.core.treesitter.SymbolNameTrie.Match;
+import ru.nts.tools.mcp.core.treesitter.SymbolNameTrie.MatchType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolNameTrieTest {
+
+    private static final SymbolNameTrie TRIE = SymbolNameTrie.build(List.of(
+            "getUserById", "getUserByName", "getUsers", "getUrl", "UserService", "UserServiceImpl",
+            "HTTPServer", "user_id", "get", "set", "toString", "Order", "getUserById"));
+
+    private static Map<String, Match> search(String query) {
+        return TRIE.search(query, 100).stream().collect(Collectors.toMap(Match::name, m -> m));
+    }
+
+    @Test
+    void prefixAndExactIgnoreCase() {
+        Map<String, Match> found = search("getuser");
+        assertEquals(MatchType.PREFIX, found.get("getUserById").type());
+        assertEquals(MatchType.PREFIX, found.get("getUsers").type());
+        assertNull(found.get("getUrl"));
+
+        assertEquals(MatchType.EXACT, search("GET").get("get").type());
+        assertEquals(1, TRIE.search("getUserById", 100).stream().filter(m -> m.name().equals("getUserById")).count());
+    }
+
+    @Test
+    void camelHumps() {
+        assertEquals(MatchType.CAMEL_HUMPS, search("gUBI").get("getUserById").type());
+        assertEquals(MatchType.CAMEL_HUMPS, search("gubi").get("getUserById").type());
+        assertEquals(MatchType.CAMEL_HUMPS, search("getUsr").get("getUserById").type());
+        assertEquals(MatchType.CAMEL_HUMPS, search("UserSvc").get("UserService").type());
+        assertEquals(MatchType.CAMEL_HUMPS, search("UserSvc").get("UserServiceImpl").type());
+        assertEquals(MatchType.CAMEL_HUMPS, search("HS").get("HTTPServer").type());
+        assertEquals(MatchType.CAMEL_HUMPS, search("uI").get("user_id").type());
+        assertNull(search("gUBN").get("getUserById"));
+    }
+
+    @Test
+    void boundedEditDistance() {
+        Match typo = search("getUserByNmae").get("getUserByName");
+        assertEquals(MatchType.FUZZY, typo.type());
+        assertEquals(2, typo.distance());
+        assertEquals(1, search("tosting").get("toString").distance());
+        // Короткие запросы ищутся только по префиксу и горбам
+        assertNull(search("sat").get("set"));
+    }
+
+    @Test
+    void largeVocabulary() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            names.add("handle" + Integer.toString(i, 36) + "Request");
+        }
+        names.add("handleUserRequest");
+        SymbolNameTrie trie = SymbolNameTrie.build(names);
+
+        assertEquals(50_001, trie.size());
+        assertTrue(trie.search("hUR", 10).stream().anyMatch(m -> m.name().equals("handleUserRequest")));
+        assertTrue(trie.search("handleUserRequsst", 10).stream()
+                .anyMatch(m -> m.name().equals("handleUserRequest") && m.type() == MatchType.FUZZY && m.distance() == 1));
+        assertEquals(10, trie.search("handle", 10).size());
+    }
+
+    @Test
+    void overlayWithoutRebuild() {
+        SymbolNameTrie overlay = TRIE.withChanges(List.of(
+                Map.entry("getUrl", false),
+                Map.entry("fetchOrderLines", true),
+                Map.entry("toString", false),
+                Map.entry("toString", true)));
+
+        assertEquals(2, overlay.overlaySize());
+        assertTrue(overlay.search("getUrl", 100).stream().noneMatch(m -> m.name().equals("getUrl")));
+        Map<String, Match> found = overlay.search("fOL", 100).stream().collect(Collectors.toMap(Match::name, m -> m));
+        assertEquals(MatchType.CAMEL_HUMPS, found.get("fetchOrderLines").type());
+        assertEquals(MatchType.PREFIX, overlay.search("fetch", 100).getFirst().type());
+        assertEquals(1, overlay.search("fetchorderlnes", 100).getFirst().distance());
+        // Последнее изменение имени побеждает: toString остаётся в дереве
+        assertEquals(MatchType.EXACT, overlay.search("tostring", 100).getFirst().type());
+        assertEquals(TRIE.size(), overlay.size());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2025 Aristo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.nts.tools.mcp.core.treesitter;
+
+import org.junit.jupiter.api.Test;
+import ru.nts.tools.mcp.core.treesitter.SymbolIndex.IndexedSymbol;
+import ru.nts.tools.mcp.core.treesitter.SymbolInfo.SymbolKind;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+
+    private static List<IndexedSymbol> symbols(Path file, String... names) {
+        List<IndexedSymbol> result = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            result.add(new IndexedSymbol(new String(names[i]), SymbolKind.METHOD, file, i + 1, i + 2, "Owner", 0));
+        }
+        return result;
+    }
+
+    @Test
+    void replacingFileKeepsOnlyLiveSymbols() {
+        SymbolTable table = new SymbolTable();
+        Path a = Path.of("/p/A.java");
+        Path b = Path.of("/p/B.java");
+        table.put(a, 1, symbols(a, "get", "run"));
+        table.put(b, 2, symbols(b, "get"));
+
+        table.put(a, 3, symbols(a, "run"));
+
+        List<IndexedSymbol> get = table.lookup("get");
+        assertEquals(1, get.size());
+        assertEquals(b, get.getFirst().file());
+        assertEquals(3, table.lookup("run").getFirst().fileCrc());
+        assertEquals(2, table.size());
+
+        table.remove(b);
+        assertTrue(table.lookup("get").isEmpty());
+        assertEquals(1, table.nameCount(), "Пустой список имени удаляется");
+    }
+
+    @Test
+    void nameChangesJournal() {
+        SymbolTable table = new SymbolTable();
+        Path a = Path.of("/p/A.java");
+        table.put(a, 1, symbols(a, "get", "run"));
+        int version = table.namesVersion();
+
+        table.put(a, 2, symbols(a, "run", "stop"));
+
+        List<Map.Entry<String, Boolean>> changes = table.nameChangesSince(version);
+        assertEquals(List.of(Map.entry("stop", true), Map.entry("get", false)), changes);
+
+        table.discardNameChanges(table.namesVersion());
+        assertEquals(List.of(), table.nameChangesSince(table.namesVersion()));
+        assertNull(table.nameChangesSince(version), "Забытые изменения недоступны");
+
+        table.clear();
+        assertNull(table.nameChangesSince(version));
+    }
+
+    @Test
+    void hotNameSurvivesManyReindexes() {
+        SymbolTable table = new SymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            Path file = Path.of("/p/F" + i + ".java");
+            table.put(file, i, symbols(file, "get", "get", "value"));
+        }
+        // Переиндексация половины файлов: удалённые записи вычищаются из списка
+        for (int i = 0; i < 1000; i += 2) {
+            Path file = Path.of("/p/F" + i + ".java");
+            table.put(file, i + 1, symbols(file, "value"));
+        }
+
+        assertEquals(1000, table.lookup("get").size());
+        assertEquals(1000, table.lookup("value").size());
+        assertEquals(2000, table.size());
+
+        IndexedSymbol first = table.lookup("get").getFirst();
+        IndexedSymbol other = table.lookup("get").get(1);
+        assertSame(first.name(), other.name(), "Имена интернированы");
+        assertEquals("Owner", first.parentName());
+        assertTrue(table.estimatedBytes() > 0);
+    }
+
+    @Test
+    void symbolsOfFileRoundTrip() {
+        SymbolTable table = new SymbolTable();
+        Path file = Path.of("/p/A.java");
+        List<IndexedSymbol> input = symbols(file, "a", "b");
+        table.put(file, 7, input);
+
+        List<IndexedSymbol> stored = table.symbolsOf(file);
+        assertEquals(input.size(), stored.size());
+        assertEquals(new IndexedSymbol("b", SymbolKind.METHOD, file, 2, 3, "Owner", 7), stored.get(1));
+
+        table.clear();
+        assertTrue(table.symbolsOf(file).isEmpty());
+        assertEquals(0, table.size());
+    }
+}
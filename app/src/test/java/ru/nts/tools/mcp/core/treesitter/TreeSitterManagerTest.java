@@ -15,6 +15,7 @@
  */
 package ru.nts.tools.mcp.core.treesitter;
 
+import org.treesitter.TSInputEdit;
 import org.treesitter.TSLanguage;
 import org.treesitter.TSTree;
 import org.junit.jupiter.api.BeforeEach;
@@ -22,8 +23,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -218,4 +222,169 @@ class TreeSitterManagerTest {
         assertNotNull(tree, "Should parse even invalid code");
         // Tree will contain ERROR nodes
     }
+
+    @Test
+    void computeEditFindsChangedRange() {
+        byte[] oldSource = "class A {\n    int x;\n}".getBytes(StandardCharsets.UTF_8);
+        byte[] newSource = "class A {\n    long x;\n}".getBytes(StandardCharsets.UTF_8);
+
+        TSInputEdit edit = TreeSitterManager.computeEdit(oldSource, newSource);
+
+        assertEquals(14, edit.getStartByte());
+        assertEquals(17, edit.getOldEndByte());
+        assertEquals(18, edit.getNewEndByte());
+        assertEquals(1, edit.getStartPoint().getRow());
+        assertEquals(4, edit.getStartPoint().getColumn());
+        assertEquals(1, edit.getOldEndPoint().getRow());
+        assertEquals(7, edit.getOldEndPoint().getColumn());
+        assertEquals(8, edit.getNewEndPoint().getColumn());
+    }
+
+    @Test
+    void computeEditAlignsToUtf8Characters() {
+        // "é" и "è" отличаются только вторым байтом UTF-8 - правка должна начинаться с первого
+        byte[] oldSource = "s = \"é\";".getBytes(StandardCharsets.UTF_8);
+        byte[] newSource = "s = \"è\";".getBytes(StandardCharsets.UTF_8);
+
+        TSInputEdit edit = TreeSitterManager.computeEdit(oldSource, newSource);
+
+        assertEquals(5, edit.getStartByte());
+        assertEquals(7, edit.getOldEndByte());
+        assertEquals(7, edit.getNewEndByte());
+    }
+
+    @Test
+    void incrementalReparseMatchesFullParse(@TempDir Path tempDir) throws IOException {
+        Path javaFile = tempDir.resolve("Incremental.java");
+        String original = """
+                public class Incremental {
+                    void first() { int a = 1; }
+                    void second() { String s = "ü"; }
+                }
+                """;
+        Files.writeString(javaFile, original);
+        manager.getCachedOrParse(javaFile);
+
+        String edited = original.replace("int a = 1;", "int a = 1; int b = a + 2;")
+                .replace("void second()", "void renamed()");
+        Files.writeString(javaFile, edited);
+        manager.applyEdit(javaFile, edited);
+        assertFalse(manager.isCached(javaFile), "Edited tree must be reparsed before use");
+
+        TSTree incremental = manager.getCachedOrParse(javaFile);
+        TSTree full = manager.parse(edited, "java");
+
+        assertEquals(full.getRootNode().toString(), incremental.getRootNode().toString());
+        assertTrue(manager.isCached(javaFile));
+    }
+
+    @Test
+    void incrementalReparseWithoutExplicitEdit(@TempDir Path tempDir) throws IOException {
+        Path javaFile = tempDir.resolve("External.java");
+        Files.writeString(javaFile, "class External { int x; }");
+        manager.getCachedOrParse(javaFile);
+
+        // Изменение без applyEdit: правка вычисляется по закэшированному исходнику
+        String edited = "class External { int x; void m() {} }";
+        Files.writeString(javaFile, edited);
+
+        TreeSitterManager.ParseResult result = manager.getCachedOrParseWithContent(javaFile);
+
+        assertEquals(manager.parse(edited, "java").getRootNode().toString(),
+                result.tree().getRootNode().toString());
+        assertEquals(edited, result.content());
+    }
+
+    @Test
+    void unchangedFileIsServedByStatWithoutReparse(@TempDir Path tempDir) throws IOException {
+        Path javaFile = tempDir.resolve("Stable.java");
+        Files.writeString(javaFile, "class Stable { int x; }");
+        // mtime вне окна неразличимости - версия файла надёжна
+        Files.setLastModifiedTime(javaFile, FileTime.from(Instant.now().minusSeconds(60)));
+
+        TSTree first = manager.getCachedOrParse(javaFile);
+        assertSame(first, manager.getCachedOrParse(javaFile));
+        assertSame(first, manager.getCachedOrParseWithContent(javaFile).tree());
+        assertEquals("class Stable { int x; }", manager.getCachedOrParseWithContent(javaFile).content());
+
+        // Тот же текст с новым mtime: дерево остаётся прежним
+        Files.writeString(javaFile, "class Stable { int x; }");
+        Files.setLastModifiedTime(javaFile, FileTime.from(Instant.now().minusSeconds(30)));
+        assertSame(first, manager.getCachedOrParse(javaFile));
+        assertTrue(manager.isCached(javaFile));
+
+        // Новый текст с надёжным mtime
+        Files.writeString(javaFile, "class Stable { long y; }");
+        Files.setLastModifiedTime(javaFile, FileTime.from(Instant.now().minusSeconds(10)));
+        assertFalse(manager.isCached(javaFile));
+        assertEquals(manager.parse("class Stable { long y; }", "java").getRootNode().toString(),
+                manager.getCachedOrParse(javaFile).getRootNode().toString());
+    }
+
+    @Test
+    void virtualContentDoesNotReplaceCachedTree(@TempDir Path tempDir) throws IOException {
+        Path javaFile = tempDir.resolve("Draft.java");
+        Files.writeString(javaFile, "class Draft { int x; }");
+        TSTree onDisk = manager.getCachedOrParse(javaFile);
+
+        // Несохранённый контент парсится инкрементально, но кэш остаётся за файлом
+        String draft = "class Draft { int x; void m() {} }";
+        TreeSitterManager.ParseResult virtual = manager.getCachedOrParse(javaFile, draft);
+        assertEquals(manager.parse(draft, "java").getRootNode().toString(),
+                virtual.tree().getRootNode().toString());
+        assertTrue(manager.isCached(javaFile));
+        assertSame(onDisk, manager.getCachedOrParse(javaFile));
+
+        // Записанный контент (applyEdit) кэшируется
+        Files.writeString(javaFile, draft);
+        manager.applyEdit(javaFile, draft);
+        TSTree written = manager.getCachedOrParse(javaFile, draft).tree();
+        assertSame(written, manager.getCachedOrParse(javaFile));
+    }
+
+    @Test
+    void cacheHitReturnsStoredContent(@TempDir Path tempDir) throws IOException {
+        Path javaFile = tempDir.resolve("Stored.java");
+        Files.writeString(javaFile, "class Stored { String s = \"привет\"; }");
+        Files.setLastModifiedTime(javaFile, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        TreeSitterManager.ParseResult first = manager.getCachedOrParseWithContent(javaFile);
+        TreeSitterManager.ParseResult second = manager.getCachedOrParseWithContent(javaFile);
+
+        assertSame(first.tree(), second.tree());
+        assertSame(first.content(), second.content());
+    }
+
+    @Test
+    void cacheWeightFollowsSourceSize(@TempDir Path tempDir) throws IOException {
+        Path javaFile = tempDir.resolve("Weighted.java");
+        String content = "class Weighted { void m() {} }";
+        Files.writeString(javaFile, content);
+
+        manager.getCachedOrParse(javaFile);
+
+        assertEquals(TreeSitterManager.estimateSize(content, content.getBytes(StandardCharsets.UTF_8)),
+                manager.getCacheSizeBytes());
+        assertTrue(manager.getCacheSizeBytes() <= manager.getCacheBudgetBytes());
+        manager.invalidateCache(javaFile);
+        assertEquals(0, manager.getCacheSizeBytes());
+    }
+
+    @Test
+    void parsersArePooledAcrossVirtualThreads() throws Exception {
+        TreeSitterManager.ParserStats before = manager.getParserStats();
+
+        try (var executor = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                int n = i;
+                executor.submit(() -> manager.parse("class Pooled" + n + " { void m() {} }", "java"));
+            }
+        }
+
+        TreeSitterManager.ParserStats after = manager.getParserStats();
+        assertTrue(after.liveParsers() - before.liveParsers() <= after.parallelism(),
+                "Parsers must be reused, not created per virtual thread: " + after);
+        assertEquals(0, after.activeParses());
+        assertEquals(after.liveParsers() * ParserPool.PARSER_NATIVE_BYTES_ESTIMATE, after.estimatedNativeBytes());
+    }
 }
@@ -23,10 +23,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import ru.nts.tools.mcp.core.PathSanitizer;
 import ru.nts.tools.mcp.core.TaskContext;
+import ru.nts.tools.mcp.core.treesitter.SymbolIndex;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -387,6 +389,47 @@ class CodeNavigateToolTest {
         assertTrue(text.contains("LAT:"), "Token should start with LAT:");
     }
 
+    @Test
+    void executeWorkspaceSymbolsFuzzy() throws Exception {
+        PathSanitizer.setTaskRoot(tempDir.resolve(".nts"));
+        createJavaFile("UserService.java", """
+                public class UserService {
+                    public Object getUserById(long id) { return null; }
+                    public Object getUserByName(String name) { return null; }
+                }
+                """);
+        createJavaFile("OrderService.java", """
+                public class OrderService {
+                    public void placeOrder() {}
+                }
+                """);
+        SymbolIndex index = SymbolIndex.getInstance();
+        index.clear();
+        try {
+            index.indexProjectAsync(tempDir).get(30, TimeUnit.SECONDS);
+
+            assertTrue(workspaceSymbols("gUBI").contains("`getUserById` METHOD in `UserService`"));
+            assertTrue(workspaceSymbols("UserSvc").contains("`UserService` CLASS"));
+
+            String typo = workspaceSymbols("getUserByNmae");
+            assertTrue(typo.contains("`getUserByName`"), typo);
+            assertTrue(typo.contains("[fuzzy 2]"), typo);
+
+            String prefix = workspaceSymbols("getUser");
+            assertTrue(prefix.contains("getUserById") && prefix.contains("getUserByName"), prefix);
+            assertFalse(prefix.contains("placeOrder"), prefix);
+        } finally {
+            index.clear();
+        }
+    }
+
+    private String workspaceSymbols(String query) throws Exception {
+        ObjectNode params = mapper.createObjectNode();
+        params.put("action", "workspace_symbols");
+        params.put("query", query);
+        return tool.execute(params).get("content").get(0).get("text").asText();
+    }
+
     private Path createJavaFile(String name, String content) throws IOException {
         Path file = tempDir.resolve(name);
         Files.writeString(file, content);